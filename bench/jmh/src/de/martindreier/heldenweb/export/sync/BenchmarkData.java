@@ -0,0 +1,120 @@
+package de.martindreier.heldenweb.export.sync;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Realistic payloads for the benchmarks. The data is generated from a fixed
+ * seed, so that each run measures the same documents.
+ * 
+ * @author Martin Dreier <martin@martindreier.de>
+ * 
+ */
+class BenchmarkData
+{
+	/**
+	 * Number of talents of a fully developed hero.
+	 */
+	static final int	HERO_TALENTS	= 250;
+
+	/**
+	 * Number of rows in a large ID listing, e.g. the talents of all heroes on a
+	 * server.
+	 */
+	static final int	LISTING_ROWS	= 5000;
+
+	private BenchmarkData()
+	{
+		// Utility class
+	}
+
+	/**
+	 * Create the talent mappings of one hero, as sent in a batch upload.
+	 * 
+	 * @param heroId
+	 *          The hero ID.
+	 * @param count
+	 *          The number of talents.
+	 * @return The rows.
+	 */
+	static List<Map<String, ? extends Object>> heroTalents(UUID heroId, int count)
+	{
+		Random random = new Random(count);
+		List<Map<String, ? extends Object>> rows = new ArrayList<Map<String, ? extends Object>>(count);
+		for (int index = 0; index < count; index++)
+		{
+			Map<String, String> data = new HashMap<String, String>();
+			data.put("held_id", heroId.toString());
+			data.put("talent_id", uuid(random).toString());
+			data.put("talentwert", Integer.toString(random.nextInt(21)));
+			data.put("attacke", Integer.toString(random.nextInt(21)));
+			data.put("parade", Integer.toString(random.nextInt(21)));
+			data.put("behinderung", index % 3 == 0 ? "BE-2" : "-");
+			rows.add(data);
+		}
+		return rows;
+	}
+
+	/**
+	 * Create an ID listing as returned by the server.
+	 * 
+	 * @param listElementName
+	 *          The root element name.
+	 * @param elementName
+	 *          The element name of each object.
+	 * @param rows
+	 *          The number of objects.
+	 * @return The listing document.
+	 */
+	static String listing(String listElementName, String elementName, int rows)
+	{
+		Random random = new Random(rows);
+		StringBuilder document = new StringBuilder(rows * 200);
+		document.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<").append(listElementName).append(">\n");
+		for (int index = 0; index < rows; index++)
+		{
+			document.append("\t<").append(elementName).append(">\n");
+			document.append("\t\t<id>").append(uuid(random)).append("</id>\n");
+			document.append("\t\t<name>").append(talentName(index)).append("</name>\n");
+			document.append("\t\t<talentart_id>").append(uuid(random)).append("</talentart_id>\n");
+			document.append("\t\t<sprachkomplexitaet></sprachkomplexitaet>\n");
+			document.append("\t</").append(elementName).append(">\n");
+		}
+		document.append("</").append(listElementName).append(">\n");
+		return document.toString();
+	}
+
+	/**
+	 * Create the server's response to a created object.
+	 * 
+	 * @param elementName
+	 *          The element name of the object.
+	 * @return The response document.
+	 */
+	static String createResponse(String elementName)
+	{
+		return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<" + elementName + ">\n\t<id>" + uuid(new Random(1))
+						+ "</id>\n\t<name>" + talentName(1) + "</name>\n</" + elementName + ">\n";
+	}
+
+	/**
+	 * Create a talent name containing an entity, as it appears in a document.
+	 * 
+	 * @param index
+	 *          The index of the talent.
+	 * @return The name.
+	 */
+	static String talentName(int index)
+	{
+		return "Körperbeherrschung &amp; Akrobatik " + index;
+	}
+
+	static UUID uuid(Random random)
+	{
+		return new UUID(random.nextLong(), random.nextLong());
+	}
+}
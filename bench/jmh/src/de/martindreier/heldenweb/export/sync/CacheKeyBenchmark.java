@@ -0,0 +1,58 @@
+package de.martindreier.heldenweb.export.sync;
+
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import de.martindreier.heldenweb.export.sync.Cache.CacheKey;
+
+/**
+ * Measures {@link Cache#getKey(CacheKey, String...)} in a cache holding
+ * {@link BenchmarkData#LISTING_ROWS} talents and as many talent mappings.
+ * 
+ * @author Martin Dreier <martin@martindreier.de>
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CacheKeyBenchmark
+{
+	private Cache			cache;
+	private String		talentName;
+	private String		heroId;
+	private String		talentId;
+
+	@Setup
+	public void setUp()
+	{
+		cache = new Cache(new HttpClient("localhost", 80, "/", false, false));
+		Random random = new Random(0);
+		for (int index = 0; index < BenchmarkData.LISTING_ROWS; index++)
+		{
+			heroId = BenchmarkData.uuid(random).toString();
+			talentId = BenchmarkData.uuid(random).toString();
+			cache.putKey(CacheKey.HELD_TALENT, BenchmarkData.uuid(random), heroId, talentId);
+			talentName = BenchmarkData.talentName(index);
+			cache.putKey(CacheKey.TALENT, BenchmarkData.uuid(random), talentName);
+		}
+	}
+
+	@Benchmark
+	public UUID singleIdentifier()
+	{
+		return cache.getKey(CacheKey.TALENT, talentName);
+	}
+
+	@Benchmark
+	public UUID mapping()
+	{
+		return cache.getKey(CacheKey.HELD_TALENT, heroId, talentId);
+	}
+}
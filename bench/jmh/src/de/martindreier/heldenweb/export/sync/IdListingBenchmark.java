@@ -0,0 +1,49 @@
+package de.martindreier.heldenweb.export.sync;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import de.martindreier.heldenweb.export.HeldenWebExportException;
+import de.martindreier.heldenweb.export.sync.Cache.CacheKey;
+
+/**
+ * Measures reading an ID listing of {@link BenchmarkData#LISTING_ROWS} objects
+ * into the cache, as done by <code>Cache.getIdsFromServer</code> while the
+ * listing is received.
+ * 
+ * @author Martin Dreier <martin@martindreier.de>
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class IdListingBenchmark
+{
+	private Cache		cache;
+	private byte[]	listing;
+
+	@Setup
+	public void setUp()
+	{
+		cache = new Cache(new HttpClient("localhost", 80, "/", false, false));
+		listing = BenchmarkData.listing("talente", "talent", BenchmarkData.LISTING_ROWS).getBytes(
+						Charset.forName("UTF-8"));
+	}
+
+	@Benchmark
+	public boolean talentListing() throws IOException, HeldenWebExportException
+	{
+		boolean[] filtered = { true };
+		cache.createListingParser(CacheKey.TALENT, "talent", null, true, filtered).handleContent(
+						new ByteArrayInputStream(listing));
+		return filtered[0];
+	}
+}
@@ -0,0 +1,56 @@
+package de.martindreier.heldenweb.export.sync;
+
+import java.util.concurrent.TimeUnit;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpressionException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+import de.martindreier.heldenweb.export.HeldenWebExportException;
+
+/**
+ * Measures {@link Cache#parseXML(String)} followed by the XPath evaluation used
+ * to read IDs from the server's responses: the response to a created object
+ * and a listing of {@link BenchmarkData#LISTING_ROWS} objects.
+ * 
+ * @author Martin Dreier <martin@martindreier.de>
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ResponseParsingBenchmark
+{
+	private Cache		cache;
+	private String	createResponse;
+	private String	listing;
+
+	@Setup
+	public void setUp()
+	{
+		cache = new Cache(new HttpClient("localhost", 80, "/", false, false));
+		createResponse = BenchmarkData.createResponse("talent");
+		listing = BenchmarkData.listing("talente", "talent", BenchmarkData.LISTING_ROWS);
+	}
+
+	@Benchmark
+	public String createdObjectId() throws HeldenWebExportException, XPathExpressionException
+	{
+		Document document = cache.parseXML(createResponse);
+		return cache.newXPath().evaluate("/talent/id", document);
+	}
+
+	@Benchmark
+	public int listingIds() throws HeldenWebExportException, XPathExpressionException
+	{
+		Document document = cache.parseXML(listing);
+		NodeList ids = (NodeList) cache.newXPath().evaluate("//talent/id", document, XPathConstants.NODESET);
+		return ids.getLength();
+	}
+}
@@ -0,0 +1,49 @@
+package de.martindreier.heldenweb.export.sync;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures {@link HttpClient#buildUrl(String, Map)}.
+ * 
+ * @author Martin Dreier <martin@martindreier.de>
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class UrlBenchmark
+{
+	private HttpClient					client;
+	private Map<String, String>	queryParameters;
+
+	@Setup
+	public void setUp()
+	{
+		client = new HttpClient("heldenweb.example.org", 80, "/heldenweb", false, false);
+		queryParameters = new HashMap<String, String>();
+		queryParameters.put("held_id", "4f5c3c1e-8a9b-4c6d-9e0f-1a2b3c4d5e6f");
+	}
+
+	@Benchmark
+	public URL path() throws MalformedURLException
+	{
+		return client.buildUrl("HeldenTalenten/edit/4f5c3c1e-8a9b-4c6d-9e0f-1a2b3c4d5e6f.xml", null);
+	}
+
+	@Benchmark
+	public URL pathWithQuery() throws MalformedURLException
+	{
+		return client.buildUrl("HeldenTalenten.xml", queryParameters);
+	}
+}
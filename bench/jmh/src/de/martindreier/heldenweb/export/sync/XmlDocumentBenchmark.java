@@ -0,0 +1,48 @@
+package de.martindreier.heldenweb.export.sync;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures {@link Cache#buildXmlDocument(String, Map)} and the batch variant
+ * for the talents of a hero.
+ * 
+ * @author Martin Dreier <martin@martindreier.de>
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class XmlDocumentBenchmark
+{
+	private Cache															cache;
+	private List<Map<String, ? extends Object>>	talents;
+
+	@Setup
+	public void setUp()
+	{
+		cache = new Cache(new HttpClient("localhost", 80, "/", false, false));
+		talents = BenchmarkData.heroTalents(BenchmarkData.uuid(new Random(0)), BenchmarkData.HERO_TALENTS);
+	}
+
+	@Benchmark
+	public String singleObject()
+	{
+		return cache.buildXmlDocument("HeldenTalent", talents.get(0));
+	}
+
+	@Benchmark
+	public String heroTalentBatch()
+	{
+		return cache.buildXmlDocument("HeldenTalenten", "HeldenTalent", talents);
+	}
+}
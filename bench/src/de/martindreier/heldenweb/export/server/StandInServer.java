@@ -0,0 +1,996 @@
+package de.martindreier.heldenweb.export.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.text.MessageFormat;
+import java.text.SimpleDateFormat;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An in-process stand-in for the HeldenWeb server. It implements the endpoints
+ * used by the export with the same XML documents as the real server:
+ * <ul>
+ * <li><code>GET Table.xml</code>: ID listing, optionally filtered by
+ * <code>held_id</code>, with <code>ETag</code> and
+ * <code>Last-Modified</code></li>
+ * <li><code>POST Table.xml</code>: create an object, with the ID sent by the
+ * client if there is one. Creates with an <code>Idempotency-Key</code> header
+ * are only executed once.</li>
+ * <li><code>POST Table/edit/{id}.xml</code>: update an object</li>
+ * <li><code>POST Table/delete/{id}.xml</code>: delete an object</li>
+ * <li><code>POST Table/batch.xml</code>: create or update several objects</li>
+ * <li><code>POST Table/resolve.xml</code>: look up objects by their
+ * identifying fields</li>
+ * <li><code>POST Helden/aggregate/{id}.xml</code>: update a hero and create or
+ * update its objects, nested in the hero by table</li>
+ * <li><code>GET capabilities.xml</code>: the optional features of the server</li>
+ * </ul>
+ * The objects are kept in memory. Latency, bandwidth, error rate and the
+ * number of objects already stored on the server can be configured to measure
+ * the export under realistic conditions without a network.
+ * 
+ * @author Martin Dreier <martin@martindreier.de>
+ * 
+ */
+public class StandInServer
+{
+	private static final Charset			UTF8						= Charset.forName("UTF-8");
+
+	/**
+	 * Tables of the HeldenWeb server: path and element name of an object in the
+	 * ID listing.
+	 */
+	private static final String[][]		TABLES					= { { "Eigenschaften", "eigenschaft" },
+					{ "Talentarten", "talentart" }, { "Talente", "talent" }, { "Vorteile", "vorteil" },
+					{ "Sonderfertigkeiten", "sonderfertigkeit" }, { "Zauber", "zauber" }, { "Helden", "held" },
+					{ "EigenschaftenHelden", "eigenschaftenheld" }, { "HeldenSonderfertigkeiten", "heldenSonderfertigkeit" },
+					{ "HeldenTalenten", "heldentalent" }, { "HeldenVorteilen", "heldenvorteil" },
+					{ "HeldenZauber", "heldenzauber" }, { "Nahkampfwaffen", "nahkampfwaffe" },
+					{ "Fernkampfwaffen", "fernkampfwaffe" }, { "Ruestungen", "ruestung" }, { "Schilde", "schild" },
+					{ "Kampf", "kampf" }, { "Gegenstaende", "gegenstand" }, { "Muenzen", "muenze" } };
+
+	private static final String				HERO_ID_FIELD		= "held_id";
+	private static final String				NO_DELAY_PROPERTY	= "sun.net.httpserver.nodelay";
+
+	/**
+	 * Size of the chunks in which content is transferred when the bandwidth is
+	 * limited.
+	 */
+	private static final int					CHUNK_SIZE			= 1024;
+
+	/**
+	 * Matches <code>Table.xml</code>, <code>Table/edit/{id}.xml</code>,
+	 * <code>Table/delete/{id}.xml</code>, <code>Table/aggregate/{id}.xml</code>,
+	 * <code>Table/batch.xml</code> and <code>Table/resolve.xml</code>.
+	 */
+	private static final Pattern			PATH_PATTERN		= Pattern
+																										.compile("([A-Za-z]+)(?:/(edit|delete|aggregate)/([0-9a-fA-F-]+)|/(batch|resolve))?\\.xml");
+
+	private static final String				HERO_TABLE			= "Helden";
+	private static final String				CAPABILITIES_PATH	= "capabilities.xml";
+
+	/**
+	 * A table and its objects.
+	 */
+	private static class Table
+	{
+		private final String													path;
+		private final String													elementName;
+		private final Map<UUID, Map<String, String>>	rows	= new LinkedHashMap<UUID, Map<String, String>>();
+		private long																	version;
+		private long																	lastModified;
+
+		private Table(String path, String elementName)
+		{
+			this.path = path;
+			this.elementName = elementName;
+			modified();
+		}
+
+		private void modified()
+		{
+			version++;
+			// HTTP dates have a resolution of one second
+			lastModified = System.currentTimeMillis() / 1000 * 1000;
+		}
+	}
+
+	private final Map<String, Table>	tables					= new HashMap<String, Table>();
+	private final String							basePath;
+	private final Random							random					= new Random();
+	private HttpServer								server;
+	private ExecutorService						executor;
+
+	private volatile long							latency;
+	private volatile long							bandwidth;
+	private volatile double						errorRate;
+	private volatile long							outageAfter;
+	private volatile Semaphore				workers;
+	private volatile int							capacity;
+	private volatile boolean					batchSupported	= true;
+	private volatile boolean					heroFilterSupported	= true;
+	private volatile boolean					conditionalRequestsSupported	= true;
+	private volatile boolean					clientIdsSupported	= true;
+	private volatile boolean					aggregateSupported	= true;
+	private volatile boolean					resolveSupported	= true;
+
+	/**
+	 * Responses to creates, by idempotency key.
+	 */
+	private final Map<String, String>	createResponses	= new ConcurrentHashMap<String, String>();
+
+	private final AtomicLong					requests				= new AtomicLong();
+	private final AtomicLong					failedRequests	= new AtomicLong();
+	private final AtomicLong					bytesReceived		= new AtomicLong();
+	private final AtomicLong					bytesSent				= new AtomicLong();
+
+	/**
+	 * Create a new server. The server is not started.
+	 * 
+	 * @param basePath
+	 *          The base path of the HeldenWeb installation, e.g.
+	 *          <code>/heldenweb/</code>.
+	 */
+	public StandInServer(String basePath)
+	{
+		if (!basePath.startsWith("/"))
+		{
+			basePath = "/" + basePath;
+		}
+		if (!basePath.endsWith("/"))
+		{
+			basePath = basePath + "/";
+		}
+		this.basePath = basePath;
+		for (String[] table : TABLES)
+		{
+			tables.put(table[0], new Table(table[0], table[1]));
+		}
+	}
+
+	/**
+	 * Start the server.
+	 * 
+	 * @param port
+	 *          The port, or <code>0</code> to use any free port.
+	 * @param threads
+	 *          Number of requests handled concurrently.
+	 * @throws IOException
+	 */
+	public void start(int port, int threads) throws IOException
+	{
+		// The server writes the response headers and the content separately; with
+		// Nagle's algorithm every request would wait for the delayed ACK of the
+		// client, which the real server does not do
+		if (System.getProperty(NO_DELAY_PROPERTY) == null)
+		{
+			System.setProperty(NO_DELAY_PROPERTY, "true");
+		}
+		server = HttpServer.create(new InetSocketAddress("localhost", port), 50);
+		executor = Executors.newFixedThreadPool(threads);
+		server.setExecutor(executor);
+		server.createContext(basePath, new HttpHandler()
+		{
+			@Override
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				try
+				{
+					StandInServer.this.handle(exchange);
+				}
+				finally
+				{
+					exchange.close();
+				}
+			}
+		});
+		server.start();
+	}
+
+	/**
+	 * Stop the server.
+	 */
+	public void stop()
+	{
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	/**
+	 * @return The port the server is listening on.
+	 */
+	public int getPort()
+	{
+		return server.getAddress().getPort();
+	}
+
+	public String getBasePath()
+	{
+		return basePath;
+	}
+
+	/**
+	 * Set the latency added to each request.
+	 * 
+	 * @param latency
+	 *          The latency in milliseconds.
+	 */
+	public void setLatency(long latency)
+	{
+		this.latency = latency;
+	}
+
+	/**
+	 * Limit the bandwidth for request and response content.
+	 * 
+	 * @param bandwidth
+	 *          The bandwidth in bytes per second, or <code>0</code> for no limit.
+	 */
+	public void setBandwidth(long bandwidth)
+	{
+		this.bandwidth = bandwidth;
+	}
+
+	/**
+	 * Set the fraction of requests which fail because the server is
+	 * temporarily unavailable. Failed requests are not processed.
+	 * 
+	 * @param errorRate
+	 *          A value between <code>0</code> and <code>1</code>.
+	 */
+	public void setErrorRate(double errorRate)
+	{
+		this.errorRate = errorRate;
+	}
+
+	/**
+	 * Simulate an outage: once the given number of requests has been received
+	 * since the statistics were reset, every further request fails because the
+	 * server is unavailable.
+	 * 
+	 * @param requests
+	 *          The number of requests before the outage, or <code>0</code> for
+	 *          no outage.
+	 */
+	public void setOutageAfter(long requests)
+	{
+		this.outageAfter = requests;
+	}
+
+	/**
+	 * Limit the number of requests processed at the same time, like the worker
+	 * processes of a shared PHP host. Further requests wait for a worker, so
+	 * their latency grows; once twice as many requests wait as there are
+	 * workers, requests are answered with <code>503</code>.
+	 * 
+	 * @param capacity
+	 *          The number of workers, or <code>0</code> for no limit.
+	 */
+	public void setCapacity(int capacity)
+	{
+		this.capacity = capacity;
+		this.workers = capacity > 0 ? new Semaphore(capacity) : null;
+	}
+
+	/**
+	 * Set to <code>false</code> to answer batch uploads with
+	 * <code>404 Not Found</code>, like an older server.
+	 */
+	public void setBatchSupported(boolean batchSupported)
+	{
+		this.batchSupported = batchSupported;
+	}
+
+	/**
+	 * Set to <code>false</code> to ignore the <code>held_id</code> filter of ID
+	 * listings, like an older server.
+	 */
+	public void setHeroFilterSupported(boolean heroFilterSupported)
+	{
+		this.heroFilterSupported = heroFilterSupported;
+	}
+
+	/**
+	 * Set to <code>false</code> to send ID listings without validators, like an
+	 * older server.
+	 */
+	public void setConditionalRequestsSupported(boolean conditionalRequestsSupported)
+	{
+		this.conditionalRequestsSupported = conditionalRequestsSupported;
+	}
+
+	/**
+	 * Set to <code>false</code> to ignore the ID sent with a new object and
+	 * assign a new ID instead, like an older server.
+	 */
+	public void setClientIdsSupported(boolean clientIdsSupported)
+	{
+		this.clientIdsSupported = clientIdsSupported;
+	}
+
+	/**
+	 * Set to <code>false</code> to neither advertise nor accept aggregate
+	 * uploads of heroes, like an older server.
+	 */
+	public void setAggregateSupported(boolean aggregateSupported)
+	{
+		this.aggregateSupported = aggregateSupported;
+	}
+
+	/**
+	 * Set to <code>false</code> to neither advertise nor accept lookups of
+	 * objects by their identifying fields, like an older server.
+	 */
+	public void setResolveSupported(boolean resolveSupported)
+	{
+		this.resolveSupported = resolveSupported;
+	}
+
+	/**
+	 * Store objects which do not belong to the exported heroes, so that the ID
+	 * listings have a realistic size.
+	 * 
+	 * @param path
+	 *          The table path, e.g. <code>HeldenTalenten</code>.
+	 * @param count
+	 *          The number of objects.
+	 */
+	public void seed(String path, int count)
+	{
+		Table table = getTable(path);
+		synchronized (table)
+		{
+			String heroId = UUID.randomUUID().toString();
+			for (int index = 0; index < count; index++)
+			{
+				if (index % 250 == 0)
+				{
+					heroId = UUID.randomUUID().toString();
+				}
+				Map<String, String> row = new LinkedHashMap<String, String>();
+				row.put("name", "Vorhanden " + index);
+				row.put(HERO_ID_FIELD, heroId);
+				table.rows.put(UUID.randomUUID(), row);
+			}
+			table.modified();
+		}
+	}
+
+	/**
+	 * Delete all objects of a table, as after a reset of the server.
+	 * 
+	 * @param path
+	 *          The table path.
+	 */
+	public void clear(String path)
+	{
+		Table table = getTable(path);
+		synchronized (table)
+		{
+			table.rows.clear();
+			table.modified();
+		}
+	}
+
+	/**
+	 * Get the number of objects stored in a table.
+	 * 
+	 * @param path
+	 *          The table path.
+	 * @return The number of objects.
+	 */
+	public int getRowCount(String path)
+	{
+		Table table = getTable(path);
+		synchronized (table)
+		{
+			return table.rows.size();
+		}
+	}
+
+	/**
+	 * Get the objects stored in a table.
+	 * 
+	 * @param path
+	 *          The table path.
+	 * @return A copy of the objects, keyed by ID.
+	 */
+	public Map<UUID, Map<String, String>> getRows(String path)
+	{
+		Table table = getTable(path);
+		synchronized (table)
+		{
+			Map<UUID, Map<String, String>> rows = new LinkedHashMap<UUID, Map<String, String>>();
+			for (Map.Entry<UUID, Map<String, String>> row : table.rows.entrySet())
+			{
+				rows.put(row.getKey(), new LinkedHashMap<String, String>(row.getValue()));
+			}
+			return rows;
+		}
+	}
+
+	/**
+	 * @return The number of requests handled since the last reset.
+	 */
+	public long getRequestCount()
+	{
+		return requests.get();
+	}
+
+	/**
+	 * @return The number of requests which failed because of the error rate.
+	 */
+	public long getFailedRequestCount()
+	{
+		return failedRequests.get();
+	}
+
+	public long getBytesReceived()
+	{
+		return bytesReceived.get();
+	}
+
+	public long getBytesSent()
+	{
+		return bytesSent.get();
+	}
+
+	/**
+	 * Reset the request statistics.
+	 */
+	public void resetStatistics()
+	{
+		requests.set(0);
+		failedRequests.set(0);
+		bytesReceived.set(0);
+		bytesSent.set(0);
+	}
+
+	private Table getTable(String path)
+	{
+		Table table = tables.get(path);
+		if (table == null)
+		{
+			throw new IllegalArgumentException(MessageFormat.format("Unbekannte Tabelle {0}", path));
+		}
+		return table;
+	}
+
+	/**
+	 * Handle a request.
+	 */
+	private void handle(HttpExchange exchange) throws IOException
+	{
+		requests.incrementAndGet();
+		byte[] requestContent = read(exchange.getRequestBody());
+		Semaphore currentWorkers = workers;
+		if (currentWorkers != null)
+		{
+			if (currentWorkers.getQueueLength() >= 2 * capacity)
+			{
+				failedRequests.incrementAndGet();
+				send(exchange, 503, "Überlastet");
+				return;
+			}
+			currentWorkers.acquireUninterruptibly();
+			try
+			{
+				sleep(latency);
+			}
+			finally
+			{
+				currentWorkers.release();
+			}
+		}
+		else
+		{
+			sleep(latency);
+		}
+		if (outageAfter > 0 && requests.get() > outageAfter)
+		{
+			failedRequests.incrementAndGet();
+			send(exchange, 503, "Simulierter Ausfall");
+			return;
+		}
+		if (errorRate > 0)
+		{
+			boolean fail;
+			synchronized (random)
+			{
+				fail = random.nextDouble() < errorRate;
+			}
+			if (fail)
+			{
+				failedRequests.incrementAndGet();
+				send(exchange, 503, "Simulierter Fehler");
+				return;
+			}
+		}
+
+		URI uri = exchange.getRequestURI();
+		if (uri.getPath().substring(basePath.length()).equals(CAPABILITIES_PATH) && (aggregateSupported || resolveSupported))
+		{
+			send(exchange, 200, "<?xml version=\"1.0\" encoding=\"UTF-8\"?><capabilities>"
+							+ (aggregateSupported ? "<capability>aggregate</capability>" : "")
+							+ (resolveSupported ? "<capability>resolve</capability>" : "") + "</capabilities>");
+			return;
+		}
+		Matcher matcher = PATH_PATTERN.matcher(uri.getPath().substring(basePath.length()));
+		Table table = matcher.matches() ? tables.get(matcher.group(1)) : null;
+		if (table == null)
+		{
+			send(exchange, 404, "Nicht gefunden");
+			return;
+		}
+		String method = exchange.getRequestMethod();
+		try
+		{
+			if (matcher.group(2) == null && matcher.group(4) == null && method.equals("GET"))
+			{
+				list(exchange, table, getQueryParameters(uri).get(HERO_ID_FIELD));
+			}
+			else if (matcher.group(2) == null && matcher.group(4) == null && method.equals("POST"))
+			{
+				String idempotencyKey = exchange.getRequestHeaders().getFirst("Idempotency-Key");
+				String response = idempotencyKey == null ? null : createResponses.get(idempotencyKey);
+				if (response == null)
+				{
+					Element object = parse(requestContent);
+					String id = clientIdsSupported ? childText(object, "id") : null;
+					response = toXml(object.getTagName().toLowerCase(), save(table, id == null ? null : UUID.fromString(id),
+									object, true));
+					if (idempotencyKey != null)
+					{
+						createResponses.put(idempotencyKey, response);
+					}
+				}
+				send(exchange, 200, response);
+			}
+			else if ("edit".equals(matcher.group(2)) && method.equals("POST"))
+			{
+				UUID id = UUID.fromString(matcher.group(3));
+				Element object = parse(requestContent);
+				Map.Entry<UUID, Map<String, String>> saved = save(table, id, object, false);
+				if (saved == null)
+				{
+					send(exchange, 404, "Nicht gefunden");
+					return;
+				}
+				send(exchange, 200, toXml(object.getTagName().toLowerCase(), saved));
+			}
+			else if ("delete".equals(matcher.group(2)) && method.equals("POST"))
+			{
+				boolean deleted;
+				synchronized (table)
+				{
+					deleted = table.rows.remove(UUID.fromString(matcher.group(3))) != null;
+					table.modified();
+				}
+				send(exchange, deleted ? 200 : 404, deleted ? "" : "Nicht gefunden");
+			}
+			else if ("aggregate".equals(matcher.group(2)) && method.equals("POST") && aggregateSupported
+							&& table.path.equals(HERO_TABLE))
+			{
+				aggregate(exchange, table, UUID.fromString(matcher.group(3)), parse(requestContent));
+			}
+			else if ("batch".equals(matcher.group(4)) && method.equals("POST") && batchSupported)
+			{
+				batch(exchange, table, parse(requestContent));
+			}
+			else if ("resolve".equals(matcher.group(4)) && method.equals("POST") && resolveSupported)
+			{
+				resolve(exchange, table, parse(requestContent));
+			}
+			else
+			{
+				send(exchange, 404, "Nicht gefunden");
+			}
+		}
+		catch (IllegalArgumentException exception)
+		{
+			send(exchange, 400, exception.getMessage());
+		}
+	}
+
+	/**
+	 * Send an ID listing.
+	 */
+	private void list(HttpExchange exchange, Table table, String heroId) throws IOException
+	{
+		StringBuilder document = new StringBuilder();
+		String entityTag;
+		String lastModified;
+		synchronized (table)
+		{
+			boolean filter = heroId != null && heroFilterSupported;
+			entityTag = "\"" + table.version + (filter ? "-" + heroId : "") + "\"";
+			lastModified = formatDate(table.lastModified);
+			document.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+			document.append("<").append(table.path.toLowerCase()).append(">");
+			for (Map.Entry<UUID, Map<String, String>> row : table.rows.entrySet())
+			{
+				if (filter && !heroId.equals(row.getValue().get(HERO_ID_FIELD)))
+				{
+					continue;
+				}
+				appendObject(document, table.elementName, row);
+			}
+			document.append("</").append(table.path.toLowerCase()).append(">");
+		}
+		if (conditionalRequestsSupported)
+		{
+			exchange.getResponseHeaders().set("ETag", entityTag);
+			exchange.getResponseHeaders().set("Last-Modified", lastModified);
+			if (entityTag.equals(exchange.getRequestHeaders().getFirst("If-None-Match")))
+			{
+				exchange.sendResponseHeaders(304, -1);
+				return;
+			}
+		}
+		send(exchange, 200, document.toString());
+	}
+
+	/**
+	 * Store several objects.
+	 */
+	private void batch(HttpExchange exchange, Table table, Element root) throws IOException
+	{
+		List<Map.Entry<UUID, Map<String, String>>> saved = new ArrayList<Map.Entry<UUID, Map<String, String>>>();
+		String elementName = null;
+		for (Element object : childElements(root))
+		{
+			elementName = object.getTagName().toLowerCase();
+			String id = childText(object, "id");
+			Map.Entry<UUID, Map<String, String>> row = save(table, id == null ? null : UUID.fromString(id), object, false);
+			if (row == null)
+			{
+				send(exchange, 404, MessageFormat.format("Objekt {0} nicht gefunden", id));
+				return;
+			}
+			saved.add(row);
+		}
+		StringBuilder document = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+		document.append("<").append(table.path).append(">");
+		for (Map.Entry<UUID, Map<String, String>> row : saved)
+		{
+			appendObject(document, elementName, row);
+		}
+		document.append("</").append(table.path).append(">");
+		send(exchange, 200, document.toString());
+	}
+
+	/**
+	 * Send the objects whose fields match all fields of one of the requested
+	 * objects. Requested objects which do not exist are left out.
+	 */
+	private void resolve(HttpExchange exchange, Table table, Element root) throws IOException
+	{
+		StringBuilder document = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+		document.append("<").append(table.path).append(">");
+		synchronized (table)
+		{
+			for (Element requested : childElements(root))
+			{
+				for (Map.Entry<UUID, Map<String, String>> row : table.rows.entrySet())
+				{
+					if (matches(row.getValue(), requested))
+					{
+						appendObject(document, requested.getTagName().toLowerCase(), row);
+						break;
+					}
+				}
+			}
+		}
+		document.append("</").append(table.path).append(">");
+		send(exchange, 200, document.toString());
+	}
+
+	private static boolean matches(Map<String, String> values, Element requested)
+	{
+		for (Element field : childElements(requested))
+		{
+			if (!field.getTextContent().equals(values.get(field.getTagName())))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Update a hero and store its objects. Nothing is stored if the hero or one
+	 * of the objects to update does not exist.
+	 */
+	private void aggregate(HttpExchange exchange, Table heroTable, UUID heroId, Element hero) throws IOException
+	{
+		boolean heroChanged = false;
+		Map<Table, List<Element>> collections = new LinkedHashMap<Table, List<Element>>();
+		for (Element child : childElements(hero))
+		{
+			Table table = tables.get(child.getTagName());
+			if (table != null)
+			{
+				collections.put(table, childElements(child));
+			}
+			else if (!child.getTagName().equals("id") && childElements(child).isEmpty())
+			{
+				heroChanged = true;
+			}
+		}
+		synchronized (heroTable)
+		{
+			if (!heroTable.rows.containsKey(heroId))
+			{
+				send(exchange, 404, MessageFormat.format("Held {0} nicht gefunden", heroId));
+				return;
+			}
+		}
+		for (Map.Entry<Table, List<Element>> collection : collections.entrySet())
+		{
+			for (Element object : collection.getValue())
+			{
+				String id = childText(object, "id");
+				synchronized (collection.getKey())
+				{
+					if (id != null && !collection.getKey().rows.containsKey(UUID.fromString(id)))
+					{
+						send(exchange, 404, MessageFormat.format("Objekt {0} nicht gefunden", id));
+						return;
+					}
+				}
+			}
+		}
+
+		StringBuilder document = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+		if (heroChanged)
+		{
+			save(heroTable, heroId, hero, false);
+		}
+		String heroElementName = hero.getTagName().toLowerCase();
+		document.append("<").append(heroElementName).append("><id>").append(heroId).append("</id>");
+		for (Map.Entry<Table, List<Element>> collection : collections.entrySet())
+		{
+			Table table = collection.getKey();
+			document.append("<").append(table.path).append(">");
+			for (Element object : collection.getValue())
+			{
+				String id = childText(object, "id");
+				appendObject(document, object.getTagName().toLowerCase(), save(table, id == null ? null : UUID
+								.fromString(id), object, false));
+			}
+			document.append("</").append(table.path).append(">");
+		}
+		document.append("</").append(heroElementName).append(">");
+		send(exchange, 200, document.toString());
+	}
+
+	/**
+	 * Create or update an object.
+	 * 
+	 * @param table
+	 *          The table.
+	 * @param id
+	 *          The ID of the object, or <code>null</code> to create a new object
+	 *          with a new ID.
+	 * @param object
+	 *          The uploaded object.
+	 * @param create
+	 *          <code>true</code> to create the object with the given ID if it
+	 *          does not exist.
+	 * @return The stored object, or <code>null</code> if the object to update
+	 *         does not exist.
+	 */
+	private Map.Entry<UUID, Map<String, String>> save(Table table, UUID id, Element object, boolean create)
+	{
+		Map<String, String> values = new LinkedHashMap<String, String>();
+		for (Element field : childElements(object))
+		{
+			// Nested elements (e.g. the description of a hero) are stored in other
+			// tables by the real server
+			if (!field.getTagName().equals("id") && childElements(field).isEmpty())
+			{
+				values.put(field.getTagName(), field.getTextContent());
+			}
+		}
+		synchronized (table)
+		{
+			if (id == null)
+			{
+				id = UUID.randomUUID();
+			}
+			else if (!create && !table.rows.containsKey(id))
+			{
+				return null;
+			}
+			table.rows.put(id, values);
+			table.modified();
+		}
+		return new SimpleEntry<UUID, Map<String, String>>(id, values);
+	}
+
+	private String toXml(String elementName, Map.Entry<UUID, Map<String, String>> row)
+	{
+		StringBuilder document = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+		appendObject(document, elementName, row);
+		return document.toString();
+	}
+
+	private void appendObject(StringBuilder document, String elementName, Map.Entry<UUID, Map<String, String>> row)
+	{
+		document.append("<").append(elementName).append("><id>").append(row.getKey()).append("</id>");
+		for (Map.Entry<String, String> field : row.getValue().entrySet())
+		{
+			document.append("<").append(field.getKey()).append(">");
+			document.append(escape(field.getValue()));
+			document.append("</").append(field.getKey()).append(">");
+		}
+		document.append("</").append(elementName).append(">");
+	}
+
+	private static String escape(String text)
+	{
+		return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+	}
+
+	private Element parse(byte[] content)
+	{
+		try
+		{
+			DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+			DocumentBuilder builder = factory.newDocumentBuilder();
+			Document document = builder.parse(new ByteArrayInputStream(content));
+			return document.getDocumentElement();
+		}
+		catch (Exception exception)
+		{
+			throw new IllegalArgumentException("Ungültiges XML-Dokument: " + exception.getMessage());
+		}
+	}
+
+	private static List<Element> childElements(Element parent)
+	{
+		List<Element> children = new ArrayList<Element>();
+		NodeList nodes = parent.getChildNodes();
+		for (int index = 0; index < nodes.getLength(); index++)
+		{
+			if (nodes.item(index).getNodeType() == Node.ELEMENT_NODE)
+			{
+				children.add((Element) nodes.item(index));
+			}
+		}
+		return children;
+	}
+
+	private static String childText(Element parent, String name)
+	{
+		for (Element child : childElements(parent))
+		{
+			if (child.getTagName().equals(name))
+			{
+				return child.getTextContent();
+			}
+		}
+		return null;
+	}
+
+	private static Map<String, String> getQueryParameters(URI uri)
+	{
+		Map<String, String> parameters = new HashMap<String, String>();
+		if (uri.getQuery() != null)
+		{
+			for (String parameter : uri.getQuery().split("&"))
+			{
+				int separator = parameter.indexOf('=');
+				if (separator > 0)
+				{
+					parameters.put(parameter.substring(0, separator), parameter.substring(separator + 1));
+				}
+			}
+		}
+		return parameters;
+	}
+
+	private static String formatDate(long date)
+	{
+		SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+		format.setTimeZone(TimeZone.getTimeZone("GMT"));
+		return format.format(new Date(date));
+	}
+
+	/**
+	 * Read the request content, limited by the bandwidth.
+	 */
+	private byte[] read(InputStream in) throws IOException
+	{
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		byte[] buffer = new byte[CHUNK_SIZE];
+		int read;
+		while ((read = in.read(buffer)) != -1)
+		{
+			content.write(buffer, 0, read);
+			throttle(read);
+		}
+		bytesReceived.addAndGet(content.size());
+		return content.toByteArray();
+	}
+
+	/**
+	 * Send a response, limited by the bandwidth.
+	 */
+	private void send(HttpExchange exchange, int status, String content) throws IOException
+	{
+		byte[] bytes = content.getBytes(UTF8);
+		exchange.getResponseHeaders().set("Content-Type", "application/xml; charset=UTF-8");
+		exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+		if (bytes.length == 0)
+		{
+			return;
+		}
+		OutputStream out = exchange.getResponseBody();
+		for (int offset = 0; offset < bytes.length; offset += CHUNK_SIZE)
+		{
+			int length = Math.min(CHUNK_SIZE, bytes.length - offset);
+			out.write(bytes, offset, length);
+			throttle(length);
+		}
+		out.close();
+		bytesSent.addAndGet(bytes.length);
+	}
+
+	private void throttle(int bytes)
+	{
+		long limit = bandwidth;
+		if (limit > 0)
+		{
+			sleep(bytes * 1000L / limit);
+		}
+	}
+
+	private static void sleep(long millis)
+	{
+		if (millis <= 0)
+		{
+			return;
+		}
+		try
+		{
+			Thread.sleep(millis);
+		}
+		catch (InterruptedException exception)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,359 @@
+package de.martindreier.heldenweb.export.sync;
+
+import java.io.File;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import de.martindreier.heldenweb.export.HeldenWebExportException;
+import de.martindreier.heldenweb.export.server.StandInServer;
+
+/**
+ * Exports synthetic heroes to a {@link StandInServer}, first into an empty
+ * cache and then again with the IDs, validators and snapshot of the first run.
+ * Afterwards the objects stored on the server are checked; the benchmark fails
+ * if they do not match the exported heroes.
+ * <p>
+ * The benchmark is configured with <code>name=value</code> arguments:
+ * <ul>
+ * <li><code>heroes</code>: number of heroes (default 3)</li>
+ * <li><code>talents</code>: number of talents per hero (default 250)</li>
+ * <li><code>items</code>: number of inventory items per hero (default 50)</li>
+ * <li><code>latency</code>: latency per request in milliseconds (default 20)</li>
+ * <li><code>bandwidth</code>: bandwidth in bytes per second, 0 for no limit
+ * (default 0)</li>
+ * <li><code>errorRate</code>: fraction of failing requests (default 0)</li>
+ * <li><code>seed</code>: number of objects of other heroes in each hero table
+ * (default 0)</li>
+ * <li><code>catalogue</code>: number of entries in each catalogue table which
+ * are not used by the heroes, like the rest of the rule system (default 0)</li>
+ * <li><code>batch</code>: whether the server supports batch uploads (default
+ * true)</li>
+ * <li><code>aggregate</code>: whether the server supports aggregate uploads
+ * of heroes (default true)</li>
+ * <li><code>resolve</code>: whether the server looks up catalogue entries by
+ * name (default true)</li>
+ * <li><code>seeding</code>: whether the base data is transferred on its own
+ * before the first export, see {@link Synchronizer#seedCatalogue()} (default
+ * false)</li>
+ * <li><code>clientIds</code>: whether the IDs of new objects are generated by
+ * the client (default false)</li>
+ * <li><code>keepIds</code>: whether the server keeps IDs generated by the
+ * client (default true)</li>
+ * <li><code>window</code>: number of concurrent requests (default 4)</li>
+ * <li><code>retries</code>: number of retries of failed requests (default 2).
+ * The first retry waits 20 ms.</li>
+ * <li><code>outage</code>: if not 0, the server fails after this many requests
+ * during a first export, which is then continued by a new synchronizer (default
+ * 0)</li>
+ * <li><code>resetCatalogue</code>: whether the catalogue entries are deleted on
+ * the server after the second export, followed by a third export with the
+ * stored IDs (default false)</li>
+ * </ul>
+ * 
+ * @author Martin Dreier <martin@martindreier.de>
+ * 
+ */
+public class ExportBenchmark
+{
+	private static final String[]	ATTRIBUTES		= { "Mut", "Klugheit", "Intuition", "Charisma", "Fingerfertigkeit",
+					"Gewandtheit", "Konstitution", "Körperkraft" };
+	private static final String[]	TALENT_TYPES	= { "Kampf", "Körperlich", "Gesellschaft", "Natur", "Wissen",
+					"Handwerk" };
+	private static final String[]	HERO_TABLES		= { "EigenschaftenHelden", "HeldenTalenten", "HeldenVorteilen",
+					"Nahkampfwaffen", "Gegenstaende", "Muenzen" };
+	private static final String[]	CATALOGUE_TABLES	= { "Talente", "Vorteile", "Sonderfertigkeiten", "Zauber" };
+
+	/**
+	 * Provides synthetic heroes. All heroes share the same talents, so the base
+	 * data is the same as for a group of heroes of one campaign.
+	 */
+	private static class SyntheticHeroSource implements HeroSource
+	{
+		private final List<HeroSnapshot>	heroes	= new ArrayList<HeroSnapshot>();
+
+		private SyntheticHeroSource(int heroCount, int talentCount, int itemCount)
+		{
+			for (int hero = 0; hero < heroCount; hero++)
+			{
+				heroes.add(createHero(hero, talentCount, itemCount));
+			}
+		}
+
+		private static HeroSnapshot createHero(int hero, int talentCount, int itemCount)
+		{
+			HeroSnapshot.Builder builder = new HeroSnapshot.Builder("held-" + hero, "Held " + hero);
+			Map<String, String> columns = new HashMap<String, String>();
+			columns.put("rasse", "Mittelländer");
+			columns.put("kultur", "Mittelreich");
+			columns.put("profession", "Krieger");
+			builder.setHeroColumns(columns);
+			Map<String, String> description = new HashMap<String, String>();
+			description.put("haarfarbe", "braun");
+			description.put("augenfarbe", "grün");
+			builder.setDescription(description);
+			builder.setValues(Collections.singletonMap("abenteuerpunkte", Integer.toString(1000 * hero)));
+			for (int attribute = 0; attribute < ATTRIBUTES.length; attribute++)
+			{
+				builder.addAttribute(new HeroSnapshot.Attribute(ATTRIBUTES[attribute], 10 + (hero + attribute) % 6));
+			}
+			builder.setSpeed(8);
+			String[] probe = { ATTRIBUTES[0], ATTRIBUTES[1], ATTRIBUTES[2] };
+			for (int talent = 0; talent < talentCount; talent++)
+			{
+				builder.addTalent(new HeroSnapshot.Talent("Talent " + talent, TALENT_TYPES[talent % TALENT_TYPES.length],
+								probe, "", "BE", (hero + talent) % 18, 0, 0));
+			}
+			for (int advantage = 0; advantage < 10; advantage++)
+			{
+				builder.addAdvantage(new HeroSnapshot.Advantage("Vorteil " + advantage, false, false, advantage % 3 == 0,
+								false, 0));
+			}
+			builder.setSpecialAbilitiesAvailable(false);
+			Map<String, String> weapon = new HashMap<String, String>();
+			weapon.put("tp", "1W6+4");
+			weapon.put("at", "14");
+			weapon.put("pa", "12");
+			builder.addMeleeWeapon(new HeroSnapshot.Equipment("Schwert", "Talent 0", weapon));
+			Map<String, String> combat = new HashMap<String, String>();
+			combat.put("ini", "12");
+			combat.put("at", "8");
+			combat.put("pa", "7");
+			builder.setCombat(combat);
+			List<HeroSnapshot.Equipment> items = new ArrayList<HeroSnapshot.Equipment>();
+			for (int item = 0; item < itemCount; item++)
+			{
+				Map<String, String> itemColumns = new HashMap<String, String>();
+				itemColumns.put("anzahl", "1");
+				itemColumns.put("gewicht", Integer.toString(item % 40));
+				items.add(new HeroSnapshot.Equipment("Gegenstand " + item, null, itemColumns));
+			}
+			builder.addItems("Rucksack", items);
+			builder.addCoin(new HeroSnapshot.Equipment("Dukaten", null, Collections.singletonMap("anzahl", "12")));
+			return builder.build();
+		}
+
+		@Override
+		public int getHeroCount()
+		{
+			return heroes.size();
+		}
+
+		@Override
+		public String getSelectedHeroName()
+		{
+			return heroes.get(0).getName();
+		}
+
+		@Override
+		public HeroSnapshot readSelectedHero()
+		{
+			return heroes.get(0);
+		}
+
+		@Override
+		public List<HeroSnapshot> readAllHeroes()
+		{
+			return heroes;
+		}
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		Map<String, String> options = new LinkedHashMap<String, String>();
+		options.put("heroes", "3");
+		options.put("talents", "250");
+		options.put("items", "50");
+		options.put("latency", "20");
+		options.put("bandwidth", "0");
+		options.put("errorRate", "0");
+		options.put("seed", "0");
+		options.put("catalogue", "0");
+		options.put("batch", "true");
+		options.put("aggregate", "true");
+		options.put("resolve", "true");
+		options.put("seeding", "false");
+		options.put("clientIds", "false");
+		options.put("keepIds", "true");
+		options.put("window", "4");
+		options.put("ceiling", "0");
+		options.put("capacity", "0");
+		options.put("retries", "2");
+		options.put("outage", "0");
+		options.put("resetCatalogue", "false");
+		for (String arg : args)
+		{
+			int separator = arg.indexOf('=');
+			if (separator < 0 || !options.containsKey(arg.substring(0, separator)))
+			{
+				System.err.println(MessageFormat.format("Unbekannte Option {0}, erlaubt sind: {1}", arg, options.keySet()));
+				System.exit(2);
+			}
+			options.put(arg.substring(0, separator), arg.substring(separator + 1));
+		}
+		System.out.println("Optionen: " + options);
+
+		int heroCount = Integer.parseInt(options.get("heroes"));
+		int talentCount = Integer.parseInt(options.get("talents"));
+		int itemCount = Integer.parseInt(options.get("items"));
+		SyntheticHeroSource source = new SyntheticHeroSource(heroCount, talentCount, itemCount);
+
+		StandInServer server = new StandInServer("/heldenweb/");
+		server.setLatency(Long.parseLong(options.get("latency")));
+		server.setBandwidth(Long.parseLong(options.get("bandwidth")));
+		server.setErrorRate(Double.parseDouble(options.get("errorRate")));
+		server.setBatchSupported(Boolean.parseBoolean(options.get("batch")));
+		server.setAggregateSupported(Boolean.parseBoolean(options.get("aggregate")));
+		server.setResolveSupported(Boolean.parseBoolean(options.get("resolve")));
+		server.setClientIdsSupported(Boolean.parseBoolean(options.get("keepIds")));
+		server.setCapacity(Integer.parseInt(options.get("capacity")));
+		int seed = Integer.parseInt(options.get("seed"));
+		for (String table : HERO_TABLES)
+		{
+			server.seed(table, seed);
+		}
+		int catalogue = Integer.parseInt(options.get("catalogue"));
+		for (String table : CATALOGUE_TABLES)
+		{
+			server.seed(table, catalogue);
+		}
+		server.start(0, 8);
+
+		File directory = File.createTempFile("heldenWebExport", "");
+		directory.delete();
+		directory.mkdirs();
+		try
+		{
+			Synchronizer synchronizer = createSynchronizer(source, server, directory, options);
+			long outage = Long.parseLong(options.get("outage"));
+			if (outage > 0)
+			{
+				server.setOutageAfter(outage);
+				try
+				{
+					run("Abgebrochener Export", synchronizer, server);
+					System.out.println("Kein Ausfall, der Export benötigte höchstens " + outage + " Anfragen");
+				}
+				catch (HeldenWebExportException exception)
+				{
+					System.out.println("Abgebrochener Export: " + exception.getMessage());
+				}
+				server.setOutageAfter(0);
+				// Continue with new instances, as after a restart
+				synchronizer = createSynchronizer(source, server, directory, options);
+			}
+
+			if (Boolean.parseBoolean(options.get("seeding")))
+			{
+				server.resetStatistics();
+				ExportStatistics statistics = synchronizer.seedCatalogue();
+				System.out.println("Stammdaten übertragen:");
+				System.out.println(statistics.getSummary());
+				printRequests(server);
+			}
+			run("Erster Export", synchronizer, server);
+			run("Erneuter Export", synchronizer, server);
+			if (Boolean.parseBoolean(options.get("resetCatalogue")))
+			{
+				for (String table : CATALOGUE_TABLES)
+				{
+					server.clear(table);
+				}
+				// The stored IDs of the catalogue entries are outdated now
+				synchronizer = createSynchronizer(source, server, directory, options);
+				run("Export nach Zurücksetzen der Stammdaten", synchronizer, server);
+				catalogue = 0;
+				checkReferences(server, "HeldenTalenten", "talent_id", "Talente");
+			}
+
+			check(server, "Helden", heroCount);
+			check(server, "EigenschaftenHelden", heroCount * (ATTRIBUTES.length + 1) + seed);
+			check(server, "HeldenTalenten", heroCount * talentCount + seed);
+			check(server, "HeldenVorteilen", heroCount * 10 + seed);
+			check(server, "Talente", talentCount + catalogue);
+			check(server, "Gegenstaende", heroCount * itemCount + seed);
+		}
+		finally
+		{
+			server.stop();
+			for (File file : directory.listFiles())
+			{
+				file.delete();
+			}
+			directory.delete();
+		}
+	}
+
+	/**
+	 * Create a synchronizer whose IDs, snapshot and journal are stored in a
+	 * directory.
+	 */
+	private static Synchronizer createSynchronizer(HeroSource source, StandInServer server, File directory,
+					Map<String, String> options)
+	{
+		String serverIdentity = "localhost:" + server.getPort() + server.getBasePath();
+		IdStore store = new IdStore(new File(directory, "heldenWebExport.ids"), serverIdentity);
+		SnapshotStore snapshotStore = new SnapshotStore(new File(directory, "heldenWebExport.snapshot"), serverIdentity);
+		ExportJournal journal = new ExportJournal(new File(directory, "heldenWebExport.journal"), serverIdentity);
+		HttpClient client = new HttpClient("localhost", server.getPort(), server.getBasePath(), false, true);
+		client.setRetryPolicy(new RetryPolicy(Integer.parseInt(options.get("retries")), 20, 1000, 10, 1000));
+		int window = Integer.parseInt(options.get("window"));
+		int ceiling = Integer.parseInt(options.get("ceiling"));
+		if (ceiling > 0)
+		{
+			// Adapt the requests in flight, starting with the window
+			client.setConcurrencyLimiter(new ConcurrencyLimiter(window, ceiling));
+			window = ceiling;
+		}
+		Cache cache = new Cache(client, store, snapshotStore, journal);
+		cache.setRequestWindow(window, 0);
+		cache.setClientIds(Boolean.parseBoolean(options.get("clientIds")));
+		return new Synchronizer(source, cache);
+	}
+
+	private static void run(String name, Synchronizer synchronizer, StandInServer server)
+					throws HeldenWebExportException
+	{
+		server.resetStatistics();
+		ExportStatistics statistics = synchronizer.syncAll();
+		System.out.println(name + ":");
+		System.out.println(statistics.getSummary());
+		printRequests(server);
+		System.out.println(synchronizer.getMetrics().getSummary());
+	}
+
+	private static void printRequests(StandInServer server)
+	{
+		System.out.println(MessageFormat.format(
+						"{0} Anfragen ({1} fehlgeschlagen), {2} Bytes empfangen, {3} Bytes gesendet", server
+										.getRequestCount(), server.getFailedRequestCount(), server.getBytesReceived(), server
+										.getBytesSent()));
+	}
+
+	private static void checkReferences(StandInServer server, String table, String field, String referencedTable)
+	{
+		Map<UUID, Map<String, String>> referenced = server.getRows(referencedTable);
+		for (Map<String, String> row : server.getRows(table).values())
+		{
+			String id = row.get(field);
+			if (id != null && !referenced.containsKey(UUID.fromString(id)))
+			{
+				throw new IllegalStateException(MessageFormat.format("{0}: {1} {2} existiert nicht", table, field, id));
+			}
+		}
+	}
+
+	private static void check(StandInServer server, String table, int expected)
+	{
+		int actual = server.getRowCount(table);
+		if (actual != expected)
+		{
+			throw new IllegalStateException(MessageFormat.format("{0}: {1} Objekte erwartet, {2} gefunden", table,
+							expected, actual));
+		}
+	}
+}
@@ -0,0 +1,190 @@
+package de.martindreier.heldenweb.export.sync;
+
+import java.io.StringWriter;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Compares the {@link XmlWriter} with the DOM and transformer based
+ * serialization previously used by the {@link Cache}. Both must produce
+ * identical documents; the benchmark fails if they do not.
+ * 
+ * @author Martin Dreier <martin@martindreier.de>
+ * 
+ */
+public class XmlSerializationBenchmark
+{
+	private static final int	WARMUP_ITERATIONS	= 2000;
+	private static final int	ITERATIONS				= 20000;
+	private static final int	BATCH_SIZE				= 100;
+
+	public static void main(String[] args) throws Exception
+	{
+		Map<String, Object> single = createObject(0);
+		List<Map<String, ? extends Object>> batch = new ArrayList<Map<String, ? extends Object>>();
+		for (int index = 0; index < BATCH_SIZE; index++)
+		{
+			batch.add(createObject(index));
+		}
+
+		// Both paths must produce the same payload
+		check(buildWithDom(single), buildWithWriter(new XmlWriter(), single));
+		check(buildWithDom(batch), buildWithWriter(new XmlWriter(), batch));
+
+		XmlWriter writer = new XmlWriter();
+		for (int index = 0; index < WARMUP_ITERATIONS; index++)
+		{
+			buildWithDom(single);
+			buildWithWriter(writer, single);
+		}
+
+		long start = System.nanoTime();
+		for (int index = 0; index < ITERATIONS; index++)
+		{
+			buildWithDom(single);
+		}
+		report("DOM + Transformer, einzelnes Objekt", System.nanoTime() - start, ITERATIONS);
+
+		start = System.nanoTime();
+		for (int index = 0; index < ITERATIONS; index++)
+		{
+			buildWithWriter(writer, single);
+		}
+		report("XmlWriter, einzelnes Objekt", System.nanoTime() - start, ITERATIONS);
+
+		start = System.nanoTime();
+		for (int index = 0; index < ITERATIONS / BATCH_SIZE; index++)
+		{
+			buildWithDom(batch);
+		}
+		report("DOM + Transformer, Stapel mit " + BATCH_SIZE + " Objekten", System.nanoTime() - start, ITERATIONS
+						/ BATCH_SIZE);
+
+		start = System.nanoTime();
+		for (int index = 0; index < ITERATIONS / BATCH_SIZE; index++)
+		{
+			buildWithWriter(writer, batch);
+		}
+		report("XmlWriter, Stapel mit " + BATCH_SIZE + " Objekten", System.nanoTime() - start, ITERATIONS / BATCH_SIZE);
+	}
+
+	/**
+	 * Create a typical object, similar to a hero's talent with some characters
+	 * which need escaping.
+	 */
+	private static Map<String, Object> createObject(int index)
+	{
+		Map<String, Object> data = new HashMap<String, Object>();
+		data.put("held_id", UUID.randomUUID().toString());
+		data.put("talent_id", UUID.randomUUID().toString());
+		data.put("wert", Integer.toString(index));
+		data.put("name", "Körperbeherrschung & Akrobatik <" + index + ">");
+		data.put("bemerkung", "Zeile 1\r\nZeile 2");
+		data.put("leer", "");
+		Map<String, String> nested = new LinkedHashMap<String, String>();
+		nested.put("probe1", "MU");
+		nested.put("probe2", "GE");
+		nested.put("probe3", "KK");
+		data.put("probe", nested);
+		return data;
+	}
+
+	private static String buildWithWriter(XmlWriter writer, Map<String, ? extends Object> elements)
+	{
+		writer.startDocument().startElement("HeldenTalent").elements(elements).endElement();
+		return writer.toString();
+	}
+
+	private static String buildWithWriter(XmlWriter writer, List<Map<String, ? extends Object>> objects)
+	{
+		writer.startDocument().startElement("HeldenTalenten");
+		for (Map<String, ? extends Object> elements : objects)
+		{
+			writer.startElement("HeldenTalent").elements(elements).endElement();
+		}
+		writer.endElement();
+		return writer.toString();
+	}
+
+	private static String buildWithDom(Map<String, ? extends Object> elements) throws Exception
+	{
+		Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+		Element root = document.createElement("HeldenTalent");
+		document.appendChild(root);
+		appendElements(document, root, elements);
+		return transform(document);
+	}
+
+	private static String buildWithDom(List<Map<String, ? extends Object>> objects) throws Exception
+	{
+		Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+		Element root = document.createElement("HeldenTalenten");
+		document.appendChild(root);
+		for (Map<String, ? extends Object> elements : objects)
+		{
+			Element objectElement = document.createElement("HeldenTalent");
+			appendElements(document, objectElement, elements);
+			root.appendChild(objectElement);
+		}
+		return transform(document);
+	}
+
+	private static void appendElements(Document document, Element parent, Map<String, ? extends Object> elements)
+	{
+		for (String elementName : elements.keySet())
+		{
+			Element element = document.createElement(elementName);
+			Object elementContent = elements.get(elementName);
+			if (elementContent == null)
+			{
+				element.setTextContent("");
+			}
+			else if (elementContent instanceof Map)
+			{
+				Map<?, ?> elementContents = (Map<?, ?>) elementContent;
+				for (Object childName : elementContents.keySet())
+				{
+					Element child = document.createElement(childName.toString());
+					child.setTextContent(elementContents.get(childName).toString());
+					element.appendChild(child);
+				}
+			}
+			else
+			{
+				element.setTextContent(elementContent.toString());
+			}
+			parent.appendChild(element);
+		}
+	}
+
+	private static String transform(Document document) throws Exception
+	{
+		StringWriter writer = new StringWriter();
+		TransformerFactory.newInstance().newTransformer().transform(new DOMSource(document), new StreamResult(writer));
+		return writer.toString();
+	}
+
+	private static void check(String expected, String actual)
+	{
+		if (!expected.equals(actual))
+		{
+			throw new IllegalStateException(MessageFormat.format("Unterschiedliche Ausgabe:\n{0}\n{1}", expected, actual));
+		}
+	}
+
+	private static void report(String name, long nanos, int operations)
+	{
+		System.out.println(MessageFormat.format("{0}: {1,number,#.##} µs/op", name, nanos / 1000.0 / operations));
+	}
+}
@@ -23,7 +23,20 @@ public class Settings
 	private static final String			SETTING_PATH			= "path";
 	private static final String			SETTING_USER			= "username";
 	private static final String			SETTING_PASSWORD	= "password";
+	private static final String			SETTING_REQUEST_WINDOW	= "requestWindow";
+	private static final String			SETTING_REQUEST_RETRIES	= "requestRetries";
+	private static final String			SETTING_RETRY_BACKOFF		= "retryBackoff";
+	private static final String			SETTING_RETRY_MAX_BACKOFF	= "retryMaxBackoff";
+	private static final String			SETTING_FAILURE_THRESHOLD	= "failureThreshold";
+	private static final String			SETTING_FAILURE_PAUSE		= "failurePause";
+	private static final String			SETTING_OUTBOX					= "outbox";
+	private static final String			SETTING_MAX_CONCURRENCY	= "maxConcurrency";
+	private static final String			SETTING_AUTO_SYNC				= "autoSync";
+	private static final String			SETTING_AUTO_SYNC_INTERVAL	= "autoSyncInterval";
+	private static final String			SETTING_AUTO_SYNC_DELAY	= "autoSyncDelay";
+	private static final String			SETTING_CLIENT_IDS			= "clientIds";
 
+	private File										settingsDirectory;
 	private File										settingsFile;
 	private Properties							settings;
 
@@ -35,6 +48,18 @@ public class Settings
 		DEFAULT_SETTINGS.setProperty(SETTING_PORT, "80");
 		DEFAULT_SETTINGS.setProperty(SETTING_USER, "");
 		DEFAULT_SETTINGS.setProperty(SETTING_PASSWORD, "");
+		DEFAULT_SETTINGS.setProperty(SETTING_REQUEST_WINDOW, "4");
+		DEFAULT_SETTINGS.setProperty(SETTING_REQUEST_RETRIES, "2");
+		DEFAULT_SETTINGS.setProperty(SETTING_RETRY_BACKOFF, "500");
+		DEFAULT_SETTINGS.setProperty(SETTING_RETRY_MAX_BACKOFF, "10000");
+		DEFAULT_SETTINGS.setProperty(SETTING_FAILURE_THRESHOLD, "5");
+		DEFAULT_SETTINGS.setProperty(SETTING_FAILURE_PAUSE, "30");
+		DEFAULT_SETTINGS.setProperty(SETTING_OUTBOX, "false");
+		DEFAULT_SETTINGS.setProperty(SETTING_MAX_CONCURRENCY, "8");
+		DEFAULT_SETTINGS.setProperty(SETTING_AUTO_SYNC, "false");
+		DEFAULT_SETTINGS.setProperty(SETTING_AUTO_SYNC_INTERVAL, "10");
+		DEFAULT_SETTINGS.setProperty(SETTING_AUTO_SYNC_DELAY, "5");
+		DEFAULT_SETTINGS.setProperty(SETTING_CLIENT_IDS, "false");
 	}
 
 	private Settings()
@@ -46,7 +71,7 @@ public class Settings
 			throw new PfadNichtGefundenException("Einstellungspfad nicht gefunden");
 		}
 		// Load settings for HeldenWeb
-		File settingsDirectory = new File(settingsPath);
+		settingsDirectory = new File(settingsPath);
 		if (!settingsDirectory.exists())
 		{
 			// Create directory if necessary
@@ -146,6 +171,17 @@ public class Settings
 		}
 	}
 
+	/**
+	 * Get the directory where the settings file is stored. Other files of the
+	 * plugin are stored there as well.
+	 * 
+	 * @return The settings directory.
+	 */
+	public File getSettingsDirectory()
+	{
+		return settingsDirectory;
+	}
+
 	public String getServer()
 	{
 		return settings.getProperty(SETTING_SERVER);
@@ -195,4 +231,197 @@ public class Settings
 	{
 		settings.setProperty(SETTING_PASSWORD, password);
 	}
+
+	/**
+	 * Get the maximum number of requests which are sent to the server
+	 * concurrently.
+	 * 
+	 * @return The number of requests.
+	 */
+	public String getRequestWindow()
+	{
+		return settings.getProperty(SETTING_REQUEST_WINDOW);
+	}
+
+	public void setRequestWindow(String requestWindow)
+	{
+		settings.setProperty(SETTING_REQUEST_WINDOW, requestWindow);
+	}
+
+	/**
+	 * Get the number of retries for a request which failed with a transient
+	 * error, e.g. a timeout or an overloaded server.
+	 * 
+	 * @return The number of retries.
+	 */
+	public String getRequestRetries()
+	{
+		return settings.getProperty(SETTING_REQUEST_RETRIES);
+	}
+
+	public void setRequestRetries(String requestRetries)
+	{
+		settings.setProperty(SETTING_REQUEST_RETRIES, requestRetries);
+	}
+
+	/**
+	 * Get the wait time before the first retry of a failed request. The wait
+	 * time doubles with every further retry.
+	 * 
+	 * @return The wait time in milliseconds.
+	 */
+	public String getRetryBackoff()
+	{
+		return settings.getProperty(SETTING_RETRY_BACKOFF);
+	}
+
+	public void setRetryBackoff(String retryBackoff)
+	{
+		settings.setProperty(SETTING_RETRY_BACKOFF, retryBackoff);
+	}
+
+	/**
+	 * Get the maximum wait time between two attempts of a failed request.
+	 * 
+	 * @return The wait time in milliseconds.
+	 */
+	public String getRetryMaxBackoff()
+	{
+		return settings.getProperty(SETTING_RETRY_MAX_BACKOFF);
+	}
+
+	public void setRetryMaxBackoff(String retryMaxBackoff)
+	{
+		settings.setProperty(SETTING_RETRY_MAX_BACKOFF, retryMaxBackoff);
+	}
+
+	/**
+	 * Get the number of consecutive failed requests after which the server is
+	 * considered unavailable. <code>0</code> never stops sending requests.
+	 * 
+	 * @return The number of failed requests.
+	 */
+	public String getFailureThreshold()
+	{
+		return settings.getProperty(SETTING_FAILURE_THRESHOLD);
+	}
+
+	public void setFailureThreshold(String failureThreshold)
+	{
+		settings.setProperty(SETTING_FAILURE_THRESHOLD, failureThreshold);
+	}
+
+	/**
+	 * Get the time during which no requests are sent to a server which is
+	 * considered unavailable.
+	 * 
+	 * @return The time in seconds.
+	 */
+	public String getFailurePause()
+	{
+		return settings.getProperty(SETTING_FAILURE_PAUSE);
+	}
+
+	public void setFailurePause(String failurePause)
+	{
+		settings.setProperty(SETTING_FAILURE_PAUSE, failurePause);
+	}
+
+	/**
+	 * Get whether exports are kept in the outbox while the server is not
+	 * reachable. They are sent in the background once the server is reachable
+	 * again.
+	 * 
+	 * @return <code>true</code> or <code>false</code>.
+	 */
+	public String getOutbox()
+	{
+		return settings.getProperty(SETTING_OUTBOX);
+	}
+
+	public void setOutbox(String outbox)
+	{
+		settings.setProperty(SETTING_OUTBOX, outbox);
+	}
+
+	/**
+	 * Get the maximum number of requests sent to the server concurrently. The
+	 * number actually sent is adapted to the response times of the server,
+	 * starting with the request window.
+	 * 
+	 * @return The maximum number of requests.
+	 */
+	public String getMaxConcurrency()
+	{
+		return settings.getProperty(SETTING_MAX_CONCURRENCY);
+	}
+
+	public void setMaxConcurrency(String maxConcurrency)
+	{
+		settings.setProperty(SETTING_MAX_CONCURRENCY, maxConcurrency);
+	}
+
+	/**
+	 * Get whether changes to the selected hero are exported automatically in
+	 * the background.
+	 * 
+	 * @return <code>true</code> or <code>false</code>.
+	 */
+	public String getAutoSync()
+	{
+		return settings.getProperty(SETTING_AUTO_SYNC);
+	}
+
+	public void setAutoSync(String autoSync)
+	{
+		settings.setProperty(SETTING_AUTO_SYNC, autoSync);
+	}
+
+	/**
+	 * Get the time between two checks of the selected hero for changes.
+	 * 
+	 * @return The time in seconds.
+	 */
+	public String getAutoSyncInterval()
+	{
+		return settings.getProperty(SETTING_AUTO_SYNC_INTERVAL);
+	}
+
+	public void setAutoSyncInterval(String autoSyncInterval)
+	{
+		settings.setProperty(SETTING_AUTO_SYNC_INTERVAL, autoSyncInterval);
+	}
+
+	/**
+	 * Get the time a changed hero must remain unchanged before it is exported
+	 * automatically.
+	 * 
+	 * @return The time in seconds.
+	 */
+	public String getAutoSyncDelay()
+	{
+		return settings.getProperty(SETTING_AUTO_SYNC_DELAY);
+	}
+
+	public void setAutoSyncDelay(String autoSyncDelay)
+	{
+		settings.setProperty(SETTING_AUTO_SYNC_DELAY, autoSyncDelay);
+	}
+
+	/**
+	 * Get whether the IDs of new objects are generated by the client. New
+	 * objects are then created without waiting for the server's response. The
+	 * server must accept the IDs, otherwise it assigns its own IDs as before.
+	 * 
+	 * @return <code>true</code> or <code>false</code>.
+	 */
+	public String getClientIds()
+	{
+		return settings.getProperty(SETTING_CLIENT_IDS);
+	}
+
+	public void setClientIds(String clientIds)
+	{
+		settings.setProperty(SETTING_CLIENT_IDS, clientIds);
+	}
 }
@@ -0,0 +1,246 @@
+package de.martindreier.heldenweb.export.sync;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import de.martindreier.heldenweb.export.HeldenWebExportException;
+
+/**
+ * Exports changes to the selected hero in the background. The hero is read
+ * periodically and compared with the last exported state by a fingerprint,
+ * without contacting the server. A changed hero is exported once it has
+ * remained unchanged for a while, so a series of changes made during play is
+ * sent in one export. Only the objects which changed are sent, see
+ * {@link Cache}.
+ * <p>
+ * The first time a hero is seen, its state is taken as exported. Heroes which
+ * changed while the Helden software was not running are exported manually.
+ * 
+ * @author Martin Dreier <martin@martindreier.de>
+ * 
+ */
+public class AutoSync
+{
+	/**
+	 * Share of one processor core which may be used for reading and comparing
+	 * the hero. If reading takes longer, the hero is checked less often.
+	 */
+	private static final double							CPU_SHARE			= 0.05;
+
+	private static AutoSync									instance;
+
+	private ScheduledExecutorService				executor;
+	private volatile Synchronizer						synchronizer;
+	private volatile long										interval;
+	private volatile long										delay;
+
+	/**
+	 * Fingerprints of the last exported state of each hero, by hero identifier.
+	 * Only accessed by the background thread.
+	 */
+	private final Map<String, byte[]>				exported			= new HashMap<String, byte[]>();
+	private String													pendingHero;
+	private byte[]													pendingFingerprint;
+	private long														pendingSince;
+
+	/**
+	 * @return The background export of the Helden software.
+	 */
+	public static synchronized AutoSync getInstance()
+	{
+		if (instance == null)
+		{
+			instance = new AutoSync();
+		}
+		return instance;
+	}
+
+	/**
+	 * Start the background export. If it is already running, the new
+	 * synchronizer and times are used from the next check on.
+	 * 
+	 * @param synchronizer
+	 *          The synchronizer which reads and exports the selected hero.
+	 * @param interval
+	 *          Time between two checks in milliseconds.
+	 * @param delay
+	 *          Time in milliseconds a changed hero must remain unchanged before
+	 *          it is exported.
+	 */
+	public synchronized void start(Synchronizer synchronizer, long interval, long delay)
+	{
+		this.synchronizer = synchronizer;
+		this.interval = Math.max(interval, 1000);
+		this.delay = Math.max(delay, 0);
+		if (executor != null)
+		{
+			return;
+		}
+		executor = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("HeldenWeb-AutoSync",
+						Thread.MIN_PRIORITY));
+		schedule(executor, 0);
+	}
+
+	/**
+	 * Stop the background export. A running export is completed.
+	 */
+	public synchronized void stop()
+	{
+		if (executor != null)
+		{
+			executor.shutdown();
+			executor = null;
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the background export is running.
+	 */
+	public synchronized boolean isRunning()
+	{
+		return executor != null;
+	}
+
+	private void schedule(final ScheduledExecutorService executor, long delay)
+	{
+		executor.schedule(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				long next = interval;
+				try
+				{
+					next = check();
+				}
+				finally
+				{
+					// Keep checking even if the check failed unexpectedly
+					synchronized (AutoSync.this)
+					{
+						if (AutoSync.this.executor == executor)
+						{
+							schedule(executor, next);
+						}
+					}
+				}
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Check the selected hero for changes and export it if it has not changed
+	 * for the configured delay.
+	 * 
+	 * @return The time until the next check in milliseconds.
+	 */
+	private long check()
+	{
+		Synchronizer currentSynchronizer = synchronizer;
+		long start = System.nanoTime();
+		long readAt = System.currentTimeMillis();
+		HeroSnapshot hero;
+		byte[] fingerprint;
+		try
+		{
+			hero = currentSynchronizer.readSelectedHero();
+			fingerprint = fingerprint(hero);
+		}
+		catch (HeldenWebExportException exception)
+		{
+			// No hero selected, try again later
+			return interval;
+		}
+		catch (RuntimeException exception)
+		{
+			// The Helden software may fail while the hero is being edited
+			return interval;
+		}
+		long nextCheck = Math.max(interval, (long) ((System.nanoTime() - start) / 1000000 / CPU_SHARE));
+
+		byte[] exportedFingerprint = exported.get(hero.getIdentifier());
+		if (exportedFingerprint == null)
+		{
+			exported.put(hero.getIdentifier(), fingerprint);
+			pendingHero = null;
+			return nextCheck;
+		}
+		if (Arrays.equals(exportedFingerprint, fingerprint))
+		{
+			pendingHero = null;
+			return nextCheck;
+		}
+		if (!hero.getIdentifier().equals(pendingHero) || !Arrays.equals(pendingFingerprint, fingerprint))
+		{
+			// Changed since the last check, wait until the changes are complete
+			pendingHero = hero.getIdentifier();
+			pendingFingerprint = fingerprint;
+			pendingSince = readAt;
+			return Math.max(nextCheck, delay);
+		}
+		if (readAt - pendingSince < delay)
+		{
+			return Math.max(nextCheck, delay - (readAt - pendingSince));
+		}
+		try
+		{
+			currentSynchronizer.sync(hero, readAt);
+			exported.put(hero.getIdentifier(), fingerprint);
+			pendingHero = null;
+		}
+		catch (HeldenWebExportException exception)
+		{
+			// The hero remains pending and is exported with the next check
+		}
+		catch (RuntimeException exception)
+		{
+			// The hero remains pending and is exported with the next check
+		}
+		return nextCheck;
+	}
+
+	/**
+	 * Calculate a fingerprint of all exported values of a hero.
+	 * 
+	 * @param hero
+	 *          The hero.
+	 * @return The fingerprint.
+	 */
+	private static byte[] fingerprint(HeroSnapshot hero)
+	{
+		MessageDigest digest = Digests.md5();
+		try
+		{
+			ObjectOutputStream out = new ObjectOutputStream(new DigestOutputStream(new OutputStream()
+			{
+				@Override
+				public void write(int value)
+				{
+					// Only the digest is needed
+				}
+
+				@Override
+				public void write(byte[] buffer, int offset, int length)
+				{
+					// Only the digest is needed
+				}
+			}, digest));
+			out.writeObject(hero);
+			out.close();
+			return digest.digest();
+		}
+		catch (IOException exception)
+		{
+			// The stream does not write anywhere
+			throw new IllegalStateException(exception);
+		}
+	}
+}
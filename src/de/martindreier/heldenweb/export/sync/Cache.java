@@ -1,52 +1,37 @@
 package de.martindreier.heldenweb.export.sync;
 
-import helden.framework.geld.GeldBoerse;
-import helden.framework.geld.Muenze;
-import helden.plugin.werteplugin.HeldAngaben;
-import helden.plugin.werteplugin.PluginFernkampfWaffe;
-import helden.plugin.werteplugin.PluginHeld;
-import helden.plugin.werteplugin.PluginRuestungsTeil;
-import helden.plugin.werteplugin.PluginSonderfertigkeit;
-import helden.plugin.werteplugin.PluginTalent;
-import helden.plugin.werteplugin.PluginVorteil;
-import helden.plugin.werteplugin.PluginZauberInfo;
-import helden.plugin.werteplugin2.PluginFernkampfWaffe2;
-import helden.plugin.werteplugin2.PluginGegenstand;
-import helden.plugin.werteplugin2.PluginNahkampfWaffe2;
-import helden.plugin.werteplugin2.PluginSchildParadewaffe;
-import helden.plugin.werteplugin3.PluginHeldenWerteWerkzeug3;
-import helden.plugin.werteplugin3.PluginZauber3;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.StringWriter;
+import java.net.HttpURLConnection;
 import java.nio.charset.Charset;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerConfigurationException;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
-import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 import de.martindreier.heldenweb.export.HeldenWebExportException;
 import de.martindreier.heldenweb.export.sync.HttpClient.Response;
+import de.martindreier.heldenweb.export.sync.HttpClient.Validator;
 import de.martindreier.heldenweb.export.ui.ProgressMonitor;
 
 /**
@@ -74,6 +59,168 @@ public class Cache
 		GEGENSTAENDE, HELD_GEGENSTAENDE, MUENZEN
 	};
 
+	/**
+	 * Describes how a type of object is stored on the server.
+	 * 
+	 * @author Martin Dreier <martin@martindreier.de>
+	 * 
+	 */
+	private static class Table
+	{
+		/**
+		 * The element name of one object in the ID listing.
+		 */
+		private String		elementName;
+		/**
+		 * The root element name of an uploaded object.
+		 */
+		private String		rootElementName;
+		/**
+		 * The path of the table on the server, without trailing &quot;.xml&quot;.
+		 */
+		private String		path;
+		/**
+		 * Object name for error messages.
+		 */
+		private String		label;
+		/**
+		 * Use the field "name" as the identifier for the object.
+		 */
+		private boolean		useDefaultIdentifier;
+		/**
+		 * Additional identifying elements.
+		 */
+		private String[]	additionalIdentifiers;
+
+		private Table(String elementName, String rootElementName, String path, String label,
+						boolean useDefaultIdentifier, String... additionalIdentifiers)
+		{
+			this.elementName = elementName;
+			this.rootElementName = rootElementName;
+			this.path = path;
+			this.label = label;
+			this.useDefaultIdentifier = useDefaultIdentifier;
+			this.additionalIdentifiers = additionalIdentifiers;
+		}
+
+		/**
+		 * Get the hero ID from the identifiers of an object.
+		 * 
+		 * @param identifiers
+		 *          The object's identifiers.
+		 * @return The hero ID, or <code>null</code> if the objects of this table
+		 *         do not belong to a hero.
+		 */
+		private String getHeroId(String... identifiers)
+		{
+			int offset = useDefaultIdentifier ? 1 : 0;
+			for (int index = 0; index < additionalIdentifiers.length; index++)
+			{
+				if (additionalIdentifiers[index].equals(HERO_ID_FIELD) && offset + index < identifiers.length)
+				{
+					return identifiers[offset + index];
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * An object which is to be sent to the server.
+	 * 
+	 * @author Martin Dreier <martin@martindreier.de>
+	 * 
+	 */
+	private static class Row
+	{
+		private CacheKey												cacheKey;
+		private String[]												identifiers;
+		private String													compoundKey;
+		private Map<String, ? extends Object>	data;
+		/**
+		 * The object's snapshot entry, or <code>null</code> for a catalogue entry.
+		 */
+		private SnapshotStore.Entry							entry;
+		/**
+		 * The object's ID, or <code>null</code> if the object is not yet known on
+		 * the server.
+		 */
+		private UUID														key;
+
+		/**
+		 * Get the data to be uploaded. For known objects, the ID is added.
+		 * 
+		 * @return The data.
+		 */
+		private Map<String, ? extends Object> getUploadData()
+		{
+			if (key == null)
+			{
+				return data;
+			}
+			Map<String, Object> updateData = new HashMap<String, Object>(data);
+			updateData.put("id", key.toString());
+			return updateData;
+		}
+	}
+
+	/**
+	 * Thrown if the server answers an ID listing filtered by hero with a client
+	 * error, i.e. it does not accept the filter.
+	 * 
+	 * @author Martin Dreier <martin@martindreier.de>
+	 * 
+	 */
+	private static class FilterRejectedException extends HeldenWebExportException
+	{
+		/**
+		 * For serialization.
+		 */
+		private static final long	serialVersionUID	= -3326281806428270493L;
+
+		private FilterRejectedException(String message)
+		{
+			super(message);
+		}
+	}
+
+	/**
+	 * The objects of a hero collected for an aggregate upload, see
+	 * {@link Cache#startAggregate(String)}. Objects are added by several stages,
+	 * so access is synchronized on the aggregate.
+	 * 
+	 * @author Martin Dreier <martin@martindreier.de>
+	 * 
+	 */
+	private static class Aggregate
+	{
+		/**
+		 * The compound key of the hero.
+		 */
+		private String								heroKey;
+		/**
+		 * The hero itself, or <code>null</code> if it did not change.
+		 */
+		private Row										hero;
+		private Map<CacheKey, List<Row>>	rows	= new EnumMap<CacheKey, List<Row>>(CacheKey.class);
+
+		private synchronized void add(Row row)
+		{
+			List<Row> typeRows = rows.get(row.cacheKey);
+			if (typeRows == null)
+			{
+				typeRows = new ArrayList<Row>();
+				rows.put(row.cacheKey, typeRows);
+			}
+			typeRows.add(row);
+		}
+	}
+
+	/**
+	 * Maps the cache keys to the server tables. This map is immutable.
+	 */
+	private static final Map<CacheKey, Table>	tables;
+
 	/**
 	 * Maps attribute name to short name. This map is immutable.
 	 */
@@ -81,8 +228,73 @@ public class Cache
 
 	private static final String								ATTRIBUTE_SPEED	= "Geschwindigkeit";
 
+	/**
+	 * Maximum number of objects sent in one batch upload.
+	 */
+	private static final int									BATCH_SIZE			= 100;
+
+	/**
+	 * Capability advertised by servers which accept aggregate uploads of a hero.
+	 */
+	private static final String								CAPABILITY_AGGREGATE	= "aggregate";
+
+	/**
+	 * Capability advertised by servers which look up catalogue entries by name,
+	 * see {@link #resolveKeys(CacheKey, List)}.
+	 */
+	private static final String								CAPABILITY_RESOLVE		= "resolve";
+
+	/**
+	 * The field referencing the hero an object belongs to. It is also used to
+	 * filter ID listings.
+	 */
+	private static final String								HERO_ID_FIELD		= "held_id";
+
+	/**
+	 * Separates the type and the identifiers in a compound key. It does not
+	 * occur in names or IDs.
+	 */
+	private static final char									KEY_SEPARATOR		= '\u001F';
+
+	/**
+	 * Time in seconds to wait for requests in flight when an export ends.
+	 */
+	private static final long									FINISH_TIMEOUT	= 10;
+
 	static
 	{
+		// Initialize server tables
+		Map<CacheKey, Table> tableMap = new EnumMap<CacheKey, Table>(CacheKey.class);
+		tableMap.put(CacheKey.EIGENSCHAFT, new Table("eigenschaft", "Eigenschaft", "Eigenschaften", "Eigenschaften", true));
+		tableMap.put(CacheKey.TALENTART, new Table("talentart", "Talentart", "Talentarten", "Talentarten", true));
+		tableMap.put(CacheKey.TALENT, new Table("talent", "Talent", "Talente", "Talente", true));
+		tableMap.put(CacheKey.VORTEIL, new Table("vorteil", "Vorteil", "Vorteile", "Vorteile", true));
+		tableMap.put(CacheKey.SONDERFERTIGKEIT, new Table("sonderfertigkeit", "Sonderfertigkeit", "Sonderfertigkeiten",
+						"Sonderfertigkeiten", true));
+		tableMap.put(CacheKey.ZAUBER, new Table("zauber", "Zauber", "Zauber", "Zauber", true, "repraesentation"));
+		tableMap.put(CacheKey.HELD, new Table("held", "Held", "Helden", "Helden", false, "identifier"));
+		tableMap.put(CacheKey.HELD_EIGENSCHAFT, new Table("eigenschaftenheld", "EigenschaftenHeld", "EigenschaftenHelden",
+						"Helden-Eigenschaften", false, "held_id", "eigenschaft_id"));
+		tableMap.put(CacheKey.HELD_SONDERFERTIGKEIT, new Table("heldenSonderfertigkeit", "HeldenSonderfertigkeit",
+						"HeldenSonderfertigkeiten", "Helden-Sonderfertigkeiten", false, "held_id", "sonderfertigkeit_id"));
+		tableMap.put(CacheKey.HELD_TALENT, new Table("heldentalent", "HeldenTalent", "HeldenTalenten", "Helden-Talente",
+						false, "held_id", "talent_id"));
+		tableMap.put(CacheKey.HELD_VORTEIL, new Table("heldenvorteil", "HeldenVorteil", "HeldenVorteilen",
+						"Helden-Vorteile", false, "held_id", "vorteil_id"));
+		tableMap.put(CacheKey.HELD_ZAUBER, new Table("heldenzauber", "HeldenZauber", "HeldenZauber", "Helden-Zauber", false,
+						"held_id", "zauber_id"));
+		tableMap.put(CacheKey.NAHKAMPFWAFFE, new Table("nahkampfwaffe", "Nahkampfwaffe", "Nahkampfwaffen",
+						"Nahkampfwaffen", true, "held_id"));
+		tableMap.put(CacheKey.FERNKAMPFWAFFE, new Table("fernkampfwaffe", "Fernkampfwaffe", "Fernkampfwaffen",
+						"Fernkampfwaffen", true, "held_id"));
+		tableMap.put(CacheKey.RUESTUNG, new Table("ruestung", "Ruestung", "Ruestungen", "Rüstungen", true, "held_id"));
+		tableMap.put(CacheKey.SCHILD, new Table("schild", "Schild", "Schilde", "Schilde", true, "held_id"));
+		tableMap.put(CacheKey.KAMPF, new Table("kampf", "Kampf", "Kampf", "Kampfwerte", false, "held_id"));
+		tableMap.put(CacheKey.GEGENSTAENDE, new Table("gegenstand", "Gegenstand", "Gegenstaende", "Gegenstände", true,
+						"held_id", "index"));
+		tableMap.put(CacheKey.MUENZEN, new Table("muenze", "Muenze", "Muenzen", "Münzen", true, "held_id"));
+		tables = Collections.unmodifiableMap(tableMap);
+
 		// Initialize attribute names
 		Map<String, String> attNames = new HashMap<String, String>();
 		attNames.put("Astralenergie", "AsE");
@@ -112,10 +324,159 @@ public class Cache
 	private HttpClient												client;
 
 	/**
-	 * Name to ID mapping. The key is the {@link CacheKey} identifying the type
-	 * concatenated with the name of the object.
+	 * Name to ID mapping, one index per type. The map itself is not modified
+	 * after construction. All collections of the cache are thread-safe.
+	 */
+	private Map<CacheKey, KeyIndex>						keys;
+
+	/**
+	 * ID listings which have been read from the server during the current
+	 * export, see {@link #listingScope(CacheKey, String)}, and the compound keys
+	 * of objects resolved by name, see {@link #resolveKeys(CacheKey, List)}.
+	 * Other IDs may come from the {@link #store} and are only verified against
+	 * the server if a lookup fails.
+	 */
+	private Set<String>												verified;
+
+	/**
+	 * Set to <code>false</code> once the server ignored or rejected a hero
+	 * filter on an ID listing.
+	 */
+	private volatile boolean									heroFilterSupported	= true;
+
+	/**
+	 * Validators of the ID listings read from the server, keyed by URL. A
+	 * listing whose validator is still current does not need to be read again,
+	 * since its IDs are already in the cache.
+	 */
+	private Map<String, Validator>						validators;
+
+	/**
+	 * Persistent store for the IDs. May be <code>null</code>.
+	 */
+	private IdStore														store;
+
+	/**
+	 * Persistent store for the snapshot. May be <code>null</code>.
+	 */
+	private SnapshotStore											snapshotStore;
+
+	/**
+	 * Journal of the progress of the current export. May be <code>null</code>.
+	 */
+	private ExportJournal											journal;
+
+	/**
+	 * Number of objects confirmed during an earlier export which did not
+	 * complete. They are not sent again.
+	 */
+	private int																resumedObjectCount;
+
+	/**
+	 * Stages completed during an earlier export which did not complete.
+	 */
+	private Set<String>												resumedStages;
+
+	/**
+	 * Content hashes of the objects sent during the last successful export. The
+	 * key is the compound key of the object, see
+	 * {@link #compoundKey(CacheKey, String...)}.
+	 */
+	private Map<String, SnapshotStore.Entry>	snapshot;
+
+	/**
+	 * Content hashes of the objects sent during the current export. They are
+	 * added to the {@link #snapshot} when the export is finished.
+	 */
+	private Map<String, SnapshotStore.Entry>	changes;
+
+	/**
+	 * Compound keys of all objects which are part of the current export, whether
+	 * they have been sent or not, mapped to the ID of the hero they belong to, or
+	 * to an empty string.
+	 */
+	private Map<String, String>								seen;
+
+	/**
+	 * Compound keys of the catalogue entries (talents, advantages, special
+	 * abilities and spells) referenced during the current export, see
+	 * {@link #isCatalogueEntryKnown(CacheKey, String...)}.
+	 */
+	private Set<String>												catalogueEntries;
+
+	/**
+	 * Number of catalogue entries created during the current export.
+	 */
+	private final AtomicInteger								sentCatalogueEntryCount	= new AtomicInteger();
+
+	/**
+	 * Hero related types which have been synchronized during the current export,
+	 * by type and hero, see {@link #listingScope(CacheKey, String)}.
+	 */
+	private Set<String>												synchronizedTypes;
+
+	/**
+	 * Objects queued for batch uploads, by type and hero, see
+	 * {@link #listingScope(CacheKey, String)}. Heroes are synchronized
+	 * concurrently, so each hero has its own batches.
+	 */
+	private Map<String, List<Row>>						batches;
+
+	/**
+	 * Set to <code>false</code> once the server rejected a batch upload.
+	 */
+	private volatile boolean									batchSupported	= true;
+
+	/**
+	 * The capabilities advertised by the server, read once.
+	 * <code>null</code> if they have not been read yet. Guarded by
+	 * {@link #capabilitiesLock} while they are read, since several stages need
+	 * them.
+	 */
+	private volatile Set<String>							capabilities;
+	private final Object											capabilitiesLock	= new Object();
+
+	/**
+	 * The objects collected for aggregate uploads, by the hero's compound key
+	 * and, once it is known, by the hero's ID. The objects of heroes without an
+	 * aggregate are sent directly.
+	 */
+	private Map<String, Aggregate>						aggregates;
+
+	/**
+	 * Sends single objects to the server concurrently.
+	 */
+	private RequestDispatcher									dispatcher			= new RequestDispatcher(1, 0);
+
+	/**
+	 * Sends the objects created in the background, see
+	 * {@link #create(CacheKey, Map, Row, String...)}.
+	 */
+	private RequestDispatcher									createDispatcher	= new RequestDispatcher(1, 0);
+
+	/**
+	 * The objects created in the background during the current export, by the
+	 * ID of the hero they belong to, or by an empty string. Guarded by
+	 * {@link #createLock}, since objects are created by several stages.
+	 */
+	private Map<String, RequestDispatcher.Group>	pendingCreates		= new HashMap<String, RequestDispatcher.Group>();
+	private final Object											createLock				= new Object();
+
+	/**
+	 * Generate the IDs of new objects in the client.
 	 */
-	private Map<String, UUID>									keys;
+	private volatile boolean									clientIds;
+
+	/**
+	 * Set to <code>true</code> once the server kept an ID generated in the
+	 * client.
+	 */
+	private volatile boolean									clientIdsConfirmed;
+
+	/**
+	 * Records the ID lookups. May be <code>null</code>.
+	 */
+	private volatile SyncMetrics							metrics;
 
 	/**
 	 * Document builder factory.
@@ -127,6 +488,19 @@ public class Cache
 	 */
 	private XPathFactory											xpathFactory		= XPathFactory.newInstance();
 
+	/**
+	 * XML writer for outgoing documents, one per thread so that the buffer can
+	 * be reused.
+	 */
+	private ThreadLocal<XmlWriter>						xmlWriter				= new ThreadLocal<XmlWriter>()
+	{
+		@Override
+		protected XmlWriter initialValue()
+		{
+			return new XmlWriter();
+		}
+	};
+
 	/**
 	 * Create a new cache instance.
 	 * 
@@ -134,437 +508,2286 @@ public class Cache
 	 *          The client to communicate with the server.
 	 */
 	public Cache(HttpClient client)
+	{
+		this(client, null);
+	}
+
+	/**
+	 * Create a new cache instance.
+	 * 
+	 * @param client
+	 *          The client to communicate with the server.
+	 * @param store
+	 *          The persistent store for the IDs. The cache is initialized with the
+	 *          stored IDs. May be <code>null</code>.
+	 */
+	public Cache(HttpClient client, IdStore store)
+	{
+		this(client, store, null);
+	}
+
+	/**
+	 * Create a new cache instance.
+	 * 
+	 * @param client
+	 *          The client to communicate with the server.
+	 * @param store
+	 *          The persistent store for the IDs. The cache is initialized with the
+	 *          stored IDs. May be <code>null</code>.
+	 * @param snapshotStore
+	 *          The persistent store for the snapshot of the last export. Objects
+	 *          which did not change since then are not sent again. May be
+	 *          <code>null</code>.
+	 */
+	public Cache(HttpClient client, IdStore store, SnapshotStore snapshotStore)
+	{
+		this(client, store, snapshotStore, null);
+	}
+
+	/**
+	 * Create a new cache instance.
+	 * 
+	 * @param client
+	 *          The client to communicate with the server.
+	 * @param store
+	 *          The persistent store for the IDs. The cache is initialized with the
+	 *          stored IDs. May be <code>null</code>.
+	 * @param snapshotStore
+	 *          The persistent store for the snapshot of the last export. Objects
+	 *          which did not change since then are not sent again. May be
+	 *          <code>null</code>.
+	 * @param journal
+	 *          The journal of the current export. If an earlier export did not
+	 *          complete, the objects it sent are not sent again. May be
+	 *          <code>null</code>.
+	 */
+	public Cache(HttpClient client, IdStore store, SnapshotStore snapshotStore, ExportJournal journal)
 	{
 		this.client = client;
-		keys = new HashMap<String, UUID>();
+		this.store = store;
+		this.snapshotStore = snapshotStore;
+		this.journal = journal;
+		// Several types may be synchronized concurrently
+		keys = new EnumMap<CacheKey, KeyIndex>(CacheKey.class);
+		KeyIndex.Pool pool = new KeyIndex.Pool();
+		for (CacheKey cacheKey : CacheKey.values())
+		{
+			keys.put(cacheKey, new KeyIndex(pool));
+		}
+		validators = new ConcurrentHashMap<String, Validator>();
+		verified = Collections.synchronizedSet(new HashSet<String>());
+		snapshot = new ConcurrentHashMap<String, SnapshotStore.Entry>();
+		changes = new ConcurrentHashMap<String, SnapshotStore.Entry>();
+		seen = new ConcurrentHashMap<String, String>();
+		catalogueEntries = Collections.synchronizedSet(new HashSet<String>());
+		synchronizedTypes = Collections.synchronizedSet(new HashSet<String>());
+		batches = new ConcurrentHashMap<String, List<Row>>();
+		aggregates = new ConcurrentHashMap<String, Aggregate>();
+		resumedStages = Collections.synchronizedSet(new HashSet<String>());
+		if (store != null)
+		{
+			store.load(keys);
+			validators.putAll(store.getValidators());
+			if (snapshotStore != null)
+			{
+				snapshot.putAll(snapshotStore.load());
+			}
+		}
+		if (journal != null)
+		{
+			resume(journal);
+		}
+	}
+
+	/**
+	 * Apply the journal of an export which did not complete.
+	 * 
+	 * @param journal
+	 *          The journal.
+	 */
+	private void resume(ExportJournal journal)
+	{
+		journal.replay(new ExportJournal.Handler()
+		{
+			@Override
+			public void keyAssigned(CacheKey cacheKey, UUID key, String[] identifiers)
+			{
+				keys.get(cacheKey).put(key, identifiers);
+			}
+
+			@Override
+			public void keyRemoved(CacheKey cacheKey, String[] identifiers)
+			{
+				keys.get(cacheKey).remove(identifiers);
+			}
+
+			@Override
+			public void rowConfirmed(String compoundKey, SnapshotStore.Entry entry)
+			{
+				snapshot.put(compoundKey, entry);
+				resumedObjectCount++;
+			}
+
+			@Override
+			public void rowRemoved(String compoundKey)
+			{
+				snapshot.remove(compoundKey);
+			}
+
+			@Override
+			public void stageCompleted(String stage)
+			{
+				resumedStages.add(stage);
+			}
+		});
+	}
+
+	/**
+	 * Prepare the cache for a new export. The ID listings are read from the
+	 * server again if a lookup fails.
+	 */
+	public void startExport()
+	{
+		verified.clear();
+		changes.clear();
+		seen.clear();
+		catalogueEntries.clear();
+		sentCatalogueEntryCount.set(0);
+		synchronizedTypes.clear();
+		batches.clear();
+		aggregates.clear();
+		synchronized (createLock)
+		{
+			pendingCreates.clear();
+		}
+		if (journal != null)
+		{
+			journal.open();
+		}
+	}
+
+	/**
+	 * End the current export, whether it completed or not. If it did not
+	 * complete, the objects sent so far are kept, so that they are not sent again
+	 * by the next export. They are also kept in the journal, in case the next
+	 * export uses a new cache.
+	 */
+	public void finishExport()
+	{
+		aggregates.clear();
+		// Requests of a failed stage may still be in flight
+		try
+		{
+			dispatcher.awaitIdle(FINISH_TIMEOUT, TimeUnit.SECONDS);
+			createDispatcher.awaitIdle(FINISH_TIMEOUT, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException exception)
+		{
+			Thread.currentThread().interrupt();
+		}
+		if (!changes.isEmpty())
+		{
+			resumedObjectCount += changes.size();
+			snapshot.putAll(changes);
+			changes.clear();
+		}
+		if (journal != null)
+		{
+			journal.close();
+		}
+	}
+
+	/**
+	 * Record that a stage of the current export was completed.
+	 * 
+	 * @param stage
+	 *          The name of the stage.
+	 */
+	void stageCompleted(String stage)
+	{
+		if (journal != null)
+		{
+			journal.stageCompleted(stage);
+		}
+	}
+
+	/**
+	 * Get the number of objects sent by an earlier export which did not
+	 * complete. The current export continues where the earlier one stopped.
+	 * 
+	 * @return The number of objects, or <code>0</code> if the last export
+	 *         completed.
+	 */
+	public int getResumedObjectCount()
+	{
+		return resumedObjectCount;
+	}
+
+	/**
+	 * Get the number of stages completed by an earlier export which did not
+	 * complete.
+	 * 
+	 * @return The number of stages.
+	 */
+	public int getResumedStageCount()
+	{
+		return resumedStages.size();
+	}
+
+	/**
+	 * Set the number of single objects which are sent to the server
+	 * concurrently.
+	 * 
+	 * @param window
+	 *          Maximum number of requests in flight. With <code>1</code>, the
+	 *          objects are sent one after the other.
+	 * @param retries
+	 *          Number of retries for an object which could not be sent.
+	 */
+	public void setRequestWindow(int window, int retries)
+	{
+		dispatcher = new RequestDispatcher(window, retries);
+		createDispatcher = new RequestDispatcher(window, retries);
+		synchronized (createLock)
+		{
+			pendingCreates.clear();
+		}
+	}
+
+	/**
+	 * Generate the IDs of new objects in the client instead of waiting for the
+	 * server to assign them, see {@link #create(CacheKey, Map, Row, String...)}.
+	 * Objects sent in batch uploads still get their IDs from the server.
+	 * 
+	 * @param clientIds
+	 *          <code>true</code> to generate the IDs in the client.
+	 */
+	public void setClientIds(boolean clientIds)
+	{
+		this.clientIds = clientIds;
+		this.clientIdsConfirmed = false;
+	}
+
+	/**
+	 * Set the metrics which record the ID lookups of the cache and the requests
+	 * of its client.
+	 * 
+	 * @param metrics
+	 *          The metrics, or <code>null</code> to record nothing.
+	 */
+	public void setMetrics(SyncMetrics metrics)
+	{
+		this.metrics = metrics;
+		if (client != null)
+		{
+			client.setMetrics(metrics);
+		}
+	}
+
+	/**
+	 * Write the cached IDs to the persistent store, if there is one. The objects
+	 * sent during the current export are added to the snapshot. Once the IDs and
+	 * the snapshot are stored, the journal is no longer needed.
+	 * 
+	 * @throws HeldenWebExportException
+	 *           Thrown if the IDs could not be stored.
+	 */
+	public void persist() throws HeldenWebExportException
+	{
+		snapshot.putAll(changes);
+		changes.clear();
+		if (store != null)
+		{
+			store.save(keys, validators);
+			if (snapshotStore != null)
+			{
+				snapshotStore.save(snapshot);
+			}
+		}
+		if (journal != null)
+		{
+			journal.compact();
+		}
+		resumedObjectCount = 0;
+		resumedStages.clear();
+	}
+
+	/**
+	 * Get the number of objects which are part of the current export, whether
+	 * they have been sent or not.
+	 * 
+	 * @return The number of objects.
+	 */
+	public int getObjectCount()
+	{
+		return seen.size();
+	}
+
+	/**
+	 * Get the number of objects which have been sent to the server during the
+	 * current export.
+	 * 
+	 * @return The number of objects.
+	 */
+	public int getSentObjectCount()
+	{
+		return changes.size();
+	}
+
+	/**
+	 * Get the number of objects of a hero which are part of the current export,
+	 * whether they have been sent or not: the hero itself and the objects which
+	 * belong to it.
+	 * 
+	 * @param heroIdentifier
+	 *          The identifier of the hero in the Helden software.
+	 * @param heroId
+	 *          The hero's ID.
+	 * @return The number of objects.
+	 */
+	public int getObjectCount(String heroIdentifier, UUID heroId)
+	{
+		int count = seen.containsKey(compoundKey(CacheKey.HELD, heroIdentifier)) ? 1 : 0;
+		String owner = heroId.toString();
+		for (String objectOwner : seen.values())
+		{
+			if (owner.equals(objectOwner))
+			{
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Get the number of objects of a hero which have been sent to the server
+	 * during the current export.
+	 * 
+	 * @param heroIdentifier
+	 *          The identifier of the hero in the Helden software.
+	 * @param heroId
+	 *          The hero's ID.
+	 * @return The number of objects.
+	 * @see #getObjectCount(String, UUID)
+	 */
+	public int getSentObjectCount(String heroIdentifier, UUID heroId)
+	{
+		int count = changes.containsKey(compoundKey(CacheKey.HELD, heroIdentifier)) ? 1 : 0;
+		String owner = heroId.toString();
+		for (SnapshotStore.Entry entry : changes.values())
+		{
+			if (owner.equals(entry.getOwner()))
+			{
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Get the number of catalogue entries referenced by the heroes during the
+	 * current export.
+	 * 
+	 * @return The number of entries.
+	 */
+	public int getCatalogueEntryCount()
+	{
+		return catalogueEntries.size();
+	}
+
+	/**
+	 * Get the number of catalogue entries which have been created on the server
+	 * during the current export.
+	 * 
+	 * @return The number of entries.
+	 */
+	public int getSentCatalogueEntryCount()
+	{
+		return sentCatalogueEntryCount.get();
+	}
+
+	/**
+	 * Synchronize talents. After this method has been executed, all talents of
+	 * the heroes are stored on the server and all IDs on the server are known to
+	 * the cache. New talents are created in batch uploads.
+	 * 
+	 * @param heroes
+	 *          The heroes.
+	 * @param monitor
+	 * @throws HeldenWebExportException
+	 */
+	public void synchronizeTalents(List<HeroSnapshot> heroes, ProgressMonitor monitor) throws HeldenWebExportException
+	{
+		int steps = 0;
+		for (HeroSnapshot hero : heroes)
+		{
+			steps += hero.getTalents().size();
+		}
+		List<String[]> names = new ArrayList<String[]>();
+		for (HeroSnapshot hero : heroes)
+		{
+			for (HeroSnapshot.Talent talent : hero.getTalents())
+			{
+				names.add(new String[] { talent.getName() });
+			}
+		}
+		resolveKeys(CacheKey.TALENT, names);
+		monitor.startSubtask(null, steps);
+		for (HeroSnapshot hero : heroes)
+		{
+			for (HeroSnapshot.Talent talent : hero.getTalents())
+			{
+				if (!isCatalogueEntryKnown(CacheKey.TALENT, talent.getName()))
+				{
+					sendTalentToServer(talent);
+				}
+				monitor.step();
+			}
+		}
+		flushBatch(CacheKey.TALENT);
+		monitor.subtaskDone();
+	}
+
+	/**
+	 * Send an object to the server.
+	 * 
+	 * @param rootElementName
+	 *          The root element name of the created XML document.
+	 * @param objectData
+	 *          The attributes of the object, see
+	 *          {@link #buildXmlDocument(String, Map)}.
+	 * @param url
+	 *          The URL where the data should be <code>POST</code>ed.
+	 * @param idXpath
+	 *          The XPath expression where the object's new ID can be found in the
+	 *          XML response.
+	 * @return The UUID of the created object.
+	 * @throws HeldenWebExportException
+	 */
+	private UUID sendToServer(String rootElementName, Map<String, ? extends Object> objectData, String url, String idXpath)
+					throws HeldenWebExportException
+	{
+		return sendToServer(rootElementName, objectData, url, idXpath, false, null);
+	}
+
+	/**
+	 * Send an object to the server.
+	 * 
+	 * @param rootElementName
+	 *          The root element name of the created XML document.
+	 * @param objectData
+	 *          The attributes of the object, see
+	 *          {@link #buildXmlDocument(String, Map)}.
+	 * @param url
+	 *          The URL where the data should be <code>POST</code>ed.
+	 * @param idXpath
+	 *          The XPath expression where the object's new ID can be found in the
+	 *          XML response.
+	 * @param idempotent
+	 *          <code>true</code> if the request updates an existing object, so
+	 *          that the client may repeat it after a transient error.
+	 * @param idempotencyKey
+	 *          The idempotency key of a create, see
+	 *          {@link HttpClient#post(String, Map, String, String, String)}. May
+	 *          be <code>null</code>.
+	 * @return The UUID of the created object.
+	 * @throws HeldenWebExportException
+	 */
+	private UUID sendToServer(String rootElementName, Map<String, ? extends Object> objectData, String url,
+					String idXpath, boolean idempotent, String idempotencyKey) throws HeldenWebExportException
+	{
+		// Build the XML document
+		String document = buildXmlDocument(rootElementName, objectData);
+		try
+		{
+			// Post the data to the server
+			Response response;
+			if (idempotencyKey != null)
+			{
+				response = client.post(url, null, "application/xml", document, idempotencyKey);
+			}
+			else
+			{
+				response = client.post(url, null, "application/xml", document, idempotent);
+			}
+			if (response.getResponseCode() != 200)
+			{
+				throw new HeldenWebExportException(MessageFormat.format(
+								"Daten konnten nicht zum Server gesendet werden: {0} ({1})", response.getResponseMessage(),
+								response.getResponseCode()));
+			}
+			// Parse the response
+			Document talentsDocument = parseXML(response.getResponseContent());
+			// Get the UUID
+			XPath xpath = newXPath();
+			String id = xpath.evaluate(idXpath, talentsDocument);
+			try
+			{
+				return UUID.fromString(id);
+			}
+			catch (IllegalArgumentException exception)
+			{
+				throw new HeldenWebExportException(MessageFormat.format("Server lieferte ungültige ID: {0}", id), exception);
+			}
+		}
+		catch (HttpClientException exception)
+		{
+			throw new HeldenWebExportException("Daten konnten nicht auf dem Server gespeichert werden", exception);
+		}
+		catch (XPathExpressionException exception)
+		{
+			throw new HeldenWebExportException("Fehler beim Lesen der gespeicherten Daten", exception);
+		}
+	}
+
+	/**
+	 * Save a talent on the server.
+	 * 
+	 * @param talent
+	 *          The talent.
+	 * @throws HeldenWebExportException
+	 */
+	private void sendTalentToServer(HeroSnapshot.Talent talent) throws HeldenWebExportException
+	{
+		String talentName = talent.getName();
+		Map<String, String> talentMap = new HashMap<String, String>();
+		talentMap.put("name", talentName);
+		if (talent.getLanguageComplexity() != null && talent.getLanguageComplexity().length() > 0)
+		{
+			talentMap.put("sprachkomplexitaet", talent.getLanguageComplexity());
+		}
+
+		// Map checks to attributes
+		String[] probe = talent.getProbe();
+		if (probe != null && probe.length == 3)
+		{
+			for (int i = 0; i < 3; i++)
+			{
+				UUID probeId = getKey(CacheKey.EIGENSCHAFT, probe[i]);
+				if (probeId == null)
+				{
+					throw new IllegalStateException(MessageFormat.format("Talent {0} referenziert unbekannte Eigenschaft {1}",
+									talentName, probe[i]));
+				}
+				talentMap.put("probe" + (i + 1), probeId.toString());
+			}
+		}
+
+		// Map talent types
+		if (talent.getTalentType() != null)
+		{
+			UUID talentTypeId = getKey(CacheKey.TALENTART, talent.getTalentType());
+			if (talentTypeId == null)
+			{
+				throw new IllegalStateException(MessageFormat.format("Talent {0} referenziert unbekannte Talentart {1}",
+								talentName, talent.getTalentType()));
+			}
+			talentMap.put("talentart_id", talentTypeId.toString());
+		}
+
+		queueCatalogueEntry(CacheKey.TALENT, talentMap, talentName);
+	}
+
+	/**
+	 * Build a simple XML element. The structure will be: <code>
+	 * &lt;rootElementName&gt;<br>
+	 * &nbsp;&nbsp;&lt;elements[0].key&gt;elements[0].value&lt;/elements[0].key&gt;<br>
+	 * &nbsp;&nbsp;&lt;elements[1].key&gt;elements[1].value&lt;/elements[1].key&gt;<br>
+	 * &nbsp;&nbsp;&lt;elements[2].key&gt;elements[2].value&lt;/elements[2].key&gt;<br>
+	 * &nbsp;&nbsp;...
+	 * &lt;/rootElementName&gt;<br>
+	 * </code>
+	 * 
+	 * @param rootElementName
+	 *          The root element name.
+	 * @param elements
+	 *          The elements to be added to the document. Keys are used as element
+	 *          names and must conform to the restrictions for XML element names.
+	 *          Values are used as the elements' text values and are encoded
+	 *          before transmission.
+	 * @return The completed document.
+	 */
+	String buildXmlDocument(String rootElementName, Map<String, ? extends Object> elements)
+	{
+		XmlWriter writer = xmlWriter.get().startDocument();
+		writer.startElement(rootElementName).elements(elements).endElement();
+		return writer.toString();
+	}
+
+	/**
+	 * Build an XML document containing several objects. Each object is built as
+	 * described in {@link #buildXmlDocument(String, Map)} and added as a child of
+	 * the root element.
+	 * 
+	 * @param rootElementName
+	 *          The root element name.
+	 * @param objectElementName
+	 *          The element name of each object.
+	 * @param objects
+	 *          The objects' elements.
+	 * @return The completed document.
+	 */
+	String buildXmlDocument(String rootElementName, String objectElementName,
+					List<Map<String, ? extends Object>> objects)
+	{
+		XmlWriter writer = xmlWriter.get().startDocument();
+		writer.startElement(rootElementName);
+		for (Map<String, ? extends Object> elements : objects)
+		{
+			writer.startElement(objectElementName).elements(elements).endElement();
+		}
+		writer.endElement();
+		return writer.toString();
+	}
+
+	/**
+	 * Read all current IDs of a type from the server and put them in the cache.
+	 * The listing is marked as verified for the current export.
+	 * 
+	 * <p>
+	 * For objects belonging to a hero, only the hero's objects are requested. If
+	 * the server rejects the filter as a bad request or ignores it, the complete
+	 * listing is read and no further filters are sent. Other errors, e.g. a
+	 * server which is temporarily not available, do not disable the filter.
+	 * </p>
+	 * 
+	 * @param cacheKey
+	 *          The cache key for this type of data.
+	 * @param heroId
+	 *          The hero whose objects are requested, or <code>null</code> to read
+	 *          all objects.
+	 * @throws HeldenWebExportException
+	 *           Error while reading the data from the server.
+	 */
+	private void getIdsFromServer(CacheKey cacheKey, String heroId) throws HeldenWebExportException
+	{
+		Table table = tables.get(cacheKey);
+		try
+		{
+			if (heroId != null && heroFilterSupported)
+			{
+				try
+				{
+					if (getIdsFromServer(cacheKey, table.elementName, table.path + ".xml", heroId, table.useDefaultIdentifier,
+									table.additionalIdentifiers))
+					{
+						verified.add(listingScope(cacheKey, heroId));
+						return;
+					}
+					// Server ignored the filter, but the listing is complete anyway
+					heroFilterSupported = false;
+					verified.add(listingScope(cacheKey, null));
+					return;
+				}
+				catch (FilterRejectedException exception)
+				{
+					// Server does not accept the filter, read the complete listing
+					heroFilterSupported = false;
+				}
+			}
+			getIdsFromServer(cacheKey, table.elementName, table.path + ".xml", null, table.useDefaultIdentifier,
+							table.additionalIdentifiers);
+		}
+		catch (HeldenWebExportException exception)
+		{
+			throw new HeldenWebExportException(MessageFormat.format("{0} konnten nicht vom Server gelesen werden",
+							table.label), exception);
+		}
+		verified.add(listingScope(cacheKey, null));
+	}
+
+	/**
+	 * Get the name of an ID listing.
+	 * 
+	 * @param cacheKey
+	 *          The cache key.
+	 * @param heroId
+	 *          The hero ID if the listing contains only the objects of one hero,
+	 *          otherwise <code>null</code>.
+	 * @return The listing's name.
+	 */
+	private String listingScope(CacheKey cacheKey, String heroId)
+	{
+		if (heroId == null)
+		{
+			return cacheKey.name();
+		}
+		return cacheKey.name() + "/" + heroId;
+	}
+
+	/**
+	 * Check if the ID listing containing an object has been read during the
+	 * current export, or if the object has been resolved by name.
+	 * 
+	 * @param cacheKey
+	 *          The cache key.
+	 * @param identifiers
+	 *          The object's identifiers.
+	 * @return <code>true</code> if the IDs of such objects are up to date.
+	 */
+	private boolean isVerified(CacheKey cacheKey, String... identifiers)
+	{
+		if (verified.contains(listingScope(cacheKey, null)) || verified.contains(compoundKey(cacheKey, identifiers)))
+		{
+			return true;
+		}
+		String heroId = tables.get(cacheKey).getHeroId(identifiers);
+		return heroId != null && verified.contains(listingScope(cacheKey, heroId));
+	}
+
+	/**
+	 * Read all current IDs from the server and put them in the cache.
+	 * 
+	 * @param cacheKey
+	 *          The cache key for this type of data.
+	 * @param elementName
+	 *          The element name in the resulting XML document.
+	 * @param url
+	 *          The URL where the data is requested.
+	 * @param heroId
+	 *          If not <code>null</code>, only the objects of this hero are
+	 *          requested.
+	 * @param useDefaultIdentifier
+	 *          Use the field "name" as the identifier for the object. Fallback is
+	 *          "id" if name is not in result document.
+	 * @param additionalIdentifiers
+	 *          Additional identifying elements. These are added to the cache key.
+	 *          The order of these is preserved.
+	 * @return <code>false</code> if the server ignored the hero filter and
+	 *         returned objects of other heroes as well.
+	 *         <p>
+	 *         If the complete listing is read, cached objects which are no
+	 *         longer on the server are removed, e.g. after the server has been
+	 *         reset. Objects created while the listing is read are kept.
+	 *         </p>
+	 * @throws FilterRejectedException
+	 *           The server answered the hero filter with a client error.
+	 * @throws HeldenWebExportException
+	 *           Error while reading the data from the server.
+	 */
+	private boolean getIdsFromServer(final CacheKey cacheKey, String elementName, String url, final String heroId,
+					final boolean useDefaultIdentifier, final String... additionalIdentifiers) throws HeldenWebExportException
+	{
+		boolean[] filtered = {true};
+		Set<UUID> known = null;
+		Set<UUID> found = null;
+		if (heroId == null)
+		{
+			known = keys.get(cacheKey).getIds();
+			found = Collections.synchronizedSet(new HashSet<UUID>());
+		}
+		IdListingParser parser = createListingParser(cacheKey, elementName, heroId, useDefaultIdentifier, filtered,
+						found, additionalIdentifiers);
+		Map<String, String> queryParameters = null;
+		String listingUrl = url;
+		if (heroId != null)
+		{
+			queryParameters = new HashMap<String, String>();
+			queryParameters.put(HERO_ID_FIELD, heroId);
+			listingUrl = url + "?" + HERO_ID_FIELD + "=" + heroId;
+		}
+		try
+		{
+			// Request data from server. If the listing did not change since it was
+			// last read, its IDs are already in the cache.
+			Response response = client.get(url, queryParameters, validators.get(listingUrl), parser);
+			if (response.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED)
+			{
+				return true;
+			}
+			// Check response code (2xx = OK)
+			if (heroId != null && response.getResponseCode() >= 400 && response.getResponseCode() < 500)
+			{
+				throw new FilterRejectedException(MessageFormat.format("Server lehnt den Filter {0} ab: {1} ({2})",
+								HERO_ID_FIELD, response.getResponseMessage(), response.getResponseCode()));
+			}
+			if (response.getResponseCode() < 200 || response.getResponseCode() >= 300)
+			{
+				handleHttpError(response);
+			}
+			if (known != null)
+			{
+				known.removeAll(found);
+				for (String[] identifiers : keys.get(cacheKey).removeIds(known))
+				{
+					if (journal != null)
+					{
+						journal.keyRemoved(cacheKey, identifiers);
+					}
+				}
+			}
+			if (response.getValidator() != null)
+			{
+				validators.put(listingUrl, response.getValidator());
+			}
+			else
+			{
+				validators.remove(listingUrl);
+			}
+		}
+		catch (HttpClientException exception)
+		{
+			throw new HeldenWebExportException(MessageFormat.format("Fehler bei der Kommunikation mit dem Server (URL: {0})",
+							url), exception);
+		}
+		return filtered[0];
+	}
+
+	/**
+	 * Create a parser for an ID listing. The listing is read while it is
+	 * received and the IDs are put into the cache directly.
+	 * 
+	 * @param cacheKey
+	 *          The cache key identifier.
+	 * @param elementName
+	 *          The element name of the objects in the listing.
+	 * @param heroId
+	 *          The hero whose objects were requested, or <code>null</code>.
+	 * @param useDefaultIdentifier
+	 *          Use the field "name" as identifier.
+	 * @param filtered
+	 *          The first element is set to <code>false</code> if the listing
+	 *          contains objects of other heroes than <code>heroId</code>.
+	 * @param additionalIdentifiers
+	 *          Additional identifying elements.
+	 * @return The parser.
+	 */
+	IdListingParser createListingParser(final CacheKey cacheKey, String elementName, final String heroId,
+					final boolean useDefaultIdentifier, final boolean[] filtered, final String... additionalIdentifiers)
+	{
+		return createListingParser(cacheKey, elementName, heroId, useDefaultIdentifier, filtered, null,
+						additionalIdentifiers);
+	}
+
+	/**
+	 * Create a parser for an ID listing which also collects the IDs it finds.
+	 * 
+	 * @param found
+	 *          Receives the IDs of all objects in the listing, may be
+	 *          <code>null</code>.
+	 * @see #createListingParser(CacheKey, String, String, boolean, boolean[],
+	 *      String...)
+	 */
+	private IdListingParser createListingParser(final CacheKey cacheKey, String elementName, final String heroId,
+					final boolean useDefaultIdentifier, final boolean[] filtered, final Set<UUID> found,
+					final String... additionalIdentifiers)
+	{
+		return new IdListingParser(elementName, additionalIdentifiers, new IdListingParser.Callback()
+		{
+			@Override
+			public void objectFound(UUID id, String name, Map<String, String> additionalIdentifierValues)
+			{
+				int offset = useDefaultIdentifier ? 1 : 0;
+				String[] identifiers = new String[offset + additionalIdentifiers.length];
+				if (useDefaultIdentifier)
+				{
+					identifiers[0] = name != null ? name : id.toString();
+				}
+				for (int index = 0; index < additionalIdentifiers.length; index++)
+				{
+					identifiers[offset + index] = additionalIdentifierValues.get(additionalIdentifiers[index]);
+				}
+				// Put into cache
+				keys.get(cacheKey).put(id, identifiers);
+				if (found != null)
+				{
+					found.add(id);
+				}
+				if (heroId != null && !heroId.equals(additionalIdentifierValues.get(HERO_ID_FIELD)))
+				{
+					filtered[0] = false;
+				}
+			}
+		});
+	}
+
+	/**
+	 * Create a new document builder. The factory is not thread-safe.
+	 * 
+	 * @return The document builder.
+	 * @throws ParserConfigurationException
+	 */
+	private DocumentBuilder newDocumentBuilder() throws ParserConfigurationException
+	{
+		synchronized (factory)
+		{
+			return factory.newDocumentBuilder();
+		}
+	}
+
+	/**
+	 * Create a new XPath object. The factory is not thread-safe.
+	 * 
+	 * @return The XPath object.
+	 */
+	XPath newXPath()
+	{
+		synchronized (xpathFactory)
+		{
+			return xpathFactory.newXPath();
+		}
+	}
+
+	/**
+	 * Read an XML document into a {@link Document}.
+	 * 
+	 * @param content
+	 *          The XML content.
+	 * @return The document.
+	 * @throws HeldenWebExportException
+	 *           If an error occurs while parsing the document.
+	 */
+	Document parseXML(String content) throws HeldenWebExportException
+	{
+		try
+		{
+			DocumentBuilder builder = newDocumentBuilder();
+			Document document = builder.parse(new ByteArrayInputStream(content.getBytes(Charset.forName("UTF-8"))));
+			return document;
+		}
+		catch (ParserConfigurationException exception)
+		{
+			throw new HeldenWebExportException("XML Document Builder konnte nicht erstellt werden", exception);
+		}
+		catch (SAXException exception)
+		{
+			throw new HeldenWebExportException("Der Server lieferte kein gültiges XML-Dokument", exception);
+		}
+		catch (IOException exception)
+		{
+			throw new HeldenWebExportException("Fehler beim Lesen des XML-Dokuments", exception);
+		}
+	}
+
+	/**
+	 * Handle an error returned from the server.
+	 * 
+	 * @param response
+	 *          The response.
+	 * @throws HeldenWebExportException
+	 *           The resulting exception.
+	 */
+	private void handleHttpError(Response response) throws HeldenWebExportException
+	{
+		Throwable cause = null;
+		if (response.getResponseContent() != null && response.getResponseContent().trim().length() > 0)
+		{
+			cause = new HeldenWebExportException(MessageFormat.format("Server-Antwort: {0}", response.getResponseContent()));
+		}
+		String message = MessageFormat.format("Fehlerhafte Anfrage; Antwort {0} ({1})", response.getResponseMessage(),
+						response.getResponseCode());
+		throw new HeldenWebExportException(message, cause);
+	}
+
+	/**
+	 * Get the cached key for an object.
+	 * 
+	 * @param cacheKey
+	 *          The cache key.
+	 * @param objectName
+	 *          The object's name.
+	 * @return The key for the object, or <code>null</code> if no key is cached
+	 *         for this object.
+	 */
+	public UUID getKey(CacheKey cacheKey, String... identifiers)
+	{
+		if (identifiers == null || identifiers.length == 0)
+		{
+			throw new IllegalArgumentException("At least one identifier is required for cache retrieval");
+		}
+		UUID key = keys.get(cacheKey).get(identifiers);
+		SyncMetrics currentMetrics = metrics;
+		if (currentMetrics != null)
+		{
+			currentMetrics.recordLookup(cacheKey, key != null);
+		}
+		return key;
+	}
+
+	/**
+	 * Build the compound key for an object, which identifies the object in the
+	 * snapshot. The type and the identifiers are separated by
+	 * {@link #KEY_SEPARATOR}, so the identifiers can be restored with
+	 * {@link #identifiers(String)}.
+	 * 
+	 * @param cacheKey
+	 *          The cache key.
+	 * @param identifiers
+	 *          The object's identifiers.
+	 * @return The compound key.
+	 */
+	private String compoundKey(CacheKey cacheKey, String... identifiers)
+	{
+		StringBuilder compoundKey = new StringBuilder(cacheKey.name());
+		for (String additionalId : identifiers)
+		{
+			compoundKey.append(KEY_SEPARATOR).append(additionalId);
+		}
+		return compoundKey.toString();
+	}
+
+	/**
+	 * Get the identifiers of an object from its compound key.
+	 * 
+	 * @param compoundKey
+	 *          The compound key.
+	 * @return The object's identifiers.
+	 * @see #compoundKey(CacheKey, String...)
+	 */
+	private String[] identifiers(String compoundKey)
+	{
+		String[] parts = compoundKey.split(String.valueOf(KEY_SEPARATOR), -1);
+		String[] identifiers = new String[parts.length - 1];
+		System.arraycopy(parts, 1, identifiers, 0, identifiers.length);
+		return identifiers;
+	}
+
+	/**
+	 * Get the key for an object. If the key is not cached and the IDs of this
+	 * type have not yet been read from the server during the current export, they
+	 * are read now and the lookup is repeated.
+	 * 
+	 * @param cacheKey
+	 *          The cache key.
+	 * @param identifiers
+	 *          The object's identifiers.
+	 * @return The key for the object, or <code>null</code> if the object is not
+	 *         known on the server.
+	 * @throws HeldenWebExportException
+	 *           Error while reading the IDs from the server.
+	 */
+	private UUID lookupKey(CacheKey cacheKey, String... identifiers) throws HeldenWebExportException
+	{
+		UUID key = getKey(cacheKey, identifiers);
+		if (key == null && !isVerified(cacheKey, identifiers))
+		{
+			// Read each listing only once, even if several threads miss
+			synchronized (tables.get(cacheKey))
+			{
+				if (!isVerified(cacheKey, identifiers))
+				{
+					getIdsFromServer(cacheKey, tables.get(cacheKey).getHeroId(identifiers));
+				}
+			}
+			// Not recorded as a second lookup
+			key = keys.get(cacheKey).get(identifiers);
+		}
+		return key;
+	}
+
+	/**
+	 * Look up the IDs of catalogue entries by their identifying fields, instead
+	 * of reading the complete catalogue of the type. Entries whose IDs are not
+	 * cached or have not been confirmed during the current export, e.g. IDs from
+	 * the persistent store, are sent to the server, up to {@link #BATCH_SIZE} in
+	 * one request. The server returns the entries it knows; the others are
+	 * verified as missing, so they are created without reading the catalogue,
+	 * and cached IDs of missing entries are removed. If the
+	 * server does not support this, the catalogue is read by the first lookup
+	 * which misses, see {@link #lookupKey(CacheKey, String...)}.
+	 * 
+	 * @param cacheKey
+	 *          The cache key.
+	 * @param entries
+	 *          The identifiers of the entries referenced by the heroes.
+	 * @throws HeldenWebExportException
+	 *           Error while reading the IDs from the server.
+	 */
+	private void resolveKeys(CacheKey cacheKey, List<String[]> entries) throws HeldenWebExportException
+	{
+		if (verified.contains(listingScope(cacheKey, null)) || !getCapabilities().contains(CAPABILITY_RESOLVE))
+		{
+			return;
+		}
+		Map<String, String[]> unknown = new LinkedHashMap<String, String[]>();
+		for (String[] identifiers : entries)
+		{
+			if (!isVerified(cacheKey, identifiers))
+			{
+				unknown.put(compoundKey(cacheKey, identifiers), identifiers);
+			}
+		}
+		Table table = tables.get(cacheKey);
+		List<String[]> requested = new ArrayList<String[]>(unknown.values());
+		for (int start = 0; start < requested.size(); start += BATCH_SIZE)
+		{
+			List<String[]> chunk = requested.subList(start, Math.min(start + BATCH_SIZE, requested.size()));
+			List<Map<String, ? extends Object>> elements = new ArrayList<Map<String, ? extends Object>>();
+			for (String[] identifiers : chunk)
+			{
+				Map<String, String> element = new HashMap<String, String>();
+				int offset = table.useDefaultIdentifier ? 1 : 0;
+				if (table.useDefaultIdentifier)
+				{
+					element.put("name", identifiers[0]);
+				}
+				for (int index = 0; index < table.additionalIdentifiers.length; index++)
+				{
+					element.put(table.additionalIdentifiers[index], identifiers[offset + index]);
+				}
+				elements.add(element);
+			}
+			Response response;
+			try
+			{
+				response = client.post(table.path + "/resolve.xml", null, "application/xml",
+								buildXmlDocument(table.path, table.rootElementName, elements), true);
+			}
+			catch (HttpClientException exception)
+			{
+				throw new HeldenWebExportException(MessageFormat.format("{0} konnten nicht vom Server gelesen werden",
+								table.label), exception);
+			}
+			if (response.getResponseCode() != 200)
+			{
+				handleHttpError(response);
+			}
+			Set<String> resolved = new HashSet<String>();
+			for (Element result : getChildElements(parseXML(response.getResponseContent()).getDocumentElement()))
+			{
+				String compoundKey = naturalKey(cacheKey, result);
+				String id = getChildText(result, "id");
+				if (compoundKey == null || !unknown.containsKey(compoundKey) || id == null)
+				{
+					continue;
+				}
+				resolved.add(compoundKey);
+				try
+				{
+					keys.get(cacheKey).put(UUID.fromString(id.trim()), unknown.get(compoundKey));
+				}
+				catch (IllegalArgumentException exception)
+				{
+					throw new HeldenWebExportException(MessageFormat.format("Server lieferte ungültige ID: {0}", id), exception);
+				}
+			}
+			for (String[] identifiers : chunk)
+			{
+				String compoundKey = compoundKey(cacheKey, identifiers);
+				// Not recorded as a lookup, the stage looks the entries up afterwards
+				if (!resolved.contains(compoundKey) && keys.get(cacheKey).get(identifiers) != null)
+				{
+					// Entry has been deleted on the server
+					removeKey(cacheKey, identifiers);
+				}
+				verified.add(compoundKey);
+			}
+		}
+	}
+
+	/**
+	 * Put a key into the cache.
+	 * 
+	 * @param cacheKey
+	 *          The cache key.
+	 * @param key
+	 *          The key for the object.
+	 * @param identifiers
+	 *          The object's identifiers.
+	 */
+	void putKey(CacheKey cacheKey, UUID key, String... identifiers)
+	{
+		keys.get(cacheKey).put(key, identifiers);
+		if (journal != null)
+		{
+			journal.keyAssigned(cacheKey, key, identifiers);
+		}
+	}
+
+	/**
+	 * Remove a key from the cache. The listings of the type must be read
+	 * completely the next time, so their validators are discarded.
+	 * 
+	 * @param cacheKey
+	 *          The cache key.
+	 * @param identifiers
+	 *          The object's identifiers.
+	 */
+	private void removeKey(CacheKey cacheKey, String... identifiers)
+	{
+		keys.get(cacheKey).remove(identifiers);
+		if (journal != null)
+		{
+			journal.keyRemoved(cacheKey, identifiers);
+		}
+		String listingUrl = tables.get(cacheKey).path + ".xml";
+		for (String url : validators.keySet())
+		{
+			if (url.equals(listingUrl) || url.startsWith(listingUrl + "?"))
+			{
+				validators.remove(url);
+			}
+		}
+	}
+
+	/**
+	 * Create an object on the server, or update it if it is already known.
+	 * 
+	 * If the object is known and its data did not change since the last export,
+	 * nothing is sent. If the object's ID comes from the persistent store and the
+	 * update fails, the ID may be outdated. In this case, the IDs are read from
+	 * the server and the object is updated or created again.
+	 * 
+	 * @param cacheKey
+	 *          The cache key.
+	 * @param data
+	 *          The data to be sent to the server.
+	 * @param identifiers
+	 *          The object's identifiers.
+	 * @return The object's ID, or <code>null</code> if a new object was
+	 *         collected for an aggregate upload.
+	 * @throws HeldenWebExportException
+	 */
+	private UUID upsert(CacheKey cacheKey, Map<String, ? extends Object> data, String... identifiers)
+					throws HeldenWebExportException
+	{
+		Row row = prepareRow(cacheKey, data, identifiers);
+		if (isUnchanged(row) || collect(row))
+		{
+			return row.key;
+		}
+		return sendRow(row);
+	}
+
+	/**
+	 * Prepare an object for sending. The object is marked as part of the current
+	 * export and its ID is looked up.
+	 * 
+	 * @param cacheKey
+	 *          The cache key.
+	 * @param data
+	 *          The data to be sent to the server.
+	 * @param identifiers
+	 *          The object's identifiers.
+	 * @return The prepared object.
+	 * @throws HeldenWebExportException
+	 */
+	private Row prepareRow(CacheKey cacheKey, Map<String, ? extends Object> data, String... identifiers)
+					throws HeldenWebExportException
+	{
+		Row row = new Row();
+		row.cacheKey = cacheKey;
+		row.identifiers = identifiers;
+		row.compoundKey = compoundKey(cacheKey, identifiers);
+		row.data = data;
+		row.entry = new SnapshotStore.Entry(cacheKey, ownerOf(data), contentHash(data));
+		row.key = lookupKey(cacheKey, identifiers);
+		seen.put(row.compoundKey, row.entry.getOwner());
+		return row;
+	}
+
+	/**
+	 * Get the hero an object belongs to.
+	 * 
+	 * @param data
+	 *          The object's data.
+	 * @return The hero's ID, or an empty string if the object does not belong to
+	 *         a hero.
+	 */
+	private static String ownerOf(Map<String, ? extends Object> data)
+	{
+		Object owner = data.get("held_id");
+		return owner == null ? "" : owner.toString();
+	}
+
+	/**
+	 * Check if an object is known on the server and did not change since the
+	 * last export.
+	 * 
+	 * @param row
+	 *          The prepared object.
+	 * @return <code>true</code> if the object does not need to be sent.
+	 */
+	private boolean isUnchanged(Row row)
+	{
+		if (row.key == null)
+		{
+			return false;
+		}
+		SnapshotStore.Entry previous = snapshot.get(row.compoundKey);
+		return previous != null && previous.getHash().equals(row.entry.getHash());
+	}
+
+	/**
+	 * Send a single object to the server.
+	 * 
+	 * @param row
+	 *          The prepared object.
+	 * @return The object's ID.
+	 * @throws HeldenWebExportException
+	 * @see #upsert(CacheKey, Map, String...)
+	 */
+	private UUID sendRow(Row row) throws HeldenWebExportException
+	{
+		Table table = tables.get(row.cacheKey);
+		String idXpath = "/" + table.rootElementName.toLowerCase() + "/id";
+		if (row.key != null)
+		{
+			try
+			{
+				sendToServer(table.rootElementName, row.getUploadData(), table.path + "/edit/" + row.key.toString() + ".xml",
+								idXpath, true, null);
+				confirm(row);
+				return row.key;
+			}
+			catch (HeldenWebExportException exception)
+			{
+				if (isVerified(row.cacheKey, row.identifiers))
+				{
+					throw exception;
+				}
+				// Stored ID might be outdated, check again
+				removeKey(row.cacheKey, row.identifiers);
+				return upsert(row.cacheKey, row.data, row.identifiers);
+			}
+		}
+		return create(row.cacheKey, row.data, row, row.identifiers);
+	}
+
+	/**
+	 * Create an object on the server and put its ID into the cache.
+	 * <p>
+	 * If client IDs are enabled, the ID is generated here and sent with the
+	 * object. It is also used as idempotency key, so the request may be repeated
+	 * after a transient error without creating the object twice. Once the server
+	 * has kept such an ID, further objects are created in the background: their
+	 * IDs are available immediately, so dependent objects can be sent while the
+	 * request is still in flight. The requests are awaited by
+	 * {@link #awaitCreates()}. A server which assigns its own ID instead is
+	 * treated as not supporting client IDs.
+	 * 
+	 * @param cacheKey
+	 *          The cache key.
+	 * @param data
+	 *          The data to be sent to the server.
+	 * @param row
+	 *          The object to confirm once it has been created. May be
+	 *          <code>null</code>.
+	 * @param identifiers
+	 *          The object's identifiers.
+	 * @return The object's ID.
+	 * @throws HeldenWebExportException
+	 */
+	private UUID create(final CacheKey cacheKey, Map<String, ? extends Object> data, final Row row,
+					final String... identifiers) throws HeldenWebExportException
+	{
+		Table table = tables.get(cacheKey);
+		final String rootElementName = table.rootElementName;
+		final String url = table.path + ".xml";
+		final String idXpath = "/" + rootElementName.toLowerCase() + "/id";
+		if (!clientIds)
+		{
+			UUID key = sendToServer(rootElementName, data, url, idXpath);
+			putKey(cacheKey, key, identifiers);
+			if (row != null)
+			{
+				confirm(row);
+			}
+			return key;
+		}
+
+		final UUID key = UUID.randomUUID();
+		final Map<String, Object> createData = new HashMap<String, Object>(data);
+		createData.put("id", key.toString());
+		if (!clientIdsConfirmed)
+		{
+			// Wait for the response until the server is known to keep the IDs
+			UUID serverKey = sendToServer(rootElementName, createData, url, idXpath, true, key.toString());
+			if (key.equals(serverKey))
+			{
+				clientIdsConfirmed = true;
+			}
+			else
+			{
+				clientIds = false;
+			}
+			putKey(cacheKey, serverKey, identifiers);
+			if (row != null)
+			{
+				confirm(row);
+			}
+			return serverKey;
+		}
+
+		// Only journaled once the server confirmed the object
+		keys.get(cacheKey).put(key, identifiers);
+		String owner = ownerOf(data);
+		synchronized (createLock)
+		{
+			RequestDispatcher.Group creates = pendingCreates.get(owner);
+			if (creates == null)
+			{
+				creates = createDispatcher.newGroup();
+				pendingCreates.put(owner, creates);
+			}
+			creates.submit(new RequestDispatcher.Request()
+			{
+				@Override
+				public void send() throws HeldenWebExportException
+				{
+					UUID serverKey;
+					try
+					{
+						serverKey = sendToServer(rootElementName, createData, url, idXpath, true, key.toString());
+					}
+					catch (HeldenWebExportException exception)
+					{
+						keys.get(cacheKey).remove(identifiers);
+						throw exception;
+					}
+					putKey(cacheKey, serverKey, identifiers);
+					if (!key.equals(serverKey))
+					{
+						clientIds = false;
+						throw new HeldenWebExportException(MessageFormat.format(
+										"Server hat die ID {0} nicht übernommen, sondern {1} vergeben", key, serverKey));
+					}
+					if (row != null)
+					{
+						confirm(row);
+					}
+				}
+			});
+		}
+		return key;
+	}
+
+	/**
+	 * Wait until all objects created in the background have been created.
+	 * 
+	 * @throws HeldenWebExportException
+	 *           Thrown if any object could not be created.
+	 * @see #create(CacheKey, Map, Row, String...)
+	 */
+	void awaitCreates() throws HeldenWebExportException
+	{
+		List<RequestDispatcher.Group> creates;
+		synchronized (createLock)
+		{
+			creates = new ArrayList<RequestDispatcher.Group>(pendingCreates.values());
+			pendingCreates.clear();
+		}
+		for (RequestDispatcher.Group group : creates)
+		{
+			group.await();
+		}
+	}
+
+	/**
+	 * Wait until the objects of a hero created in the background have been
+	 * created. Objects of other heroes, which are synchronized concurrently,
+	 * are not awaited.
+	 * 
+	 * @param heroId
+	 *          The hero's ID.
+	 * @throws HeldenWebExportException
+	 *           Thrown if any object could not be created.
+	 */
+	void awaitCreates(UUID heroId) throws HeldenWebExportException
+	{
+		RequestDispatcher.Group creates;
+		synchronized (createLock)
+		{
+			creates = pendingCreates.remove(heroId.toString());
+		}
+		if (creates != null)
+		{
+			creates.await();
+		}
+	}
+
+	/**
+	 * Record that the server confirmed an object.
+	 * 
+	 * @param row
+	 *          The object.
+	 */
+	private void confirm(Row row)
+	{
+		if (row.entry == null)
+		{
+			// Catalogue entries are not part of the snapshot
+			sentCatalogueEntryCount.incrementAndGet();
+			return;
+		}
+		changes.put(row.compoundKey, row.entry);
+		if (journal != null)
+		{
+			journal.rowConfirmed(row.compoundKey, row.entry);
+		}
+	}
+
+	/**
+	 * Send a single object to the server if it changed since the last export.
+	 * The request is sent by the dispatcher; the object's ID is known once the
+	 * group has been awaited.
+	 * 
+	 * @param requests
+	 *          The request group of the current stage.
+	 * @param cacheKey
+	 *          The cache key.
+	 * @param data
+	 *          The data to be sent to the server.
+	 * @param identifiers
+	 *          The object's identifiers.
+	 * @throws HeldenWebExportException
+	 */
+	private void dispatchRow(RequestDispatcher.Group requests, CacheKey cacheKey, Map<String, ? extends Object> data,
+					String... identifiers) throws HeldenWebExportException
+	{
+		final Row row = prepareRow(cacheKey, data, identifiers);
+		if (isUnchanged(row) || collect(row))
+		{
+			return;
+		}
+		requests.submit(new RequestDispatcher.Request()
+		{
+			@Override
+			public void send() throws HeldenWebExportException
+			{
+				sendRow(row);
+			}
+		});
+	}
+
+	/**
+	 * Send objects one by one, using the dispatcher.
+	 * 
+	 * @param rows
+	 *          The prepared objects.
+	 * @throws HeldenWebExportException
+	 */
+	private void sendRows(List<Row> rows) throws HeldenWebExportException
+	{
+		RequestDispatcher.Group requests = dispatcher.newGroup();
+		for (final Row row : rows)
+		{
+			requests.submit(new RequestDispatcher.Request()
+			{
+				@Override
+				public void send() throws HeldenWebExportException
+				{
+					sendRow(row);
+				}
+			});
+		}
+		requests.await();
+	}
+
+	/**
+	 * Queue an object for a batch upload. The queued objects of a type are sent
+	 * together by {@link #flushBatch(CacheKey, UUID)}. If the server does not
+	 * support batch uploads, the queued objects are sent one by one.
+	 * 
+	 * @param cacheKey
+	 *          The cache key.
+	 * @param data
+	 *          The data to be sent to the server.
+	 * @param identifiers
+	 *          The object's identifiers.
+	 * @throws HeldenWebExportException
+	 */
+	private void queueRow(CacheKey cacheKey, Map<String, ? extends Object> data, String... identifiers)
+					throws HeldenWebExportException
+	{
+		Row row = prepareRow(cacheKey, data, identifiers);
+		if (isUnchanged(row) || collect(row))
+		{
+			return;
+		}
+		addToBatch(row);
+	}
+
+	/**
+	 * Queue a new catalogue entry for a batch upload, see
+	 * {@link #flushBatch(CacheKey, UUID)}. Catalogue entries do not belong to a hero
+	 * and are not part of the snapshot: they are only sent if they are not known
+	 * on the server.
+	 * 
+	 * @param cacheKey
+	 *          The cache key.
+	 * @param data
+	 *          The data to be sent to the server.
+	 * @param identifiers
+	 *          The entry's identifiers.
+	 * @throws HeldenWebExportException
+	 */
+	private void queueCatalogueEntry(CacheKey cacheKey, Map<String, String> data, String... identifiers)
+					throws HeldenWebExportException
+	{
+		Row row = new Row();
+		row.cacheKey = cacheKey;
+		row.identifiers = identifiers;
+		row.compoundKey = compoundKey(cacheKey, identifiers);
+		row.data = data;
+		addToBatch(row);
+	}
+
+	/**
+	 * Check if a catalogue entry is known on the server. An entry referenced
+	 * more than once during the current export is only looked up the first time,
+	 * since it is either known or has been queued by
+	 * {@link #queueCatalogueEntry(CacheKey, Map, String...)} then. A cached ID
+	 * which has not been confirmed during the current export, e.g. an ID from
+	 * the persistent store, is only trusted after the catalogue has been read;
+	 * if the catalogue did not change, this costs a conditional request.
+	 * 
+	 * @param cacheKey
+	 *          The cache key.
+	 * @param identifiers
+	 *          The entry's identifiers.
+	 * @return <code>true</code> if the entry does not need to be created.
+	 * @throws HeldenWebExportException
+	 */
+	private boolean isCatalogueEntryKnown(CacheKey cacheKey, String... identifiers) throws HeldenWebExportException
+	{
+		if (!catalogueEntries.add(compoundKey(cacheKey, identifiers)))
+		{
+			return true;
+		}
+		UUID key = lookupKey(cacheKey, identifiers);
+		if (key != null && !isVerified(cacheKey, identifiers))
+		{
+			synchronized (tables.get(cacheKey))
+			{
+				if (!isVerified(cacheKey, identifiers))
+				{
+					getIdsFromServer(cacheKey, null);
+				}
+			}
+			key = keys.get(cacheKey).get(identifiers);
+		}
+		return key != null;
+	}
+
+	/**
+	 * Add an object to the batch of its type. A full batch is sent.
+	 * 
+	 * @param row
+	 *          The prepared object.
+	 * @throws HeldenWebExportException
+	 */
+	private void addToBatch(Row row) throws HeldenWebExportException
+	{
+		String owner = ownerOf(row.data);
+		String scope = listingScope(row.cacheKey, owner.length() == 0 ? null : owner);
+		List<Row> batch = batches.get(scope);
+		if (batch == null)
+		{
+			batch = new ArrayList<Row>();
+			batches.put(scope, batch);
+		}
+		batch.add(row);
+		if (batch.size() >= BATCH_SIZE)
+		{
+			sendBatch(row.cacheKey, batches.remove(scope));
+		}
+	}
+
+	/**
+	 * Send all queued catalogue entries of a type to the server, see
+	 * {@link #flushBatch(CacheKey, UUID)}.
+	 * 
+	 * @param cacheKey
+	 *          The cache key.
+	 * @throws HeldenWebExportException
+	 */
+	private void flushBatch(CacheKey cacheKey) throws HeldenWebExportException
+	{
+		flushBatch(cacheKey, null);
+	}
+
+	/**
+	 * Send all queued objects of a type and hero to the server in one request,
+	 * see {@link #sendBatch(CacheKey, List)}.
+	 * 
+	 * @param cacheKey
+	 *          The cache key.
+	 * @param heroId
+	 *          The hero the objects belong to, or <code>null</code> for objects
+	 *          which do not belong to a hero.
+	 * @throws HeldenWebExportException
+	 */
+	private void flushBatch(CacheKey cacheKey, UUID heroId) throws HeldenWebExportException
+	{
+		sendBatch(cacheKey, batches.remove(listingScope(cacheKey, heroId == null ? null : heroId.toString())));
+	}
+
+	/**
+	 * Send objects of a type to the server in one request. The IDs returned by
+	 * the server are mapped back to the objects by their identifying fields if
+	 * the server returns them, otherwise by position. If the server does not
+	 * support batch uploads, the objects are sent one by one and no further
+	 * batches are attempted.
+	 * 
+	 * @param cacheKey
+	 *          The cache key.
+	 * @param batch
+	 *          The objects, may be <code>null</code>.
+	 * @throws HeldenWebExportException
+	 */
+	private void sendBatch(CacheKey cacheKey, List<Row> batch) throws HeldenWebExportException
+	{
+		if (batch == null || batch.isEmpty())
+		{
+			return;
+		}
+		if (!batchSupported)
+		{
+			sendRows(batch);
+			return;
+		}
+
+		Table table = tables.get(cacheKey);
+		List<Map<String, ? extends Object>> elements = new ArrayList<Map<String, ? extends Object>>();
+		for (Row row : batch)
+		{
+			elements.add(row.getUploadData());
+		}
+		String document = buildXmlDocument(table.path, table.rootElementName, elements);
+		Response response;
+		try
+		{
+			response = client.post(table.path + "/batch.xml", null, "application/xml", document);
+		}
+		catch (HttpClientException exception)
+		{
+			throw new HeldenWebExportException("Daten konnten nicht auf dem Server gespeichert werden", exception);
+		}
+		int responseCode = response.getResponseCode();
+		if (responseCode == HttpURLConnection.HTTP_NOT_FOUND || responseCode == HttpURLConnection.HTTP_BAD_METHOD
+						|| responseCode == HttpURLConnection.HTTP_NOT_IMPLEMENTED)
+		{
+			// Server does not know batch uploads, fall back to single uploads
+			batchSupported = false;
+			sendRows(batch);
+			return;
+		}
+		if (responseCode != 200)
+		{
+			if (isVerified(cacheKey, batch.get(0).identifiers))
+			{
+				handleHttpError(response);
+			}
+			// Stored IDs might be outdated, single uploads check them
+			sendRows(batch);
+			return;
+		}
+
+		assignIds(cacheKey, batch, getChildElements(parseXML(response.getResponseContent()).getDocumentElement()));
+	}
+
+	/**
+	 * Map the IDs returned by the server for several objects of a type to the
+	 * objects. The objects are identified by their identifying fields if the
+	 * server returns them for every object and each result matches a different
+	 * object, otherwise all objects are identified by position. The objects are
+	 * confirmed.
+	 * 
+	 * @param cacheKey
+	 *          The cache key.
+	 * @param rows
+	 *          The objects sent to the server.
+	 * @param results
+	 *          The objects returned by the server.
+	 * @throws HeldenWebExportException
+	 *           Thrown if the server did not return an ID for each object.
+	 */
+	private void assignIds(CacheKey cacheKey, List<Row> rows, List<Element> results) throws HeldenWebExportException
+	{
+		Map<String, Row> rowsByKey = new HashMap<String, Row>();
+		for (Row row : rows)
+		{
+			rowsByKey.put(row.compoundKey, row);
+		}
+		if (results.size() != rows.size())
+		{
+			throw new HeldenWebExportException(MessageFormat.format("Server lieferte {0} IDs für {1} gesendete {2}",
+							results.size(), rows.size(), tables.get(cacheKey).label));
+		}
+		// Decide once for the whole batch, so that no object is matched twice
+		List<Row> matchedRows = new ArrayList<Row>(results.size());
+		Set<Row> distinctRows = new HashSet<Row>();
+		for (Element result : results)
+		{
+			Row row = rowsByKey.get(naturalKey(cacheKey, result));
+			if (row == null || !distinctRows.add(row))
+			{
+				matchedRows = rows;
+				break;
+			}
+			matchedRows.add(row);
+		}
+		for (int index = 0; index < results.size(); index++)
+		{
+			Row row = matchedRows.get(index);
+			String id = getChildText(results.get(index), "id");
+			if (id == null)
+			{
+				throw new HeldenWebExportException(MessageFormat.format("Server lieferte keine ID für {0}",
+								tables.get(cacheKey).label));
+			}
+			try
+			{
+				putKey(cacheKey, UUID.fromString(id), row.identifiers);
+			}
+			catch (IllegalArgumentException exception)
+			{
+				throw new HeldenWebExportException(MessageFormat.format("Server lieferte ungültige ID: {0}", id), exception);
+			}
+			confirm(row);
+		}
+	}
+
+	/**
+	 * Check whether the server advertises support for aggregate uploads and if
+	 * so, collect the objects of a hero instead of sending them. The hero and
+	 * all its objects are then sent in one request by
+	 * {@link #sendAggregate(UUID)}. A new hero is still created on its own,
+	 * since its objects refer to its ID. Several heroes may be collected at the
+	 * same time.
+	 * 
+	 * @param heroIdentifier
+	 *          The identifier of the hero in the Helden software.
+	 * @return <code>true</code> if the objects are collected.
+	 * @throws HeldenWebExportException
+	 *           Thrown if the capabilities could not be read from the server.
+	 */
+	boolean startAggregate(String heroIdentifier) throws HeldenWebExportException
+	{
+		if (!getCapabilities().contains(CAPABILITY_AGGREGATE))
+		{
+			return false;
+		}
+		Aggregate aggregate = new Aggregate();
+		aggregate.heroKey = compoundKey(CacheKey.HELD, heroIdentifier);
+		aggregates.put(aggregate.heroKey, aggregate);
+		return true;
+	}
+
+	/**
+	 * Collect an object for the aggregate upload of its hero, if there is one.
+	 * 
+	 * @param row
+	 *          The prepared object.
+	 * @return <code>true</code> if the object was collected and must not be
+	 *         sent.
+	 */
+	private boolean collect(Row row)
+	{
+		if (aggregates.isEmpty())
+		{
+			return false;
+		}
+		if (row.cacheKey == CacheKey.HELD)
+		{
+			Aggregate current = aggregates.get(row.compoundKey);
+			if (current == null || row.key == null)
+			{
+				return false;
+			}
+			synchronized (current)
+			{
+				current.hero = row;
+			}
+			return true;
+		}
+		Aggregate current = aggregates.get(ownerOf(row.data));
+		if (current == null)
+		{
+			return false;
+		}
+		current.add(row);
+		return true;
 	}
 
 	/**
-	 * Synchronize talents. After this method has been executed, all talents in
-	 * the map are stored on the server and all IDs on the server are known to the
-	 * cache.
+	 * Send the hero and the objects collected since
+	 * {@link #startAggregate(String)} in one request, and map the IDs returned by the
+	 * server to the objects. If the server rejects the upload and the IDs of the
+	 * objects might be outdated, they are sent by type instead. If the hero has
+	 * to be created again, its objects are sent with its new ID.
 	 * 
-	 * @param talents
-	 *          The talents to synchronize.
-	 * @param tool
-	 *          The tool.
-	 * @param monitor
+	 * @param heroId
+	 *          The hero's ID.
 	 * @throws HeldenWebExportException
 	 */
-	public void synchronizeTalents(Map<String, PluginTalent> talents, PluginHeldenWerteWerkzeug3 tool,
-					ProgressMonitor monitor) throws HeldenWebExportException
+	void sendAggregate(UUID heroId) throws HeldenWebExportException
 	{
-		try
+		Aggregate current = aggregates.remove(heroId.toString());
+		if (current != null)
 		{
-			getIdsFromServer(CacheKey.TALENT, "talent", "Talente.xml");
+			aggregates.remove(current.heroKey);
 		}
-		catch (HeldenWebExportException exception)
+		if (current == null || current.hero == null && current.rows.isEmpty())
 		{
-			throw new HeldenWebExportException("Fehler beim synchronisieren der Talente", exception);
+			return;
 		}
-
-		monitor.startSubtask(null, talents.size());
-		for (String talentName : talents.keySet())
+		Map<CacheKey, List<Map<String, ? extends Object>>> children = new EnumMap<CacheKey, List<Map<String, ? extends Object>>>(
+						CacheKey.class);
+		for (Map.Entry<CacheKey, List<Row>> entry : current.rows.entrySet())
 		{
-			if (getKey(CacheKey.TALENT, talentName) == null)
+			List<Map<String, ? extends Object>> elements = new ArrayList<Map<String, ? extends Object>>();
+			for (Row row : entry.getValue())
 			{
-				sendTalentToServer(talentName, talents.get(talentName), tool);
+				elements.add(row.getUploadData());
 			}
-			monitor.step();
+			children.put(entry.getKey(), elements);
 		}
-		monitor.subtaskDone();
-	}
+		Map<String, ? extends Object> heroData;
+		if (current.hero != null)
+		{
+			heroData = current.hero.getUploadData();
+		}
+		else
+		{
+			heroData = Collections.singletonMap("id", heroId.toString());
+		}
+		String document = buildAggregateDocument(heroData, children);
 
-	/**
-	 * Send an object to the server.
-	 * 
-	 * @param rootElementName
-	 *          The root element name of the created XML document.
-	 * @param objectData
-	 *          The attributes of the object, see
-	 *          {@link #buildXmlDocument(String, Map)}.
-	 * @param url
-	 *          The URL where the data should be <code>POST</code>ed.
-	 * @param idXpath
-	 *          The XPath expression where the object's new ID can be found in the
-	 *          XML response.
-	 * @return The UUID of the created object.
-	 * @throws HeldenWebExportException
-	 */
-	private UUID sendToServer(String rootElementName, Map<String, ? extends Object> objectData, String url, String idXpath)
-					throws HeldenWebExportException
-	{
-		// Build the XML document
-		String document = buildXmlDocument(rootElementName, objectData);
+		Table heroTable = tables.get(CacheKey.HELD);
+		Response response;
 		try
 		{
-			// Post the data to the server
-			Response response = client.post(url, null, "application/xml", document);
-			if (response.getResponseCode() != 200)
+			response = client.post(heroTable.path + "/aggregate/" + heroId.toString() + ".xml", null, "application/xml",
+							document);
+		}
+		catch (HttpClientException exception)
+		{
+			throw new HeldenWebExportException("Daten konnten nicht auf dem Server gespeichert werden", exception);
+		}
+		if (response.getResponseCode() != 200)
+		{
+			boolean verified = current.hero == null || isVerified(CacheKey.HELD, current.hero.identifiers);
+			for (Map.Entry<CacheKey, List<Row>> entry : current.rows.entrySet())
 			{
-				throw new HeldenWebExportException(MessageFormat.format(
-								"Daten konnten nicht zum Server gesendet werden: {0} ({1})", response.getResponseMessage(),
-								response.getResponseCode()));
+				verified &= isVerified(entry.getKey(), entry.getValue().get(0).identifiers);
 			}
-			// Parse the response
-			Document talentsDocument = parseXML(response.getResponseContent());
-			// Get the UUID
-			XPath xpath = xpathFactory.newXPath();
-			String id = xpath.evaluate(idXpath, talentsDocument);
-			try
+			if (verified)
 			{
-				return UUID.fromString(id);
+				handleHttpError(response);
 			}
-			catch (IllegalArgumentException exception)
+			// Stored IDs might be outdated, single uploads check them
+			UUID newHeroId = current.hero == null ? heroId : sendRow(current.hero);
+			for (Map.Entry<CacheKey, List<Row>> entry : current.rows.entrySet())
 			{
-				throw new HeldenWebExportException(MessageFormat.format("Server lieferte ungültige ID: {0}", id), exception);
+				List<Row> rows = new ArrayList<Row>();
+				for (Row row : entry.getValue())
+				{
+					rows.add(newHeroId.equals(heroId) ? row : replaceHeroId(row, heroId, newHeroId));
+				}
+				sendBatch(entry.getKey(), rows);
 			}
+			return;
 		}
-		catch (HttpClientException exception)
+
+		// Map the returned IDs to the objects, by collection
+		List<Element> collections = getChildElements(parseXML(response.getResponseContent()).getDocumentElement());
+		if (current.hero != null)
 		{
-			throw new HeldenWebExportException("Daten konnten nicht auf dem Server gespeichert werden", exception);
+			confirm(current.hero);
 		}
-		catch (XPathExpressionException exception)
+		for (Map.Entry<CacheKey, List<Row>> entry : current.rows.entrySet())
 		{
-			throw new HeldenWebExportException("Fehler beim Lesen der gespeicherten Daten", exception);
+			Table table = tables.get(entry.getKey());
+			Element collection = null;
+			for (Element element : collections)
+			{
+				if (element.getTagName().equalsIgnoreCase(table.path))
+				{
+					collection = element;
+				}
+			}
+			if (collection == null)
+			{
+				throw new HeldenWebExportException(MessageFormat.format("Server lieferte keine IDs für {0}", table.label));
+			}
+			assignIds(entry.getKey(), entry.getValue(), getChildElements(collection));
 		}
 	}
 
 	/**
-	 * Save a talent on the server.
+	 * Prepare an object of a hero again after the hero's ID changed.
 	 * 
-	 * @param talentName
-	 *          The name of the talent.
-	 * @param pluginTalent
-	 *          The talent data.
-	 * @param tool
-	 *          The tool.
+	 * @param row
+	 *          The object, prepared with the old ID.
+	 * @param oldHeroId
+	 *          The hero's old ID.
+	 * @param newHeroId
+	 *          The hero's new ID.
+	 * @return The object, prepared with the new ID.
 	 * @throws HeldenWebExportException
 	 */
-	private void sendTalentToServer(String talentName, PluginTalent pluginTalent, PluginHeldenWerteWerkzeug3 tool)
-					throws HeldenWebExportException
+	private Row replaceHeroId(Row row, UUID oldHeroId, UUID newHeroId) throws HeldenWebExportException
 	{
-		Map<String, String> talentMap = new HashMap<String, String>();
-		talentMap.put("name", talentName);
-		if (tool.getSprachKomplexitaet(pluginTalent) != null && tool.getSprachKomplexitaet(pluginTalent).length() > 0)
+		Map<String, Object> data = new HashMap<String, Object>(row.data);
+		for (Map.Entry<String, Object> entry : data.entrySet())
 		{
-			talentMap.put("sprachkomplexitaet", tool.getSprachKomplexitaet(pluginTalent));
+			if (oldHeroId.toString().equals(entry.getValue()))
+			{
+				entry.setValue(newHeroId.toString());
+			}
 		}
-
-		// Map checks to attributes
-		if (pluginTalent.getProbe() != null && pluginTalent.getProbe().length == 3)
+		String[] identifiers = row.identifiers.clone();
+		for (int index = 0; index < identifiers.length; index++)
 		{
-			for (int i = 0; i < 3; i++)
+			if (oldHeroId.toString().equals(identifiers[index]))
 			{
-				UUID probeId = getKey(CacheKey.EIGENSCHAFT, pluginTalent.getProbe()[i]);
-				if (probeId == null)
-				{
-					throw new IllegalStateException(MessageFormat.format("Talent {0} referenziert unbekannte Eigenschaft {1}",
-									talentName, pluginTalent.getProbe()[i]));
-				}
-				talentMap.put("probe" + (i + 1), probeId.toString());
+				identifiers[index] = newHeroId.toString();
 			}
 		}
+		return prepareRow(row.cacheKey, data, identifiers);
+	}
 
-		// Map talent types
-		if (pluginTalent.getTalentart() != null)
+	/**
+	 * Build the XML document of an aggregate upload. The hero is built as
+	 * described in {@link #buildXmlDocument(String, Map)}; each type of object
+	 * is added to it as a collection, built as described in
+	 * {@link #buildXmlDocument(String, String, List)}.
+	 * 
+	 * @param heroData
+	 *          The hero's elements. At least its ID.
+	 * @param children
+	 *          The elements of the hero's objects, by type.
+	 * @return The completed document.
+	 */
+	String buildAggregateDocument(Map<String, ? extends Object> heroData,
+					Map<CacheKey, List<Map<String, ? extends Object>>> children)
+	{
+		XmlWriter writer = xmlWriter.get().startDocument();
+		writer.startElement(tables.get(CacheKey.HELD).rootElementName).elements(heroData);
+		for (Map.Entry<CacheKey, List<Map<String, ? extends Object>>> entry : children.entrySet())
 		{
-			UUID talentTypeId = getKey(CacheKey.TALENTART, pluginTalent.getTalentart());
-			if (talentTypeId == null)
+			Table table = tables.get(entry.getKey());
+			writer.startElement(table.path);
+			for (Map<String, ? extends Object> elements : entry.getValue())
 			{
-				throw new IllegalStateException(MessageFormat.format("Talent {0} referenziert unbekannte Talentart {1}",
-								talentName, pluginTalent.getTalentart()));
+				writer.startElement(table.rootElementName).elements(elements).endElement();
 			}
-			talentMap.put("talentart_id", talentTypeId.toString());
+			writer.endElement();
 		}
-
-		UUID talentId = sendToServer("Talent", talentMap, "Talente.xml", "/talent/id");
-		keys.put(CacheKey.TALENT + talentName, talentId);
+		writer.endElement();
+		return writer.toString();
 	}
 
 	/**
-	 * Build a simple XML element. The structure will be: <code>
-	 * &lt;rootElementName&gt;<br>
-	 * &nbsp;&nbsp;&lt;elements[0].key&gt;elements[0].value&lt;/elements[0].key&gt;<br>
-	 * &nbsp;&nbsp;&lt;elements[1].key&gt;elements[1].value&lt;/elements[1].key&gt;<br>
-	 * &nbsp;&nbsp;&lt;elements[2].key&gt;elements[2].value&lt;/elements[2].key&gt;<br>
-	 * &nbsp;&nbsp;...
-	 * &lt;/rootElementName&gt;<br>
-	 * </code>
+	 * Get the capabilities advertised by the server. They are read once, like
+	 * the support for batch uploads is only checked once. A server which does
+	 * not advertise capabilities has none.
 	 * 
-	 * @param rootElementName
-	 *          The root element name.
-	 * @param elements
-	 *          The elements to be added to the document. Keys are used as element
-	 *          names and must conform to the restrictions for XML element names.
-	 *          Values are used as the elements' text values and are encoded
-	 *          before transmission.
-	 * @return The completed document.
+	 * @return The names of the capabilities.
 	 * @throws HeldenWebExportException
-	 *           Error while creating the document.
+	 *           Thrown if the server could not be reached.
 	 */
-	private String buildXmlDocument(String rootElementName, Map<String, ? extends Object> elements)
-					throws HeldenWebExportException
+	private Set<String> getCapabilities() throws HeldenWebExportException
 	{
-		try
+		Set<String> current = capabilities;
+		if (current != null)
+		{
+			return current;
+		}
+		synchronized (capabilitiesLock)
 		{
-			DocumentBuilder builder = factory.newDocumentBuilder();
-			Document document = builder.newDocument();
-			Element talentRoot = document.createElement(rootElementName);
-			document.appendChild(talentRoot);
-			for (String elementName : elements.keySet())
+			if (capabilities != null)
 			{
-				Element element = document.createElement(elementName);
-				Object elementContent = elements.get(elementName);
-				if (elementContent == null)
-				{
-					element.setTextContent("");
-				}
-				else if (elementContent instanceof Map)
+				return capabilities;
+			}
+			current = new HashSet<String>();
+			try
+			{
+				Response response = client.get("capabilities.xml", null);
+				if (response.getResponseCode() == 200)
 				{
-					Map<?, ?> elementContents = (Map<?, ?>) elementContent;
-					for (Object childName : elementContents.keySet())
+					for (Element capability : getChildElements(parseXML(response.getResponseContent()).getDocumentElement()))
 					{
-						Element child = document.createElement(childName.toString());
-						Object childContent = elementContents.get(childName);
-						child.setTextContent(childContent.toString());
-						element.appendChild(child);
+						current.add(capability.getTextContent().trim());
 					}
 				}
-				else
-				{
-					element.setTextContent(elementContent.toString());
-				}
-				talentRoot.appendChild(element);
 			}
-			TransformerFactory transformerFactory = TransformerFactory.newInstance();
-			Transformer transformer = transformerFactory.newTransformer();
-			StringWriter writer = new StringWriter();
-			transformer.transform(new DOMSource(document), new StreamResult(writer));
-			writer.flush();
-			return writer.toString();
-		}
-		catch (ParserConfigurationException exception)
-		{
-			throw new HeldenWebExportException("Fehler beim Erstellen des XML-Dokuments", exception);
-		}
-		catch (TransformerConfigurationException exception)
-		{
-			throw new HeldenWebExportException("Fehler beim Erstellen des XML-Dokuments", exception);
-		}
-		catch (TransformerException exception)
-		{
-			throw new HeldenWebExportException("Fehler beim Erstellen des XML-Dokuments", exception);
+			catch (HttpClientException exception)
+			{
+				throw new HeldenWebExportException("Fähigkeiten des Servers konnten nicht gelesen werden", exception);
+			}
+			capabilities = current;
+			return current;
 		}
 	}
 
 	/**
-	 * Read all current IDs from the server and put them in the cache.
+	 * Get the child elements of an element.
 	 * 
-	 * @param cacheKey
-	 *          The cache key for this type of data.
-	 * @param elementName
-	 *          The element name in the resulting XML document.
-	 * @param url
-	 *          The URL where the data is requested.
-	 * @param additionalIdentifiers
-	 *          Additional identifying elements. These are added to the cache key.
-	 *          The order of these is preserved.
-	 * @throws HeldenWebExportException
-	 *           Error while reading the data from the server.
+	 * @param element
+	 *          The parent element.
+	 * @return The child elements, in document order.
 	 */
-	private void getIdsFromServer(CacheKey cacheKey, String elementName, String url, String... additionalIdentifiers)
-					throws HeldenWebExportException
+	private List<Element> getChildElements(Element element)
 	{
-		getIdsFromServer(cacheKey, elementName, url, true, additionalIdentifiers);
+		List<Element> children = new ArrayList<Element>();
+		NodeList nodes = element.getChildNodes();
+		for (int index = 0; index < nodes.getLength(); index++)
+		{
+			if (nodes.item(index) instanceof Element)
+			{
+				children.add((Element) nodes.item(index));
+			}
+		}
+		return children;
 	}
 
 	/**
-	 * Read all current IDs from the server and put them in the cache.
+	 * Build the compound key of an object returned by the server from its
+	 * identifying fields.
 	 * 
 	 * @param cacheKey
-	 *          The cache key for this type of data.
-	 * @param elementName
-	 *          The element name in the resulting XML document.
-	 * @param url
-	 *          The URL where the data is requested.
-	 * @param useDefaultIdentifier
-	 *          Use the field "name" as the identifier for the object. Fallback is
-	 *          "id" if name is not in result document.
-	 * @param additionalIdentifiers
-	 *          Additional identifying elements. These are added to the cache key.
-	 *          The order of these is preserved.
-	 * @throws HeldenWebExportException
-	 *           Error while reading the data from the server.
+	 *          The cache key.
+	 * @param element
+	 *          The object element.
+	 * @return The compound key, or <code>null</code> if the element does not
+	 *         contain all identifying fields.
 	 */
-	private void getIdsFromServer(CacheKey cacheKey, String elementName, String url, boolean useDefaultIdentifier,
-					String... additionalIdentifiers) throws HeldenWebExportException
+	private String naturalKey(CacheKey cacheKey, Element element)
 	{
-		try
+		Table table = tables.get(cacheKey);
+		List<String> identifiers = new ArrayList<String>();
+		if (table.useDefaultIdentifier)
 		{
-			// Request data from server
-			Response response = client.get(url, null);
-			// Check response code (2xx = OK)
-			if (response.getResponseCode() < 200 || response.getResponseCode() >= 300)
-			{
-				handleHttpError(response);
-			}
-			// Parse XML response
-			Map<String, String> additionalIdValues = new HashMap<String, String>();
-			for (String additionalId : additionalIdentifiers)
-			{
-				additionalIdValues.put(additionalId, "");
-			}
-			Document talentsDocument = parseXML(response.getResponseContent());
-			// Get correct elements
-			NodeList talentElements = talentsDocument.getElementsByTagName(elementName);
-			// Check each element
-			for (int index = 0; index < talentElements.getLength(); index++)
-			{
-				String id = null;
-				String name = null;
-
-				// Get all child elements
-				Element objectElement = (Element) talentElements.item(index);
-				if (objectElement.getParentNode() == talentsDocument)
-				{
-					// Current node is root node. This happens if root node and child
-					// nodes have the same name
-					continue;
-				}
-				NodeList children = objectElement.getChildNodes();
-				// Find name and id
-				for (int innerIndex = 0; innerIndex < children.getLength(); innerIndex++)
-				{
-					Node node = children.item(innerIndex);
-					if (node.getNodeName().equalsIgnoreCase("id"))
-					{
-						id = node.getTextContent();
-					}
-					else if (node.getNodeName().equalsIgnoreCase("name"))
-					{
-						name = node.getTextContent();
-					}
-					else if (additionalIdValues.containsKey(node.getNodeName()))
-					{
-						additionalIdValues.put(node.getNodeName(), node.getTextContent());
-					}
-				}
-
-				// Check for completeness and parse id
-				if (id == null)
-				{
-					throw new HeldenWebExportException("Dokument ist nicht vollständig");
-				}
-				UUID talentId;
-				try
-				{
-					talentId = UUID.fromString(id);
-				}
-				catch (IllegalArgumentException e)
-				{
-					throw new HeldenWebExportException(MessageFormat.format("ID {0} ist keine gültige UUID", id));
-				}
-				StringBuilder compoundName = new StringBuilder();
-				if (useDefaultIdentifier)
-				{
-					if (name != null)
-					{
-						compoundName.append(name);
-					}
-					else
-					{
-						compoundName.append(id);
-					}
-				}
-				for (String additionalId : additionalIdentifiers)
-				{
-					compoundName.append(additionalIdValues.get(additionalId));
-				}
-				// Put into cache
-				keys.put(cacheKey + compoundName.toString(), talentId);
-			}
+			identifiers.add(getChildText(element, "name"));
 		}
-		catch (HttpClientException exception)
+		for (String additionalId : table.additionalIdentifiers)
 		{
-			throw new HeldenWebExportException(MessageFormat.format("Fehler bei der Kommunikation mit dem Server (URL: {0})",
-							url), exception);
+			identifiers.add(getChildText(element, additionalId));
+		}
+		if (identifiers.contains(null))
+		{
+			return null;
 		}
+		return compoundKey(cacheKey, identifiers.toArray(new String[identifiers.size()]));
 	}
 
 	/**
-	 * Read an XML document into a {@link Document}.
+	 * Get the text of a child element.
 	 * 
-	 * @param content
-	 *          The XML content.
-	 * @return The document.
-	 * @throws HeldenWebExportException
-	 *           If an error occurs while parsing the document.
+	 * @param element
+	 *          The parent element.
+	 * @param childName
+	 *          The child element's name. The case is ignored.
+	 * @return The text of the first child element with the given name, or
+	 *         <code>null</code> if there is no such child.
 	 */
-	private Document parseXML(String content) throws HeldenWebExportException
+	private String getChildText(Element element, String childName)
 	{
-		try
-		{
-			DocumentBuilder builder = factory.newDocumentBuilder();
-			Document document = builder.parse(new ByteArrayInputStream(content.getBytes(Charset.forName("UTF-8"))));
-			return document;
-		}
-		catch (ParserConfigurationException exception)
-		{
-			throw new HeldenWebExportException("XML Document Builder konnte nicht erstellt werden", exception);
-		}
-		catch (SAXException exception)
+		NodeList children = element.getChildNodes();
+		for (int index = 0; index < children.getLength(); index++)
 		{
-			throw new HeldenWebExportException("Der Server lieferte kein gültiges XML-Dokument", exception);
+			if (children.item(index).getNodeName().equalsIgnoreCase(childName))
+			{
+				return children.item(index).getTextContent();
+			}
 		}
-		catch (IOException exception)
+		return null;
+	}
+
+	/**
+	 * Calculate a hash of an object's data. The order of the elements does not
+	 * influence the hash.
+	 * 
+	 * @param data
+	 *          The object's data, see {@link #buildXmlDocument(String, Map)}.
+	 * @return The hash as a hexadecimal string.
+	 */
+	private String contentHash(Map<String, ? extends Object> data)
+	{
+		StringBuilder content = new StringBuilder();
+		for (Map.Entry<String, ? extends Object> element : new TreeMap<String, Object>(data).entrySet())
 		{
-			throw new HeldenWebExportException("Fehler beim Lesen des XML-Dokuments", exception);
+			content.append(element.getKey()).append('=');
+			if (element.getValue() instanceof Map)
+			{
+				for (Map.Entry<?, ?> child : new TreeMap<Object, Object>((Map<?, ?>) element.getValue()).entrySet())
+				{
+					content.append(child.getKey()).append(':').append(child.getValue()).append(';');
+				}
+			}
+			else
+			{
+				content.append(element.getValue());
+			}
+			content.append('\n');
 		}
+		return Digests.md5Hex(content.toString());
 	}
 
 	/**
-	 * Handle an error returned from the server.
+	 * Remove objects of a hero from the server which were sent during an earlier
+	 * export, but are no longer part of the hero. Only types which have been
+	 * synchronized during the current export are considered.
 	 * 
-	 * @param response
-	 *          The response.
+	 * @param heroId
+	 *          The hero ID.
+	 * @param monitor
+	 *          The progress monitor.
 	 * @throws HeldenWebExportException
-	 *           The resulting exception.
 	 */
-	private void handleHttpError(Response response) throws HeldenWebExportException
+	public void removeDeletedObjects(UUID heroId, ProgressMonitor monitor) throws HeldenWebExportException
 	{
-		Throwable cause = null;
-		if (response.getResponseContent() != null && response.getResponseContent().trim().length() > 0)
+		String owner = heroId.toString();
+		List<String> deleted = new ArrayList<String>();
+		for (Map.Entry<String, SnapshotStore.Entry> entry : snapshot.entrySet())
+		{
+			if (owner.equals(entry.getValue().getOwner())
+							&& synchronizedTypes.contains(listingScope(entry.getValue().getCacheKey(), owner))
+							&& !seen.containsKey(entry.getKey()))
+			{
+				deleted.add(entry.getKey());
+			}
+		}
+
+		monitor.startSubtask(null, deleted.size());
+		for (String compoundKey : deleted)
 		{
-			cause = new HeldenWebExportException(MessageFormat.format("Server-Antwort: {0}", response.getResponseContent()));
+			CacheKey cacheKey = snapshot.get(compoundKey).getCacheKey();
+			String[] identifiers = identifiers(compoundKey);
+			UUID key = getKey(cacheKey, identifiers);
+			if (key != null)
+			{
+				deleteFromServer(tables.get(cacheKey).path + "/delete/" + key.toString() + ".xml");
+			}
+			keys.get(cacheKey).remove(identifiers);
+			snapshot.remove(compoundKey);
+			if (journal != null)
+			{
+				journal.keyRemoved(cacheKey, identifiers);
+				journal.rowRemoved(compoundKey);
+			}
+			monitor.step();
 		}
-		String message = MessageFormat.format("Fehlerhafte Anfrage; Antwort {0} ({1})", response.getResponseMessage(),
-						response.getResponseCode());
-		throw new HeldenWebExportException(message, cause);
+		monitor.subtaskDone();
 	}
 
 	/**
-	 * Get the cached key for an object.
+	 * Delete an object on the server.
 	 * 
-	 * @param cacheKey
-	 *          The cache key.
-	 * @param objectName
-	 *          The object's name.
-	 * @return The key for the object, or <code>null</code> if no key is cached
-	 *         for this object.
+	 * @param url
+	 *          The URL where the deletion is <code>POST</code>ed.
+	 * @throws HeldenWebExportException
 	 */
-	public UUID getKey(CacheKey cacheKey, String... identifiers)
+	private void deleteFromServer(String url) throws HeldenWebExportException
 	{
-		if (identifiers == null || identifiers.length == 0)
+		try
 		{
-			throw new IllegalArgumentException("At least one identifier is required for cache retrieval");
+			// Deleting an object twice does no harm
+			Response response = client.post(url, null, null, null, true);
+			// Objects already deleted on the server are fine
+			if ((response.getResponseCode() < 200 || response.getResponseCode() >= 300)
+							&& response.getResponseCode() != HttpURLConnection.HTTP_NOT_FOUND)
+			{
+				handleHttpError(response);
+			}
 		}
-		StringBuilder compoundKey = new StringBuilder(cacheKey.toString());
-		for (String additionalId : identifiers)
+		catch (HttpClientException exception)
 		{
-			compoundKey.append(additionalId);
+			throw new HeldenWebExportException("Daten konnten nicht auf dem Server gelöscht werden", exception);
 		}
-		return keys.get(compoundKey.toString());
 	}
 
 	/**
@@ -572,39 +2795,51 @@ public class Cache
 	 */
 	public void clearCache()
 	{
-		keys.clear();
+		for (KeyIndex index : keys.values())
+		{
+			index.clear();
+		}
+		validators.clear();
+		verified.clear();
 	}
 
-	public void synchronizeAttributes(PluginHeldenWerteWerkzeug3 werkzeug, ProgressMonitor monitor)
+	/**
+	 * Synchronize attributes. The attributes of all heroes are stored on the
+	 * server.
+	 * 
+	 * @param heroes
+	 *          The heroes.
+	 * @param monitor
+	 * @throws HeldenWebExportException
+	 */
+	public void synchronizeAttributes(List<HeroSnapshot> heroes, ProgressMonitor monitor)
 					throws HeldenWebExportException
 	{
-		try
-		{
-			getIdsFromServer(CacheKey.EIGENSCHAFT, "eigenschaft", "Eigenschaften.xml");
-		}
-		catch (HeldenWebExportException exception)
+		int steps = 1;
+		for (HeroSnapshot hero : heroes)
 		{
-			throw new HeldenWebExportException("Eigenschaften konnten nicht vom Server gelesen werden", exception);
+			steps += hero.getAttributes().size();
 		}
-
-		monitor.startSubtask(null, werkzeug.getEigenschaftsbezeichner().length + 1);
-		for (String attributeName : werkzeug.getEigenschaftsbezeichner())
+		monitor.startSubtask(null, steps);
+		for (HeroSnapshot hero : heroes)
 		{
-			if (getKey(CacheKey.EIGENSCHAFT, attributeName) == null)
+			for (HeroSnapshot.Attribute attribute : hero.getAttributes())
 			{
-				sendAttributeToServer(attributeName);
+				if (lookupKey(CacheKey.EIGENSCHAFT, attribute.getName()) == null)
+				{
+					sendAttributeToServer(attribute.getName());
+				}
+				monitor.step();
 			}
-			monitor.step();
 		}
 		// Special treatment for speed
-		if (getKey(CacheKey.EIGENSCHAFT, ATTRIBUTE_SPEED) == null)
+		if (lookupKey(CacheKey.EIGENSCHAFT, ATTRIBUTE_SPEED) == null)
 		{
 			Map<String, String> attributeData = new HashMap<String, String>();
 			attributeData.put("kurzbezeichnung", mapAttributeNameToShortName("GS"));
 			attributeData.put("name", ATTRIBUTE_SPEED);
 
-			UUID id = sendToServer("Eigenschaft", attributeData, "Eigenschaften.xml", "/eigenschaft/id");
-			keys.put(CacheKey.EIGENSCHAFT + "Geschwindigkeit", id);
+			create(CacheKey.EIGENSCHAFT, attributeData, null, ATTRIBUTE_SPEED);
 		}
 		monitor.subtaskDone();
 	}
@@ -615,25 +2850,32 @@ public class Cache
 		attributeData.put("kurzbezeichnung", mapAttributeNameToShortName(attributeName));
 		attributeData.put("name", attributeName);
 
-		UUID id = sendToServer("Eigenschaft", attributeData, "Eigenschaften.xml", "/eigenschaft/id");
-		keys.put(CacheKey.EIGENSCHAFT + attributeName, id);
+		create(CacheKey.EIGENSCHAFT, attributeData, null, attributeName);
 	}
 
-	public void synchronizeTalentTypes(Set<String> talentarten, ProgressMonitor monitor) throws HeldenWebExportException
+	/**
+	 * Synchronize the talent types of the talents of all heroes.
+	 * 
+	 * @param heroes
+	 *          The heroes.
+	 * @param monitor
+	 * @throws HeldenWebExportException
+	 */
+	public void synchronizeTalentTypes(List<HeroSnapshot> heroes, ProgressMonitor monitor)
+					throws HeldenWebExportException
 	{
-		try
-		{
-			getIdsFromServer(CacheKey.TALENTART, "talentart", "Talentarten.xml");
-		}
-		catch (HeldenWebExportException exception)
+		Set<String> talentarten = new HashSet<String>();
+		for (HeroSnapshot hero : heroes)
 		{
-			throw new HeldenWebExportException("Talentarten konnten nicht vom Server gelesen werden", exception);
+			for (HeroSnapshot.Talent talent : hero.getTalents())
+			{
+				talentarten.add(talent.getTalentType());
+			}
 		}
-
 		monitor.startSubtask(null, talentarten.size());
 		for (String talentTypeName : talentarten)
 		{
-			if (getKey(CacheKey.TALENTART, talentTypeName) == null)
+			if (lookupKey(CacheKey.TALENTART, talentTypeName) == null)
 			{
 				sendTalentTypeToServer(talentTypeName);
 			}
@@ -647,36 +2889,52 @@ public class Cache
 		Map<String, String> talentTypeData = new HashMap<String, String>();
 		talentTypeData.put("name", talentTypeName);
 
-		UUID id = sendToServer("Talentart", talentTypeData, "Talentarten.xml", "/talentart/id");
-		keys.put(CacheKey.TALENTART + talentTypeName, id);
+		create(CacheKey.TALENTART, talentTypeData, null, talentTypeName);
 	}
 
-	public void synchronizeAdvantages(PluginHeldenWerteWerkzeug3 werkzeug, ProgressMonitor monitor)
+	/**
+	 * Synchronize advantages. The advantages of all heroes are stored on the
+	 * server.
+	 * 
+	 * @param heroes
+	 *          The heroes.
+	 * @param monitor
+	 * @throws HeldenWebExportException
+	 */
+	public void synchronizeAdvantages(List<HeroSnapshot> heroes, ProgressMonitor monitor)
 					throws HeldenWebExportException
 	{
-		try
+		int steps = 0;
+		for (HeroSnapshot hero : heroes)
 		{
-			getIdsFromServer(CacheKey.VORTEIL, "vorteil", "Vorteile.xml");
+			steps += hero.getAdvantages().size();
 		}
-		catch (HeldenWebExportException exception)
+		List<String[]> names = new ArrayList<String[]>();
+		for (HeroSnapshot hero : heroes)
 		{
-			throw new HeldenWebExportException("Vorteile konnten nicht vom Server gelesen werden", exception);
+			for (HeroSnapshot.Advantage advantage : hero.getAdvantages())
+			{
+				names.add(new String[] { advantage.getName() });
+			}
 		}
-
-		String[] vorteile = werkzeug.getVorteileAlsString();
-		monitor.startSubtask(null, vorteile.length);
-		for (String vorteilName : vorteile)
+		resolveKeys(CacheKey.VORTEIL, names);
+		monitor.startSubtask(null, steps);
+		for (HeroSnapshot hero : heroes)
 		{
-			if (getKey(CacheKey.VORTEIL, vorteilName) == null)
+			for (HeroSnapshot.Advantage advantage : hero.getAdvantages())
 			{
-				sendAdvantageToServer(vorteilName, werkzeug);
+				if (!isCatalogueEntryKnown(CacheKey.VORTEIL, advantage.getName()))
+				{
+					sendAdvantageToServer(advantage);
+				}
+				monitor.step();
 			}
-			monitor.step();
 		}
+		flushBatch(CacheKey.VORTEIL);
 		monitor.subtaskDone();
 	}
 
-	private String booleanToDb(boolean value)
+	static String booleanToDb(boolean value)
 	{
 		if (value)
 		{
@@ -685,19 +2943,16 @@ public class Cache
 		return DB_FALSE;
 	}
 
-	private void sendAdvantageToServer(String vorteilName, PluginHeldenWerteWerkzeug3 werkzeug)
-					throws HeldenWebExportException
+	private void sendAdvantageToServer(HeroSnapshot.Advantage advantage) throws HeldenWebExportException
 	{
-		PluginVorteil advantage = werkzeug.getVorteil(vorteilName);
 		Map<String, String> attributeData = new HashMap<String, String>();
-		attributeData.put("name", vorteilName);
-		attributeData.put("auswahl", booleanToDb(advantage.isAuswahlVorteil()));
-		attributeData.put("mehrfachauswahl", booleanToDb(advantage.isMehfachAuswahlVorteil()));
-		attributeData.put("nachteil", booleanToDb(advantage.isNachteil()));
-		attributeData.put("wertvorteil", booleanToDb(advantage.isWertVorteil()));
+		attributeData.put("name", advantage.getName());
+		attributeData.put("auswahl", booleanToDb(advantage.isChoice()));
+		attributeData.put("mehrfachauswahl", booleanToDb(advantage.isMultipleChoice()));
+		attributeData.put("nachteil", booleanToDb(advantage.isDisadvantage()));
+		attributeData.put("wertvorteil", booleanToDb(advantage.isValueAdvantage()));
 
-		UUID id = sendToServer("Vorteil", attributeData, "Vorteile.xml", "/vorteil/id");
-		keys.put(CacheKey.VORTEIL + vorteilName, id);
+		queueCatalogueEntry(CacheKey.VORTEIL, attributeData, advantage.getName());
 	}
 
 	/**
@@ -716,228 +2971,158 @@ public class Cache
 		return attributeName.substring(0, 2).toUpperCase();
 	}
 
-	public void synchronizeSpecialAbilities(PluginHeldenWerteWerkzeug3 werkzeug, ProgressMonitor monitor)
+	/**
+	 * Synchronize special abilities. The special abilities of all heroes are
+	 * stored on the server. Heroes without special abilities, see
+	 * {@link HeroSnapshot#hasSpecialAbilities()}, are ignored.
+	 * 
+	 * @param heroes
+	 *          The heroes.
+	 * @param monitor
+	 * @throws HeldenWebExportException
+	 */
+	public void synchronizeSpecialAbilities(List<HeroSnapshot> heroes, ProgressMonitor monitor)
 					throws HeldenWebExportException
 	{
-		try
+		int steps = 0;
+		for (HeroSnapshot hero : heroes)
 		{
-			getIdsFromServer(CacheKey.SONDERFERTIGKEIT, "sonderfertigkeit", "Sonderfertigkeiten.xml");
+			steps += hero.getSpecialAbilities().size();
 		}
-		catch (HeldenWebExportException exception)
+		List<String[]> names = new ArrayList<String[]>();
+		for (HeroSnapshot hero : heroes)
 		{
-			throw new HeldenWebExportException("Sonderfertigkeiten konnten nicht vom Server gelesen werden", exception);
+			if (!hero.hasSpecialAbilities())
+			{
+				continue;
+			}
+			for (HeroSnapshot.SpecialAbility specialAbility : hero.getSpecialAbilities())
+			{
+				names.add(new String[] { specialAbility.getName() });
+			}
 		}
-
-		String[] sonderfertigkeiten = werkzeug.getSonderfertigkeitenAlsString();
-		monitor.startSubtask(null, sonderfertigkeiten.length);
-		for (String sonderfertigkeitName : sonderfertigkeiten)
+		resolveKeys(CacheKey.SONDERFERTIGKEIT, names);
+		monitor.startSubtask(null, steps);
+		for (HeroSnapshot hero : heroes)
 		{
-			if (getKey(CacheKey.SONDERFERTIGKEIT, sonderfertigkeitName) == null)
+			if (!hero.hasSpecialAbilities())
 			{
-				sendSpecialAbilityToServer(sonderfertigkeitName, werkzeug);
+				continue;
+			}
+			for (HeroSnapshot.SpecialAbility specialAbility : hero.getSpecialAbilities())
+			{
+				if (!isCatalogueEntryKnown(CacheKey.SONDERFERTIGKEIT, specialAbility.getName()))
+				{
+					sendSpecialAbilityToServer(specialAbility);
+				}
+				monitor.step();
 			}
-			monitor.step();
 		}
+		flushBatch(CacheKey.SONDERFERTIGKEIT);
 		monitor.subtaskDone();
 	}
 
-	private void sendSpecialAbilityToServer(String sonderfertigkeitName, PluginHeldenWerteWerkzeug3 werkzeug)
+	private void sendSpecialAbilityToServer(HeroSnapshot.SpecialAbility specialAbility)
 					throws HeldenWebExportException
 	{
-		PluginSonderfertigkeit specialAbility = werkzeug.getSonderfertigkeit(sonderfertigkeitName);
-		Map<String, String> attributeData = new HashMap<String, String>();
-		attributeData.put("name", sonderfertigkeitName);
-		attributeData.put("art", Integer.toString(specialAbility.getArt()));
+		Map<String, String> attributeData = new HashMap<String, String>(specialAbility.getColumns());
+		attributeData.put("name", specialAbility.getName());
+		attributeData.put("art", Integer.toString(specialAbility.getType()));
 		// Map talent
-		if (specialAbility.getTSTalent() != null)
+		if (specialAbility.getTalent() != null)
 		{
-			UUID talentId = getKey(CacheKey.TALENT, specialAbility.getTSTalent().toString());
+			UUID talentId = getKey(CacheKey.TALENT, specialAbility.getTalent());
 			if (talentId == null)
 			{
 				throw new HeldenWebExportException(MessageFormat.format(
-								"Sonderfertigkeit {0} referenziert unbekanntes Talent {1}", sonderfertigkeitName, specialAbility
-												.getTSTalent().toString()));
+								"Sonderfertigkeit {0} referenziert unbekanntes Talent {1}", specialAbility.getName(),
+								specialAbility.getTalent()));
 			}
 			attributeData.put("talent_id", talentId.toString());
-			putBoolean(attributeData, "elfenlied", specialAbility.istElfenlied());
-			putBoolean(attributeData, "fernkampf_sonderfertigkeit", specialAbility.istFernkampfsonderfertigkeit());
-			putBoolean(attributeData, "gelaendekunde", specialAbility.istGelaendekunde());
-			putBoolean(attributeData, "hexenfluch", specialAbility.istHexenfluch());
-			putBoolean(attributeData, "kampf_sonderfertigkeit", specialAbility.istKampfSonderfertigkeit());
-			putBoolean(attributeData, "klerikal", specialAbility.istKlerikal());
-			putBoolean(attributeData, "liturgie", specialAbility.istLiturgie());
-			putBoolean(attributeData, "liturgiekenntnis", specialAbility.istLiturgiekenntnis());
-			putBoolean(attributeData, "magisch", specialAbility.istMagisch());
-			putBoolean(attributeData, "manoever", specialAbility.istManoever());
-			putBoolean(attributeData, "merkmalskenntnis", specialAbility.istMerkmalskenntnis());
-			putBoolean(attributeData, "nahkampf_sonderfertigkeit", specialAbility.istNahkampfsonderfertigkeit());
-			putBoolean(attributeData, "repraesentation", specialAbility.istRepraesentation());
-			putBoolean(attributeData, "ritual", specialAbility.istRitual());
-			putBoolean(attributeData, "schamanen_ritualkenntnis", specialAbility.istSchamanenRitualkenntnis());
-			putBoolean(attributeData, "talentspezialisierung", specialAbility.istTalentspezialisierung());
-			putBoolean(attributeData, "waffenloser_kampfstil", specialAbility.istWaffenloseKampfstil());
 		}
 
-		UUID id = sendToServer("Sonderfertigkeit", attributeData, "Sonderfertigkeiten.xml", "/sonderfertigkeit/id");
-		keys.put(CacheKey.SONDERFERTIGKEIT + sonderfertigkeitName, id);
-	}
-
-	private void putBoolean(Map<String, String> objectMap, String key, boolean value)
-	{
-		objectMap.put(key, booleanToDb(value));
+		queueCatalogueEntry(CacheKey.SONDERFERTIGKEIT, attributeData, specialAbility.getName());
 	}
 
-	public void synchronizeSpells(PluginHeldenWerteWerkzeug3 werkzeug, ProgressMonitor monitor)
-					throws HeldenWebExportException
+	/**
+	 * Synchronize spells. The spells of all heroes are stored on the server.
+	 * 
+	 * @param heroes
+	 *          The heroes.
+	 * @param monitor
+	 * @throws HeldenWebExportException
+	 */
+	public void synchronizeSpells(List<HeroSnapshot> heroes, ProgressMonitor monitor) throws HeldenWebExportException
 	{
-		try
+		int steps = 0;
+		for (HeroSnapshot hero : heroes)
 		{
-			getIdsFromServer(CacheKey.ZAUBER, "zauber", "Zauber.xml");
+			steps += hero.getSpells().size();
 		}
-		catch (HeldenWebExportException exception)
+		List<String[]> names = new ArrayList<String[]>();
+		for (HeroSnapshot hero : heroes)
 		{
-			throw new HeldenWebExportException("Fehler beim synchronisieren der Zauber", exception);
+			for (HeroSnapshot.Spell spell : hero.getSpells())
+			{
+				names.add(new String[] { spell.getName(), spell.getRepresentation() });
+			}
 		}
-
-		String[][] spells = werkzeug.getZauberAlsString();
-		monitor.startSubtask(null, spells.length);
-		for (String[] spell : spells)
+		resolveKeys(CacheKey.ZAUBER, names);
+		monitor.startSubtask(null, steps);
+		for (HeroSnapshot hero : heroes)
 		{
-			String spellName = spell[0];
-			String representation = spell[1];
-			UUID spellId = getKey(CacheKey.ZAUBER, spellName, representation);
-			if (spellId == null)
+			for (HeroSnapshot.Spell spell : hero.getSpells())
 			{
-				sendSpellToServer(spellName, representation, werkzeug);
+				if (!isCatalogueEntryKnown(CacheKey.ZAUBER, spell.getName(), spell.getRepresentation()))
+				{
+					sendSpellToServer(spell);
+				}
+				monitor.step();
 			}
-			monitor.step();
 		}
+		flushBatch(CacheKey.ZAUBER);
 		monitor.subtaskDone();
 	}
 
-	private void sendSpellToServer(String spellName, String representation, PluginHeldenWerteWerkzeug3 werkzeug)
-					throws HeldenWebExportException
+	private void sendSpellToServer(HeroSnapshot.Spell spell) throws HeldenWebExportException
 	{
-		Map<String, String> attributeData = new HashMap<String, String>();
-		PluginZauber3 spell = werkzeug.getZauber(spellName, representation);
-		PluginZauberInfo spellInfo = werkzeug.getZauberInfo(spell);
-		attributeData.put("name", spellName);
-		attributeData.put("repraesentation", representation);
-		attributeData.put("basiskomplexitaet", werkzeug.getBasisKomplexitaet(spell));
-		attributeData.put("lernkomplexitaet", werkzeug.getLernKomplexitaet(spell));
-		attributeData.put("hauszauber", booleanToDb(spell.isHauszauber()));
-		StringBuilder merkmale = new StringBuilder();
-		for (String merkmal : spell.getMerkmale())
-		{
-			merkmale.append(merkmal);
-			merkmale.append("\n");
-		}
-		attributeData.put("merkmale", merkmale.toString());
+		Map<String, String> attributeData = new HashMap<String, String>(spell.getColumns());
+		attributeData.put("name", spell.getName());
+		attributeData.put("repraesentation", spell.getRepresentation());
 		// Map checks to attributes
+		String[] probe = spell.getProbe();
 		for (int i = 0; i < 3; i++)
 		{
+			UUID probeId = getKey(CacheKey.EIGENSCHAFT, probe[i]);
+			if (probeId == null)
 			{
-				UUID probeId = getKey(CacheKey.EIGENSCHAFT, spell.getProbe()[i]);
-				if (probeId == null)
-				{
-					throw new IllegalStateException(MessageFormat.format("Zauber {0} referenziert unbekannte Eigenschaft {1}",
-									spellName, spell.getProbe()[i]));
-				}
-				attributeData.put("probe" + (i + 1), probeId.toString());
+				throw new IllegalStateException(MessageFormat.format("Zauber {0} referenziert unbekannte Eigenschaft {1}",
+								spell.getName(), probe[i]));
 			}
-		}
-		attributeData.put("kosten", spellInfo.getKosten());
-		attributeData.put("reichweite", spellInfo.getReichweite());
-		attributeData.put("wirkungsdauer", spellInfo.getWirkungsdauer());
-		attributeData.put("zauberdauer", spellInfo.getZauberdauer());
-
-		UUID id = sendToServer("Zauber", attributeData, "Zauber.xml", "/zauber/id");
-		keys.put(CacheKey.ZAUBER + spellName + representation, id);
-	}
-
-	public void synchronizeHeroData(PluginHeldenWerteWerkzeug3 werkzeug) throws HeldenWebExportException
-	{
-		try
-		{
-			getIdsFromServer(CacheKey.HELD, "held", "Helden.xml", false, "identifier");
-		}
-		catch (HeldenWebExportException exception)
-		{
-			throw new HeldenWebExportException("Helden konnten nicht vom Server gelesen werden", exception);
+			attributeData.put("probe" + (i + 1), probeId.toString());
 		}
 
-		sendHeroToServer(werkzeug);
+		queueCatalogueEntry(CacheKey.ZAUBER, attributeData, spell.getName(), spell.getRepresentation());
 	}
 
-	private void sendHeroToServer(PluginHeldenWerteWerkzeug3 werkzeug) throws HeldenWebExportException
+	public void synchronizeHeroData(HeroSnapshot hero) throws HeldenWebExportException
 	{
-		String heroIdentifier = werkzeug.getHeldenID();
-		UUID heroId = getKey(CacheKey.HELD, heroIdentifier);
-
-		PluginHeld hero = werkzeug.getSelectesHeld();
-		HeldAngaben description = hero.getAngaben();
-
-		boolean update = false;
-		if (heroId != null)
-		{
-			update = true;
-		}
-
-		Map<String, Object> objectData = new HashMap<String, Object>();
+		Map<String, Object> objectData = new HashMap<String, Object>(hero.getHeroColumns());
 		// Basic data
-		objectData.put("identifier", heroIdentifier);
-		objectData.put("name", hero.toString());
-		objectData.put("geschlecht", hero.getGeschlechtString());
-		objectData.put("kultur", hero.getKulturString());
-		objectData.put("profession", hero.getProfessionString());
-		objectData.put("rasse", hero.getRasseString());
-		objectData.put("stufe", Integer.toString(hero.getStufe()));
-		objectData.put("zaubersprueche", booleanToDb(hero.hatZaubersprueche()));
-
+		objectData.put("identifier", hero.getIdentifier());
+		objectData.put("name", hero.getName());
 		// Description
-		Map<String, String> descriptionData = new HashMap<String, String>();
-		descriptionData.put("augenfarbe", description.getAugenFarbe());
-		StringBuilder text = new StringBuilder();
-		for (String line : description.getAussehenText())
-		{
-			text.append(line);
-			text.append("\n");
-		}
-		descriptionData.put("aussehen", text.toString());
-		text = new StringBuilder();
-		for (String line : description.getFamilieText())
-		{
-			text.append(line);
-			text.append("\n");
-		}
-		descriptionData.put("familie", text.toString());
-		descriptionData.put("geburtstag", description.getGeburtstagString());
-		descriptionData.put("gewicht", Integer.toString(description.getGewicht(false)));
-		descriptionData.put("groesse", Integer.toString(description.getGroesse()));
-		descriptionData.put("haarfarbe", description.getHaarFarbe());
-		descriptionData.put("stand", description.getStand());
-		descriptionData.put("titel", description.getTitel());
-		objectData.put("Beschreibung", descriptionData);
-
-		Map<String, String> valueData = new HashMap<String, String>();
-		valueData.put("ap_gesamt", Integer.toString(hero.getAbenteuerpunkte()));
-		valueData.put("ap_eingesetzt", Integer.toString(werkzeug.getEingestzteAbenteuerpunkte()));
-		valueData.put("ap_verfuegbar", Integer.toString(werkzeug.getVerfuegbareAbenteuerpunkte()));
-		valueData.put("gp_start", Integer.toString(description.getGPStart()));
-		valueData.put("gp_rest", Integer.toString(description.getGPRest()));
-		objectData.put("Wert", valueData);
+		objectData.put("Beschreibung", new HashMap<String, String>(hero.getDescription()));
+		objectData.put("Wert", new HashMap<String, String>(hero.getValues()));
 
 		cleanEmptyString(objectData);
 
-		if (update)
-		{
-			objectData.put("id", heroId.toString());
-			sendToServer("Held", objectData, "Helden/edit/" + heroId.toString() + ".xml", "/held/id");
-		}
-		else
+		UUID key = upsert(CacheKey.HELD, objectData, hero.getIdentifier());
+		Aggregate aggregate = aggregates.get(compoundKey(CacheKey.HELD, hero.getIdentifier()));
+		if (aggregate != null && key != null)
 		{
-			heroId = sendToServer("Held", objectData, "Helden.xml", "/held/id");
-			keys.put(CacheKey.HELD + heroIdentifier, heroId);
+			// The hero's objects refer to it by its ID
+			aggregates.put(key.toString(), aggregate);
 		}
 	}
 
@@ -967,132 +3152,80 @@ public class Cache
 		}
 	}
 
-	public void synchronizeHeroSpecialAbilities(UUID heroId, PluginHeldenWerteWerkzeug3 werkzeug, ProgressMonitor monitor)
+	public void synchronizeHeroSpecialAbilities(UUID heroId, HeroSnapshot hero, ProgressMonitor monitor)
 					throws HeldenWebExportException
 	{
-		getIdsFromServer(CacheKey.HELD_SONDERFERTIGKEIT, "heldenSonderfertigkeit", "HeldenSonderfertigkeiten.xml",
-						"Helden-Sonderfertigkeiten", false, "held_id", "sonderfertigkeit_id");
+		synchronizedTypes.add(listingScope(CacheKey.HELD_SONDERFERTIGKEIT, heroId.toString()));
 
-		String[] sonderfertigkeiten = werkzeug.getSonderfertigkeitenAlsString();
-		monitor.startSubtask("Sonderfertigkeiten", sonderfertigkeiten.length);
-		for (String specialAbility : sonderfertigkeiten)
+		List<HeroSnapshot.SpecialAbility> sonderfertigkeiten = hero.getSpecialAbilities();
+		monitor.startSubtask("Sonderfertigkeiten", sonderfertigkeiten.size());
+		for (HeroSnapshot.SpecialAbility specialAbility : sonderfertigkeiten)
 		{
-			UUID specialAbilityId = getKey(CacheKey.SONDERFERTIGKEIT, specialAbility);
-			String specialization = werkzeug.getSonderfertigkeit(specialAbility).getSpezialisierung();
+			UUID specialAbilityId = getKey(CacheKey.SONDERFERTIGKEIT, specialAbility.getName());
 			Map<String, String> data = new HashMap<String, String>();
 			data.put("held_id", heroId.toString());
 			data.put("sonderfertigkeit_id", specialAbilityId.toString());
-			data.put("spezialisierung", specialization);
-			sendMappingToServer(CacheKey.HELD_SONDERFERTIGKEIT, heroId, specialAbilityId, data, "HeldenSonderfertigkeit",
-							"HeldenSonderfertigkeiten");
+			data.put("spezialisierung", specialAbility.getSpecialization());
+			sendMappingToServer(CacheKey.HELD_SONDERFERTIGKEIT, heroId, specialAbilityId, data);
 			monitor.step();
 		}
+		flushBatch(CacheKey.HELD_SONDERFERTIGKEIT, heroId);
 		monitor.subtaskDone();
 	}
 
-	/**
-	 * Read all current IDs from the server and put them in the cache.
-	 * 
-	 * @param cacheKey
-	 *          The cache key for this type of data.
-	 * @param elementName
-	 *          The element name in the resulting XML document.
-	 * @param url
-	 *          The URL where the data is requested.
-	 * @param errorLabel
-	 *          Object name for the error message if an exception occurred.
-	 * @param useDefaultIdentifier
-	 *          Use the field "name" as the identifier for the object.
-	 * @param additionalIdentifiers
-	 *          Additional identifying elements. These are added to the cache key.
-	 *          The order of these is preserved.
-	 * @throws HeldenWebExportException
-	 *           Error while reading the data from the server.
-	 */
-	private void getIdsFromServer(CacheKey cacheKey, String elementName, String url, String errorLabel,
-					boolean useDefaultIdentifier, String... additionalIdentifiers) throws HeldenWebExportException
-	{
-		try
-		{
-			getIdsFromServer(cacheKey, elementName, url, useDefaultIdentifier, additionalIdentifiers);
-		}
-		catch (HeldenWebExportException exception)
-		{
-			throw new HeldenWebExportException(
-							MessageFormat.format("{0} konnten nicht vom Server gelesen werden", errorLabel), exception);
-		}
-	}
-
-	public void synchronizeHeroTalents(UUID heroId, PluginHeldenWerteWerkzeug3 werkzeug, ProgressMonitor monitor)
+	public void synchronizeHeroTalents(UUID heroId, HeroSnapshot hero, ProgressMonitor monitor)
 					throws HeldenWebExportException
 	{
-		getIdsFromServer(CacheKey.HELD_TALENT, "heldentalent", "HeldenTalenten.xml", "Helden-Talente", false, "held_id",
-						"talent_id");
+		synchronizedTypes.add(listingScope(CacheKey.HELD_TALENT, heroId.toString()));
 
-		String[] talente = werkzeug.getTalenteAlsString();
-		monitor.startSubtask("Talente", talente.length);
-		for (String talentName : talente)
+		List<HeroSnapshot.Talent> talente = hero.getTalents();
+		monitor.startSubtask("Talente", talente.size());
+		for (HeroSnapshot.Talent talent : talente)
 		{
-			UUID talentId = getKey(CacheKey.TALENT, talentName);
+			UUID talentId = getKey(CacheKey.TALENT, talent.getName());
 			if (talentId == null)
 			{
-				throw new HeldenWebExportException(MessageFormat.format("Held referenziert unbekanntes Talent {0}", talentName));
+				throw new HeldenWebExportException(MessageFormat.format("Held referenziert unbekanntes Talent {0}", talent
+								.getName()));
 			}
-			PluginTalent talent = werkzeug.getTalent(talentName);
 			Map<String, String> data = new HashMap<String, String>();
 			data.put("held_id", heroId.toString());
 			data.put("talent_id", talentId.toString());
-			data.put("talentwert", Integer.toString(werkzeug.getTalentwert(talent)));
-			data.put("attacke", Integer.toString(werkzeug.getAttacke(talent)));
-			data.put("parade", Integer.toString(werkzeug.getParade(talent)));
-			data.put("behinderung", talent.getBehinderung());
-			sendMappingToServer(CacheKey.HELD_TALENT, heroId, talentId, data, "HeldenTalent", "HeldenTalenten");
+			data.put("talentwert", Integer.toString(talent.getValue()));
+			data.put("attacke", Integer.toString(talent.getAttack()));
+			data.put("parade", Integer.toString(talent.getParade()));
+			data.put("behinderung", talent.getHandicap());
+			sendMappingToServer(CacheKey.HELD_TALENT, heroId, talentId, data);
 			monitor.step();
 		}
+		flushBatch(CacheKey.HELD_TALENT, heroId);
 		monitor.subtaskDone();
 	}
 
 	/**
-	 * Send hero->object mapping to the server.
+	 * Send a piece of equipment to the server.
 	 * 
+	 * @param requests
+	 *          The request group of the current stage.
 	 * @param cacheKey
 	 *          Cache key identifier.
 	 * @param heroId
 	 *          The hero ID.
-	 * @param objectId
-	 *          The object's ID.
+	 * @param equipmentName
+	 *          The name of the piece of equipment.
 	 * @param data
 	 *          The data to be sent to the server.
-	 * @param rootElementName
-	 *          The root element name in the generated XML.
-	 * @param url
-	 *          The URL, without trailing &quot;.xml&quot;.
 	 * @throws HeldenWebExportException
 	 */
-	private void sendEquipmentToServer(CacheKey cacheKey, UUID heroId, String equipmentName, Map<String, String> data,
-					String rootElementName, String url) throws HeldenWebExportException
+	private void sendEquipmentToServer(RequestDispatcher.Group requests, CacheKey cacheKey, UUID heroId,
+					String equipmentName, Map<String, String> data) throws HeldenWebExportException
 	{
-		// Cut off extension
-		if (url.endsWith(".xml"))
-		{
-			url = url.substring(0, url.length() - 4);
-		}
-		UUID key = getKey(cacheKey, equipmentName, heroId.toString());
-		if (key == null)
-		{
-			key = sendToServer(rootElementName, data, url + ".xml", "/" + rootElementName.toLowerCase() + "/id");
-			keys.put(cacheKey + equipmentName + heroId.toString(), key);
-		}
-		else
-		{
-			data.put("id", key.toString());
-			sendToServer(rootElementName, data, url + "/edit/" + key.toString() + ".xml", "/" + rootElementName.toLowerCase()
-							+ "/id");
-		}
+		dispatchRow(requests, cacheKey, data, equipmentName, heroId.toString());
 	}
 
 	/**
-	 * Send hero->object mapping to the server.
+	 * Send hero->object mapping to the server. The mapping is queued for a batch
+	 * upload, see {@link #flushBatch(CacheKey, UUID)}.
 	 * 
 	 * @param cacheKey
 	 *          Cache key identifier.
@@ -1102,110 +3235,87 @@ public class Cache
 	 *          The object's ID.
 	 * @param data
 	 *          The data to be sent to the server.
-	 * @param rootElementName
-	 *          The root element name in the generated XML.
-	 * @param url
-	 *          The URL, without trailing &quot;.xml&quot;.
 	 * @throws HeldenWebExportException
 	 */
-	private void sendMappingToServer(CacheKey cacheKey, UUID heroId, UUID objectId, Map<String, String> data,
-					String rootElementName, String url) throws HeldenWebExportException
+	private void sendMappingToServer(CacheKey cacheKey, UUID heroId, UUID objectId, Map<String, String> data)
+					throws HeldenWebExportException
 	{
-		// Cut off extension
-		if (url.endsWith(".xml"))
-		{
-			url = url.substring(0, url.length() - 4);
-		}
-		UUID key = getKey(cacheKey, heroId.toString(), objectId.toString());
-		if (key == null)
-		{
-			key = sendToServer(rootElementName, data, url + ".xml", "/" + rootElementName.toLowerCase() + "/id");
-			keys.put(cacheKey + heroId.toString() + objectId.toString(), key);
-		}
-		else
-		{
-			data.put("id", key.toString());
-			sendToServer(rootElementName, data, url + "/edit/" + key.toString() + ".xml", "/" + rootElementName.toLowerCase()
-							+ "/id");
-		}
+		queueRow(cacheKey, data, heroId.toString(), objectId.toString());
 	}
 
-	public void synchronizeHeroAdvantages(UUID heroId, PluginHeldenWerteWerkzeug3 werkzeug, ProgressMonitor monitor)
+	public void synchronizeHeroAdvantages(UUID heroId, HeroSnapshot hero, ProgressMonitor monitor)
 					throws HeldenWebExportException
 	{
-		getIdsFromServer(CacheKey.HELD_VORTEIL, "heldenvorteil", "HeldenVorteilen.xml", "Helden-Vorteile", false,
-						"held_id", "vorteil_id");
+		synchronizedTypes.add(listingScope(CacheKey.HELD_VORTEIL, heroId.toString()));
 
-		String[] vorteile = werkzeug.getVorteileAlsString();
-		monitor.startSubtask("Vorteile", vorteile.length);
-		for (String vorteilName : vorteile)
+		List<HeroSnapshot.Advantage> vorteile = hero.getAdvantages();
+		monitor.startSubtask("Vorteile", vorteile.size());
+		for (HeroSnapshot.Advantage vorteil : vorteile)
 		{
-			UUID vorteilId = getKey(CacheKey.VORTEIL, vorteilName);
+			UUID vorteilId = getKey(CacheKey.VORTEIL, vorteil.getName());
 			if (vorteilId == null)
 			{
-				throw new HeldenWebExportException(MessageFormat.format("Held referenziert unbekannten Vorteil {0}",
-								vorteilName));
+				throw new HeldenWebExportException(MessageFormat.format("Held referenziert unbekannten Vorteil {0}", vorteil
+								.getName()));
 			}
-			PluginVorteil vorteil = werkzeug.getVorteil(vorteilName);
 			Map<String, String> data = new HashMap<String, String>();
 			data.put("held_id", heroId.toString());
 			data.put("vorteil_id", vorteilId.toString());
-			data.put("wert", Integer.toString(vorteil.getWert()));
-			sendMappingToServer(CacheKey.HELD_VORTEIL, heroId, vorteilId, data, "HeldenVorteil", "HeldenVorteilen");
+			data.put("wert", Integer.toString(vorteil.getValue()));
+			sendMappingToServer(CacheKey.HELD_VORTEIL, heroId, vorteilId, data);
 			monitor.step();
 		}
+		flushBatch(CacheKey.HELD_VORTEIL, heroId);
 		monitor.subtaskDone();
 	}
 
-	public void synchronizeHeroSpells(UUID heroId, PluginHeldenWerteWerkzeug3 werkzeug, ProgressMonitor monitor)
+	public void synchronizeHeroSpells(UUID heroId, HeroSnapshot hero, ProgressMonitor monitor)
 					throws HeldenWebExportException
 	{
-		getIdsFromServer(CacheKey.HELD_ZAUBER, "heldenzauber", "HeldenZauber.xml", "Helden-Zauber", false, "held_id",
-						"zauber_id");
+		synchronizedTypes.add(listingScope(CacheKey.HELD_ZAUBER, heroId.toString()));
 
-		String[][] spells = werkzeug.getZauberAlsString();
-		monitor.startSubtask("Zauber", spells.length);
-		for (String[] spellData : spells)
+		List<HeroSnapshot.Spell> spells = hero.getSpells();
+		monitor.startSubtask("Zauber", spells.size());
+		for (HeroSnapshot.Spell spell : spells)
 		{
-			UUID spellId = getKey(CacheKey.ZAUBER, spellData[0], spellData[1]);
+			UUID spellId = getKey(CacheKey.ZAUBER, spell.getName(), spell.getRepresentation());
 			if (spellId == null)
 			{
 				throw new HeldenWebExportException(MessageFormat.format(
-								"Held referenziert unbekannten Zauber {0} in Repräsentation {1}", spellData[0], spellData[1]));
+								"Held referenziert unbekannten Zauber {0} in Repräsentation {1}", spell.getName(), spell
+												.getRepresentation()));
 			}
-			PluginZauber3 spell = werkzeug.getZauber(spellData[0], spellData[1]);
 			Map<String, String> data = new HashMap<String, String>();
 			data.put("held_id", heroId.toString());
 			data.put("zauber_id", spellId.toString());
-			data.put("zauberfertigkeitswert", Integer.toString(werkzeug.getZauberInfo(spell).getZauberfertigkeitsWert()));
-			sendMappingToServer(CacheKey.HELD_ZAUBER, heroId, spellId, data, "HeldenZauber", "HeldenZauber");
+			data.put("zauberfertigkeitswert", Integer.toString(spell.getValue()));
+			sendMappingToServer(CacheKey.HELD_ZAUBER, heroId, spellId, data);
 			monitor.step();
 		}
+		flushBatch(CacheKey.HELD_ZAUBER, heroId);
 		monitor.subtaskDone();
 	}
 
-	public void synchronizeHeroAttributes(UUID heroId, PluginHeldenWerteWerkzeug3 werkzeug, ProgressMonitor monitor)
+	public void synchronizeHeroAttributes(UUID heroId, HeroSnapshot hero, ProgressMonitor monitor)
 					throws HeldenWebExportException
 	{
-		getIdsFromServer(CacheKey.HELD_EIGENSCHAFT, "eigenschaftenheld", "EigenschaftenHelden.xml", "Helden-Eigenschaften",
-						false, "held_id", "eigenschaft_id");
+		synchronizedTypes.add(listingScope(CacheKey.HELD_EIGENSCHAFT, heroId.toString()));
 
-		String[] attributes = werkzeug.getEigenschaftsbezeichner();
-		monitor.startSubtask("Eigenschaften", werkzeug.getEigenschaftsbezeichner().length + 1);
-		for (String attributeName : attributes)
+		List<HeroSnapshot.Attribute> attributes = hero.getAttributes();
+		monitor.startSubtask("Eigenschaften", attributes.size() + 1);
+		for (HeroSnapshot.Attribute attribute : attributes)
 		{
-			UUID attributeId = getKey(CacheKey.EIGENSCHAFT, attributeName);
+			UUID attributeId = getKey(CacheKey.EIGENSCHAFT, attribute.getName());
 			if (attributeId == null)
 			{
 				throw new HeldenWebExportException(MessageFormat.format("Held referenziert unbekannte Eigenschaft {0}",
-								attributeName));
+								attribute.getName()));
 			}
 			Map<String, String> data = new HashMap<String, String>();
 			data.put("held_id", heroId.toString());
 			data.put("eigenschaft_id", attributeId.toString());
-			data.put("wert", Integer.toString(werkzeug.getEigenschaftswert(attributeName)));
-			sendMappingToServer(CacheKey.HELD_EIGENSCHAFT, heroId, attributeId, data, "EigenschaftenHeld",
-							"EigenschaftenHelden");
+			data.put("wert", Integer.toString(attribute.getValue()));
+			sendMappingToServer(CacheKey.HELD_EIGENSCHAFT, heroId, attributeId, data);
 			monitor.step();
 		}
 
@@ -1219,331 +3329,174 @@ public class Cache
 		Map<String, String> data = new HashMap<String, String>();
 		data.put("held_id", heroId.toString());
 		data.put("eigenschaft_id", attributeId.toString());
-		data.put("wert", Integer.toString(werkzeug.getGeschwindigkeit()));
-		sendMappingToServer(CacheKey.HELD_EIGENSCHAFT, heroId, attributeId, data, "EigenschaftenHeld",
-						"EigenschaftenHelden");
+		data.put("wert", Integer.toString(hero.getSpeed()));
+		sendMappingToServer(CacheKey.HELD_EIGENSCHAFT, heroId, attributeId, data);
 		monitor.step();
+		flushBatch(CacheKey.HELD_EIGENSCHAFT, heroId);
 		monitor.subtaskDone();
 	}
 
-	public void syncMeleeWeapons(UUID heldId, PluginHeldenWerteWerkzeug3 werkzeug, ProgressMonitor monitor)
+	public void syncMeleeWeapons(UUID heldId, HeroSnapshot hero, ProgressMonitor monitor)
 					throws HeldenWebExportException
 	{
-		getIdsFromServer(CacheKey.NAHKAMPFWAFFE, "nahkampfwaffe", "Nahkampfwaffen.xml", "Nahkampfwaffen", true, "held_id");
-
-		PluginNahkampfWaffe2[] waffen = werkzeug.getAusruestung2().getNahkampfWaffen();
-		monitor.startSubtask("Nahkampfwaffen", waffen.length);
-		for (PluginNahkampfWaffe2 waffe : waffen)
-		{
-			if (waffe == null)
-			{
-				// Not all weapons may be set
-				continue;
-			}
-			UUID talentId = getKey(CacheKey.TALENT, waffe.getBenutztesTalent().getBezeichnung());
-			if (talentId == null)
-			{
-				throw new HeldenWebExportException(MessageFormat.format(
-								"Nahkampfwaffe {0} referenziert unbekanntes Talent {1}", waffe.getName(), waffe.getBenutztesTalent()
-												.getBezeichnung()));
-			}
-
-			Map<String, String> data = new HashMap<String, String>();
-			data.put("held_id", heldId.toString());
-			data.put("talent_id", talentId.toString());
-			data.put("name", waffe.getName());
-			data.put("attacke", Integer.toString(waffe.getAttacke()));
-			data.put("parade", Integer.toString(waffe.getParade()));
-			data.put("trefferpunkte", tpToString(waffe.getTrefferpunkte()));
-			data.put("trefferpunkte_final", tpToString(waffe.getEndTP()));
-			data.put("koerperkraftzuschlag",
-							String.format("%d/%d", waffe.getKoerperkraftzuschlag()[0], waffe.getKoerperkraftzuschlag()[1]));
-			data.put("bruchfaktor_minimal", Integer.toString(waffe.getBF()[0]));
-			data.put("bruchfaktor_aktuell", Integer.toString(waffe.getBF()[1]));
-			data.put("inimodifikator", Integer.toString(waffe.getINIMod()));
-			data.put("distanzklasse", arrayToString(waffe.getDistanzklasse()));
-			data.put("ausdauerschaden", booleanToDb(waffe.isSchadensartAusdauer()));
-			data.put("waffenmodifikator_attacke", Integer.toString(waffe.getWmAT()));
-			data.put("waffenmodifikator_parade", Integer.toString(waffe.getWmPA()));
-
-			sendEquipmentToServer(CacheKey.NAHKAMPFWAFFE, heldId, waffe.getName(), data, "Nahkampfwaffe", "Nahkampfwaffen");
-			monitor.step();
-		}
-		monitor.subtaskDone();
+		syncWeapons(CacheKey.NAHKAMPFWAFFE, "Nahkampfwaffe", heldId, hero.getMeleeWeapons(), monitor);
 	}
 
-	private String arrayToString(String[] array)
+	public void syncRangedWeapons(UUID heldId, HeroSnapshot hero, ProgressMonitor monitor)
+					throws HeldenWebExportException
 	{
-		StringBuilder sb = new StringBuilder();
-		for (int i = 0; i < array.length; i++)
-		{
-			if (i > 0)
-			{
-				sb.append(", ");
-			}
-			sb.append(array[i]);
-		}
-		return sb.toString();
+		syncWeapons(CacheKey.FERNKAMPFWAFFE, "Fernkampfwaffe", heldId, hero.getRangedWeapons(), monitor);
 	}
 
 	/**
-	 * Convert hitpoint array to string.
+	 * Send weapons to the server. The talent of each weapon is resolved to its
+	 * ID.
 	 * 
-	 * @param tp
-	 *          Trefferpunkte, 0: Anzahl Würfel; 1: Würfelart; 2: Festwert
-	 * @return
+	 * @param cacheKey
+	 *          Cache key identifier.
+	 * @param label
+	 *          The type of weapon, for messages.
+	 * @param heldId
+	 *          The hero ID.
+	 * @param waffen
+	 *          The weapons.
+	 * @param monitor
+	 * @throws HeldenWebExportException
 	 */
-	private String tpToString(int[] tp)
-	{
-		if (tp == null || tp.length != 3)
-		{
-			return "";
-		}
-		return String.format("%dw%d%+d", tp[0], tp[1], tp[2]);
-	}
-
-	public void syncRangedWeapons(UUID heldId, PluginHeldenWerteWerkzeug3 werkzeug, ProgressMonitor monitor)
-					throws HeldenWebExportException
+	private void syncWeapons(CacheKey cacheKey, String label, UUID heldId, List<HeroSnapshot.Equipment> waffen,
+					ProgressMonitor monitor) throws HeldenWebExportException
 	{
-		getIdsFromServer(CacheKey.FERNKAMPFWAFFE, "fernkampfwaffe", "Fernkampfwaffen.xml", "Fernkampfwaffen", true,
-						"held_id");
+		synchronizedTypes.add(listingScope(cacheKey, heldId.toString()));
+		RequestDispatcher.Group requests = dispatcher.newGroup();
 
-		PluginFernkampfWaffe[] waffen = werkzeug.getAusruestung2().getFernkampfWaffen();
-		monitor.startSubtask("Fernkampfwaffen", waffen.length);
-		for (PluginFernkampfWaffe waffe : waffen)
+		monitor.startSubtask(label + "n", waffen.size());
+		for (HeroSnapshot.Equipment waffe : waffen)
 		{
-			if (waffe == null)
-			{
-				// Not all weapons may be set
-				continue;
-			}
-			UUID talentId = getKey(CacheKey.TALENT, waffe.getTalent().getBezeichnung());
+			UUID talentId = getKey(CacheKey.TALENT, waffe.getTalent());
 			if (talentId == null)
 			{
-				throw new HeldenWebExportException(MessageFormat.format(
-								"Nahkampfwaffe {0} referenziert unbekanntes Talent {1}", waffe.toString(), waffe.getTalent()
-												.getBezeichnung()));
+				throw new HeldenWebExportException(MessageFormat.format("{0} {1} referenziert unbekanntes Talent {2}", label,
+								waffe.getName(), waffe.getTalent()));
 			}
 
-			Map<String, String> data = new HashMap<String, String>();
+			Map<String, String> data = new HashMap<String, String>(waffe.getColumns());
 			data.put("held_id", heldId.toString());
 			data.put("talent_id", talentId.toString());
-			data.put("name", waffe.toString());
-			try
-			{
-				// Try to use newer interface
-				data.put("fernkampfwert", Integer.toString(((PluginFernkampfWaffe2) waffe).getFernkammpfWert()));
-			}
-			catch (ClassCastException e)
-			{
-				// New interface not available
-				data.put("fernkampfwert", Integer.toString(werkzeug.getTalentwert(waffe.getTalent())));
-			}
-			data.put("trefferpunkte", tpToString(waffe.getTrefferpunkte()));
-			data.put("ladezeit", Integer.toString(waffe.getLaden()));
-			data.put("munitionsart", waffe.getMunitionsArt());
-			int[] reichweite = waffe.getReichweite();
-			int[] trefferpunkte = waffe.getTrefferpunkteModifikation();
-			data.put("reichweite0", Integer.toString(reichweite[0]));
-			data.put("trefferpunkte0", Integer.toString(trefferpunkte[0]));
-			data.put("reichweite1", Integer.toString(reichweite[1]));
-			data.put("trefferpunkte1", Integer.toString(trefferpunkte[1]));
-			data.put("reichweite2", Integer.toString(reichweite[2]));
-			data.put("trefferpunkte2", Integer.toString(trefferpunkte[2]));
-			data.put("reichweite3", Integer.toString(reichweite[3]));
-			data.put("trefferpunkte3", Integer.toString(trefferpunkte[3]));
-			data.put("reichweite4", Integer.toString(reichweite[4]));
-			data.put("trefferpunkte4", Integer.toString(trefferpunkte[4]));
-
-			sendEquipmentToServer(CacheKey.FERNKAMPFWAFFE, heldId, waffe.toString(), data, "Fernkampfwaffe",
-							"Fernkampfwaffen");
+
+			sendEquipmentToServer(requests, cacheKey, heldId, waffe.getName(), data);
 			monitor.step();
 		}
+		requests.await();
 		monitor.subtaskDone();
 	}
 
-	public void syncArmor(UUID heldId, PluginHeldenWerteWerkzeug3 werkzeug, ProgressMonitor monitor)
-					throws HeldenWebExportException
+	public void syncArmor(UUID heldId, HeroSnapshot hero, ProgressMonitor monitor) throws HeldenWebExportException
 	{
-		getIdsFromServer(CacheKey.RUESTUNG, "ruestung", "Ruestungen.xml", "Rüstungen", true, "held_id");
+		synchronizedTypes.add(listingScope(CacheKey.RUESTUNG, heldId.toString()));
+		RequestDispatcher.Group requests = dispatcher.newGroup();
 
-		PluginRuestungsTeil[] ruestungen = werkzeug.getAusruestung2().getRuestungsTeile();
-		monitor.startSubtask("Rüstungen", ruestungen.length + 1);
-		for (PluginRuestungsTeil ruestung : ruestungen)
+		List<HeroSnapshot.Equipment> ruestungen = hero.getArmor();
+		monitor.startSubtask("Rüstungen", ruestungen.size() + 1);
+		for (HeroSnapshot.Equipment ruestung : ruestungen)
 		{
-			if (ruestung == null)
-			{
-				// Not all armor parts may be set
-				continue;
-			}
-
-			sendArmorToServer(heldId, werkzeug, ruestung, false);
+			sendArmorToServer(requests, heldId, ruestung);
 			monitor.step();
 		}
-		PluginRuestungsTeil gesamtRuestung = werkzeug.getAusruestung2().getGesammtRuestung();
+		HeroSnapshot.Equipment gesamtRuestung = hero.getCompleteArmor();
 		if (gesamtRuestung != null)
 		{
-			sendArmorToServer(heldId, werkzeug, gesamtRuestung, true);
+			sendArmorToServer(requests, heldId, gesamtRuestung);
 			monitor.step();
 		}
+		requests.await();
 		monitor.subtaskDone();
 	}
 
-	private void sendArmorToServer(UUID heldId, PluginHeldenWerteWerkzeug3 werkzeug, PluginRuestungsTeil ruestung,
-					boolean complete) throws HeldenWebExportException
+	private void sendArmorToServer(RequestDispatcher.Group requests, UUID heldId, HeroSnapshot.Equipment ruestung)
+					throws HeldenWebExportException
 	{
-		Map<String, String> data = new HashMap<String, String>();
+		Map<String, String> data = new HashMap<String, String>(ruestung.getColumns());
 		data.put("held_id", heldId.toString());
-		data.put("name", ruestung.toString());
-		data.put("gesamt", booleanToDb(complete));
-		data.put("zeug", booleanToDb(ruestung.istZeug()));
-		data.put("anzahl_teile", Integer.toString(ruestung.getAnzahlTeile()));
-		data.put("behinderung_gesamt", Integer.toString(ruestung.getGesammtBehinderung()));
-		data.put("schutz_gesamt", Integer.toString(ruestung.getGesamtSchutz()));
-		data.put("schutz_gesamt_zonen", Integer.toString(ruestung.getGesammtZonenSchutz()));
-		data.put("schutz_bauch", Integer.toString(ruestung.getBauchSchutz()));
-		data.put("schutz_brust", Integer.toString(ruestung.getBrustSchutz()));
-		data.put("schutz_kopf", Integer.toString(ruestung.getKopfSchutz()));
-		data.put("schutz_ruecken", Integer.toString(ruestung.getRueckenSchutz()));
-		data.put("schutz_arm_links", Integer.toString(ruestung.getLinkerArmSchutz()));
-		data.put("schutz_arm_rechts", Integer.toString(ruestung.getRechterArmSchutz()));
-		data.put("schutz_bein_links", Integer.toString(ruestung.getLinkesBeinSchutz()));
-		data.put("schutz_bein_rechts", Integer.toString(ruestung.getRechtesBeinSchutz()));
-		sendEquipmentToServer(CacheKey.RUESTUNG, heldId, ruestung.toString(), data, "Ruestung", "Ruestungen");
-	}
-
-	public void syncShields(UUID heldId, PluginHeldenWerteWerkzeug3 werkzeug, ProgressMonitor monitor)
-					throws HeldenWebExportException
+		sendEquipmentToServer(requests, CacheKey.RUESTUNG, heldId, ruestung.getName(), data);
+	}
+
+	public void syncShields(UUID heldId, HeroSnapshot hero, ProgressMonitor monitor) throws HeldenWebExportException
 	{
-		getIdsFromServer(CacheKey.SCHILD, "schild", "Schilde.xml", "Schilde", true, "held_id");
+		synchronizedTypes.add(listingScope(CacheKey.SCHILD, heldId.toString()));
+		RequestDispatcher.Group requests = dispatcher.newGroup();
 
-		PluginSchildParadewaffe[] schilde = werkzeug.getAusruestung2().getSchildParadewaffe();
-		monitor.startSubtask("Schilde und Paradewaffen", schilde.length);
-		for (PluginSchildParadewaffe schild : schilde)
+		List<HeroSnapshot.Equipment> schilde = hero.getShields();
+		monitor.startSubtask("Schilde und Paradewaffen", schilde.size());
+		for (HeroSnapshot.Equipment schild : schilde)
 		{
-			if (schild == null)
-			{
-				// Not all shields might be set
-				continue;
-			}
-
-			Map<String, String> data = new HashMap<String, String>();
+			Map<String, String> data = new HashMap<String, String>(schild.getColumns());
 			data.put("held_id", heldId.toString());
-			data.put("name", schild.getName());
-			data.put("parade", Integer.toString(schild.getParade()));
-			data.put("art", schild.getBenutzungsart());
-			data.put("inimodifikator", Integer.toString(schild.getInitiativeModifikator()));
-			data.put("waffenmodifikator_attacke", Integer.toString(schild.getWaffenModifikatorAT()));
-			data.put("waffenmodifikator_parade", Integer.toString(schild.getWaffenModifikatorPA()));
-			data.put("bruchfaktor_minimal", Integer.toString(schild.getBruchfaktorMin()));
-			data.put("bruchfaktor_aktuell", Integer.toString(schild.getBruchfaktor()));
-
-			sendEquipmentToServer(CacheKey.SCHILD, heldId, schild.getName(), data, "Schild", "Schilde");
+
+			sendEquipmentToServer(requests, CacheKey.SCHILD, heldId, schild.getName(), data);
 			monitor.step();
 		}
+		requests.await();
 		monitor.subtaskDone();
 	}
 
-	public void syncCombat(UUID heldId, PluginHeldenWerteWerkzeug3 werkzeug, ProgressMonitor monitor)
-					throws HeldenWebExportException
+	public void syncCombat(UUID heldId, HeroSnapshot hero, ProgressMonitor monitor) throws HeldenWebExportException
 	{
-		getIdsFromServer(CacheKey.KAMPF, "kampf", "Kampf.xml", "Kampfwerte", false, "held_id");
+		synchronizedTypes.add(listingScope(CacheKey.KAMPF, heldId.toString()));
 
-		Map<String, String> data = new HashMap<String, String>();
+		Map<String, String> data = new HashMap<String, String>(hero.getCombat());
 		data.put("held_id", heldId.toString());
-		data.put("ausweichen", Integer.toString(werkzeug.getAusruestung2().getAusweichen()));
-		data.put("raufen_attacke", Integer.toString(werkzeug.getAusruestung2().getRauferAttacke()));
-		data.put("raufen_parade", Integer.toString(werkzeug.getAusruestung2().getRaufenParade()));
-		data.put("raufen_trefferpunkte", werkzeug.getAusruestung2().getRaufenTP());
-		data.put("ringen_attacke", Integer.toString(werkzeug.getAusruestung2().getRingenAttacke()));
-		data.put("ringen_parade", Integer.toString(werkzeug.getAusruestung2().getRingenParade()));
-		data.put("ringen_trefferpunkte", werkzeug.getAusruestung2().getRingenTP());
 
-		UUID key = getKey(CacheKey.KAMPF, heldId.toString());
-		if (key == null)
-		{
-			key = sendToServer("Kampf", data, "Kampf.xml", "/kampf/id");
-			keys.put(CacheKey.KAMPF + heldId.toString(), key);
-		}
-		else
-		{
-			sendToServer("Kampf", data, "Kampf/edit/" + key.toString() + ".xml", "/kampf/id");
-		}
+		upsert(CacheKey.KAMPF, data, heldId.toString());
 	}
 
-	public void synchronizeInventory(UUID heldId, PluginHeldenWerteWerkzeug3 werkzeug, ProgressMonitor monitor)
+	public void synchronizeInventory(UUID heldId, HeroSnapshot hero, ProgressMonitor monitor)
 					throws HeldenWebExportException
 	{
-		getIdsFromServer(CacheKey.GEGENSTAENDE, "gegenstand", "Gegenstaende.xml", "Gegenstände", true, "held_id", "index");
+		synchronizedTypes.add(listingScope(CacheKey.GEGENSTAENDE, heldId.toString()));
+		RequestDispatcher.Group requests = dispatcher.newGroup();
 
-		ArrayList<String> inventory = werkzeug.getInventarAlsString();
+		Map<String, List<HeroSnapshot.Equipment>> inventory = hero.getItems();
 		monitor.startSubtask("Gegenstände", inventory.size());
-		for (String itemName : inventory)
+		for (Map.Entry<String, List<HeroSnapshot.Equipment>> entry : inventory.entrySet())
 		{
-			PluginGegenstand[] items = werkzeug.getGegenstand(itemName);
-			for (int index = 0; index < items.length; index++)
+			List<HeroSnapshot.Equipment> items = entry.getValue();
+			for (int index = 0; index < items.size(); index++)
 			{
-				String indexString = Integer.toString(index);
-				PluginGegenstand item = items[index];
+				HeroSnapshot.Equipment item = items.get(index);
 				if (item == null)
 				{
 					continue;
 				}
 
-				Map<String, String> data = new HashMap<String, String>();
+				Map<String, String> data = new HashMap<String, String>(item.getColumns());
 				data.put("held_id", heldId.toString());
-				data.put("name", item.toString());
-				data.put("index", indexString);
-				data.put("anzahl", Integer.toString(item.getAnzahl()));
-				data.put("anzeigename", item.getName());
-				data.put("gewicht", Float.toString(item.getGewicht()));
-				data.put("preis", Integer.toString(item.getPreis()));
-
-				UUID key = getKey(CacheKey.GEGENSTAENDE, itemName, heldId.toString(), indexString);
-				if (key == null)
-				{
-					key = sendToServer("Gegenstand", data, "Gegenstaende.xml", "/gegenstand/id");
-					keys.put(CacheKey.GEGENSTAENDE + itemName + heldId.toString() + indexString, key);
-				}
-				else
-				{
-					sendToServer("Gegenstand", data, "Gegenstaende/edit/" + key.toString() + ".xml", "/gegenstand/id");
-				}
+
+				dispatchRow(requests, CacheKey.GEGENSTAENDE, data, entry.getKey(), heldId.toString(), Integer
+								.toString(index));
 			}
 			monitor.step();
 		}
+		requests.await();
 		monitor.subtaskDone();
 	}
 
-	public void syncronizeMoney(UUID heldId, PluginHeldenWerteWerkzeug3 werkzeug, ProgressMonitor monitor)
+	public void syncronizeMoney(UUID heldId, HeroSnapshot hero, ProgressMonitor monitor)
 					throws HeldenWebExportException
 	{
-		getIdsFromServer(CacheKey.MUENZEN, "muenze", "Muenzen.xml", "Münzen", true, "held_id");
+		synchronizedTypes.add(listingScope(CacheKey.MUENZEN, heldId.toString()));
+		RequestDispatcher.Group requests = dispatcher.newGroup();
 
-		GeldBoerse boerse = werkzeug.getGeldBoerse();
-		Iterator<Muenze> münzen = boerse.getMuenzeIter();
-		monitor.startSubtask("Münzen", boerse.getGeldStrings().size());
-		while (münzen.hasNext())
+		List<HeroSnapshot.Equipment> münzen = hero.getCoins();
+		monitor.startSubtask("Münzen", münzen.size());
+		for (HeroSnapshot.Equipment münze : münzen)
 		{
-			Muenze münze = münzen.next();
-			Map<String, String> data = new HashMap<String, String>();
+			Map<String, String> data = new HashMap<String, String>(münze.getColumns());
 			data.put("held_id", heldId.toString());
-			data.put("name", münze.getBezeichner());
-			data.put("gruppe", münze.getWaehrungsBezeichner());
-			data.put("anzahl", Integer.toString(boerse.getMuenzAnzahl(münze)));
 
-			UUID key = getKey(CacheKey.MUENZEN, münze.getBezeichner(), heldId.toString());
-			if (key == null)
-			{
-				key = sendToServer("Muenze", data, "Muenzen.xml", "/muenze/id");
-				keys.put(CacheKey.MUENZEN + münze.getBezeichner() + heldId.toString(), key);
-			}
-			else
-			{
-				sendToServer("Muenze", data, "Muenzen/edit/" + key.toString() + ".xml", "/muenze/id");
-			}
+			dispatchRow(requests, CacheKey.MUENZEN, data, münze.getName(), heldId.toString());
 			monitor.step();
 		}
+		requests.await();
 		monitor.subtaskDone();
 	}
 }
@@ -0,0 +1,103 @@
+package de.martindreier.heldenweb.export.sync;
+
+/**
+ * Stops sending requests to a server which is clearly down. After a number of
+ * consecutive failures the breaker opens and requests fail immediately. Once the
+ * open time has elapsed, a single request is let through; if it succeeds the
+ * breaker closes again, otherwise it stays open for another period.
+ * 
+ * @author Martin Dreier <martin@martindreier.de>
+ * 
+ */
+class CircuitBreaker
+{
+	/**
+	 * Number of consecutive failures which opens the breaker. <code>0</code>
+	 * disables the breaker.
+	 */
+	private final int		failureThreshold;
+
+	/**
+	 * Time in milliseconds during which requests are rejected.
+	 */
+	private final long	openTime;
+
+	private int					failures;
+	private long				openUntil;
+
+	/**
+	 * <code>true</code> while the request checking if the server is available
+	 * again is running.
+	 */
+	private boolean			probing;
+
+	/**
+	 * Create a new circuit breaker.
+	 * 
+	 * @param failureThreshold
+	 *          Number of consecutive failures which opens the breaker.
+	 *          <code>0</code> disables the breaker.
+	 * @param openTime
+	 *          Time in milliseconds during which requests are rejected.
+	 */
+	CircuitBreaker(int failureThreshold, long openTime)
+	{
+		this.failureThreshold = failureThreshold;
+		this.openTime = openTime;
+	}
+
+	/**
+	 * Check if a request may be sent. The result of a permitted request must be
+	 * reported with {@link #recordSuccess()} or {@link #recordFailure()}.
+	 * 
+	 * @return <code>false</code> if the breaker is open.
+	 */
+	synchronized boolean allowRequest()
+	{
+		if (failureThreshold <= 0 || failures < failureThreshold)
+		{
+			return true;
+		}
+		if (System.currentTimeMillis() < openUntil || probing)
+		{
+			return false;
+		}
+		probing = true;
+		return true;
+	}
+
+	/**
+	 * Record that the server answered a request.
+	 */
+	synchronized void recordSuccess()
+	{
+		failures = 0;
+		probing = false;
+	}
+
+	/**
+	 * Record that a request failed because the server was not available.
+	 * 
+	 * @return <code>true</code> if the breaker was opened by this failure.
+	 */
+	synchronized boolean recordFailure()
+	{
+		boolean wasOpen = failureThreshold > 0 && failures >= failureThreshold;
+		failures++;
+		probing = false;
+		if (failureThreshold > 0 && failures >= failureThreshold)
+		{
+			openUntil = System.currentTimeMillis() + openTime;
+			return !wasOpen;
+		}
+		return false;
+	}
+
+	/**
+	 * @return The time in milliseconds until a request is let through again.
+	 */
+	synchronized long getRemainingOpenTime()
+	{
+		return Math.max(openUntil - System.currentTimeMillis(), 0);
+	}
+}
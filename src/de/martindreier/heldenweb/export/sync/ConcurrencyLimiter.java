@@ -0,0 +1,153 @@
+package de.martindreier.heldenweb.export.sync;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Limits the number of requests in flight to what the server can sustain. The
+ * limit grows by one for every limit's worth of requests answered promptly
+ * (additive increase) and is reduced by a factor if the server answers slowly
+ * or reports that it is overloaded (multiplicative decrease), so it settles
+ * just below the point where the server slows down.
+ * <p>
+ * A response is slow if it took more than {@link #LATENCY_TOLERANCE} times the
+ * shortest latency observed for the same endpoint. The limit is reduced at most
+ * once per round trip: responses to requests sent before the last reduction
+ * reflect the old limit and are not counted again.
+ * 
+ * @author Martin Dreier <martin@martindreier.de>
+ * 
+ */
+public class ConcurrencyLimiter
+{
+	/**
+	 * Responses slower than this multiple of the shortest latency count as a
+	 * sign of congestion.
+	 */
+	private static final double				LATENCY_TOLERANCE	= 2.0;
+
+	/**
+	 * Factor applied to the limit if the server reports that it is overloaded.
+	 */
+	private static final double				ERROR_DECREASE		= 0.5;
+
+	/**
+	 * Factor applied to the limit if the server answers slowly.
+	 */
+	private static final double				LATENCY_DECREASE	= 0.8;
+
+	/**
+	 * The shortest latency moves towards slower responses by this fraction of
+	 * the difference, so that it follows a server which became slower for good.
+	 */
+	private static final double				BASELINE_DRIFT		= 0.01;
+
+	private final int									ceiling;
+	private double										limit;
+	private int												inFlight;
+	private long											lastDecrease;
+
+	/**
+	 * Shortest latency in nanoseconds by endpoint.
+	 */
+	private final Map<String, Double>	baselines					= new HashMap<String, Double>();
+
+	/**
+	 * Create a new limiter.
+	 * 
+	 * @param initialLimit
+	 *          The number of requests allowed in flight at first.
+	 * @param ceiling
+	 *          The maximum number of requests in flight.
+	 */
+	public ConcurrencyLimiter(int initialLimit, int ceiling)
+	{
+		this.ceiling = Math.max(ceiling, 1);
+		this.limit = Math.min(Math.max(initialLimit, 1), this.ceiling);
+		this.lastDecrease = System.nanoTime();
+	}
+
+	/**
+	 * Wait until another request may be sent. Every call must be followed by a
+	 * call to {@link #release(long, String, long, boolean)}.
+	 * 
+	 * @return The time the request was admitted, as returned by
+	 *         {@link System#nanoTime()}.
+	 * @throws InterruptedException
+	 */
+	synchronized long acquire() throws InterruptedException
+	{
+		while (inFlight >= (int) limit)
+		{
+			wait();
+		}
+		inFlight++;
+		return System.nanoTime();
+	}
+
+	/**
+	 * Record the outcome of a request and let the next request through.
+	 * 
+	 * @param admitted
+	 *          The value returned by {@link #acquire()}.
+	 * @param endpoint
+	 *          The endpoint of the request.
+	 * @param latency
+	 *          The latency of the request in nanoseconds.
+	 * @param overloaded
+	 *          <code>true</code> if the server reported that it is overloaded
+	 *          or did not answer in time.
+	 * @return <code>true</code> if the limit was reduced.
+	 */
+	synchronized boolean release(long admitted, String endpoint, long latency, boolean overloaded)
+	{
+		boolean saturated = inFlight >= (int) limit;
+		inFlight--;
+		notifyAll();
+
+		boolean slow = false;
+		if (!overloaded)
+		{
+			Double baseline = baselines.get(endpoint);
+			if (baseline == null || latency < baseline)
+			{
+				baselines.put(endpoint, Double.valueOf(latency));
+			}
+			else
+			{
+				slow = latency > baseline * LATENCY_TOLERANCE;
+				baselines.put(endpoint, baseline + (latency - baseline) * BASELINE_DRIFT);
+			}
+		}
+		if (overloaded || slow)
+		{
+			if (admitted - lastDecrease < 0)
+			{
+				// Sent before the last reduction
+				return false;
+			}
+			limit = Math.max(limit * (overloaded ? ERROR_DECREASE : LATENCY_DECREASE), 1);
+			lastDecrease = System.nanoTime();
+			return true;
+		}
+		if (saturated)
+		{
+			// Only a limit which is actually used is raised
+			limit = Math.min(limit + 1 / limit, ceiling);
+		}
+		return false;
+	}
+
+	/**
+	 * @return The current number of requests allowed in flight.
+	 */
+	public synchronized int getLimit()
+	{
+		return (int) limit;
+	}
+
+	public int getCeiling()
+	{
+		return ceiling;
+	}
+}
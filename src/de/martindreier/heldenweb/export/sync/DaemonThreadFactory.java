@@ -0,0 +1,52 @@
+package de.martindreier.heldenweb.export.sync;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates daemon threads, so that background work of the export does not keep
+ * the application alive. The threads are numbered.
+ * 
+ * @author Martin Dreier <martin@martindreier.de>
+ * 
+ */
+class DaemonThreadFactory implements ThreadFactory
+{
+	private final AtomicInteger	threadNumber	= new AtomicInteger();
+	private final String				name;
+	private final int						priority;
+
+	/**
+	 * Create a factory for threads of normal priority.
+	 * 
+	 * @param name
+	 *          The name of the threads, followed by their number.
+	 */
+	DaemonThreadFactory(String name)
+	{
+		this(name, Thread.NORM_PRIORITY);
+	}
+
+	/**
+	 * Create a factory.
+	 * 
+	 * @param name
+	 *          The name of the threads, followed by their number.
+	 * @param priority
+	 *          The priority of the threads.
+	 */
+	DaemonThreadFactory(String name, int priority)
+	{
+		this.name = name;
+		this.priority = priority;
+	}
+
+	@Override
+	public Thread newThread(Runnable runnable)
+	{
+		Thread thread = new Thread(runnable, name + "-" + threadNumber.incrementAndGet());
+		thread.setDaemon(true);
+		thread.setPriority(priority);
+		return thread;
+	}
+}
@@ -0,0 +1,59 @@
+package de.martindreier.heldenweb.export.sync;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Helpers for the MD5 hashes used to name files and to detect changed
+ * content.
+ * 
+ * @author Martin Dreier <martin@martindreier.de>
+ * 
+ */
+final class Digests
+{
+	private static final Charset	UTF8	= Charset.forName("UTF-8");
+
+	private Digests()
+	{
+		// Only static helpers
+	}
+
+	/**
+	 * Create an MD5 digest.
+	 * 
+	 * @return The digest.
+	 */
+	static MessageDigest md5()
+	{
+		try
+		{
+			return MessageDigest.getInstance("MD5");
+		}
+		catch (NoSuchAlgorithmException exception)
+		{
+			// Every Java platform must support MD5
+			throw new IllegalStateException(exception);
+		}
+	}
+
+	/**
+	 * Get the MD5 hash of a text.
+	 * 
+	 * @param text
+	 *          The text. It is encoded as UTF-8.
+	 * @return The hash as lower case hexadecimal digits.
+	 */
+	static String md5Hex(String text)
+	{
+		byte[] digest = md5().digest(text.getBytes(UTF8));
+		StringBuilder hash = new StringBuilder(digest.length * 2);
+		for (byte digestByte : digest)
+		{
+			hash.append(Character.forDigit((digestByte >> 4) & 0xF, 16));
+			hash.append(Character.forDigit(digestByte & 0xF, 16));
+		}
+		return hash.toString();
+	}
+}
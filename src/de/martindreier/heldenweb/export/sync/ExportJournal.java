@@ -0,0 +1,566 @@
+package de.martindreier.heldenweb.export.sync;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import de.martindreier.heldenweb.export.sync.Cache.CacheKey;
+
+/**
+ * Append-only journal of the progress of an export: the objects confirmed by
+ * the server, the IDs the server assigned and the completed stages. If an export
+ * fails or is cancelled, the journal is replayed when the next export starts, so
+ * that objects which already reached the server are not sent again.
+ * <p>
+ * Records are buffered and forced to disk in batches, see {@link #SYNC_RECORDS}
+ * and {@link #SYNC_INTERVAL}. A record lost in a crash only means that its
+ * object is sent again. Each record carries a checksum, so a partially written
+ * record at the end of the file is detected and dropped.
+ * <p>
+ * When an export completes, its progress is written to the {@link IdStore} and
+ * {@link SnapshotStore} and the journal is compacted to nothing, see
+ * {@link #compact()}.
+ * 
+ * @author Martin Dreier <martin@martindreier.de>
+ * 
+ */
+public class ExportJournal
+{
+	/**
+	 * Receives the records of the journal during {@link ExportJournal#replay}.
+	 * 
+	 * @author Martin Dreier <martin@martindreier.de>
+	 * 
+	 */
+	interface Handler
+	{
+		/**
+		 * The server assigned an ID to an object.
+		 * 
+		 * @param cacheKey
+		 *          The type of the object.
+		 * @param key
+		 *          The ID.
+		 * @param identifiers
+		 *          The object's identifiers.
+		 */
+		public void keyAssigned(CacheKey cacheKey, UUID key, String[] identifiers);
+
+		/**
+		 * An ID was found to be outdated.
+		 * 
+		 * @param cacheKey
+		 *          The type of the object.
+		 * @param identifiers
+		 *          The object's identifiers.
+		 */
+		public void keyRemoved(CacheKey cacheKey, String[] identifiers);
+
+		/**
+		 * The server confirmed an object.
+		 * 
+		 * @param compoundKey
+		 *          The compound key of the object.
+		 * @param entry
+		 *          The snapshot of the sent data.
+		 */
+		public void rowConfirmed(String compoundKey, SnapshotStore.Entry entry);
+
+		/**
+		 * An object was deleted from the server.
+		 * 
+		 * @param compoundKey
+		 *          The compound key of the object.
+		 */
+		public void rowRemoved(String compoundKey);
+
+		/**
+		 * A stage was completed.
+		 * 
+		 * @param stage
+		 *          The name of the stage.
+		 */
+		public void stageCompleted(String stage);
+	}
+
+	/**
+	 * Magic number at the start of the file ("HWJN").
+	 */
+	private static final int							MAGIC						= 0x48574A4E;
+
+	/**
+	 * Version of the file format. Journals with a different version are ignored.
+	 */
+	private static final int							FORMAT_VERSION	= 1;
+
+	/**
+	 * Maximum number of records written before they are forced to disk.
+	 */
+	private static final int							SYNC_RECORDS		= 256;
+
+	/**
+	 * Maximum time in milliseconds a record is kept in the buffer, checked when
+	 * the next record is written.
+	 */
+	private static final long							SYNC_INTERVAL		= 500;
+
+	/**
+	 * Largest record accepted when reading. Anything larger is a corrupt length.
+	 */
+	private static final int							MAX_RECORD_SIZE	= 64 * 1024;
+
+	private static final byte							KEY_ASSIGNED		= 1;
+	private static final byte							KEY_REMOVED			= 2;
+	private static final byte							ROW_CONFIRMED		= 3;
+	private static final byte							ROW_REMOVED			= 4;
+	private static final byte							STAGE_COMPLETED	= 5;
+
+	/**
+	 * The journal file.
+	 */
+	private File													file;
+
+	/**
+	 * Identifies the server the journal belongs to. A journal written for a
+	 * different server is ignored.
+	 */
+	private String												serverIdentity;
+
+	/**
+	 * Length of the valid part of the file, as determined by the last
+	 * {@link #replay(Handler)} or the last time the journal was forced to disk.
+	 * New records are appended after it.
+	 */
+	private long													validLength;
+
+	private FileOutputStream							fileOut;
+	private DataOutputStream							out;
+
+	/**
+	 * Buffer for the record being written.
+	 */
+	private ByteArrayOutputStream					record					= new ByteArrayOutputStream();
+	private DataOutputStream							recordOut				= new DataOutputStream(record);
+	private CRC32													checksum				= new CRC32();
+
+	/**
+	 * Number of records not yet forced to disk.
+	 */
+	private int														pending;
+	private long													lastSync;
+
+	/**
+	 * Create a new journal.
+	 * 
+	 * @param file
+	 *          The journal file.
+	 * @param serverIdentity
+	 *          Identifies the server the journal belongs to, e.g. the server URL.
+	 */
+	public ExportJournal(File file, String serverIdentity)
+	{
+		this.file = file;
+		this.serverIdentity = serverIdentity;
+	}
+
+	/**
+	 * Pass all valid records of the journal to a handler. A journal which cannot
+	 * be read or belongs to another server is ignored. The journal is only an
+	 * optimization, so errors are not reported.
+	 * 
+	 * @param handler
+	 *          Receives the records.
+	 * @return The number of records read.
+	 */
+	synchronized int replay(Handler handler)
+	{
+		validLength = 0;
+		if (!file.exists())
+		{
+			return 0;
+		}
+		int count = 0;
+		DataInputStream in = null;
+		try
+		{
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !serverIdentity.equals(in.readUTF()))
+			{
+				return 0;
+			}
+			long length = 8 + 2 + serverIdentity.getBytes("UTF-8").length;
+			validLength = length;
+			while (true)
+			{
+				int size = in.readInt();
+				long expectedChecksum = in.readInt() & 0xFFFFFFFFL;
+				if (size <= 0 || size > MAX_RECORD_SIZE)
+				{
+					break;
+				}
+				byte[] data = new byte[size];
+				in.readFully(data);
+				checksum.reset();
+				checksum.update(data);
+				if (checksum.getValue() != expectedChecksum)
+				{
+					break;
+				}
+				apply(data, handler);
+				count++;
+				length += 8 + size;
+				validLength = length;
+			}
+		}
+		catch (EOFException exception)
+		{
+			// End of the journal, possibly with a partially written record
+		}
+		catch (IOException exception)
+		{
+			// Keep the records read so far
+		}
+		catch (IllegalArgumentException exception)
+		{
+			// Unknown cache key, keep the records read so far
+		}
+		finally
+		{
+			IOUtil.close(in);
+		}
+		return count;
+	}
+
+	private void apply(byte[] data, Handler handler) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+		switch (in.readByte())
+		{
+			case KEY_ASSIGNED:
+			{
+				CacheKey cacheKey = CacheKey.valueOf(in.readUTF());
+				UUID key = new UUID(in.readLong(), in.readLong());
+				handler.keyAssigned(cacheKey, key, readIdentifiers(in));
+				break;
+			}
+			case KEY_REMOVED:
+			{
+				CacheKey cacheKey = CacheKey.valueOf(in.readUTF());
+				handler.keyRemoved(cacheKey, readIdentifiers(in));
+				break;
+			}
+			case ROW_CONFIRMED:
+			{
+				String compoundKey = in.readUTF();
+				CacheKey cacheKey = CacheKey.valueOf(in.readUTF());
+				handler.rowConfirmed(compoundKey, new SnapshotStore.Entry(cacheKey, in.readUTF(), in.readUTF()));
+				break;
+			}
+			case ROW_REMOVED:
+				handler.rowRemoved(in.readUTF());
+				break;
+			case STAGE_COMPLETED:
+				handler.stageCompleted(in.readUTF());
+				break;
+			default:
+				throw new IOException("Unbekannter Eintrag im Export-Journal");
+		}
+	}
+
+	private String[] readIdentifiers(DataInputStream in) throws IOException
+	{
+		String[] identifiers = new String[in.readInt()];
+		for (int index = 0; index < identifiers.length; index++)
+		{
+			identifiers[index] = in.readBoolean() ? in.readUTF() : null;
+		}
+		return identifiers;
+	}
+
+	private void writeIdentifiers(String[] identifiers) throws IOException
+	{
+		recordOut.writeInt(identifiers.length);
+		for (String identifier : identifiers)
+		{
+			recordOut.writeBoolean(identifier != null);
+			if (identifier != null)
+			{
+				recordOut.writeUTF(identifier);
+			}
+		}
+	}
+
+	/**
+	 * Open the journal for writing. Records of an earlier export which were
+	 * replayed are kept, anything else is discarded.
+	 */
+	synchronized void open()
+	{
+		if (out != null)
+		{
+			return;
+		}
+		try
+		{
+			if (validLength > 0)
+			{
+				// Drop a partially written record at the end
+				RandomAccessFile truncate = new RandomAccessFile(file, "rw");
+				try
+				{
+					truncate.setLength(validLength);
+				}
+				finally
+				{
+					truncate.close();
+				}
+				fileOut = new FileOutputStream(file, true);
+				out = new DataOutputStream(new BufferedOutputStream(fileOut, 64 * 1024));
+			}
+			else
+			{
+				fileOut = new FileOutputStream(file);
+				out = new DataOutputStream(new BufferedOutputStream(fileOut, 64 * 1024));
+				out.writeInt(MAGIC);
+				out.writeInt(FORMAT_VERSION);
+				out.writeUTF(serverIdentity);
+			}
+			pending = 0;
+			lastSync = System.currentTimeMillis();
+		}
+		catch (IOException exception)
+		{
+			disable();
+		}
+	}
+
+	/**
+	 * Record that the server assigned an ID to an object.
+	 * 
+	 * @param cacheKey
+	 *          The type of the object.
+	 * @param key
+	 *          The ID.
+	 * @param identifiers
+	 *          The object's identifiers.
+	 */
+	synchronized void keyAssigned(CacheKey cacheKey, UUID key, String[] identifiers)
+	{
+		if (out == null)
+		{
+			return;
+		}
+		try
+		{
+			recordOut.writeByte(KEY_ASSIGNED);
+			recordOut.writeUTF(cacheKey.name());
+			recordOut.writeLong(key.getMostSignificantBits());
+			recordOut.writeLong(key.getLeastSignificantBits());
+			writeIdentifiers(identifiers);
+			append(false);
+		}
+		catch (IOException exception)
+		{
+			disable();
+		}
+	}
+
+	/**
+	 * Record that an ID was found to be outdated.
+	 * 
+	 * @param cacheKey
+	 *          The type of the object.
+	 * @param identifiers
+	 *          The object's identifiers.
+	 */
+	synchronized void keyRemoved(CacheKey cacheKey, String[] identifiers)
+	{
+		if (out == null)
+		{
+			return;
+		}
+		try
+		{
+			recordOut.writeByte(KEY_REMOVED);
+			recordOut.writeUTF(cacheKey.name());
+			writeIdentifiers(identifiers);
+			append(false);
+		}
+		catch (IOException exception)
+		{
+			disable();
+		}
+	}
+
+	/**
+	 * Record that the server confirmed an object.
+	 * 
+	 * @param compoundKey
+	 *          The compound key of the object.
+	 * @param entry
+	 *          The snapshot of the sent data.
+	 */
+	synchronized void rowConfirmed(String compoundKey, SnapshotStore.Entry entry)
+	{
+		if (out == null)
+		{
+			return;
+		}
+		try
+		{
+			recordOut.writeByte(ROW_CONFIRMED);
+			recordOut.writeUTF(compoundKey);
+			recordOut.writeUTF(entry.getCacheKey().name());
+			recordOut.writeUTF(entry.getOwner());
+			recordOut.writeUTF(entry.getHash());
+			append(false);
+		}
+		catch (IOException exception)
+		{
+			disable();
+		}
+	}
+
+	/**
+	 * Record that an object was deleted from the server.
+	 * 
+	 * @param compoundKey
+	 *          The compound key of the object.
+	 */
+	synchronized void rowRemoved(String compoundKey)
+	{
+		if (out == null)
+		{
+			return;
+		}
+		try
+		{
+			recordOut.writeByte(ROW_REMOVED);
+			recordOut.writeUTF(compoundKey);
+			append(false);
+		}
+		catch (IOException exception)
+		{
+			disable();
+		}
+	}
+
+	/**
+	 * Record that a stage was completed. The journal is forced to disk.
+	 * 
+	 * @param stage
+	 *          The name of the stage.
+	 */
+	synchronized void stageCompleted(String stage)
+	{
+		if (out == null)
+		{
+			return;
+		}
+		try
+		{
+			recordOut.writeByte(STAGE_COMPLETED);
+			recordOut.writeUTF(stage);
+			append(true);
+		}
+		catch (IOException exception)
+		{
+			disable();
+		}
+	}
+
+	/**
+	 * Append the record in the {@link #record} buffer to the journal.
+	 * 
+	 * @param sync
+	 *          <code>true</code> to force the journal to disk immediately.
+	 * @throws IOException
+	 */
+	private void append(boolean sync) throws IOException
+	{
+		byte[] data = record.toByteArray();
+		record.reset();
+		checksum.reset();
+		checksum.update(data);
+		out.writeInt(data.length);
+		out.writeInt((int) checksum.getValue());
+		out.write(data);
+		pending++;
+		if (sync || pending >= SYNC_RECORDS || System.currentTimeMillis() - lastSync >= SYNC_INTERVAL)
+		{
+			sync();
+		}
+	}
+
+	/**
+	 * Force all records written so far to disk.
+	 */
+	synchronized void sync()
+	{
+		if (out == null || pending == 0)
+		{
+			return;
+		}
+		try
+		{
+			out.flush();
+			fileOut.getChannel().force(false);
+			// After the flush, the file ends with a complete record
+			validLength = fileOut.getChannel().size();
+			pending = 0;
+			lastSync = System.currentTimeMillis();
+		}
+		catch (IOException exception)
+		{
+			disable();
+		}
+	}
+
+	/**
+	 * Force the journal to disk and close it. It is replayed by the next export.
+	 * If writing failed earlier, the file may end in a partially written record;
+	 * it is dropped when the journal is opened again.
+	 */
+	synchronized void close()
+	{
+		sync();
+		IOUtil.close(out);
+		out = null;
+		fileOut = null;
+	}
+
+	/**
+	 * Discard the journal, after its content has been written to the
+	 * {@link IdStore} and {@link SnapshotStore}.
+	 */
+	synchronized void compact()
+	{
+		IOUtil.close(out);
+		out = null;
+		fileOut = null;
+		validLength = 0;
+		file.delete();
+	}
+
+	/**
+	 * Stop writing after an error. A journal which may be incomplete is still
+	 * valid, its missing objects are just sent again.
+	 */
+	private void disable()
+	{
+		IOUtil.close(out);
+		out = null;
+		fileOut = null;
+		record.reset();
+	}
+}
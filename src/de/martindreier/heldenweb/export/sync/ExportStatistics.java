@@ -0,0 +1,290 @@
+package de.martindreier.heldenweb.export.sync;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Statistics of an export: the number of objects and the time needed for each
+ * hero and in total. If only the base data was transferred, see
+ * {@link Synchronizer#seedCatalogue()}, the number of catalogue entries and the
+ * time needed for them.
+ * 
+ * @author Martin Dreier <martin@martindreier.de>
+ * 
+ */
+public class ExportStatistics
+{
+	/**
+	 * Statistics for one hero.
+	 * 
+	 * @author Martin Dreier <martin@martindreier.de>
+	 * 
+	 */
+	public static class HeroStatistics
+	{
+		private final String	heroName;
+		private final int			objectCount;
+		private final int			sentObjectCount;
+		private final long		duration;
+
+		private HeroStatistics(String heroName, int objectCount, int sentObjectCount, long duration)
+		{
+			this.heroName = heroName;
+			this.objectCount = objectCount;
+			this.sentObjectCount = sentObjectCount;
+			this.duration = duration;
+		}
+
+		public String getHeroName()
+		{
+			return heroName;
+		}
+
+		/**
+		 * @return The number of the hero's objects which have been synchronized.
+		 */
+		public int getObjectCount()
+		{
+			return objectCount;
+		}
+
+		/**
+		 * @return The number of the hero's objects which have actually been sent,
+		 *         because they changed since the last export.
+		 */
+		public int getSentObjectCount()
+		{
+			return sentObjectCount;
+		}
+
+		/**
+		 * @return The time needed to export the hero in milliseconds.
+		 */
+		public long getDuration()
+		{
+			return duration;
+		}
+	}
+
+	private List<HeroStatistics>	heroes	= new ArrayList<HeroStatistics>();
+	private int										resumedObjectCount;
+	private int										resumedStageCount;
+	private int										queuedHeroCount;
+	private int										catalogueEntryCount;
+	private int										sentCatalogueEntryCount;
+	private long									catalogueDuration	= -1;
+	private long									duration					= -1;
+
+	/**
+	 * Record the export of a hero.
+	 * 
+	 * @param heroName
+	 *          The hero's name.
+	 * @param objectCount
+	 *          The number of synchronized objects.
+	 * @param sentObjectCount
+	 *          The number of objects sent to the server.
+	 * @param duration
+	 *          The time needed in milliseconds.
+	 */
+	void addHero(String heroName, int objectCount, int sentObjectCount, long duration)
+	{
+		heroes.add(new HeroStatistics(heroName, objectCount, sentObjectCount, duration));
+	}
+
+	/**
+	 * Record the time needed for the whole export. Heroes are exported
+	 * concurrently, so it may be shorter than the sum of their times.
+	 * 
+	 * @param duration
+	 *          The time needed in milliseconds.
+	 */
+	void setDuration(long duration)
+	{
+		this.duration = duration;
+	}
+
+	/**
+	 * Record that the export continued an earlier export which did not complete.
+	 * 
+	 * @param objectCount
+	 *          The number of objects sent by the earlier export.
+	 * @param stageCount
+	 *          The number of stages completed by the earlier export.
+	 */
+	void setResumed(int objectCount, int stageCount)
+	{
+		this.resumedObjectCount = objectCount;
+		this.resumedStageCount = stageCount;
+	}
+
+	/**
+	 * @return The number of objects sent by an earlier export which did not
+	 *         complete, and which therefore did not need to be sent again.
+	 */
+	public int getResumedObjectCount()
+	{
+		return resumedObjectCount;
+	}
+
+	/**
+	 * Record that the heroes were not exported because the server was not
+	 * reachable, but queued in the {@link Outbox}.
+	 * 
+	 * @param heroCount
+	 *          The number of queued heroes.
+	 */
+	void setQueued(int heroCount)
+	{
+		this.queuedHeroCount = heroCount;
+	}
+
+	/**
+	 * @return The number of heroes which were queued in the {@link Outbox}
+	 *         instead of being exported.
+	 */
+	public int getQueuedHeroCount()
+	{
+		return queuedHeroCount;
+	}
+
+	/**
+	 * Record the transfer of the catalogue.
+	 * 
+	 * @param entryCount
+	 *          The number of synchronized catalogue entries.
+	 * @param sentEntryCount
+	 *          The number of catalogue entries created on the server.
+	 * @param duration
+	 *          The time needed in milliseconds.
+	 */
+	void setCatalogue(int entryCount, int sentEntryCount, long duration)
+	{
+		this.catalogueEntryCount = entryCount;
+		this.sentCatalogueEntryCount = sentEntryCount;
+		this.catalogueDuration = duration;
+	}
+
+	/**
+	 * @return The number of synchronized catalogue entries.
+	 */
+	public int getCatalogueEntryCount()
+	{
+		return catalogueEntryCount;
+	}
+
+	/**
+	 * @return The number of catalogue entries created on the server.
+	 */
+	public int getSentCatalogueEntryCount()
+	{
+		return sentCatalogueEntryCount;
+	}
+
+	/**
+	 * @return The statistics of the exported heroes, in the order in which they
+	 *         were exported.
+	 */
+	public List<HeroStatistics> getHeroes()
+	{
+		return Collections.unmodifiableList(heroes);
+	}
+
+	/**
+	 * @return The number of synchronized objects of all heroes.
+	 */
+	public int getObjectCount()
+	{
+		int objectCount = 0;
+		for (HeroStatistics hero : heroes)
+		{
+			objectCount += hero.getObjectCount();
+		}
+		return objectCount;
+	}
+
+	/**
+	 * @return The number of objects of all heroes sent to the server.
+	 */
+	public int getSentObjectCount()
+	{
+		int sentObjectCount = 0;
+		for (HeroStatistics hero : heroes)
+		{
+			sentObjectCount += hero.getSentObjectCount();
+		}
+		return sentObjectCount;
+	}
+
+	/**
+	 * @return The time needed to export all heroes in milliseconds.
+	 */
+	public long getDuration()
+	{
+		if (this.duration >= 0)
+		{
+			return this.duration;
+		}
+		long duration = 0;
+		for (HeroStatistics hero : heroes)
+		{
+			duration += hero.getDuration();
+		}
+		return duration;
+	}
+
+	/**
+	 * Create a summary to be shown to the user, with one line per hero and a line
+	 * with the totals. If the heroes were queued, the summary says so instead.
+	 * 
+	 * @return The summary.
+	 */
+	public String getSummary()
+	{
+		if (queuedHeroCount > 0)
+		{
+			return MessageFormat.format("Der Server ist nicht erreichbar. {0} Helden wurden im Postausgang gespeichert "
+							+ "und werden übertragen, sobald der Server erreichbar ist.", queuedHeroCount);
+		}
+		StringBuilder summary = new StringBuilder();
+		if (catalogueDuration >= 0)
+		{
+			double seconds = Math.max(catalogueDuration, 1) / 1000.0;
+			summary.append(MessageFormat.format(
+							"Stammdaten: {0} Einträge ({1} angelegt) in {2,number,0.0} s, {3,number,0.0} Einträge/s",
+							catalogueEntryCount, sentCatalogueEntryCount, seconds, catalogueEntryCount / seconds));
+			if (!heroes.isEmpty())
+			{
+				summary.append("\n");
+			}
+		}
+		for (HeroStatistics hero : heroes)
+		{
+			summary.append(formatLine(hero.getHeroName(), hero.getObjectCount(), hero.getSentObjectCount(), hero
+							.getDuration()));
+			summary.append("\n");
+		}
+		if (!heroes.isEmpty())
+		{
+			summary.append(formatLine("Gesamt", getObjectCount(), getSentObjectCount(), getDuration()));
+		}
+		if (resumedObjectCount > 0 || resumedStageCount > 0)
+		{
+			summary.append("\n");
+			summary.append(MessageFormat.format(
+							"Abgebrochener Export fortgesetzt: {0} Objekte und {1} Phasen waren bereits übertragen",
+							resumedObjectCount, resumedStageCount));
+		}
+		return summary.toString();
+	}
+
+	private String formatLine(String name, int objectCount, int sentObjectCount, long duration)
+	{
+		double seconds = Math.max(duration, 1) / 1000.0;
+		return MessageFormat.format(
+						"{0}: {1} Objekte ({2} gesendet) in {3,number,0.0} s, {4,number,0.0} Objekte/s", name,
+						objectCount, sentObjectCount, seconds, objectCount / seconds);
+	}
+}
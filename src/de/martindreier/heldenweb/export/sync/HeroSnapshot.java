@@ -0,0 +1,690 @@
+package de.martindreier.heldenweb.export.sync;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The data of one hero, read from the Helden software in a single pass. A
+ * snapshot only consists of plain Java objects and is immutable, so it can be
+ * read by several threads while the data is sent to the server, without
+ * calling the Helden API again.
+ * 
+ * <p>
+ * Values which are sent to the server as they are, are stored as columns,
+ * keyed by the name of the column on the server. References to other objects
+ * are stored by name and are resolved to IDs by the {@link Cache}.
+ * </p>
+ * 
+ * @author Martin Dreier <martin@martindreier.de>
+ * 
+ */
+public class HeroSnapshot implements Serializable
+{
+	private static final long	serialVersionUID	= 1L;
+
+	/**
+	 * An attribute (Eigenschaft) and the hero's value.
+	 */
+	public static class Attribute implements Serializable
+	{
+		private static final long	serialVersionUID	= 1L;
+		private final String			name;
+		private final int					value;
+
+		public Attribute(String name, int value)
+		{
+			this.name = name;
+			this.value = value;
+		}
+
+		public String getName()
+		{
+			return name;
+		}
+
+		public int getValue()
+		{
+			return value;
+		}
+	}
+
+	/**
+	 * A talent and the hero's values.
+	 */
+	public static class Talent implements Serializable
+	{
+		private static final long	serialVersionUID	= 1L;
+		private final String			name;
+		private final String			talentType;
+		private final String[]		probe;
+		private final String			languageComplexity;
+		private final String			handicap;
+		private final int					value;
+		private final int					attack;
+		private final int					parade;
+
+		/**
+		 * Create a new talent.
+		 * 
+		 * @param name
+		 *          The talent name.
+		 * @param talentType
+		 *          The name of the talent type. May be <code>null</code>.
+		 * @param probe
+		 *          The names of the three attributes of the check. May be
+		 *          <code>null</code>.
+		 * @param languageComplexity
+		 *          The language complexity. May be <code>null</code>.
+		 * @param handicap
+		 *          The handicap (Behinderung).
+		 * @param value
+		 *          The hero's talent value.
+		 * @param attack
+		 *          The hero's attack value.
+		 * @param parade
+		 *          The hero's parade value.
+		 */
+		public Talent(String name, String talentType, String[] probe, String languageComplexity, String handicap,
+						int value, int attack, int parade)
+		{
+			this.name = name;
+			this.talentType = talentType;
+			this.probe = probe == null ? null : probe.clone();
+			this.languageComplexity = languageComplexity;
+			this.handicap = handicap;
+			this.value = value;
+			this.attack = attack;
+			this.parade = parade;
+		}
+
+		public String getName()
+		{
+			return name;
+		}
+
+		public String getTalentType()
+		{
+			return talentType;
+		}
+
+		public String[] getProbe()
+		{
+			return probe == null ? null : probe.clone();
+		}
+
+		public String getLanguageComplexity()
+		{
+			return languageComplexity;
+		}
+
+		public String getHandicap()
+		{
+			return handicap;
+		}
+
+		public int getValue()
+		{
+			return value;
+		}
+
+		public int getAttack()
+		{
+			return attack;
+		}
+
+		public int getParade()
+		{
+			return parade;
+		}
+	}
+
+	/**
+	 * An (dis-)advantage and the hero's value.
+	 */
+	public static class Advantage implements Serializable
+	{
+		private static final long	serialVersionUID	= 1L;
+		private final String			name;
+		private final boolean			choice;
+		private final boolean			multipleChoice;
+		private final boolean			disadvantage;
+		private final boolean			valueAdvantage;
+		private final int					value;
+
+		public Advantage(String name, boolean choice, boolean multipleChoice, boolean disadvantage,
+						boolean valueAdvantage, int value)
+		{
+			this.name = name;
+			this.choice = choice;
+			this.multipleChoice = multipleChoice;
+			this.disadvantage = disadvantage;
+			this.valueAdvantage = valueAdvantage;
+			this.value = value;
+		}
+
+		public String getName()
+		{
+			return name;
+		}
+
+		public boolean isChoice()
+		{
+			return choice;
+		}
+
+		public boolean isMultipleChoice()
+		{
+			return multipleChoice;
+		}
+
+		public boolean isDisadvantage()
+		{
+			return disadvantage;
+		}
+
+		public boolean isValueAdvantage()
+		{
+			return valueAdvantage;
+		}
+
+		public int getValue()
+		{
+			return value;
+		}
+	}
+
+	/**
+	 * A special ability and the hero's specialization.
+	 */
+	public static class SpecialAbility implements Serializable
+	{
+		private static final long					serialVersionUID	= 1L;
+		private final String							name;
+		private final int									type;
+		private final String							talent;
+		private final Map<String, String>	columns;
+		private final String							specialization;
+
+		/**
+		 * Create a new special ability.
+		 * 
+		 * @param name
+		 *          The name.
+		 * @param type
+		 *          The type (Art).
+		 * @param talent
+		 *          The name of the talent of the special ability. May be
+		 *          <code>null</code>.
+		 * @param columns
+		 *          Further columns, sent as they are.
+		 * @param specialization
+		 *          The hero's specialization.
+		 */
+		public SpecialAbility(String name, int type, String talent, Map<String, String> columns, String specialization)
+		{
+			this.name = name;
+			this.type = type;
+			this.talent = talent;
+			this.columns = copy(columns);
+			this.specialization = specialization;
+		}
+
+		public String getName()
+		{
+			return name;
+		}
+
+		public int getType()
+		{
+			return type;
+		}
+
+		public String getTalent()
+		{
+			return talent;
+		}
+
+		public Map<String, String> getColumns()
+		{
+			return columns;
+		}
+
+		public String getSpecialization()
+		{
+			return specialization;
+		}
+	}
+
+	/**
+	 * A spell in one representation and the hero's value.
+	 */
+	public static class Spell implements Serializable
+	{
+		private static final long					serialVersionUID	= 1L;
+		private final String							name;
+		private final String							representation;
+		private final String[]						probe;
+		private final Map<String, String>	columns;
+		private final int									value;
+
+		/**
+		 * Create a new spell.
+		 * 
+		 * @param name
+		 *          The name.
+		 * @param representation
+		 *          The representation.
+		 * @param probe
+		 *          The names of the three attributes of the check.
+		 * @param columns
+		 *          Further columns, sent as they are.
+		 * @param value
+		 *          The hero's value (Zauberfertigkeitswert).
+		 */
+		public Spell(String name, String representation, String[] probe, Map<String, String> columns, int value)
+		{
+			this.name = name;
+			this.representation = representation;
+			this.probe = probe.clone();
+			this.columns = copy(columns);
+			this.value = value;
+		}
+
+		public String getName()
+		{
+			return name;
+		}
+
+		public String getRepresentation()
+		{
+			return representation;
+		}
+
+		public String[] getProbe()
+		{
+			return probe.clone();
+		}
+
+		public Map<String, String> getColumns()
+		{
+			return columns;
+		}
+
+		public int getValue()
+		{
+			return value;
+		}
+	}
+
+	/**
+	 * A piece of equipment, an item or a coin of the hero.
+	 */
+	public static class Equipment implements Serializable
+	{
+		private static final long					serialVersionUID	= 1L;
+		private final String							name;
+		private final String							talent;
+		private final Map<String, String>	columns;
+
+		/**
+		 * Create a new piece of equipment.
+		 * 
+		 * @param name
+		 *          The name which identifies the equipment.
+		 * @param talent
+		 *          The name of the talent used with the equipment. May be
+		 *          <code>null</code>.
+		 * @param columns
+		 *          The columns, sent as they are.
+		 */
+		public Equipment(String name, String talent, Map<String, String> columns)
+		{
+			this.name = name;
+			this.talent = talent;
+			this.columns = copy(columns);
+		}
+
+		public String getName()
+		{
+			return name;
+		}
+
+		public String getTalent()
+		{
+			return talent;
+		}
+
+		public Map<String, String> getColumns()
+		{
+			return columns;
+		}
+	}
+
+	/**
+	 * Collects the data of a snapshot.
+	 */
+	public static class Builder
+	{
+		private HeroSnapshot	snapshot;
+
+		/**
+		 * Start a new snapshot.
+		 * 
+		 * @param identifier
+		 *          The ID of the hero in the Helden software.
+		 * @param name
+		 *          The hero's name.
+		 */
+		public Builder(String identifier, String name)
+		{
+			snapshot = new HeroSnapshot(identifier, name);
+		}
+
+		public Builder setDescription(Map<String, String> description)
+		{
+			snapshot.description = copy(description);
+			return this;
+		}
+
+		public Builder setValues(Map<String, String> values)
+		{
+			snapshot.values = copy(values);
+			return this;
+		}
+
+		public Builder setHeroColumns(Map<String, String> heroColumns)
+		{
+			snapshot.heroColumns = copy(heroColumns);
+			return this;
+		}
+
+		public Builder addAttribute(Attribute attribute)
+		{
+			snapshot.attributes.add(attribute);
+			return this;
+		}
+
+		public Builder setSpeed(int speed)
+		{
+			snapshot.speed = speed;
+			return this;
+		}
+
+		public Builder addTalent(Talent talent)
+		{
+			snapshot.talents.add(talent);
+			return this;
+		}
+
+		public Builder addAdvantage(Advantage advantage)
+		{
+			snapshot.advantages.add(advantage);
+			return this;
+		}
+
+		/**
+		 * Add a special ability. If no special ability is added, the special
+		 * abilities are treated as not available, see
+		 * {@link HeroSnapshot#hasSpecialAbilities()}.
+		 */
+		public Builder addSpecialAbility(SpecialAbility specialAbility)
+		{
+			snapshot.specialAbilities.add(specialAbility);
+			snapshot.specialAbilitiesAvailable = true;
+			return this;
+		}
+
+		/**
+		 * Mark the special abilities as available, even if the hero has none.
+		 */
+		public Builder setSpecialAbilitiesAvailable(boolean available)
+		{
+			snapshot.specialAbilitiesAvailable = available;
+			return this;
+		}
+
+		public Builder addSpell(Spell spell)
+		{
+			snapshot.spells.add(spell);
+			return this;
+		}
+
+		public Builder addMeleeWeapon(Equipment weapon)
+		{
+			snapshot.meleeWeapons.add(weapon);
+			return this;
+		}
+
+		public Builder addRangedWeapon(Equipment weapon)
+		{
+			snapshot.rangedWeapons.add(weapon);
+			return this;
+		}
+
+		public Builder addArmor(Equipment armor)
+		{
+			snapshot.armor.add(armor);
+			return this;
+		}
+
+		/**
+		 * Set the complete armor, which is stored as an additional armor part.
+		 */
+		public Builder setCompleteArmor(Equipment completeArmor)
+		{
+			snapshot.completeArmor = completeArmor;
+			return this;
+		}
+
+		public Builder addShield(Equipment shield)
+		{
+			snapshot.shields.add(shield);
+			return this;
+		}
+
+		public Builder setCombat(Map<String, String> combat)
+		{
+			snapshot.combat = copy(combat);
+			return this;
+		}
+
+		/**
+		 * Add the items with one inventory name. The item's index in the list is
+		 * part of its identity.
+		 */
+		public Builder addItems(String inventoryName, List<Equipment> items)
+		{
+			snapshot.items.put(inventoryName, Collections.unmodifiableList(new ArrayList<Equipment>(items)));
+			return this;
+		}
+
+		public Builder addCoin(Equipment coin)
+		{
+			snapshot.coins.add(coin);
+			return this;
+		}
+
+		/**
+		 * Finish the snapshot. The builder must not be used afterwards.
+		 * 
+		 * @return The snapshot.
+		 */
+		public HeroSnapshot build()
+		{
+			HeroSnapshot result = snapshot;
+			snapshot = null;
+			result.attributes = Collections.unmodifiableList(result.attributes);
+			result.talents = Collections.unmodifiableList(result.talents);
+			result.advantages = Collections.unmodifiableList(result.advantages);
+			result.specialAbilities = Collections.unmodifiableList(result.specialAbilities);
+			result.spells = Collections.unmodifiableList(result.spells);
+			result.meleeWeapons = Collections.unmodifiableList(result.meleeWeapons);
+			result.rangedWeapons = Collections.unmodifiableList(result.rangedWeapons);
+			result.armor = Collections.unmodifiableList(result.armor);
+			result.shields = Collections.unmodifiableList(result.shields);
+			result.items = Collections.unmodifiableMap(result.items);
+			result.coins = Collections.unmodifiableList(result.coins);
+			return result;
+		}
+	}
+
+	private final String									identifier;
+	private final String									name;
+	private Map<String, String>						heroColumns				= Collections.emptyMap();
+	private Map<String, String>						description				= Collections.emptyMap();
+	private Map<String, String>						values						= Collections.emptyMap();
+	private List<Attribute>								attributes				= new ArrayList<Attribute>();
+	private int														speed;
+	private List<Talent>									talents						= new ArrayList<Talent>();
+	private List<Advantage>								advantages				= new ArrayList<Advantage>();
+	private boolean												specialAbilitiesAvailable;
+	private List<SpecialAbility>					specialAbilities	= new ArrayList<SpecialAbility>();
+	private List<Spell>										spells						= new ArrayList<Spell>();
+	private List<Equipment>								meleeWeapons			= new ArrayList<Equipment>();
+	private List<Equipment>								rangedWeapons			= new ArrayList<Equipment>();
+	private List<Equipment>								armor							= new ArrayList<Equipment>();
+	private Equipment											completeArmor;
+	private List<Equipment>								shields						= new ArrayList<Equipment>();
+	private Map<String, String>						combat						= Collections.emptyMap();
+	private Map<String, List<Equipment>>	items							= new LinkedHashMap<String, List<Equipment>>();
+	private List<Equipment>								coins							= new ArrayList<Equipment>();
+
+	private HeroSnapshot(String identifier, String name)
+	{
+		this.identifier = identifier;
+		this.name = name;
+	}
+
+	private static Map<String, String> copy(Map<String, String> map)
+	{
+		return Collections.unmodifiableMap(new HashMap<String, String>(map));
+	}
+
+	/**
+	 * @return The ID of the hero in the Helden software.
+	 */
+	public String getIdentifier()
+	{
+		return identifier;
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * @return The basic columns of the hero, without identifier and name.
+	 */
+	public Map<String, String> getHeroColumns()
+	{
+		return heroColumns;
+	}
+
+	public Map<String, String> getDescription()
+	{
+		return description;
+	}
+
+	/**
+	 * @return The hero's adventure and generation points.
+	 */
+	public Map<String, String> getValues()
+	{
+		return values;
+	}
+
+	public List<Attribute> getAttributes()
+	{
+		return attributes;
+	}
+
+	/**
+	 * @return The hero's speed, which is stored as an additional attribute.
+	 */
+	public int getSpeed()
+	{
+		return speed;
+	}
+
+	public List<Talent> getTalents()
+	{
+		return talents;
+	}
+
+	public List<Advantage> getAdvantages()
+	{
+		return advantages;
+	}
+
+	/**
+	 * Old versions of the Helden software cannot return special abilities.
+	 * 
+	 * @return <code>true</code> if the special abilities could be read.
+	 */
+	public boolean hasSpecialAbilities()
+	{
+		return specialAbilitiesAvailable;
+	}
+
+	public List<SpecialAbility> getSpecialAbilities()
+	{
+		return specialAbilities;
+	}
+
+	public List<Spell> getSpells()
+	{
+		return spells;
+	}
+
+	public List<Equipment> getMeleeWeapons()
+	{
+		return meleeWeapons;
+	}
+
+	public List<Equipment> getRangedWeapons()
+	{
+		return rangedWeapons;
+	}
+
+	public List<Equipment> getArmor()
+	{
+		return armor;
+	}
+
+	/**
+	 * @return The complete armor, or <code>null</code> if the hero wears none.
+	 */
+	public Equipment getCompleteArmor()
+	{
+		return completeArmor;
+	}
+
+	public List<Equipment> getShields()
+	{
+		return shields;
+	}
+
+	public Map<String, String> getCombat()
+	{
+		return combat;
+	}
+
+	/**
+	 * @return The items, keyed by inventory name.
+	 */
+	public Map<String, List<Equipment>> getItems()
+	{
+		return items;
+	}
+
+	public List<Equipment> getCoins()
+	{
+		return coins;
+	}
+}
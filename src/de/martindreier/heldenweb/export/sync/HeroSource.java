@@ -0,0 +1,39 @@
+package de.martindreier.heldenweb.export.sync;
+
+import java.util.List;
+import de.martindreier.heldenweb.export.HeldenWebExportException;
+
+/**
+ * Provides the heroes to be exported as {@link HeroSnapshot}s.
+ * 
+ * @author Martin Dreier <martin@martindreier.de>
+ * 
+ */
+public interface HeroSource
+{
+	/**
+	 * @return The number of heroes which can be exported.
+	 */
+	public int getHeroCount();
+
+	/**
+	 * @return The name of the selected hero.
+	 */
+	public String getSelectedHeroName();
+
+	/**
+	 * Read the selected hero.
+	 * 
+	 * @return The snapshot of the selected hero.
+	 * @throws HeldenWebExportException
+	 */
+	public HeroSnapshot readSelectedHero() throws HeldenWebExportException;
+
+	/**
+	 * Read all heroes.
+	 * 
+	 * @return The snapshots of all heroes.
+	 * @throws HeldenWebExportException
+	 */
+	public List<HeroSnapshot> readAllHeroes() throws HeldenWebExportException;
+}
@@ -1,17 +1,22 @@
 package de.martindreier.heldenweb.export.sync;
 
 import java.io.BufferedReader;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
+import java.net.ConnectException;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
 import java.net.URL;
+import java.text.MessageFormat;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 public class HttpClient
 {
@@ -20,10 +25,99 @@ public class HttpClient
 		GET, POST, PUT, DELETE
 	}
 
-	private String	server;
-	private boolean	secure;
-	private int			port;
-	private String	basePath;
+	/**
+	 * Status code of a server which limits the request rate. Not defined in
+	 * {@link HttpURLConnection}.
+	 */
+	private static final int		TOO_MANY_REQUESTS	= 429;
+
+	/**
+	 * Matches the IDs in a path.
+	 */
+	private static final Pattern	ID_PATTERN			= Pattern
+																									.compile("[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+
+	/**
+	 * Reads the content of a successful response directly from the connection.
+	 * 
+	 * @param <E>
+	 *          The type of exception thrown by the handler.
+	 */
+	public interface ContentHandler<E extends Exception>
+	{
+		/**
+		 * Read the response content.
+		 * 
+		 * @param content
+		 *          The content stream. It is closed by the client.
+		 * @throws IOException
+		 *           Error while reading from the stream.
+		 * @throws E
+		 *           Error while processing the content.
+		 */
+		public void handleContent(InputStream content) throws IOException, E;
+	}
+
+	/**
+	 * The validators of a response, which identify the version of the returned
+	 * content.
+	 * 
+	 * @author Martin Dreier <martin@martindreier.de>
+	 * 
+	 */
+	public static class Validator
+	{
+		private final String	entityTag;
+		private final String	lastModified;
+
+		/**
+		 * Create a new validator.
+		 * 
+		 * @param entityTag
+		 *          The value of the <code>ETag</code> header. May be
+		 *          <code>null</code>.
+		 * @param lastModified
+		 *          The value of the <code>Last-Modified</code> header. May be
+		 *          <code>null</code>.
+		 */
+		public Validator(String entityTag, String lastModified)
+		{
+			this.entityTag = entityTag;
+			this.lastModified = lastModified;
+		}
+
+		public String getEntityTag()
+		{
+			return entityTag;
+		}
+
+		public String getLastModified()
+		{
+			return lastModified;
+		}
+	}
+
+	private String							server;
+	private boolean							secure;
+	private int									port;
+	private String							basePath;
+	private KeepAliveStatistics	keepAliveStatistics	= new KeepAliveStatistics();
+	/**
+	 * Records the requests. May be <code>null</code>.
+	 */
+	private volatile SyncMetrics	metrics;
+	/**
+	 * Controls the retries of failed requests.
+	 */
+	private volatile RetryPolicy	retryPolicy				= RetryPolicy.NONE;
+	/**
+	 * Rejects requests while the server is down.
+	 */
+	private volatile CircuitBreaker	circuitBreaker		= new CircuitBreaker(0, 0);
+	/**
+	 * Limits the requests in flight. May be <code>null</code>.
+	 */
+	private volatile ConcurrencyLimiter	concurrencyLimiter;
 
 	/**
 	 * Create a new HTTP client.
@@ -60,7 +154,59 @@ public class HttpClient
 	public Response post(String path, Map<String, String> queryParameters, String contentType, String content)
 					throws HttpClientException
 	{
-		return sendRequest(path, queryParameters, content, contentType, Method.POST);
+		return post(path, queryParameters, contentType, content, false);
+	}
+
+	/**
+	 * Send a POST request.
+	 * 
+	 * @param path
+	 *          The path.
+	 * @param queryParameters
+	 *          Query parameters.
+	 * @param contentType
+	 *          The content type of the <code>content</code>.
+	 * @param content
+	 *          The content. May be <code>null</code>.
+	 * @param idempotent
+	 *          <code>true</code> if sending the request twice has the same effect
+	 *          as sending it once, e.g. for updates and deletions. Only such
+	 *          requests are repeated after they may have reached the server.
+	 * @return The server's response to the request.
+	 * @throws HttpClientException
+	 */
+	public Response post(String path, Map<String, String> queryParameters, String contentType, String content,
+					boolean idempotent) throws HttpClientException
+	{
+		return this.<RuntimeException> sendRequest(path, queryParameters, content, contentType, Method.POST, idempotent,
+						null, null, null);
+	}
+
+	/**
+	 * Send a POST request with an idempotency key. A server which supports the
+	 * <code>Idempotency-Key</code> header processes requests with the same key
+	 * only once, so the request is repeated after transient errors like an
+	 * update.
+	 * 
+	 * @param path
+	 *          The path.
+	 * @param queryParameters
+	 *          Query parameters.
+	 * @param contentType
+	 *          The content type of the <code>content</code>.
+	 * @param content
+	 *          The content. May be <code>null</code>.
+	 * @param idempotencyKey
+	 *          The key, unique for the effect of the request, e.g. the ID of the
+	 *          created object.
+	 * @return The server's response to the request.
+	 * @throws HttpClientException
+	 */
+	public Response post(String path, Map<String, String> queryParameters, String contentType, String content,
+					String idempotencyKey) throws HttpClientException
+	{
+		return this.<RuntimeException> sendRequest(path, queryParameters, content, contentType, Method.POST, true, null,
+						null, idempotencyKey);
 	}
 
 	/**
@@ -75,11 +221,65 @@ public class HttpClient
 	 */
 	public Response get(String path, Map<String, String> queryParameters) throws HttpClientException
 	{
-		return sendRequest(path, queryParameters, null, null, Method.GET);
+		return this.<RuntimeException> sendRequest(path, queryParameters, null, null, Method.GET, true, null, null, null);
+	}
+
+	/**
+	 * Send a GET request and pass the content of a successful response to a
+	 * handler while it is received. The content is not buffered, so
+	 * {@link Response#getResponseContent()} is <code>null</code> unless the
+	 * server returned an error.
+	 * 
+	 * @param path
+	 *          The path.
+	 * @param queryParameters
+	 *          Query parameters.
+	 * @param handler
+	 *          Reads the content of a response with a 2xx status code.
+	 * @return The server's response to the request.
+	 * @throws HttpClientException
+	 * @throws E
+	 *           Thrown by the handler.
+	 */
+	public <E extends Exception> Response get(String path, Map<String, String> queryParameters,
+					ContentHandler<E> handler) throws HttpClientException, E
+	{
+		return sendRequest(path, queryParameters, null, null, Method.GET, true, null, handler, null);
 	}
 
 	/**
-	 * Send a request to the server.
+	 * Send a conditional GET request. If the content did not change since the
+	 * validator was returned, the server responds with
+	 * {@link HttpURLConnection#HTTP_NOT_MODIFIED} and no content. Otherwise the
+	 * content is passed to the handler, see
+	 * {@link #get(String, Map, ContentHandler)}.
+	 * 
+	 * @param path
+	 *          The path.
+	 * @param queryParameters
+	 *          Query parameters.
+	 * @param validator
+	 *          The validator of the previous response. May be <code>null</code>
+	 *          to send an unconditional request.
+	 * @param handler
+	 *          Reads the content of a response with a 2xx status code.
+	 * @return The server's response to the request.
+	 * @throws HttpClientException
+	 * @throws E
+	 *           Thrown by the handler.
+	 */
+	public <E extends Exception> Response get(String path, Map<String, String> queryParameters, Validator validator,
+					ContentHandler<E> handler) throws HttpClientException, E
+	{
+		return sendRequest(path, queryParameters, null, null, Method.GET, true, validator, handler, null);
+	}
+
+	/**
+	 * Send a request to the server. Requests which fail with a transient error
+	 * are repeated according to the {@link #retryPolicy}. Requests are rejected
+	 * without contacting the server while the {@link #circuitBreaker} is open.
+	 * Both, and a transient error status which remains after all retries, are
+	 * reported with a {@link ServerUnavailableException}.
 	 * 
 	 * @param path
 	 *          The path. The {@link #basePath} will be prepended to this path.
@@ -93,11 +293,279 @@ public class HttpClient
 	 *          <code>null</code> but should be set if any data is sent.
 	 * @param method
 	 *          The request method.
+	 * @param idempotent
+	 *          <code>true</code> if the request may be repeated after it may have
+	 *          reached the server.
+	 * @param validator
+	 *          Validator for a conditional request. May be <code>null</code>.
+	 * @param handler
+	 *          Reads the content of a response with a 2xx status code. If this
+	 *          is <code>null</code>, the content is stored in the response.
+	 * @param idempotencyKey
+	 *          Sent as <code>Idempotency-Key</code> header if not
+	 *          <code>null</code>.
 	 * @return The server's response to the request.
 	 * @throws HttpClientException
+	 * @throws E
+	 *           Thrown by the handler.
+	 */
+	private <E extends Exception> Response sendRequest(String path, Map<String, String> queryParameters, String data,
+					String contentType, Method method, boolean idempotent, Validator validator, ContentHandler<E> handler,
+					String idempotencyKey) throws HttpClientException, E
+	{
+		RetryPolicy policy = retryPolicy;
+		CircuitBreaker breaker = circuitBreaker;
+		for (int attempt = 0;; attempt++)
+		{
+			if (!breaker.allowRequest())
+			{
+				SyncMetrics currentMetrics = metrics;
+				if (currentMetrics != null)
+				{
+					currentMetrics.recordRejection();
+				}
+				throw new ServerUnavailableException(MessageFormat.format(
+								"Der Server ist nicht erreichbar. Weitere Anfragen werden für {0} Sekunden abgewiesen.",
+								(breaker.getRemainingOpenTime() + 999) / 1000));
+			}
+			// Anything but a transient error shows that the server is available,
+			// including errors of the handler
+			boolean available = true;
+			try
+			{
+				Response response;
+				try
+				{
+					response = sendLimited(path, queryParameters, data, contentType, method, validator, handler,
+									idempotencyKey);
+				}
+				catch (HttpClientException exception)
+				{
+					available = !(exception.getCause() instanceof IOException);
+					if (!isTransient(exception.getCause()))
+					{
+						throw exception;
+					}
+					if (attempt >= policy.getRetries() || !isRetryable(exception.getCause(), idempotent))
+					{
+						throw exception;
+					}
+					backoff(policy, method, path, attempt, 0);
+					continue;
+				}
+				int status = response.getResponseCode();
+				if (!isTransient(status))
+				{
+					return response;
+				}
+				available = false;
+				if (attempt >= policy.getRetries() || !isRetryable(status, idempotent))
+				{
+					throw new ServerUnavailableException(MessageFormat.format(
+									"Der Server ist nicht erreichbar: {0} ({1})", response.getResponseMessage(), status));
+				}
+				backoff(policy, method, path, attempt, retryAfter(response));
+			}
+			finally
+			{
+				if (available)
+				{
+					breaker.recordSuccess();
+				}
+				else if (breaker.recordFailure())
+				{
+					SyncMetrics currentMetrics = metrics;
+					if (currentMetrics != null)
+					{
+						currentMetrics.recordCircuitOpened();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Send a request once the {@link #concurrencyLimiter} lets it through, and
+	 * report the outcome to the limiter.
+	 * 
+	 * @see #sendOnce(String, Map, String, String, Method, Validator,
+	 *      ContentHandler, String)
+	 */
+	private <E extends Exception> Response sendLimited(String path, Map<String, String> queryParameters, String data,
+					String contentType, Method method, Validator validator, ContentHandler<E> handler, String idempotencyKey)
+					throws HttpClientException, E
+	{
+		ConcurrencyLimiter limiter = concurrencyLimiter;
+		if (limiter == null)
+		{
+			return sendOnce(path, queryParameters, data, contentType, method, validator, handler, idempotencyKey);
+		}
+		long admitted;
+		try
+		{
+			admitted = limiter.acquire();
+		}
+		catch (InterruptedException exception)
+		{
+			Thread.currentThread().interrupt();
+			throw new HttpClientException("Die Anfrage wurde abgebrochen.", exception);
+		}
+		// Errors of the handler do not say anything about the server
+		boolean overloaded = false;
+		try
+		{
+			Response response = sendOnce(path, queryParameters, data, contentType, method, validator, handler, idempotencyKey);
+			overloaded = isTransient(response.getResponseCode()) || response.getResponseCode() == TOO_MANY_REQUESTS;
+			return response;
+		}
+		catch (HttpClientException exception)
+		{
+			overloaded = isTransient(exception.getCause());
+			throw exception;
+		}
+		finally
+		{
+			boolean decreased = limiter.release(admitted, endpoint(method, path), System.nanoTime() - admitted,
+							overloaded);
+			SyncMetrics currentMetrics = metrics;
+			if (currentMetrics != null)
+			{
+				currentMetrics.recordConcurrencyLimit(limiter.getLimit(), decreased);
+			}
+		}
+	}
+
+	/**
+	 * Check if a request failed because the server is temporarily unavailable.
+	 * 
+	 * @param cause
+	 *          The cause of the failure.
+	 * @return <code>true</code> for timeouts, refused and reset connections.
+	 */
+	private static boolean isTransient(Throwable cause)
+	{
+		return cause instanceof SocketTimeoutException || cause instanceof SocketException;
+	}
+
+	/**
+	 * Check if a response status shows that the server is temporarily
+	 * unavailable.
+	 * 
+	 * @param status
+	 *          The response status.
+	 * @return <code>true</code> for 502, 503 and 504.
+	 */
+	private static boolean isTransient(int status)
+	{
+		return status == HttpURLConnection.HTTP_BAD_GATEWAY || status == HttpURLConnection.HTTP_UNAVAILABLE
+						|| status == HttpURLConnection.HTTP_GATEWAY_TIMEOUT;
+	}
+
+	/**
+	 * Check if a request which failed with a transient error may be repeated. A
+	 * request which is not idempotent is only repeated if it certainly did not
+	 * reach the server.
+	 * 
+	 * @param cause
+	 *          The cause of the failure.
+	 * @param idempotent
+	 *          <code>true</code> if the request is idempotent.
+	 * @return <code>true</code> if the request may be repeated.
+	 */
+	private static boolean isRetryable(Throwable cause, boolean idempotent)
+	{
+		return idempotent || cause instanceof ConnectException;
+	}
+
+	/**
+	 * Check if a request which was answered with a transient error status may be
+	 * repeated. A request which is not idempotent is only repeated if the server
+	 * did not process it.
+	 * 
+	 * @param status
+	 *          The response status.
+	 * @param idempotent
+	 *          <code>true</code> if the request is idempotent.
+	 * @return <code>true</code> if the request may be repeated.
+	 */
+	private static boolean isRetryable(int status, boolean idempotent)
+	{
+		return idempotent || status == HttpURLConnection.HTTP_UNAVAILABLE;
+	}
+
+	/**
+	 * Get the delay requested by the server with a <code>Retry-After</code>
+	 * header. Only delays in seconds are supported.
+	 * 
+	 * @param response
+	 *          The response.
+	 * @return The delay in milliseconds, or <code>0</code>.
+	 */
+	private static long retryAfter(Response response)
+	{
+		if (response.getResponseHeaders() == null)
+		{
+			return 0;
+		}
+		List<String> values = response.getResponseHeaders().get("Retry-After");
+		if (values == null || values.isEmpty())
+		{
+			return 0;
+		}
+		try
+		{
+			return Math.max(Long.parseLong(values.get(0).trim()), 0) * 1000;
+		}
+		catch (NumberFormatException exception)
+		{
+			return 0;
+		}
+	}
+
+	/**
+	 * Wait before a request is repeated.
+	 * 
+	 * @param policy
+	 *          The retry policy.
+	 * @param method
+	 *          The request method.
+	 * @param path
+	 *          The path of the request.
+	 * @param attempt
+	 *          The number of the failed attempt.
+	 * @param requestedDelay
+	 *          The delay requested by the server in milliseconds.
+	 * @throws HttpClientException
+	 *           The thread was interrupted while waiting.
+	 */
+	private void backoff(RetryPolicy policy, Method method, String path, int attempt, long requestedDelay)
+					throws HttpClientException
+	{
+		SyncMetrics currentMetrics = metrics;
+		if (currentMetrics != null)
+		{
+			currentMetrics.recordRetry(endpoint(method, path));
+		}
+		try
+		{
+			Thread.sleep(policy.getBackoff(attempt, requestedDelay));
+		}
+		catch (InterruptedException exception)
+		{
+			Thread.currentThread().interrupt();
+			throw new HttpClientException("Die Anfrage wurde abgebrochen.", exception);
+		}
+	}
+
+	/**
+	 * Send a request to the server once.
+	 * 
+	 * @see #sendRequest(String, Map, String, String, Method, boolean, Validator,
+	 *      ContentHandler, String)
 	 */
-	private Response sendRequest(String path, Map<String, String> queryParameters, String data, String contentType,
-					Method method) throws HttpClientException
+	private <E extends Exception> Response sendOnce(String path, Map<String, String> queryParameters, String data,
+					String contentType, Method method, Validator validator, ContentHandler<E> handler, String idempotencyKey)
+					throws HttpClientException, E
 	{
 		URL url;
 		try
@@ -108,38 +576,61 @@ public class HttpClient
 		{
 			throw new HttpClientException(exception);
 		}
-		HttpURLConnection connection = null;
+		String host = url.getHost() + ":" + url.getPort();
+		long start = System.nanoTime();
+		int status = -1;
+		long bytesSent = 0;
+		CountingInputStream in = null;
+		boolean reusedConnection = false;
 		try
 		{
-			// Set up connection properties
-			connection = (HttpURLConnection) url.openConnection();
+			// Set up connection properties. The connection is not disconnected
+			// after the request, so that HttpURLConnection can keep it alive and
+			// reuse it for the next request to the same server.
+			reusedConnection = keepAliveStatistics.connectionRequested(host);
+			HttpURLConnection connection = (HttpURLConnection) url.openConnection();
 			connection.setRequestMethod(method.toString());
 			connection.setDoInput(true);
+			if (validator != null)
+			{
+				if (validator.getEntityTag() != null)
+				{
+					connection.setRequestProperty("If-None-Match", validator.getEntityTag());
+				}
+				if (validator.getLastModified() != null)
+				{
+					connection.setRequestProperty("If-Modified-Since", validator.getLastModified());
+				}
+			}
+			if (idempotencyKey != null)
+			{
+				connection.setRequestProperty("Idempotency-Key", idempotencyKey);
+			}
+			byte[] content = null;
 			if (data != null)
 			{
 				// Prepare sending of data
+				content = data.getBytes();
 				connection.setDoOutput(true);
 				if (contentType != null)
 				{
 					connection.setRequestProperty("Content-Type", contentType);
 				}
-				connection.setRequestProperty("Content-Length", "" + Integer.toString(data.getBytes().length));
+				connection.setFixedLengthStreamingMode(content.length);
 			}
 			// Open connection
 			connection.connect();
 
 			// Send data, if required
-			if (data != null)
+			if (content != null)
 			{
 				OutputStream output = null;
 				try
 				{
 					output = connection.getOutputStream();
-					OutputStreamWriter writer = new OutputStreamWriter(output);
-					writer.write(data);
-					writer.flush();
+					output.write(content);
 					output.flush();
-					writer.close();
+					bytesSent = content.length;
 				}
 				finally
 				{
@@ -153,16 +644,39 @@ public class HttpClient
 			// Build response
 			Response response = new Response();
 			response.resonseCode = connection.getResponseCode();
+			status = response.resonseCode;
 			response.responseMessage = connection.getResponseMessage();
 			response.responseHeaders = connection.getHeaderFields();
+			String entityTag = connection.getHeaderField("ETag");
+			String lastModified = connection.getHeaderField("Last-Modified");
+			if (entityTag != null || lastModified != null)
+			{
+				response.validator = new Validator(entityTag, lastModified);
+			}
 
-			if (response.resonseCode < 500)
+			// Read data from server. The response body must be read completely,
+			// even for errors, or the connection cannot be reused.
+			try
 			{
-				// Read data from server
-				InputStream in = null;
-				try
+				InputStream stream;
+				if (response.resonseCode < 400)
+				{
+					stream = connection.getInputStream();
+				}
+				else
+				{
+					stream = connection.getErrorStream();
+				}
+				if (stream != null)
+				{
+					in = new CountingInputStream(stream);
+				}
+				if (in != null && handler != null && response.resonseCode >= 200 && response.resonseCode < 300)
+				{
+					handler.handleContent(in);
+				}
+				else if (in != null)
 				{
-					in = connection.getInputStream();
 					BufferedReader reader = new BufferedReader(new InputStreamReader(in));
 					String line = null;
 					StringBuilder recievedData = new StringBuilder();
@@ -173,14 +687,16 @@ public class HttpClient
 					reader.close();
 					response.responseContent = recievedData.toString();
 				}
-				finally
+			}
+			finally
+			{
+				if (in != null)
 				{
-					if (in != null)
-					{
-						in.close();
-					}
+					in.close();
 				}
 			}
+			keepAliveStatistics.connectionReleased(host, connection.getHeaderField("Connection"),
+							connection.getHeaderField("Keep-Alive"));
 			return response;
 		}
 		catch (IOException exception)
@@ -189,13 +705,95 @@ public class HttpClient
 		}
 		finally
 		{
-			if (connection != null)
+			SyncMetrics currentMetrics = metrics;
+			if (currentMetrics != null)
 			{
-				connection.disconnect();
+				long latency = System.nanoTime() - start;
+				currentMetrics.recordRequest(endpoint(method, path), status, bytesSent, in == null ? 0 : in.count, latency,
+								reusedConnection);
 			}
 		}
 	}
 
+	/**
+	 * Get the name of the endpoint a request is sent to, for the metrics. IDs
+	 * are replaced by a placeholder, so that e.g. all updates of talents are
+	 * counted for <code>POST Talente/edit/{id}</code>.
+	 * 
+	 * @param method
+	 *          The request method.
+	 * @param path
+	 *          The path of the request.
+	 * @return The endpoint.
+	 */
+	private static String endpoint(Method method, String path)
+	{
+		String endpoint = path.startsWith("/") ? path.substring(1) : path;
+		if (endpoint.endsWith(".xml"))
+		{
+			endpoint = endpoint.substring(0, endpoint.length() - ".xml".length());
+		}
+		return method + " " + ID_PATTERN.matcher(endpoint).replaceAll("{id}");
+	}
+
+	/**
+	 * Set the metrics which record the requests of this client.
+	 * 
+	 * @param metrics
+	 *          The metrics, or <code>null</code> to record nothing.
+	 */
+	public void setMetrics(SyncMetrics metrics)
+	{
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Set the policy for repeating requests which failed with a transient error.
+	 * This also resets the circuit breaker.
+	 * 
+	 * @param retryPolicy
+	 *          The retry policy.
+	 */
+	public void setRetryPolicy(RetryPolicy retryPolicy)
+	{
+		this.retryPolicy = retryPolicy;
+		this.circuitBreaker = new CircuitBreaker(retryPolicy.getFailureThreshold(), retryPolicy.getOpenTime());
+	}
+
+	/**
+	 * Set the limiter which adapts the number of requests in flight to the
+	 * server.
+	 * 
+	 * @param concurrencyLimiter
+	 *          The limiter, or <code>null</code> to send requests without limit.
+	 */
+	public void setConcurrencyLimiter(ConcurrencyLimiter concurrencyLimiter)
+	{
+		this.concurrencyLimiter = concurrencyLimiter;
+	}
+
+	/**
+	 * Get the estimated number of requests which could reuse an open keep-alive
+	 * connection to the server. See {@link KeepAliveStatistics}.
+	 * 
+	 * @return The number of pool hits.
+	 */
+	public long getConnectionPoolHits()
+	{
+		return keepAliveStatistics.getHits();
+	}
+
+	/**
+	 * Get the estimated number of requests which required a new connection to
+	 * the server. See {@link KeepAliveStatistics}.
+	 * 
+	 * @return The number of pool misses.
+	 */
+	public long getConnectionPoolMisses()
+	{
+		return keepAliveStatistics.getMisses();
+	}
+
 	/**
 	 * Build a URL to the {@link #server}.
 	 * 
@@ -209,7 +807,7 @@ public class HttpClient
 	 * @throws MalformedURLException
 	 *           Thrown if the result is not a valid URL.
 	 */
-	private URL buildUrl(String path, Map<String, String> queryParameters) throws MalformedURLException
+	URL buildUrl(String path, Map<String, String> queryParameters) throws MalformedURLException
 	{
 		if (path.startsWith("/"))
 		{
@@ -238,12 +836,56 @@ public class HttpClient
 		return new URL(secure ? "https" : "http", server, port, fullPath.toString());
 	}
 
+	/**
+	 * Counts the bytes read from the response content.
+	 */
+	private static class CountingInputStream extends FilterInputStream
+	{
+		private long	count;
+
+		private CountingInputStream(InputStream in)
+		{
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			int read = super.read();
+			if (read != -1)
+			{
+				count++;
+			}
+			return read;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException
+		{
+			int read = super.read(buffer, offset, length);
+			if (read > 0)
+			{
+				count += read;
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(long length) throws IOException
+		{
+			long skipped = super.skip(length);
+			count += skipped;
+			return skipped;
+		}
+	}
+
 	public class Response
 	{
 		private int												resonseCode;
 		private String										responseMessage;
 		private String										responseContent;
 		private Map<String, List<String>>	responseHeaders;
+		private Validator									validator;
 
 		public int getResponseCode()
 		{
@@ -265,5 +907,15 @@ public class HttpClient
 			return responseHeaders;
 		}
 
+		/**
+		 * @return The validator of the returned content, or <code>null</code> if
+		 *         the server sent neither <code>ETag</code> nor
+		 *         <code>Last-Modified</code>.
+		 */
+		public Validator getValidator()
+		{
+			return validator;
+		}
+
 	}
 }
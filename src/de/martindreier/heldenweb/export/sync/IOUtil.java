@@ -0,0 +1,89 @@
+package de.martindreier.heldenweb.export.sync;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Helpers for the files kept by the export: streams are closed quietly and
+ * files are replaced through a temporary file, so that a crash leaves either
+ * the old or the new content.
+ * 
+ * @author Martin Dreier <martin@martindreier.de>
+ * 
+ */
+final class IOUtil
+{
+	/**
+	 * Suffix of the temporary file a file is written to before it replaces the
+	 * file.
+	 */
+	static final String	TEMPORARY	= ".tmp";
+
+	private IOUtil()
+	{
+		// Only static helpers
+	}
+
+	/**
+	 * Get the temporary file used to replace a file.
+	 * 
+	 * @param file
+	 *          The file to be replaced.
+	 * @return The temporary file.
+	 */
+	static File temporaryFile(File file)
+	{
+		return new File(file.getPath() + TEMPORARY);
+	}
+
+	/**
+	 * Finish writing a temporary file and let it replace the file. The content
+	 * is forced to disk before the old file is removed.
+	 * 
+	 * @param out
+	 *          The stream the content was written to. It is closed.
+	 * @param fileOut
+	 *          The stream of the temporary file underlying <code>out</code>.
+	 * @param temporaryFile
+	 *          The temporary file.
+	 * @param file
+	 *          The file to be replaced.
+	 * @throws IOException
+	 *           Thrown if the content could not be written or the file could
+	 *           not be replaced.
+	 */
+	static void replace(OutputStream out, FileOutputStream fileOut, File temporaryFile, File file) throws IOException
+	{
+		out.flush();
+		fileOut.getFD().sync();
+		out.close();
+		if (file.exists() && !file.delete() || !temporaryFile.renameTo(file))
+		{
+			throw new IOException("Datei " + file + " konnte nicht ersetzt werden");
+		}
+	}
+
+	/**
+	 * Close a stream, ignoring errors.
+	 * 
+	 * @param stream
+	 *          The stream. May be <code>null</code>.
+	 */
+	static void close(Closeable stream)
+	{
+		if (stream != null)
+		{
+			try
+			{
+				stream.close();
+			}
+			catch (IOException exception)
+			{
+				// Ignore, nothing left to do
+			}
+		}
+	}
+}
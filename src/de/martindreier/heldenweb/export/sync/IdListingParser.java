@@ -0,0 +1,249 @@
+package de.martindreier.heldenweb.export.sync;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import de.martindreier.heldenweb.export.HeldenWebExportException;
+import de.martindreier.heldenweb.export.sync.HttpClient.ContentHandler;
+
+/**
+ * Reads an ID listing returned by the server while it is received. Only the
+ * identifying fields of the current object are kept in memory; each object is
+ * passed to a {@link Callback} as soon as it is complete.
+ * 
+ * @author Martin Dreier <martin@martindreier.de>
+ * 
+ */
+class IdListingParser implements ContentHandler<HeldenWebExportException>
+{
+	/**
+	 * The input factory. Creating a factory is expensive, so it is shared.
+	 */
+	private static final XMLInputFactory	inputFactory;
+
+	static
+	{
+		inputFactory = XMLInputFactory.newInstance();
+		inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+	}
+
+	/**
+	 * Receives the objects found in the listing.
+	 * 
+	 * @author Martin Dreier <martin@martindreier.de>
+	 * 
+	 */
+	interface Callback
+	{
+		/**
+		 * Called for each object in the listing.
+		 * 
+		 * @param id
+		 *          The object's ID.
+		 * @param name
+		 *          The object's name, or <code>null</code> if the object has no
+		 *          name.
+		 * @param additionalIdentifiers
+		 *          The values of the additional identifying fields. Missing fields
+		 *          have an empty value.
+		 * @throws HeldenWebExportException
+		 */
+		public void objectFound(UUID id, String name, Map<String, String> additionalIdentifiers)
+						throws HeldenWebExportException;
+	}
+
+	/**
+	 * The element name of the objects.
+	 */
+	private String		elementName;
+
+	/**
+	 * Names of the additional identifying fields.
+	 */
+	private String[]	additionalIdentifiers;
+
+	private Callback	callback;
+
+	/**
+	 * Create a new parser.
+	 * 
+	 * @param elementName
+	 *          The element name of the objects in the listing.
+	 * @param additionalIdentifiers
+	 *          Names of the additional identifying fields.
+	 * @param callback
+	 *          Receives the objects.
+	 */
+	IdListingParser(String elementName, String[] additionalIdentifiers, Callback callback)
+	{
+		this.elementName = elementName;
+		this.additionalIdentifiers = additionalIdentifiers;
+		this.callback = callback;
+	}
+
+	/**
+	 * The fields of an object which is currently read.
+	 */
+	private class ObjectFields
+	{
+		/**
+		 * Depth of the object element.
+		 */
+		private int									depth;
+		private String							id;
+		private String							name;
+		private Map<String, String>	additionalIdentifierValues	= new HashMap<String, String>();
+
+		private ObjectFields(int depth)
+		{
+			this.depth = depth;
+			for (String additionalIdentifier : additionalIdentifiers)
+			{
+				additionalIdentifierValues.put(additionalIdentifier, "");
+			}
+		}
+	}
+
+	/**
+	 * @see de.martindreier.heldenweb.export.sync.HttpClient.ContentHandler#handleContent(java.io.InputStream)
+	 */
+	@Override
+	public void handleContent(InputStream content) throws IOException, HeldenWebExportException
+	{
+		XMLStreamReader reader;
+		try
+		{
+			synchronized (inputFactory)
+			{
+				reader = inputFactory.createXMLStreamReader(content);
+			}
+		}
+		catch (XMLStreamException exception)
+		{
+			throw new HeldenWebExportException("Der Server lieferte kein gültiges XML-Dokument", exception);
+		}
+		try
+		{
+			parse(reader);
+		}
+		catch (XMLStreamException exception)
+		{
+			throw new HeldenWebExportException("Der Server lieferte kein gültiges XML-Dokument", exception);
+		}
+		finally
+		{
+			try
+			{
+				reader.close();
+			}
+			catch (XMLStreamException exception)
+			{
+				// Ignore, the stream is closed by the client
+			}
+		}
+	}
+
+	/**
+	 * Read the listing. Objects may be nested in other elements; the root
+	 * element is never an object, even if it has the objects' element name.
+	 * 
+	 * @param reader
+	 *          The reader.
+	 * @throws XMLStreamException
+	 * @throws HeldenWebExportException
+	 */
+	private void parse(XMLStreamReader reader) throws XMLStreamException, HeldenWebExportException
+	{
+		List<ObjectFields> objects = new ArrayList<ObjectFields>();
+		int depth = 0;
+		// Field of the innermost object which is currently read
+		String field = null;
+		StringBuilder fieldText = new StringBuilder();
+		while (reader.hasNext())
+		{
+			switch (reader.next())
+			{
+				case XMLStreamConstants.START_ELEMENT:
+					depth++;
+					String localName = reader.getLocalName();
+					ObjectFields current = objects.isEmpty() ? null : objects.get(objects.size() - 1);
+					if (current != null && depth == current.depth + 1)
+					{
+						field = localName;
+						fieldText.setLength(0);
+					}
+					if (depth > 1 && localName.equals(elementName))
+					{
+						objects.add(new ObjectFields(depth));
+					}
+					break;
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.CDATA:
+				case XMLStreamConstants.SPACE:
+				case XMLStreamConstants.ENTITY_REFERENCE:
+					if (field != null)
+					{
+						fieldText.append(reader.getText());
+					}
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					current = objects.isEmpty() ? null : objects.get(objects.size() - 1);
+					if (current != null && depth == current.depth)
+					{
+						objects.remove(objects.size() - 1);
+						objectFinished(current);
+					}
+					else if (current != null && depth == current.depth + 1 && field != null)
+					{
+						fieldFinished(current, field, fieldText.toString());
+						field = null;
+					}
+					depth--;
+					break;
+			}
+		}
+	}
+
+	private void fieldFinished(ObjectFields object, String field, String text)
+	{
+		if (field.equalsIgnoreCase("id"))
+		{
+			object.id = text;
+		}
+		else if (field.equalsIgnoreCase("name"))
+		{
+			object.name = text;
+		}
+		else if (object.additionalIdentifierValues.containsKey(field))
+		{
+			object.additionalIdentifierValues.put(field, text);
+		}
+	}
+
+	private void objectFinished(ObjectFields object) throws HeldenWebExportException
+	{
+		if (object.id == null)
+		{
+			throw new HeldenWebExportException("Dokument ist nicht vollständig");
+		}
+		UUID id;
+		try
+		{
+			id = UUID.fromString(object.id);
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new HeldenWebExportException(MessageFormat.format("ID {0} ist keine gültige UUID", object.id));
+		}
+		callback.objectFound(id, object.name, object.additionalIdentifierValues);
+	}
+}
@@ -0,0 +1,206 @@
+package de.martindreier.heldenweb.export.sync;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import de.martindreier.heldenweb.export.HeldenWebExportException;
+import de.martindreier.heldenweb.export.sync.Cache.CacheKey;
+import de.martindreier.heldenweb.export.sync.HttpClient.Validator;
+
+/**
+ * Persistent store for the IDs known to the {@link Cache}. The IDs are written
+ * to a compact binary file next to the settings file, so that a repeated
+ * export does not have to download all ID listings from the server again. The
+ * validators of the ID listings are stored as well, so that unchanged listings
+ * can be requested conditionally.
+ * 
+ * @author Martin Dreier <martin@martindreier.de>
+ * 
+ */
+public class IdStore
+{
+	/**
+	 * Magic number at the start of the file ("HWID").
+	 */
+	private static final int	MAGIC						= 0x48574944;
+
+	/**
+	 * Version of the file format. Files with a different version are ignored.
+	 */
+	private static final int	FORMAT_VERSION	= 3;
+
+	/**
+	 * The file where the IDs are stored.
+	 */
+	private File							file;
+
+	/**
+	 * Identifies the server the IDs belong to. IDs stored for a different server
+	 * are ignored.
+	 */
+	private String						serverIdentity;
+
+	/**
+	 * The validators read by the last call to {@link #load()}, keyed by URL.
+	 */
+	private Map<String, Validator>	validators	= new HashMap<String, Validator>();
+
+	/**
+	 * Create a new ID store.
+	 * 
+	 * @param file
+	 *          The file where the IDs are stored.
+	 * @param serverIdentity
+	 *          Identifies the server the IDs belong to, e.g. the server URL.
+	 */
+	public IdStore(File file, String serverIdentity)
+	{
+		this.file = file;
+		this.serverIdentity = serverIdentity;
+	}
+
+	/**
+	 * Load the stored IDs into the indexes of the cache. Nothing is loaded if no
+	 * IDs have been stored yet, the stored IDs belong to another server or the
+	 * file could not be read.
+	 * 
+	 * @param keys
+	 *          The indexes of the cache, one for each type. They must be empty.
+	 */
+	void load(Map<CacheKey, KeyIndex> keys)
+	{
+		validators = new HashMap<String, Validator>();
+		if (!file.exists())
+		{
+			return;
+		}
+		DataInputStream in = null;
+		try
+		{
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !serverIdentity.equals(in.readUTF()))
+			{
+				return;
+			}
+			int count = in.readInt();
+			for (int index = 0; index < count; index++)
+			{
+				keys.get(CacheKey.valueOf(in.readUTF())).readFrom(in);
+			}
+			count = in.readInt();
+			for (int index = 0; index < count; index++)
+			{
+				String url = in.readUTF();
+				validators.put(url, new Validator(readOptionalUTF(in), readOptionalUTF(in)));
+			}
+		}
+		catch (IOException exception)
+		{
+			// Unreadable or truncated file. The stored IDs are only an
+			// optimization, so start from scratch.
+			discard(keys);
+		}
+		catch (IllegalArgumentException exception)
+		{
+			// Type which no longer exists
+			discard(keys);
+		}
+		finally
+		{
+			IOUtil.close(in);
+		}
+	}
+
+	private void discard(Map<CacheKey, KeyIndex> keys)
+	{
+		for (KeyIndex index : keys.values())
+		{
+			index.clear();
+		}
+		validators = new HashMap<String, Validator>();
+	}
+
+	/**
+	 * Get the validators of the ID listings the stored IDs were read from.
+	 * 
+	 * @return The validators read by {@link #load()}, keyed by URL.
+	 */
+	public Map<String, Validator> getValidators()
+	{
+		return validators;
+	}
+
+	/**
+	 * Store the IDs. The file is replaced completely.
+	 * 
+	 * @param keys
+	 *          The indexes of the cache, one for each type.
+	 * @param validators
+	 *          The validators of the ID listings, keyed by URL. Only store
+	 *          validators of listings whose IDs are all contained in
+	 *          <code>keys</code>.
+	 * @throws HeldenWebExportException
+	 *           Thrown if the IDs could not be written.
+	 */
+	void save(Map<CacheKey, KeyIndex> keys, Map<String, Validator> validators) throws HeldenWebExportException
+	{
+		File temporaryFile = IOUtil.temporaryFile(file);
+		DataOutputStream out = null;
+		try
+		{
+			FileOutputStream fileOut = new FileOutputStream(temporaryFile);
+			out = new DataOutputStream(new BufferedOutputStream(fileOut));
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeUTF(serverIdentity);
+			out.writeInt(keys.size());
+			for (Map.Entry<CacheKey, KeyIndex> entry : keys.entrySet())
+			{
+				out.writeUTF(entry.getKey().name());
+				entry.getValue().writeTo(out);
+			}
+			out.writeInt(validators.size());
+			for (Map.Entry<String, Validator> entry : validators.entrySet())
+			{
+				out.writeUTF(entry.getKey());
+				writeOptionalUTF(out, entry.getValue().getEntityTag());
+				writeOptionalUTF(out, entry.getValue().getLastModified());
+			}
+			IOUtil.replace(out, fileOut, temporaryFile, file);
+			out = null;
+		}
+		catch (IOException exception)
+		{
+			throw new HeldenWebExportException("ID-Cache konnte nicht gespeichert werden", exception);
+		}
+		finally
+		{
+			IOUtil.close(out);
+		}
+	}
+
+	private String readOptionalUTF(DataInputStream in) throws IOException
+	{
+		if (in.readBoolean())
+		{
+			return in.readUTF();
+		}
+		return null;
+	}
+
+	private void writeOptionalUTF(DataOutputStream out, String value) throws IOException
+	{
+		out.writeBoolean(value != null);
+		if (value != null)
+		{
+			out.writeUTF(value);
+		}
+	}
+}
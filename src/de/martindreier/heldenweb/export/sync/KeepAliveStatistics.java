@@ -0,0 +1,172 @@
+package de.martindreier.heldenweb.export.sync;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bookkeeping for the keep-alive connections of the {@link HttpClient}. The
+ * connections themselves are pooled by {@link java.net.HttpURLConnection},
+ * which does not tell whether a request reused one. This class mirrors the
+ * pool's rules (bounded number of idle connections per host, eviction after the
+ * keep-alive timeout) to estimate how many requests could reuse an open
+ * connection. The pool is shared by the whole application, so the estimate is
+ * too high if other code uses connections to the same server.
+ * 
+ * @author Martin Dreier <martin@martindreier.de>
+ * 
+ */
+class KeepAliveStatistics
+{
+	/**
+	 * Default keep-alive timeout if the server does not send one.
+	 */
+	private static final long						DEFAULT_TIMEOUT	= 5000;
+
+	/**
+	 * Default number of idle connections per host kept by the pool.
+	 */
+	private static final int						DEFAULT_MAX_CONNECTIONS	= 5;
+
+	/**
+	 * Maximum number of idle connections per host.
+	 */
+	private int													maxConnections;
+
+	/**
+	 * Idle connections per host. Each connection is represented by the time
+	 * until which it may be reused.
+	 */
+	private Map<String, List<Long>>	idleConnections	= new HashMap<String, List<Long>>();
+
+	private long												hits;
+
+	private long												misses;
+
+	/**
+	 * Create new statistics. The number of idle connections per host is taken
+	 * from the <code>http.maxConnections</code> setting the pool uses.
+	 */
+	KeepAliveStatistics()
+	{
+		this(Integer.getInteger("http.maxConnections", DEFAULT_MAX_CONNECTIONS).intValue());
+	}
+
+	/**
+	 * Create new statistics.
+	 * 
+	 * @param maxConnections
+	 *          Maximum number of idle connections per host.
+	 */
+	KeepAliveStatistics(int maxConnections)
+	{
+		this.maxConnections = maxConnections;
+	}
+
+	/**
+	 * Record that a connection to a host is opened.
+	 * 
+	 * @param host
+	 *          The host, including the port.
+	 * @return <code>true</code> if an idle connection can probably be reused.
+	 */
+	synchronized boolean connectionRequested(String host)
+	{
+		List<Long> idle = idleConnections.get(host);
+		long now = System.currentTimeMillis();
+		while (idle != null && !idle.isEmpty())
+		{
+			// Most recently released connections are reused first
+			long expires = idle.remove(idle.size() - 1);
+			if (expires > now)
+			{
+				hits++;
+				return true;
+			}
+			// Older connections have expired as well
+			idle.clear();
+		}
+		misses++;
+		return false;
+	}
+
+	/**
+	 * Record that a connection has been released after the response has been
+	 * read completely.
+	 * 
+	 * @param host
+	 *          The host, including the port.
+	 * @param connectionHeader
+	 *          The value of the response's <code>Connection</code> header. May be
+	 *          <code>null</code>.
+	 * @param keepAliveHeader
+	 *          The value of the response's <code>Keep-Alive</code> header. May be
+	 *          <code>null</code>.
+	 */
+	synchronized void connectionReleased(String host, String connectionHeader, String keepAliveHeader)
+	{
+		if (connectionHeader != null && connectionHeader.equalsIgnoreCase("close"))
+		{
+			return;
+		}
+		List<Long> idle = idleConnections.get(host);
+		if (idle == null)
+		{
+			idle = new LinkedList<Long>();
+			idleConnections.put(host, idle);
+		}
+		if (idle.size() < maxConnections)
+		{
+			idle.add(System.currentTimeMillis() + parseTimeout(keepAliveHeader));
+		}
+	}
+
+	/**
+	 * Parse the timeout from a <code>Keep-Alive</code> header, e.g.
+	 * <code>timeout=5, max=100</code>.
+	 * 
+	 * @param keepAliveHeader
+	 *          The header value. May be <code>null</code>.
+	 * @return The timeout in milliseconds.
+	 */
+	private long parseTimeout(String keepAliveHeader)
+	{
+		if (keepAliveHeader != null)
+		{
+			for (String parameter : keepAliveHeader.split(","))
+			{
+				String[] nameValue = parameter.trim().split("=");
+				if (nameValue.length == 2 && nameValue[0].trim().equalsIgnoreCase("timeout"))
+				{
+					try
+					{
+						return Long.parseLong(nameValue[1].trim()) * 1000;
+					}
+					catch (NumberFormatException exception)
+					{
+						break;
+					}
+				}
+			}
+		}
+		return DEFAULT_TIMEOUT;
+	}
+
+	/**
+	 * @return The estimated number of requests which could reuse an open
+	 *         connection.
+	 */
+	synchronized long getHits()
+	{
+		return hits;
+	}
+
+	/**
+	 * @return The estimated number of requests which required a new connection.
+	 */
+	synchronized long getMisses()
+	{
+		return misses;
+	}
+}
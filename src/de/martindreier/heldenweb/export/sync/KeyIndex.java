@@ -0,0 +1,386 @@
+package de.martindreier.heldenweb.export.sync;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Maps the identifiers of the objects of one type to their IDs on the server.
+ * The index is an open addressing hash table with linear probing: the
+ * identifiers and the two halves of each ID are kept in parallel arrays, so an
+ * entry needs no objects besides its identifier array, and a lookup does not
+ * allocate anything but the returned {@link UUID}. Identifiers are compared
+ * element by element, so <code>("ab", "c")</code> and <code>("a", "bc")</code>
+ * are different keys.
+ * <p>
+ * All methods are thread-safe.
+ * 
+ * @author Martin Dreier <martin@martindreier.de>
+ * 
+ */
+class KeyIndex
+{
+	/**
+	 * Canonical instances of identifiers. The same names and hero IDs occur in
+	 * many entries and in the indexes of several types; storing them only once
+	 * keeps the cache small on servers with many heroes.
+	 * 
+	 * @author Martin Dreier <martin@martindreier.de>
+	 * 
+	 */
+	static class Pool
+	{
+		private final ConcurrentMap<String, String>	strings	= new ConcurrentHashMap<String, String>();
+
+		/**
+		 * Get the canonical instance of a string.
+		 * 
+		 * @param value
+		 *          The string.
+		 * @return The canonical instance, equal to <code>value</code>.
+		 */
+		String intern(String value)
+		{
+			String existing = strings.putIfAbsent(value, value);
+			return existing == null ? value : existing;
+		}
+	}
+
+	/**
+	 * Initial number of slots. Must be a power of two.
+	 */
+	private static final int	INITIAL_CAPACITY	= 16;
+
+	private final Pool				pool;
+
+	/**
+	 * The identifiers of the entry in each slot, <code>null</code> for empty
+	 * slots.
+	 */
+	private String[][]				identifiers;
+
+	/**
+	 * The hash of the identifiers in each slot.
+	 */
+	private int[]							hashes;
+
+	/**
+	 * The IDs: the most significant bits of the ID in slot <code>i</code> at
+	 * <code>2 * i</code>, the least significant bits at <code>2 * i + 1</code>.
+	 */
+	private long[]						ids;
+
+	private int								size;
+
+	/**
+	 * Create a new, empty index.
+	 * 
+	 * @param pool
+	 *          Provides the canonical instances of the identifiers.
+	 */
+	KeyIndex(Pool pool)
+	{
+		this.pool = pool;
+		allocate(INITIAL_CAPACITY);
+	}
+
+	private void allocate(int capacity)
+	{
+		identifiers = new String[capacity][];
+		hashes = new int[capacity];
+		ids = new long[2 * capacity];
+	}
+
+	/**
+	 * Get the ID of an object.
+	 * 
+	 * @param key
+	 *          The object's identifiers.
+	 * @return The ID, or <code>null</code> if the object is not in the index.
+	 */
+	synchronized UUID get(String... key)
+	{
+		int slot = find(key, hash(key));
+		if (identifiers[slot] == null)
+		{
+			return null;
+		}
+		return new UUID(ids[2 * slot], ids[2 * slot + 1]);
+	}
+
+	/**
+	 * Put the ID of an object into the index, replacing a previous ID of the same
+	 * object.
+	 * 
+	 * @param id
+	 *          The ID.
+	 * @param key
+	 *          The object's identifiers.
+	 */
+	synchronized void put(UUID id, String... key)
+	{
+		put(id.getMostSignificantBits(), id.getLeastSignificantBits(), key);
+	}
+
+	private void put(long mostSignificantBits, long leastSignificantBits, String... key)
+	{
+		int hash = hash(key);
+		int slot = find(key, hash);
+		if (identifiers[slot] == null)
+		{
+			String[] canonicalKey = new String[key.length];
+			for (int index = 0; index < key.length; index++)
+			{
+				canonicalKey[index] = key[index] == null ? null : pool.intern(key[index]);
+			}
+			identifiers[slot] = canonicalKey;
+			hashes[slot] = hash;
+			size++;
+		}
+		ids[2 * slot] = mostSignificantBits;
+		ids[2 * slot + 1] = leastSignificantBits;
+		// Keep the load factor below 3/4
+		if (4 * size > 3 * identifiers.length)
+		{
+			resize(2 * identifiers.length);
+		}
+	}
+
+	/**
+	 * Remove an object from the index.
+	 * 
+	 * @param key
+	 *          The object's identifiers.
+	 */
+	synchronized void remove(String... key)
+	{
+		int hole = find(key, hash(key));
+		if (identifiers[hole] == null)
+		{
+			return;
+		}
+		identifiers[hole] = null;
+		size--;
+		// Move following entries of the probe sequence into the hole, so that
+		// lookups need no markers for removed entries
+		int mask = identifiers.length - 1;
+		for (int slot = (hole + 1) & mask; identifiers[slot] != null; slot = (slot + 1) & mask)
+		{
+			int home = hashes[slot] & mask;
+			boolean movable = hole <= slot ? home <= hole || home > slot : home <= hole && home > slot;
+			if (movable)
+			{
+				identifiers[hole] = identifiers[slot];
+				hashes[hole] = hashes[slot];
+				ids[2 * hole] = ids[2 * slot];
+				ids[2 * hole + 1] = ids[2 * slot + 1];
+				identifiers[slot] = null;
+				hole = slot;
+			}
+		}
+	}
+
+	/**
+	 * @return The number of objects in the index.
+	 */
+	synchronized int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Remove all objects from the index.
+	 */
+	synchronized void clear()
+	{
+		allocate(INITIAL_CAPACITY);
+		size = 0;
+	}
+
+	/**
+	 * @return The IDs of all objects in the index.
+	 */
+	synchronized Set<UUID> getIds()
+	{
+		Set<UUID> result = new HashSet<UUID>();
+		for (int slot = 0; slot < identifiers.length; slot++)
+		{
+			if (identifiers[slot] != null)
+			{
+				result.add(new UUID(ids[2 * slot], ids[2 * slot + 1]));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Remove all objects with one of the given IDs from the index.
+	 * 
+	 * @param removedIds
+	 *          The IDs.
+	 * @return The identifiers of the removed objects.
+	 */
+	synchronized List<String[]> removeIds(Set<UUID> removedIds)
+	{
+		List<String[]> removed = new ArrayList<String[]>();
+		for (int slot = 0; slot < identifiers.length; slot++)
+		{
+			if (identifiers[slot] != null && removedIds.contains(new UUID(ids[2 * slot], ids[2 * slot + 1])))
+			{
+				removed.add(identifiers[slot]);
+			}
+		}
+		for (String[] key : removed)
+		{
+			remove(key);
+		}
+		return removed;
+	}
+
+	/**
+	 * Write the index. Entries with missing identifiers are skipped.
+	 * 
+	 * @param out
+	 *          The stream.
+	 * @throws IOException
+	 * @see #readFrom(DataInputStream)
+	 */
+	synchronized void writeTo(DataOutputStream out) throws IOException
+	{
+		int count = 0;
+		for (String[] key : identifiers)
+		{
+			if (key != null && isComplete(key))
+			{
+				count++;
+			}
+		}
+		out.writeInt(count);
+		for (int slot = 0; slot < identifiers.length; slot++)
+		{
+			String[] key = identifiers[slot];
+			if (key != null && isComplete(key))
+			{
+				out.writeByte(key.length);
+				for (String identifier : key)
+				{
+					out.writeUTF(identifier);
+				}
+				out.writeLong(ids[2 * slot]);
+				out.writeLong(ids[2 * slot + 1]);
+			}
+		}
+	}
+
+	/**
+	 * Add the entries written by {@link #writeTo(DataOutputStream)} to the index.
+	 * 
+	 * @param in
+	 *          The stream.
+	 * @throws IOException
+	 */
+	synchronized void readFrom(DataInputStream in) throws IOException
+	{
+		int count = in.readInt();
+		for (int entry = 0; entry < count; entry++)
+		{
+			String[] key = new String[in.readUnsignedByte()];
+			for (int index = 0; index < key.length; index++)
+			{
+				key[index] = in.readUTF();
+			}
+			put(in.readLong(), in.readLong(), key);
+		}
+	}
+
+	private static boolean isComplete(String[] key)
+	{
+		for (String identifier : key)
+		{
+			if (identifier == null)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Find the slot of an object.
+	 * 
+	 * @return The slot containing the object, or the empty slot where it would
+	 *         be inserted.
+	 */
+	private int find(String[] key, int hash)
+	{
+		int mask = identifiers.length - 1;
+		int slot = hash & mask;
+		while (identifiers[slot] != null && (hashes[slot] != hash || !matches(identifiers[slot], key)))
+		{
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void resize(int capacity)
+	{
+		String[][] oldIdentifiers = identifiers;
+		int[] oldHashes = hashes;
+		long[] oldIds = ids;
+		allocate(capacity);
+		int mask = capacity - 1;
+		for (int oldSlot = 0; oldSlot < oldIdentifiers.length; oldSlot++)
+		{
+			if (oldIdentifiers[oldSlot] != null)
+			{
+				int slot = oldHashes[oldSlot] & mask;
+				while (identifiers[slot] != null)
+				{
+					slot = (slot + 1) & mask;
+				}
+				identifiers[slot] = oldIdentifiers[oldSlot];
+				hashes[slot] = oldHashes[oldSlot];
+				ids[2 * slot] = oldIds[2 * oldSlot];
+				ids[2 * slot + 1] = oldIds[2 * oldSlot + 1];
+			}
+		}
+	}
+
+	private static int hash(String[] key)
+	{
+		int hash = key.length;
+		for (String identifier : key)
+		{
+			hash = 31 * hash + (identifier == null ? 0 : identifier.hashCode());
+		}
+		// Spread the bits, only the low bits select the slot
+		hash ^= hash >>> 16;
+		hash *= 0x85EBCA6B;
+		hash ^= hash >>> 13;
+		return hash;
+	}
+
+	private static boolean matches(String[] stored, String[] key)
+	{
+		if (stored.length != key.length)
+		{
+			return false;
+		}
+		for (int index = 0; index < key.length; index++)
+		{
+			// Stored identifiers are canonical, so most matches are identical
+			if (stored[index] != key[index] && (key[index] == null || !key[index].equals(stored[index])))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,38 @@
+package de.martindreier.heldenweb.export.sync;
+
+import de.martindreier.heldenweb.export.ui.ProgressMonitor;
+
+/**
+ * Progress monitor which ignores all progress.
+ * 
+ * @author Martin Dreier <martin@martindreier.de>
+ * 
+ */
+class NullProgressMonitor implements ProgressMonitor
+{
+
+	@Override
+	public void subtaskDone()
+	{}
+
+	@Override
+	public void done()
+	{}
+
+	@Override
+	public void start(int steps)
+	{}
+
+	@Override
+	public void startTask(String name)
+	{}
+
+	@Override
+	public void startSubtask(String name, int steps)
+	{}
+
+	@Override
+	public void step()
+	{}
+
+}
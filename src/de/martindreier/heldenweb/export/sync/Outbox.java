@@ -0,0 +1,371 @@
+package de.martindreier.heldenweb.export.sync;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import de.martindreier.heldenweb.export.HeldenWebExportException;
+
+/**
+ * Durable queue of heroes which could not be exported because the server was
+ * not reachable. Each hero is stored in its own file, which is replaced when
+ * the hero is queued again, so only the latest state of a hero is sent. The
+ * queue is drained by the {@link OutboxFlusher}.
+ * <p>
+ * The heroes are stored as {@link HeroSnapshot}s. Which of their objects need
+ * to be sent is only determined when the hero is exported, since that depends
+ * on the IDs assigned by the server.
+ * 
+ * @author Martin Dreier <martin@martindreier.de>
+ * 
+ */
+public class Outbox
+{
+	/**
+	 * Magic number at the start of a file ("HWOB").
+	 */
+	private static final int		MAGIC						= 0x48574F42;
+
+	/**
+	 * Version of the file format. Files with a different version cannot be read.
+	 */
+	private static final int		FORMAT_VERSION	= 1;
+
+	/**
+	 * Extension of the queued heroes.
+	 */
+	private static final String	SUFFIX					= ".hero";
+
+	/**
+	 * Extension of files which could not be read. They are kept for the user,
+	 * but not sent.
+	 */
+	private static final String	UNREADABLE			= ".unlesbar";
+
+	/**
+	 * Extension of heroes which the server did not accept. They are kept for the
+	 * user, but not sent again.
+	 */
+	private static final String	REJECTED				= ".abgelehnt";
+
+	/**
+	 * A queued hero.
+	 * 
+	 * @author Martin Dreier <martin@martindreier.de>
+	 * 
+	 */
+	public static class Entry
+	{
+		private final File					file;
+		private final String				token;
+		private final long					queuedAt;
+		private final HeroSnapshot	hero;
+
+		private Entry(File file, String token, long queuedAt, HeroSnapshot hero)
+		{
+			this.file = file;
+			this.token = token;
+			this.queuedAt = queuedAt;
+			this.hero = hero;
+		}
+
+		/**
+		 * @return The time the hero was queued, in milliseconds since the epoch.
+		 */
+		public long getQueuedAt()
+		{
+			return queuedAt;
+		}
+
+		public HeroSnapshot getHero()
+		{
+			return hero;
+		}
+	}
+
+	/**
+	 * The directory of the queued heroes.
+	 */
+	private File								directory;
+
+	/**
+	 * Create a new outbox.
+	 * 
+	 * @param directory
+	 *          The directory of the queued heroes. It is created when the first
+	 *          hero is queued.
+	 */
+	public Outbox(File directory)
+	{
+		this.directory = directory;
+	}
+
+	/**
+	 * Queue heroes. A hero which is already queued is replaced.
+	 * 
+	 * @param heroes
+	 *          The heroes.
+	 * @throws HeldenWebExportException
+	 *           Thrown if a hero could not be stored.
+	 */
+	public synchronized void enqueue(List<HeroSnapshot> heroes) throws HeldenWebExportException
+	{
+		if (!directory.exists() && !directory.mkdirs())
+		{
+			throw new HeldenWebExportException("Postausgang " + directory + " konnte nicht angelegt werden");
+		}
+		for (HeroSnapshot hero : heroes)
+		{
+			File file = getFile(hero);
+			File temporaryFile = IOUtil.temporaryFile(file);
+			DataOutputStream out = null;
+			try
+			{
+				FileOutputStream fileOut = new FileOutputStream(temporaryFile);
+				out = new DataOutputStream(new BufferedOutputStream(fileOut));
+				out.writeInt(MAGIC);
+				out.writeInt(FORMAT_VERSION);
+				out.writeUTF(UUID.randomUUID().toString());
+				out.writeLong(System.currentTimeMillis());
+				ObjectOutputStream objectOut = new ObjectOutputStream(out);
+				objectOut.writeObject(hero);
+				IOUtil.replace(objectOut, fileOut, temporaryFile, file);
+				out = null;
+			}
+			catch (IOException exception)
+			{
+				throw new HeldenWebExportException("Held " + hero.getName() + " konnte nicht im Postausgang gespeichert werden",
+								exception);
+			}
+			finally
+			{
+				IOUtil.close(out);
+			}
+		}
+	}
+
+	/**
+	 * Read the queued heroes. Files which cannot be read are renamed, so that
+	 * they do not block the outbox. A hero whose file was being replaced when
+	 * the Helden software was stopped is recovered from the new file.
+	 * 
+	 * @return The queued heroes, the longest waiting first.
+	 */
+	public synchronized List<Entry> getEntries()
+	{
+		List<Entry> entries = new ArrayList<Entry>();
+		File[] files = directory.listFiles();
+		if (files == null)
+		{
+			return entries;
+		}
+		// Recover first, so that no hero is read from a file being replaced
+		boolean recovered = false;
+		for (File file : files)
+		{
+			if (file.getName().endsWith(SUFFIX + IOUtil.TEMPORARY))
+			{
+				recover(file);
+				recovered = true;
+			}
+		}
+		if (recovered)
+		{
+			files = directory.listFiles();
+			if (files == null)
+			{
+				return entries;
+			}
+		}
+		for (File file : files)
+		{
+			if (!file.getName().endsWith(SUFFIX))
+			{
+				continue;
+			}
+			Entry entry = read(file);
+			if (entry != null)
+			{
+				entries.add(entry);
+			}
+			else
+			{
+				file.renameTo(new File(file.getPath() + UNREADABLE));
+			}
+		}
+		Collections.sort(entries, new Comparator<Entry>()
+		{
+			@Override
+			public int compare(Entry first, Entry second)
+			{
+				return Long.valueOf(first.queuedAt).compareTo(second.queuedAt);
+			}
+		});
+		return entries;
+	}
+
+	/**
+	 * Remove a hero which has been sent. If the hero was queued again in the
+	 * meantime, the newer state is kept.
+	 * 
+	 * @param entry
+	 *          The sent entry.
+	 */
+	public synchronized void remove(Entry entry)
+	{
+		Entry current = read(entry.file);
+		if (current != null && current.token.equals(entry.token))
+		{
+			entry.file.delete();
+		}
+	}
+
+	/**
+	 * Set aside a hero which the server did not accept. The file is renamed, so
+	 * that it is kept for the user but not sent again. If the hero was queued
+	 * again in the meantime, the newer state is kept in the queue.
+	 * 
+	 * @param entry
+	 *          The rejected entry.
+	 */
+	public synchronized void reject(Entry entry)
+	{
+		Entry current = read(entry.file);
+		if (current != null && current.token.equals(entry.token))
+		{
+			File rejectedFile = new File(entry.file.getPath() + REJECTED);
+			rejectedFile.delete();
+			entry.file.renameTo(rejectedFile);
+		}
+	}
+
+	/**
+	 * Remove a hero which has been exported directly. Only a state queued
+	 * before the hero was read is removed.
+	 * 
+	 * @param hero
+	 *          The exported hero.
+	 * @param readAt
+	 *          The time the hero was read, in milliseconds since the epoch.
+	 */
+	public synchronized void discard(HeroSnapshot hero, long readAt)
+	{
+		File file = getFile(hero);
+		if (!file.exists())
+		{
+			return;
+		}
+		Entry current = read(file);
+		if (current == null || current.queuedAt <= readAt)
+		{
+			file.delete();
+		}
+	}
+
+	/**
+	 * @return The number of queued heroes.
+	 */
+	public synchronized int size()
+	{
+		File[] files = directory.listFiles();
+		int size = 0;
+		if (files != null)
+		{
+			for (File file : files)
+			{
+				if (file.getName().endsWith(SUFFIX))
+				{
+					size++;
+				}
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Recover a hero from a file which was left behind while it was written. If
+	 * the file can be read, it was written completely and is newer than the
+	 * hero's file, if that still exists; it replaces the hero's file. Otherwise
+	 * the write did not complete and the file is deleted.
+	 * 
+	 * @param temporaryFile
+	 *          The file.
+	 */
+	private void recover(File temporaryFile)
+	{
+		String path = temporaryFile.getPath();
+		File file = new File(path.substring(0, path.length() - IOUtil.TEMPORARY.length()));
+		if (read(temporaryFile) == null)
+		{
+			temporaryFile.delete();
+		}
+		else if (!file.exists() || file.delete())
+		{
+			// If this fails, the hero is recovered the next time
+			temporaryFile.renameTo(file);
+		}
+	}
+
+	/**
+	 * Read a queued hero.
+	 * 
+	 * @param file
+	 *          The file.
+	 * @return The entry, or <code>null</code> if the file cannot be read.
+	 */
+	private Entry read(File file)
+	{
+		DataInputStream in = null;
+		try
+		{
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION)
+			{
+				return null;
+			}
+			String token = in.readUTF();
+			long queuedAt = in.readLong();
+			ObjectInputStream objectIn = new ObjectInputStream(in);
+			return new Entry(file, token, queuedAt, (HeroSnapshot) objectIn.readObject());
+		}
+		catch (IOException exception)
+		{
+			return null;
+		}
+		catch (ClassNotFoundException exception)
+		{
+			return null;
+		}
+		catch (ClassCastException exception)
+		{
+			return null;
+		}
+		finally
+		{
+			IOUtil.close(in);
+		}
+	}
+
+	/**
+	 * Get the file of a hero. The name is derived from the hero's identifier.
+	 * 
+	 * @param hero
+	 *          The hero.
+	 * @return The file.
+	 */
+	private File getFile(HeroSnapshot hero)
+	{
+		return new File(directory, Digests.md5Hex(hero.getIdentifier()) + SUFFIX);
+	}
+}
@@ -0,0 +1,361 @@
+package de.martindreier.heldenweb.export.sync;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import de.martindreier.heldenweb.export.HeldenWebExportException;
+import de.martindreier.heldenweb.export.Settings;
+
+/**
+ * Sends the heroes queued in the {@link Outbox} in the background. All queued
+ * heroes are sent in a single export, so the base data is synchronized only
+ * once. If the server is still not reachable, the next attempt is made after a
+ * pause which doubles with every failed attempt.
+ * <p>
+ * If the export fails for another reason, e.g. because the server rejects a
+ * hero, the heroes are sent one by one. Heroes which fail again are set aside
+ * in the outbox, see {@link Outbox#reject(Outbox.Entry)}, and reported to the
+ * {@link RejectionListener}, so that they are not sent again and again.
+ * 
+ * @author Martin Dreier <martin@martindreier.de>
+ * 
+ */
+public class OutboxFlusher
+{
+	/**
+	 * Is informed about heroes which could not be sent although the server was
+	 * reachable.
+	 * 
+	 * @author Martin Dreier <martin@martindreier.de>
+	 * 
+	 */
+	public interface RejectionListener
+	{
+		/**
+		 * A hero has been set aside in the outbox. Called by the background
+		 * thread.
+		 * 
+		 * @param hero
+		 *          The hero.
+		 * @param exception
+		 *          The reason the hero could not be sent.
+		 */
+		void heroRejected(HeroSnapshot hero, HeldenWebExportException exception);
+	}
+
+	/**
+	 * Name of the outbox directory in the settings directory.
+	 */
+	private static final String							OUTBOX_DIRECTORY	= "outbox";
+
+	/**
+	 * Pause after the first failed attempt in milliseconds.
+	 */
+	private static final long								INITIAL_PAUSE			= 30 * 1000;
+
+	/**
+	 * Maximum pause between two attempts in milliseconds.
+	 */
+	private static final long								MAX_PAUSE					= 15 * 60 * 1000;
+
+	private static OutboxFlusher						instance;
+
+	private final Outbox										outbox;
+	private final Synchronizer							synchronizer;
+	private final OutboxHeroSource					source;
+	private ScheduledExecutorService				executor;
+	private ScheduledFuture<?>							pending;
+	/**
+	 * Incremented whenever an attempt is scheduled, so that a failed attempt
+	 * does not delay an attempt requested while it was running.
+	 */
+	private int															scheduleCount;
+	private long														pause							= INITIAL_PAUSE;
+	private volatile RejectionListener			rejectionListener;
+
+	/**
+	 * Get the flusher of the outbox in the settings directory, which sends the
+	 * heroes to the server configured in the {@link Settings}.
+	 * 
+	 * @return The flusher.
+	 */
+	public static synchronized OutboxFlusher getInstance()
+	{
+		if (instance == null)
+		{
+			instance = new OutboxFlusher(new Outbox(new File(Settings.getSettings().getSettingsDirectory(),
+							OUTBOX_DIRECTORY)));
+		}
+		return instance;
+	}
+
+	/**
+	 * Create a new flusher which sends the heroes to the server configured in
+	 * the {@link Settings}.
+	 * 
+	 * @param outbox
+	 *          The outbox.
+	 */
+	public OutboxFlusher(Outbox outbox)
+	{
+		this.outbox = outbox;
+		this.source = new OutboxHeroSource();
+		this.synchronizer = new Synchronizer(source);
+	}
+
+	/**
+	 * Create a new flusher.
+	 * 
+	 * @param outbox
+	 *          The outbox.
+	 * @param cache
+	 *          The cache, which also communicates with the server.
+	 */
+	public OutboxFlusher(Outbox outbox, Cache cache)
+	{
+		this.outbox = outbox;
+		this.source = new OutboxHeroSource();
+		this.synchronizer = new Synchronizer(source, cache);
+	}
+
+	public Outbox getOutbox()
+	{
+		return outbox;
+	}
+
+	/**
+	 * Set the listener which is informed about heroes set aside in the outbox.
+	 * 
+	 * @param rejectionListener
+	 *          The listener, or <code>null</code>.
+	 */
+	public void setRejectionListener(RejectionListener rejectionListener)
+	{
+		this.rejectionListener = rejectionListener;
+	}
+
+	/**
+	 * Start sending the queued heroes in the background. Does nothing if the
+	 * flusher is already running.
+	 */
+	public synchronized void start()
+	{
+		if (executor != null)
+		{
+			return;
+		}
+		executor = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("HeldenWeb-Postausgang"));
+		schedule(0);
+	}
+
+	/**
+	 * Stop sending the queued heroes. A running export is completed.
+	 */
+	public synchronized void stop()
+	{
+		if (executor != null)
+		{
+			executor.shutdown();
+			executor = null;
+			pending = null;
+		}
+	}
+
+	/**
+	 * Try to send the queued heroes now, e.g. because heroes were just queued or
+	 * the server is known to be reachable again. The pause after failed attempts
+	 * is reset.
+	 */
+	public synchronized void wakeUp()
+	{
+		pause = INITIAL_PAUSE;
+		if (executor != null)
+		{
+			schedule(0);
+		}
+	}
+
+	/**
+	 * Schedule the next attempt, replacing an attempt which is not yet running.
+	 * 
+	 * @param delay
+	 *          The delay in milliseconds.
+	 */
+	private void schedule(long delay)
+	{
+		if (pending != null)
+		{
+			pending.cancel(false);
+		}
+		scheduleCount++;
+		pending = executor.schedule(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				flush();
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Send all queued heroes. Heroes which were queued again while they were
+	 * sent remain in the outbox. If the server is not reachable, the next
+	 * attempt is scheduled.
+	 */
+	private void flush()
+	{
+		int attempt;
+		synchronized (this)
+		{
+			attempt = scheduleCount;
+		}
+		boolean retry = true;
+		try
+		{
+			retry = !flushEntries();
+		}
+		catch (RuntimeException exception)
+		{
+			// Try again later
+		}
+		finally
+		{
+			source.setEntries(new ArrayList<Outbox.Entry>());
+			synchronized (this)
+			{
+				if (!retry)
+				{
+					pause = INITIAL_PAUSE;
+				}
+				else if (executor != null && attempt == scheduleCount)
+				{
+					schedule(pause);
+					pause = Math.min(pause * 2, MAX_PAUSE);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Send the queued heroes, first all in one export, then one by one if that
+	 * failed although the server was reachable.
+	 * 
+	 * @return <code>false</code> if the server was not reachable.
+	 */
+	private boolean flushEntries()
+	{
+		List<Outbox.Entry> entries = outbox.getEntries();
+		if (entries.isEmpty())
+		{
+			return true;
+		}
+		try
+		{
+			send(entries);
+			return true;
+		}
+		catch (HeldenWebExportException exception)
+		{
+			if (Synchronizer.isServerUnavailable(exception))
+			{
+				// Try again later. The objects which were sent are recorded in the
+				// journal and are not sent again.
+				return false;
+			}
+		}
+		for (Outbox.Entry entry : entries)
+		{
+			try
+			{
+				send(Collections.singletonList(entry));
+			}
+			catch (HeldenWebExportException exception)
+			{
+				if (Synchronizer.isServerUnavailable(exception))
+				{
+					return false;
+				}
+				outbox.reject(entry);
+				RejectionListener listener = rejectionListener;
+				if (listener != null)
+				{
+					listener.heroRejected(entry.getHero(), exception);
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Export queued heroes and remove them from the outbox.
+	 * 
+	 * @param entries
+	 *          The queued heroes.
+	 * @throws HeldenWebExportException
+	 *           The heroes could not be exported.
+	 */
+	private void send(List<Outbox.Entry> entries) throws HeldenWebExportException
+	{
+		source.setEntries(entries);
+		synchronizer.syncAll();
+		for (Outbox.Entry entry : entries)
+		{
+			outbox.remove(entry);
+		}
+	}
+
+	/**
+	 * Provides the queued heroes to the synchronizer.
+	 * 
+	 * @author Martin Dreier <martin@martindreier.de>
+	 * 
+	 */
+	private static class OutboxHeroSource implements HeroSource
+	{
+		private volatile List<Outbox.Entry>	entries	= new ArrayList<Outbox.Entry>();
+
+		void setEntries(List<Outbox.Entry> entries)
+		{
+			this.entries = entries;
+		}
+
+		@Override
+		public int getHeroCount()
+		{
+			return entries.size();
+		}
+
+		@Override
+		public String getSelectedHeroName()
+		{
+			return entries.isEmpty() ? null : entries.get(0).getHero().getName();
+		}
+
+		@Override
+		public HeroSnapshot readSelectedHero() throws HeldenWebExportException
+		{
+			if (entries.isEmpty())
+			{
+				throw new HeldenWebExportException("Der Postausgang ist leer");
+			}
+			return entries.get(0).getHero();
+		}
+
+		@Override
+		public List<HeroSnapshot> readAllHeroes() throws HeldenWebExportException
+		{
+			List<HeroSnapshot> heroes = new ArrayList<HeroSnapshot>();
+			for (Outbox.Entry entry : entries)
+			{
+				heroes.add(entry.getHero());
+			}
+			return heroes;
+		}
+	}
+}
@@ -0,0 +1,278 @@
+package de.martindreier.heldenweb.export.sync;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import de.martindreier.heldenweb.export.HeldenWebExportException;
+
+/**
+ * Sends requests to the server concurrently. At most {@link #window} requests
+ * are in flight at the same time; further submissions block until a request is
+ * finished. Failed requests are retried, and the remaining errors are reported
+ * together when the requests of a {@link Group} are awaited.
+ * 
+ * @author Martin Dreier <martin@martindreier.de>
+ * 
+ */
+class RequestDispatcher
+{
+	/**
+	 * Maximum number of error messages included in the aggregated error.
+	 */
+	private static final int		MAX_REPORTED_ERRORS	= 5;
+
+	/**
+	 * A request to the server.
+	 * 
+	 * @author Martin Dreier <martin@martindreier.de>
+	 * 
+	 */
+	interface Request
+	{
+		/**
+		 * Send the request.
+		 * 
+		 * @throws HeldenWebExportException
+		 */
+		public void send() throws HeldenWebExportException;
+	}
+
+	/**
+	 * Maximum number of requests in flight.
+	 */
+	private int									window;
+
+	/**
+	 * Number of retries for a failed request.
+	 */
+	private int									retries;
+
+	/**
+	 * Permits for requests in flight.
+	 */
+	private Semaphore						permits;
+
+	/**
+	 * Executes the requests. <code>null</code> if requests are sent directly.
+	 */
+	private ThreadPoolExecutor	executor;
+
+	/**
+	 * Create a new dispatcher.
+	 * 
+	 * @param window
+	 *          Maximum number of requests in flight. If this is <code>1</code> or
+	 *          less, requests are sent directly by the submitting thread.
+	 * @param retries
+	 *          Number of retries for a failed request.
+	 */
+	RequestDispatcher(int window, int retries)
+	{
+		this.window = Math.max(window, 1);
+		this.retries = Math.max(retries, 0);
+		if (this.window > 1)
+		{
+			permits = new Semaphore(this.window);
+			executor = new ThreadPoolExecutor(this.window, this.window, 30, TimeUnit.SECONDS,
+							new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory("HeldenWeb-Request"));
+			executor.allowCoreThreadTimeOut(true);
+		}
+	}
+
+	/**
+	 * Wait until no request is in flight, e.g. after a failed stage, whose
+	 * remaining requests are not awaited.
+	 * 
+	 * @param timeout
+	 *          The maximum time to wait.
+	 * @param unit
+	 *          The unit of the timeout.
+	 * @return <code>true</code> if no request is in flight.
+	 * @throws InterruptedException
+	 */
+	boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException
+	{
+		if (executor == null)
+		{
+			return true;
+		}
+		if (!permits.tryAcquire(window, timeout, unit))
+		{
+			return false;
+		}
+		permits.release(window);
+		return true;
+	}
+
+	/**
+	 * Start a new group of requests.
+	 * 
+	 * @return The group.
+	 */
+	Group newGroup()
+	{
+		return new Group();
+	}
+
+	/**
+	 * Send a request, retrying it if it fails.
+	 * 
+	 * @param request
+	 *          The request.
+	 * @throws HeldenWebExportException
+	 *           The error of the last attempt.
+	 */
+	private void sendWithRetries(Request request) throws HeldenWebExportException
+	{
+		for (int attempt = 0;; attempt++)
+		{
+			try
+			{
+				request.send();
+				return;
+			}
+			catch (HeldenWebExportException exception)
+			{
+				if (attempt >= retries)
+				{
+					throw exception;
+				}
+			}
+		}
+	}
+
+	/**
+	 * A group of requests which are awaited together, e.g. the requests of one
+	 * synchronization stage.
+	 * 
+	 * @author Martin Dreier <martin@martindreier.de>
+	 * 
+	 */
+	class Group
+	{
+		private List<Future<?>>									futures		= new ArrayList<Future<?>>();
+		private List<HeldenWebExportException>	failures	= Collections
+																													.synchronizedList(new ArrayList<HeldenWebExportException>());
+		private int															submitted;
+
+		/**
+		 * Submit a request. Blocks while the maximum number of requests is in
+		 * flight.
+		 * 
+		 * @param request
+		 *          The request.
+		 * @throws HeldenWebExportException
+		 *           Thrown if the thread is interrupted while waiting.
+		 */
+		void submit(final Request request) throws HeldenWebExportException
+		{
+			submitted++;
+			if (executor == null)
+			{
+				try
+				{
+					sendWithRetries(request);
+				}
+				catch (HeldenWebExportException exception)
+				{
+					failures.add(exception);
+				}
+				return;
+			}
+			try
+			{
+				permits.acquire();
+			}
+			catch (InterruptedException exception)
+			{
+				Thread.currentThread().interrupt();
+				throw new HeldenWebExportException("Export wurde abgebrochen", exception);
+			}
+			futures.add(executor.submit(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						sendWithRetries(request);
+					}
+					catch (HeldenWebExportException exception)
+					{
+						failures.add(exception);
+					}
+					finally
+					{
+						permits.release();
+					}
+				}
+			}));
+		}
+
+		/**
+		 * Wait until all requests of this group are finished.
+		 * 
+		 * @throws HeldenWebExportException
+		 *           Thrown if any request failed. The exception describes all
+		 *           failed requests; its cause is the first error.
+		 */
+		void await() throws HeldenWebExportException
+		{
+			try
+			{
+				for (Future<?> future : futures)
+				{
+					future.get();
+				}
+			}
+			catch (InterruptedException exception)
+			{
+				Thread.currentThread().interrupt();
+				throw new HeldenWebExportException("Export wurde abgebrochen", exception);
+			}
+			catch (ExecutionException exception)
+			{
+				Throwable cause = exception.getCause();
+				if (cause instanceof RuntimeException)
+				{
+					throw (RuntimeException) cause;
+				}
+				if (cause instanceof Error)
+				{
+					throw (Error) cause;
+				}
+				throw new HeldenWebExportException(cause);
+			}
+			finally
+			{
+				futures.clear();
+			}
+
+			if (!failures.isEmpty())
+			{
+				StringBuilder message = new StringBuilder(MessageFormat.format(
+								"{0} von {1} Anfragen sind fehlgeschlagen:", failures.size(), submitted));
+				for (int index = 0; index < failures.size() && index < MAX_REPORTED_ERRORS; index++)
+				{
+					message.append("\n").append(failures.get(index).getMessage());
+				}
+				if (failures.size() > MAX_REPORTED_ERRORS)
+				{
+					message.append("\n...");
+				}
+				HeldenWebExportException exception = new HeldenWebExportException(message.toString(), failures.get(0));
+				failures.clear();
+				submitted = 0;
+				throw exception;
+			}
+			submitted = 0;
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package de.martindreier.heldenweb.export.sync;
+
+import java.util.Random;
+
+/**
+ * Controls how the {@link HttpClient} handles transient errors: how often a
+ * request is repeated, how long to wait between attempts and when to stop
+ * sending requests to a server which is clearly down.
+ * <p>
+ * The wait time doubles with every attempt, starting at the initial backoff and
+ * limited by the maximum backoff. A random jitter of up to half the wait time is
+ * subtracted, so that concurrent requests which failed together do not retry at
+ * the same moment.
+ * 
+ * @author Martin Dreier <martin@martindreier.de>
+ * 
+ */
+public class RetryPolicy
+{
+	/**
+	 * Never retry and never stop sending requests.
+	 */
+	public static final RetryPolicy	NONE		= new RetryPolicy(0, 0, 0, 0, 0);
+
+	private static final Random			random	= new Random();
+
+	private final int								retries;
+	private final long							initialBackoff;
+	private final long							maxBackoff;
+	private final int								failureThreshold;
+	private final long							openTime;
+
+	/**
+	 * Create a new retry policy.
+	 * 
+	 * @param retries
+	 *          Number of retries for a request which failed with a transient
+	 *          error.
+	 * @param initialBackoff
+	 *          Wait time before the first retry in milliseconds.
+	 * @param maxBackoff
+	 *          Maximum wait time between two attempts in milliseconds.
+	 * @param failureThreshold
+	 *          Number of consecutive failed requests after which no further
+	 *          requests are sent to the server. <code>0</code> to always send
+	 *          requests.
+	 * @param openTime
+	 *          Time in milliseconds during which no requests are sent once the
+	 *          failure threshold is reached. Afterwards a single request checks
+	 *          if the server is available again.
+	 */
+	public RetryPolicy(int retries, long initialBackoff, long maxBackoff, int failureThreshold, long openTime)
+	{
+		this.retries = Math.max(retries, 0);
+		this.initialBackoff = Math.max(initialBackoff, 0);
+		this.maxBackoff = Math.max(maxBackoff, this.initialBackoff);
+		this.failureThreshold = Math.max(failureThreshold, 0);
+		this.openTime = Math.max(openTime, 0);
+	}
+
+	public int getRetries()
+	{
+		return retries;
+	}
+
+	public int getFailureThreshold()
+	{
+		return failureThreshold;
+	}
+
+	public long getOpenTime()
+	{
+		return openTime;
+	}
+
+	/**
+	 * Get the time to wait before the next attempt.
+	 * 
+	 * @param attempt
+	 *          The number of the failed attempt, starting with <code>0</code>.
+	 * @param requestedDelay
+	 *          The delay requested by the server with a <code>Retry-After</code>
+	 *          header in milliseconds, or <code>0</code>.
+	 * @return The wait time in milliseconds.
+	 */
+	long getBackoff(int attempt, long requestedDelay)
+	{
+		long backoff = initialBackoff;
+		for (int step = 0; step < attempt && backoff < maxBackoff; step++)
+		{
+			backoff *= 2;
+		}
+		backoff = Math.min(backoff, maxBackoff);
+		long jitter;
+		synchronized (random)
+		{
+			jitter = (long) (random.nextDouble() * backoff / 2);
+		}
+		return Math.min(Math.max(backoff - jitter, requestedDelay), maxBackoff);
+	}
+}
@@ -0,0 +1,26 @@
+package de.martindreier.heldenweb.export.sync;
+
+/**
+ * Thrown if a request is rejected without contacting the server, because the
+ * server was not reachable for the last requests.
+ * 
+ * @author Martin Dreier <martin@martindreier.de>
+ * 
+ */
+public class ServerUnavailableException extends HttpClientException
+{
+
+	/**
+	 * For serialization.
+	 */
+	private static final long	serialVersionUID	= 3617470219046214187L;
+
+	/**
+	 * @param message
+	 */
+	public ServerUnavailableException(String message)
+	{
+		super(message);
+	}
+
+}
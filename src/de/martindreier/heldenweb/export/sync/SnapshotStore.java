@@ -0,0 +1,195 @@
+package de.martindreier.heldenweb.export.sync;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import de.martindreier.heldenweb.export.HeldenWebExportException;
+import de.martindreier.heldenweb.export.sync.Cache.CacheKey;
+
+/**
+ * Persistent store for the content hashes of the objects sent to the server
+ * during the last successful export. Objects whose hash did not change do not
+ * need to be sent again.
+ * 
+ * @author Martin Dreier <martin@martindreier.de>
+ * 
+ */
+public class SnapshotStore
+{
+	/**
+	 * Magic number at the start of the file ("HWSN").
+	 */
+	private static final int	MAGIC						= 0x4857534E;
+
+	/**
+	 * Version of the file format. Files with a different version are ignored.
+	 * Version 2 separates the identifiers in the compound keys.
+	 */
+	private static final int	FORMAT_VERSION	= 2;
+
+	/**
+	 * The file where the hashes are stored.
+	 */
+	private File							file;
+
+	/**
+	 * Identifies the server the hashes belong to. Hashes stored for a different
+	 * server are ignored.
+	 */
+	private String						serverIdentity;
+
+	/**
+	 * The snapshot of a single object.
+	 * 
+	 * @author Martin Dreier <martin@martindreier.de>
+	 * 
+	 */
+	public static class Entry
+	{
+		private final CacheKey	cacheKey;
+		private final String		owner;
+		private final String		hash;
+
+		/**
+		 * Create a new entry.
+		 * 
+		 * @param cacheKey
+		 *          The type of the object.
+		 * @param owner
+		 *          The ID of the hero the object belongs to. Empty if the object
+		 *          does not belong to a hero.
+		 * @param hash
+		 *          The content hash of the data sent to the server.
+		 */
+		public Entry(CacheKey cacheKey, String owner, String hash)
+		{
+			this.cacheKey = cacheKey;
+			this.owner = owner;
+			this.hash = hash;
+		}
+
+		public CacheKey getCacheKey()
+		{
+			return cacheKey;
+		}
+
+		public String getOwner()
+		{
+			return owner;
+		}
+
+		public String getHash()
+		{
+			return hash;
+		}
+	}
+
+	/**
+	 * Create a new snapshot store.
+	 * 
+	 * @param file
+	 *          The file where the hashes are stored.
+	 * @param serverIdentity
+	 *          Identifies the server the hashes belong to, e.g. the server URL.
+	 */
+	public SnapshotStore(File file, String serverIdentity)
+	{
+		this.file = file;
+		this.serverIdentity = serverIdentity;
+	}
+
+	/**
+	 * Load the stored snapshot.
+	 * 
+	 * @return The stored entries, keyed by the compound cache key. The map is
+	 *         empty if no snapshot has been stored yet, the snapshot belongs to
+	 *         another server or the file could not be read.
+	 */
+	public Map<String, Entry> load()
+	{
+		Map<String, Entry> entries = new HashMap<String, Entry>();
+		if (!file.exists())
+		{
+			return entries;
+		}
+		DataInputStream in = null;
+		try
+		{
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !serverIdentity.equals(in.readUTF()))
+			{
+				return entries;
+			}
+			int count = in.readInt();
+			for (int index = 0; index < count; index++)
+			{
+				String key = in.readUTF();
+				CacheKey cacheKey = CacheKey.valueOf(in.readUTF());
+				entries.put(key, new Entry(cacheKey, in.readUTF(), in.readUTF()));
+			}
+			return entries;
+		}
+		catch (IOException exception)
+		{
+			// Unreadable or truncated file. The snapshot is only an optimization, so
+			// start from scratch.
+			return new HashMap<String, Entry>();
+		}
+		catch (IllegalArgumentException exception)
+		{
+			// Unknown cache key
+			return new HashMap<String, Entry>();
+		}
+		finally
+		{
+			IOUtil.close(in);
+		}
+	}
+
+	/**
+	 * Store the snapshot. The file is replaced completely.
+	 * 
+	 * @param entries
+	 *          The entries to be stored, keyed by the compound cache key.
+	 * @throws HeldenWebExportException
+	 *           Thrown if the snapshot could not be written.
+	 */
+	public void save(Map<String, Entry> entries) throws HeldenWebExportException
+	{
+		File temporaryFile = IOUtil.temporaryFile(file);
+		DataOutputStream out = null;
+		try
+		{
+			FileOutputStream fileOut = new FileOutputStream(temporaryFile);
+			out = new DataOutputStream(new BufferedOutputStream(fileOut));
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeUTF(serverIdentity);
+			out.writeInt(entries.size());
+			for (Map.Entry<String, Entry> entry : entries.entrySet())
+			{
+				out.writeUTF(entry.getKey());
+				out.writeUTF(entry.getValue().getCacheKey().name());
+				out.writeUTF(entry.getValue().getOwner());
+				out.writeUTF(entry.getValue().getHash());
+			}
+			IOUtil.replace(out, fileOut, temporaryFile, file);
+			out = null;
+		}
+		catch (IOException exception)
+		{
+			throw new HeldenWebExportException("Export-Stand konnte nicht gespeichert werden", exception);
+		}
+		finally
+		{
+			IOUtil.close(out);
+		}
+	}
+}
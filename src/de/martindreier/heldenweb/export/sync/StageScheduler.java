@@ -0,0 +1,266 @@
+package de.martindreier.heldenweb.export.sync;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import de.martindreier.heldenweb.export.HeldenWebExportException;
+import de.martindreier.heldenweb.export.ui.ProgressMonitor;
+
+/**
+ * Runs synchronization stages concurrently. A stage is started as soon as all
+ * stages it depends on are finished.
+ * 
+ * @author Martin Dreier <martin@martindreier.de>
+ * 
+ */
+class StageScheduler
+{
+	/**
+	 * Time in seconds to wait for running stages to stop after a stage failed.
+	 */
+	private static final long	SHUTDOWN_TIMEOUT	= 10;
+
+	/**
+	 * A synchronization stage.
+	 * 
+	 * @author Martin Dreier <martin@martindreier.de>
+	 * 
+	 */
+	interface Stage
+	{
+		/**
+		 * Execute the stage.
+		 * 
+		 * @param monitor
+		 *          The progress monitor for the stage.
+		 * @throws HeldenWebExportException
+		 */
+		public void run(ProgressMonitor monitor) throws HeldenWebExportException;
+	}
+
+	private static class StageDefinition
+	{
+		private Stage				stage;
+		private Set<String>	dependencies;
+	}
+
+	/**
+	 * The stages, keyed by name.
+	 */
+	private Map<String, StageDefinition>	stages	= new LinkedHashMap<String, StageDefinition>();
+
+	/**
+	 * Maximum number of concurrently running stages.
+	 */
+	private int														threads;
+
+	/**
+	 * Records the time spent in each stage. May be <code>null</code>.
+	 */
+	private SyncMetrics										metrics;
+
+	/**
+	 * Prefix of the stage names in the {@link #metrics}.
+	 */
+	private String												group;
+
+	/**
+	 * Records the completed stages. May be <code>null</code>.
+	 */
+	private Cache													cache;
+
+	/**
+	 * Create a new scheduler.
+	 * 
+	 * @param threads
+	 *          Maximum number of concurrently running stages.
+	 */
+	StageScheduler(int threads)
+	{
+		this(threads, null, null);
+	}
+
+	/**
+	 * Create a new scheduler which records the time spent in each stage.
+	 * 
+	 * @param threads
+	 *          Maximum number of concurrently running stages.
+	 * @param metrics
+	 *          The metrics. May be <code>null</code>.
+	 * @param group
+	 *          Prefix of the stage names in the metrics, since stages of
+	 *          different schedulers may have the same name.
+	 */
+	StageScheduler(int threads, SyncMetrics metrics, String group)
+	{
+		this.threads = threads;
+		this.metrics = metrics;
+		this.group = group;
+	}
+
+	/**
+	 * Record each completed stage in the journal of a cache, so that an export
+	 * which does not complete can be continued.
+	 * 
+	 * @param cache
+	 *          The cache.
+	 */
+	void setCache(Cache cache)
+	{
+		this.cache = cache;
+	}
+
+	/**
+	 * Add a stage.
+	 * 
+	 * @param name
+	 *          The name of the stage. It is shown to the user while the stage is
+	 *          running.
+	 * @param stage
+	 *          The stage.
+	 * @param dependencies
+	 *          Names of the stages which must be finished before this stage can
+	 *          start. They must have been added before.
+	 */
+	void addStage(String name, Stage stage, String... dependencies)
+	{
+		for (String dependency : dependencies)
+		{
+			if (!stages.containsKey(dependency))
+			{
+				throw new IllegalArgumentException("Unknown stage " + dependency);
+			}
+		}
+		StageDefinition definition = new StageDefinition();
+		definition.stage = stage;
+		definition.dependencies = new HashSet<String>(Arrays.asList(dependencies));
+		stages.put(name, definition);
+	}
+
+	/**
+	 * Run all stages and wait until they are finished. If a stage fails, the
+	 * other stages are cancelled. One step is reported to the monitor for each
+	 * finished stage. The stages themselves report no progress, since the monitor
+	 * can only track one subtask at a time.
+	 * 
+	 * @param monitor
+	 *          The progress monitor.
+	 * @throws HeldenWebExportException
+	 *           The error of the first failed stage.
+	 */
+	void run(ProgressMonitor monitor) throws HeldenWebExportException
+	{
+		ExecutorService executor = Executors.newFixedThreadPool(threads, new DaemonThreadFactory("HeldenWeb-Export"));
+		CompletionService<String> completion = new ExecutorCompletionService<String>(executor);
+		Set<String> started = new HashSet<String>();
+		Set<String> finished = new HashSet<String>();
+		List<String> running = new ArrayList<String>();
+		try
+		{
+			while (finished.size() < stages.size())
+			{
+				for (Map.Entry<String, StageDefinition> entry : stages.entrySet())
+				{
+					final String name = entry.getKey();
+					final Stage stage = entry.getValue().stage;
+					if (!started.contains(name) && finished.containsAll(entry.getValue().dependencies))
+					{
+						started.add(name);
+						running.add(name);
+						completion.submit(new Callable<String>()
+						{
+							@Override
+							public String call() throws Exception
+							{
+								long start = System.nanoTime();
+								try
+								{
+									stage.run(new NullProgressMonitor());
+									if (cache != null)
+									{
+										cache.stageCompleted(group + ": " + name);
+									}
+								}
+								finally
+								{
+									if (metrics != null)
+									{
+										metrics.recordStage(group + ": " + name, System.nanoTime() - start);
+									}
+								}
+								return name;
+							}
+						});
+					}
+				}
+				monitor.startTask("Übertrage " + join(running));
+
+				String name = completion.take().get();
+				running.remove(name);
+				finished.add(name);
+				monitor.step();
+			}
+		}
+		catch (InterruptedException exception)
+		{
+			Thread.currentThread().interrupt();
+			throw new HeldenWebExportException("Export wurde abgebrochen", exception);
+		}
+		catch (ExecutionException exception)
+		{
+			Throwable cause = exception.getCause();
+			if (cause instanceof HeldenWebExportException)
+			{
+				throw (HeldenWebExportException) cause;
+			}
+			if (cause instanceof RuntimeException)
+			{
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error)
+			{
+				throw (Error) cause;
+			}
+			throw new HeldenWebExportException(cause);
+		}
+		finally
+		{
+			executor.shutdownNow();
+			// Let running stages finish their current request, so that its result
+			// is recorded before the export ends
+			try
+			{
+				executor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS);
+			}
+			catch (InterruptedException exception)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private String join(List<String> names)
+	{
+		StringBuilder joined = new StringBuilder();
+		for (String name : names)
+		{
+			if (joined.length() > 0)
+			{
+				joined.append(", ");
+			}
+			joined.append(name);
+		}
+		return joined.toString();
+	}
+}
@@ -0,0 +1,595 @@
+package de.martindreier.heldenweb.export.sync;
+
+import java.lang.management.ManagementFactory;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import de.martindreier.heldenweb.export.sync.Cache.CacheKey;
+
+/**
+ * Collects metrics of an export: requests, transferred bytes and latency per
+ * server endpoint, the time spent in each synchronization stage and the hit
+ * rate of the ID cache. Recording a value only updates atomic counters, so the
+ * metrics can stay enabled during every export.
+ * <p>
+ * The metrics are shown in the export dialog and can be inspected with a JMX
+ * client, see {@link #register()}.
+ * 
+ * @author Martin Dreier <martin@martindreier.de>
+ * 
+ */
+public class SyncMetrics implements SyncMetricsMBean
+{
+	/**
+	 * The name under which the metrics are registered with JMX.
+	 */
+	public static final String		OBJECT_NAME			= "de.martindreier.heldenweb.export:type=SyncMetrics";
+
+	/**
+	 * Upper bounds of the latency histogram buckets in milliseconds. Slower
+	 * requests are counted in an additional bucket.
+	 */
+	private static final long[]		LATENCY_BUCKETS	= { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000 };
+
+	/**
+	 * Metrics of one server endpoint.
+	 */
+	private static class Endpoint
+	{
+		private final String					name;
+		private final AtomicLong			requests			= new AtomicLong();
+		private final AtomicLong			errors				= new AtomicLong();
+		private final AtomicLong			notModified		= new AtomicLong();
+		private final AtomicLong			retries				= new AtomicLong();
+		private final AtomicLong			bytesSent			= new AtomicLong();
+		private final AtomicLong			bytesReceived	= new AtomicLong();
+		private final AtomicLong			totalLatency	= new AtomicLong();
+		private final AtomicLong			maxLatency		= new AtomicLong();
+		private final AtomicLongArray	histogram			= new AtomicLongArray(LATENCY_BUCKETS.length + 1);
+
+		private Endpoint(String name)
+		{
+			this.name = name;
+		}
+
+		private void record(int status, long sent, long received, long latency)
+		{
+			requests.incrementAndGet();
+			if (status < 0 || status >= 400)
+			{
+				errors.incrementAndGet();
+			}
+			else if (status == 304)
+			{
+				notModified.incrementAndGet();
+			}
+			bytesSent.addAndGet(sent);
+			bytesReceived.addAndGet(received);
+			totalLatency.addAndGet(latency);
+			updateMaximum(maxLatency, latency);
+			long millis = TimeUnit.NANOSECONDS.toMillis(latency);
+			int bucket = 0;
+			while (bucket < LATENCY_BUCKETS.length && millis > LATENCY_BUCKETS[bucket])
+			{
+				bucket++;
+			}
+			histogram.incrementAndGet(bucket);
+		}
+
+		/**
+		 * Estimate a latency percentile from the histogram.
+		 * 
+		 * @param fraction
+		 *          The percentile, e.g. <code>0.95</code>.
+		 * @return The upper bound of the bucket containing the percentile, in
+		 *         milliseconds.
+		 */
+		private long percentile(double fraction)
+		{
+			long maximum = TimeUnit.NANOSECONDS.toMillis(maxLatency.get());
+			long target = (long) Math.ceil(fraction * requests.get());
+			long count = 0;
+			for (int bucket = 0; bucket < LATENCY_BUCKETS.length; bucket++)
+			{
+				count += histogram.get(bucket);
+				if (count >= target)
+				{
+					return Math.min(LATENCY_BUCKETS[bucket], maximum);
+				}
+			}
+			return maximum;
+		}
+
+		private String format()
+		{
+			return MessageFormat.format(
+							"{0}: {1} Anfragen, {2} Fehler, {3} Wiederholungen, {4} nicht geändert, {5} gesendet, {6} empfangen, "
+											+ "Median {7} ms, 95 % {8} ms, max. {9} ms, gesamt {10,number,0.0} s", name,
+							requests.get(), errors.get(), retries.get(), notModified.get(), formatBytes(bytesSent.get()),
+							formatBytes(bytesReceived.get()), percentile(0.5), percentile(0.95), TimeUnit.NANOSECONDS
+											.toMillis(maxLatency.get()), totalLatency.get() / 1e9);
+		}
+	}
+
+	/**
+	 * Time spent in one synchronization stage.
+	 */
+	private static class Stage
+	{
+		private final String			name;
+		private final AtomicLong	runs			= new AtomicLong();
+		private final AtomicLong	totalTime	= new AtomicLong();
+		private final AtomicLong	maxTime		= new AtomicLong();
+
+		private Stage(String name)
+		{
+			this.name = name;
+		}
+
+		private String format()
+		{
+			return MessageFormat.format("{0}: {1,number,0.00} s in {2} Durchläufen, max. {3,number,0.00} s", name,
+							totalTime.get() / 1e9, runs.get(), maxTime.get() / 1e9);
+		}
+	}
+
+	private final ConcurrentMap<String, Endpoint>	endpoints					= new ConcurrentHashMap<String, Endpoint>();
+	private final ConcurrentMap<String, Stage>		stages						= new ConcurrentHashMap<String, Stage>();
+	private final AtomicLongArray									cacheHits					= new AtomicLongArray(CacheKey.values().length);
+	private final AtomicLongArray									cacheMisses				= new AtomicLongArray(
+																																			CacheKey.values().length);
+	private final AtomicLong											estimatedReusedConnections	= new AtomicLong();
+	private final AtomicLong											rejections				= new AtomicLong();
+	private final AtomicLong											circuitOpenings		= new AtomicLong();
+	private final AtomicInteger										concurrencyLimit	= new AtomicInteger();
+	private final AtomicInteger										maxConcurrencyLimit	= new AtomicInteger();
+	private final AtomicLong											concurrencyDecreases	= new AtomicLong();
+
+	/**
+	 * Record a request to the server.
+	 * 
+	 * @param endpoint
+	 *          The endpoint, e.g. <code>POST Talente/edit</code>.
+	 * @param status
+	 *          The status code of the response, or <code>-1</code> if no response
+	 *          was received.
+	 * @param bytesSent
+	 *          The size of the request content.
+	 * @param bytesReceived
+	 *          The size of the response content.
+	 * @param latency
+	 *          The time until the response was read completely, in nanoseconds.
+	 * @param reusedConnection
+	 *          <code>true</code> if the request probably reused a keep-alive
+	 *          connection, as estimated by {@link KeepAliveStatistics}.
+	 */
+	void recordRequest(String endpoint, int status, long bytesSent, long bytesReceived, long latency,
+					boolean reusedConnection)
+	{
+		endpoint(endpoint).record(status, bytesSent, bytesReceived, latency);
+		if (reusedConnection)
+		{
+			estimatedReusedConnections.incrementAndGet();
+		}
+	}
+
+	private Endpoint endpoint(String endpoint)
+	{
+		Endpoint metrics = endpoints.get(endpoint);
+		if (metrics == null)
+		{
+			Endpoint created = new Endpoint(endpoint);
+			metrics = endpoints.putIfAbsent(endpoint, created);
+			if (metrics == null)
+			{
+				metrics = created;
+			}
+		}
+		return metrics;
+	}
+
+	/**
+	 * Record that a failed request is repeated.
+	 * 
+	 * @param endpoint
+	 *          The endpoint of the request.
+	 */
+	void recordRetry(String endpoint)
+	{
+		endpoint(endpoint).retries.incrementAndGet();
+	}
+
+	/**
+	 * Record a request which was rejected because the server is not available.
+	 */
+	void recordRejection()
+	{
+		rejections.incrementAndGet();
+	}
+
+	/**
+	 * Record that the client stopped sending requests to the server after
+	 * repeated failures.
+	 */
+	void recordCircuitOpened()
+	{
+		circuitOpenings.incrementAndGet();
+	}
+
+	/**
+	 * Record the limit of requests in flight after a request.
+	 * 
+	 * @param limit
+	 *          The current limit.
+	 * @param decreased
+	 *          <code>true</code> if the limit was reduced by the request.
+	 */
+	void recordConcurrencyLimit(int limit, boolean decreased)
+	{
+		concurrencyLimit.set(limit);
+		int maximum;
+		do
+		{
+			maximum = maxConcurrencyLimit.get();
+		}
+		while (limit > maximum && !maxConcurrencyLimit.compareAndSet(maximum, limit));
+		if (decreased)
+		{
+			concurrencyDecreases.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Record the time spent in a synchronization stage.
+	 * 
+	 * @param stage
+	 *          The name of the stage.
+	 * @param time
+	 *          The time in nanoseconds.
+	 */
+	void recordStage(String stage, long time)
+	{
+		Stage metrics = stages.get(stage);
+		if (metrics == null)
+		{
+			Stage created = new Stage(stage);
+			metrics = stages.putIfAbsent(stage, created);
+			if (metrics == null)
+			{
+				metrics = created;
+			}
+		}
+		metrics.runs.incrementAndGet();
+		metrics.totalTime.addAndGet(time);
+		updateMaximum(metrics.maxTime, time);
+	}
+
+	/**
+	 * Record an ID lookup.
+	 * 
+	 * @param cacheKey
+	 *          The type of the object.
+	 * @param hit
+	 *          <code>true</code> if the ID was found in the cache.
+	 */
+	void recordLookup(CacheKey cacheKey, boolean hit)
+	{
+		if (hit)
+		{
+			cacheHits.incrementAndGet(cacheKey.ordinal());
+		}
+		else
+		{
+			cacheMisses.incrementAndGet(cacheKey.ordinal());
+		}
+	}
+
+	private static void updateMaximum(AtomicLong maximum, long value)
+	{
+		long current = maximum.get();
+		while (value > current && !maximum.compareAndSet(current, value))
+		{
+			current = maximum.get();
+		}
+	}
+
+	/**
+	 * Register the metrics with the platform MBean server under
+	 * {@link #OBJECT_NAME}, replacing metrics registered before. The metrics are
+	 * only a diagnostic aid, so errors are ignored.
+	 */
+	void register()
+	{
+		try
+		{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name))
+			{
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(this, name);
+		}
+		catch (JMException exception)
+		{
+			// Metrics are not available via JMX
+		}
+		catch (SecurityException exception)
+		{
+			// Metrics are not available via JMX
+		}
+	}
+
+	@Override
+	public long getRequestCount()
+	{
+		long count = 0;
+		for (Endpoint endpoint : endpoints.values())
+		{
+			count += endpoint.requests.get();
+		}
+		return count;
+	}
+
+	@Override
+	public long getErrorCount()
+	{
+		long count = 0;
+		for (Endpoint endpoint : endpoints.values())
+		{
+			count += endpoint.errors.get();
+		}
+		return count;
+	}
+
+	@Override
+	public long getRetryCount()
+	{
+		long count = 0;
+		for (Endpoint endpoint : endpoints.values())
+		{
+			count += endpoint.retries.get();
+		}
+		return count;
+	}
+
+	@Override
+	public long getRejectedCount()
+	{
+		return rejections.get();
+	}
+
+	@Override
+	public long getCircuitOpenings()
+	{
+		return circuitOpenings.get();
+	}
+
+	@Override
+	public long getNotModifiedCount()
+	{
+		long count = 0;
+		for (Endpoint endpoint : endpoints.values())
+		{
+			count += endpoint.notModified.get();
+		}
+		return count;
+	}
+
+	@Override
+	public long getBytesSent()
+	{
+		long count = 0;
+		for (Endpoint endpoint : endpoints.values())
+		{
+			count += endpoint.bytesSent.get();
+		}
+		return count;
+	}
+
+	@Override
+	public long getBytesReceived()
+	{
+		long count = 0;
+		for (Endpoint endpoint : endpoints.values())
+		{
+			count += endpoint.bytesReceived.get();
+		}
+		return count;
+	}
+
+	@Override
+	public int getConcurrencyLimit()
+	{
+		return concurrencyLimit.get();
+	}
+
+	@Override
+	public int getMaxConcurrencyLimit()
+	{
+		return maxConcurrencyLimit.get();
+	}
+
+	@Override
+	public long getConcurrencyDecreases()
+	{
+		return concurrencyDecreases.get();
+	}
+
+	@Override
+	public long getEstimatedReusedConnections()
+	{
+		return estimatedReusedConnections.get();
+	}
+
+	@Override
+	public long getCacheHits()
+	{
+		long count = 0;
+		for (int index = 0; index < cacheHits.length(); index++)
+		{
+			count += cacheHits.get(index);
+		}
+		return count;
+	}
+
+	@Override
+	public long getCacheMisses()
+	{
+		long count = 0;
+		for (int index = 0; index < cacheMisses.length(); index++)
+		{
+			count += cacheMisses.get(index);
+		}
+		return count;
+	}
+
+	/**
+	 * The endpoints are sorted by the total time spent waiting for them, so the
+	 * slowest endpoint comes first.
+	 */
+	@Override
+	public String[] getEndpoints()
+	{
+		List<Endpoint> sorted = new ArrayList<Endpoint>(endpoints.values());
+		Collections.sort(sorted, new Comparator<Endpoint>()
+		{
+			@Override
+			public int compare(Endpoint first, Endpoint second)
+			{
+				return Long.valueOf(second.totalLatency.get()).compareTo(first.totalLatency.get());
+			}
+		});
+		String[] lines = new String[sorted.size()];
+		for (int index = 0; index < lines.length; index++)
+		{
+			lines[index] = sorted.get(index).format();
+		}
+		return lines;
+	}
+
+	/**
+	 * The stages are sorted by the total time spent in them.
+	 */
+	@Override
+	public String[] getStages()
+	{
+		List<Stage> sorted = new ArrayList<Stage>(stages.values());
+		Collections.sort(sorted, new Comparator<Stage>()
+		{
+			@Override
+			public int compare(Stage first, Stage second)
+			{
+				return Long.valueOf(second.totalTime.get()).compareTo(first.totalTime.get());
+			}
+		});
+		String[] lines = new String[sorted.size()];
+		for (int index = 0; index < lines.length; index++)
+		{
+			lines[index] = sorted.get(index).format();
+		}
+		return lines;
+	}
+
+	@Override
+	public String[] getCacheLookups()
+	{
+		List<String> lines = new ArrayList<String>();
+		for (CacheKey cacheKey : CacheKey.values())
+		{
+			long hits = cacheHits.get(cacheKey.ordinal());
+			long misses = cacheMisses.get(cacheKey.ordinal());
+			if (hits + misses > 0)
+			{
+				lines.add(formatLookups(cacheKey.name(), hits, misses));
+			}
+		}
+		return lines.toArray(new String[lines.size()]);
+	}
+
+	@Override
+	public String getSummary()
+	{
+		StringBuilder summary = new StringBuilder();
+		summary.append(MessageFormat.format(
+						"Anfragen: {0} ({1} Fehler, {2} nicht geändert), {3} gesendet, {4} empfangen, "
+										+ "{5} Verbindungen wiederverwendet (geschätzt)\n", getRequestCount(), getErrorCount(),
+						getNotModifiedCount(), formatBytes(getBytesSent()), formatBytes(getBytesReceived()),
+						getEstimatedReusedConnections()));
+		if (getRetryCount() + getRejectedCount() + getCircuitOpenings() > 0)
+		{
+			summary.append(MessageFormat.format("Wiederholungen: {0}, Server {1} mal nicht erreichbar, "
+							+ "{2} Anfragen abgewiesen\n", getRetryCount(), getCircuitOpenings(), getRejectedCount()));
+		}
+		if (getMaxConcurrencyLimit() > 0)
+		{
+			summary.append(MessageFormat.format("Parallele Anfragen: Grenze {0} (höchstens {1}, {2} mal gesenkt)\n",
+							getConcurrencyLimit(), getMaxConcurrencyLimit(), getConcurrencyDecreases()));
+		}
+		appendSection(summary, "Endpunkte", getEndpoints());
+		appendSection(summary, "Phasen", getStages());
+		summary.append(formatLookups("ID-Cache", getCacheHits(), getCacheMisses())).append("\n");
+		for (String line : getCacheLookups())
+		{
+			summary.append("  ").append(line).append("\n");
+		}
+		return summary.toString();
+	}
+
+	private void appendSection(StringBuilder summary, String title, String[] lines)
+	{
+		summary.append(title).append(":\n");
+		for (String line : lines)
+		{
+			summary.append("  ").append(line).append("\n");
+		}
+	}
+
+	private static String formatLookups(String name, long hits, long misses)
+	{
+		return MessageFormat.format("{0}: {1} Treffer, {2} Fehlgriffe ({3,number,0.0} % Treffer)", name, hits, misses,
+						hits + misses == 0 ? 0 : 100.0 * hits / (hits + misses));
+	}
+
+	private static String formatBytes(long bytes)
+	{
+		if (bytes < 1024)
+		{
+			return bytes + " B";
+		}
+		if (bytes < 1024 * 1024)
+		{
+			return MessageFormat.format("{0,number,0.0} kB", bytes / 1024.0);
+		}
+		return MessageFormat.format("{0,number,0.0} MB", bytes / (1024.0 * 1024.0));
+	}
+
+	@Override
+	public void reset()
+	{
+		endpoints.clear();
+		stages.clear();
+		for (int index = 0; index < cacheHits.length(); index++)
+		{
+			cacheHits.set(index, 0);
+			cacheMisses.set(index, 0);
+		}
+		estimatedReusedConnections.set(0);
+		rejections.set(0);
+		circuitOpenings.set(0);
+		concurrencyLimit.set(0);
+		maxConcurrencyLimit.set(0);
+		concurrencyDecreases.set(0);
+	}
+}
@@ -0,0 +1,115 @@
+package de.martindreier.heldenweb.export.sync;
+
+/**
+ * JMX interface of the {@link SyncMetrics}. All values refer to the last or
+ * currently running export.
+ * 
+ * @author Martin Dreier <martin@martindreier.de>
+ * 
+ */
+public interface SyncMetricsMBean
+{
+	/**
+	 * @return The number of requests sent to the server.
+	 */
+	public long getRequestCount();
+
+	/**
+	 * @return The number of requests which failed or returned an error status.
+	 */
+	public long getErrorCount();
+
+	/**
+	 * @return The number of requests which were repeated after a transient
+	 *         error.
+	 */
+	public long getRetryCount();
+
+	/**
+	 * @return The number of requests which were rejected without contacting the
+	 *         server, because the server was not available.
+	 */
+	public long getRejectedCount();
+
+	/**
+	 * @return How often the client stopped sending requests after repeated
+	 *         failures.
+	 */
+	public long getCircuitOpenings();
+
+	/**
+	 * @return The number of requests currently allowed in flight, as adapted to
+	 *         the server.
+	 */
+	public int getConcurrencyLimit();
+
+	/**
+	 * @return The highest number of requests allowed in flight.
+	 */
+	public int getMaxConcurrencyLimit();
+
+	/**
+	 * @return How often the number of requests allowed in flight was reduced,
+	 *         because the server answered slowly or was overloaded.
+	 */
+	public long getConcurrencyDecreases();
+
+	/**
+	 * @return The number of conditional requests answered with
+	 *         <code>304 Not Modified</code>.
+	 */
+	public long getNotModifiedCount();
+
+	/**
+	 * @return The number of bytes sent to the server.
+	 */
+	public long getBytesSent();
+
+	/**
+	 * @return The number of bytes received from the server.
+	 */
+	public long getBytesReceived();
+
+	/**
+	 * @return The estimated number of requests which reused a keep-alive
+	 *         connection. The connection pool does not report reuse, so this is
+	 *         derived from the keep-alive headers of the responses.
+	 */
+	public long getEstimatedReusedConnections();
+
+	/**
+	 * @return The number of ID lookups answered by the cache.
+	 */
+	public long getCacheHits();
+
+	/**
+	 * @return The number of ID lookups the cache could not answer.
+	 */
+	public long getCacheMisses();
+
+	/**
+	 * @return One line per endpoint: requests, errors, retries, bytes and
+	 *         latency.
+	 */
+	public String[] getEndpoints();
+
+	/**
+	 * @return One line per synchronization stage with the time spent.
+	 */
+	public String[] getStages();
+
+	/**
+	 * @return One line per type with the cache hits and misses.
+	 */
+	public String[] getCacheLookups();
+
+	/**
+	 * @return The complete summary, as shown in the export dialog.
+	 */
+	public String getSummary();
+
+	/**
+	 * Reset all metrics.
+	 */
+	public void reset();
+}
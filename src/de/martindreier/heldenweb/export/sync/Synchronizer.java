@@ -1,13 +1,16 @@
 package de.martindreier.heldenweb.export.sync;
 
-import helden.plugin.werteplugin.PluginTalent;
 import helden.plugin.werteplugin2.PluginHeld2;
 import helden.plugin.werteplugin3.PluginHeldenWerteWerkzeug3;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
-import java.util.TreeMap;
+import java.io.File;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import de.martindreier.heldenweb.export.HeldenWebExportException;
 import de.martindreier.heldenweb.export.Settings;
 import de.martindreier.heldenweb.export.sync.Cache.CacheKey;
@@ -16,68 +19,449 @@ import de.martindreier.heldenweb.export.ui.ProgressMonitor;
 public class Synchronizer
 {
 
-	private static final int						SYNC_STEPS						= 19;
-	@SuppressWarnings("unused")
-	private PluginHeld2[]								helden;
-	private PluginHeldenWerteWerkzeug3	werkzeug;
-	private HttpClient									client;
-	private Cache												cache;
-	private boolean											skipSpecialAbilities	= false;
-	private ProgressMonitor							monitor;
+	/**
+	 * Progress steps per export: reading the heroes and the base data stages.
+	 */
+	private static final int				BASE_STEPS						= 7;
+	/**
+	 * Progress steps per hero: hero data, hero stages and deletions.
+	 */
+	private static final int				STEPS_PER_HERO				= 13;
+	private static final String			ID_STORE_FILE					= "heldenWebExport.ids";
+	private static final String			SNAPSHOT_STORE_FILE		= "heldenWebExport.snapshot";
+	private static final String			JOURNAL_FILE					= "heldenWebExport.journal";
+	/**
+	 * Maximum number of stages which are synchronized concurrently.
+	 */
+	private static final int				PARALLEL_STAGES				= 3;
+	/**
+	 * Maximum number of heroes which are synchronized concurrently, each with up
+	 * to {@link #PARALLEL_STAGES} stages.
+	 */
+	private static final int				PARALLEL_HEROES				= 2;
+	/**
+	 * Exports from the dialog and from the {@link OutboxFlusher} share the
+	 * stored IDs, snapshot and journal and must not run at the same time.
+	 */
+	private static final Lock				EXPORT_LOCK						= new ReentrantLock();
+	private static Cache						sharedCache;
+	private static String						sharedCacheSettings;
+	private HeroSource							source;
+	private Cache										cache;
+	private ProgressMonitor					monitor;
+	private SyncMetrics							metrics;
+	private OutboxFlusher						outboxFlusher;
 
 	public Synchronizer(PluginHeld2[] helden, PluginHeldenWerteWerkzeug3 werkzeug)
+	{
+		this(new WerkzeugHeroSource(helden, werkzeug));
+	}
+
+	/**
+	 * Create a new synchronizer for the server configured in the
+	 * {@link Settings}.
+	 * 
+	 * @param source
+	 *          Provides the heroes to be exported.
+	 */
+	public Synchronizer(HeroSource source)
+	{
+		this(source, createCache(Settings.getSettings()));
+	}
+
+	/**
+	 * Create a new synchronizer. Its metrics are registered with JMX, see
+	 * {@link SyncMetrics#OBJECT_NAME}.
+	 * 
+	 * @param source
+	 *          Provides the heroes to be exported.
+	 * @param cache
+	 *          The cache, which also communicates with the server.
+	 */
+	public Synchronizer(HeroSource source, Cache cache)
 	{
 		this.monitor = new NullProgressMonitor();
-		this.helden = helden;
-		this.werkzeug = werkzeug;
-		Settings settings = Settings.getSettings();
-		client = new HttpClient(settings.getServer(), Integer.parseInt(settings.getPort()), settings.getPath(), false, true);
-		cache = new Cache(client);
+		this.source = source;
+		this.cache = cache;
+		this.metrics = new SyncMetrics();
+		cache.setMetrics(metrics);
+		metrics.register();
+	}
+
+	/**
+	 * Get the cache for the server configured in the settings. The IDs, the
+	 * snapshot and the journal are stored in the settings directory. The cache is
+	 * shared by all synchronizers, as long as the settings do not change.
+	 * 
+	 * @param settings
+	 *          The settings.
+	 * @return The cache.
+	 */
+	private static synchronized Cache createCache(Settings settings)
+	{
+		String cacheSettings = settings.getServer() + ":" + settings.getPort() + "/" + settings.getPath() + ";"
+						+ settings.getRequestRetries() + ";" + settings.getRetryBackoff() + ";" + settings.getRetryMaxBackoff()
+						+ ";" + settings.getFailureThreshold() + ";" + settings.getFailurePause() + ";"
+						+ settings.getRequestWindow() + ";" + settings.getMaxConcurrency() + ";" + settings.getClientIds();
+		if (sharedCache != null && cacheSettings.equals(sharedCacheSettings))
+		{
+			return sharedCache;
+		}
+		HttpClient client = new HttpClient(settings.getServer(), Integer.parseInt(settings.getPort()), settings
+						.getPath(), false, true);
+		String serverIdentity = settings.getServer() + ":" + settings.getPort() + "/" + settings.getPath();
+		IdStore store = new IdStore(new File(settings.getSettingsDirectory(), ID_STORE_FILE), serverIdentity);
+		SnapshotStore snapshotStore = new SnapshotStore(new File(settings.getSettingsDirectory(), SNAPSHOT_STORE_FILE),
+						serverIdentity);
+		client.setRetryPolicy(new RetryPolicy(Integer.parseInt(settings.getRequestRetries()), Long.parseLong(settings
+						.getRetryBackoff()), Long.parseLong(settings.getRetryMaxBackoff()), Integer.parseInt(settings
+						.getFailureThreshold()), Long.parseLong(settings.getFailurePause()) * 1000));
+		ExportJournal journal = new ExportJournal(new File(settings.getSettingsDirectory(), JOURNAL_FILE), serverIdentity);
+		int window = Integer.parseInt(settings.getRequestWindow());
+		int maxConcurrency = Integer.parseInt(settings.getMaxConcurrency());
+		client.setConcurrencyLimiter(new ConcurrencyLimiter(window, maxConcurrency));
+		Cache cache = new Cache(client, store, snapshotStore, journal);
+		// Transient errors are retried by the client with a backoff. Repeating
+		// the requests immediately in the dispatcher would not help. The
+		// dispatcher may use the full ceiling, the limiter decides how many
+		// requests are actually in flight.
+		cache.setRequestWindow(maxConcurrency, 0);
+		cache.setClientIds(Boolean.parseBoolean(settings.getClientIds()));
+		sharedCache = cache;
+		sharedCacheSettings = cacheSettings;
+		return cache;
 	}
 
-	public void sync() throws HeldenWebExportException
+	/**
+	 * Export the selected hero.
+	 * 
+	 * @return The statistics of the export.
+	 * @throws HeldenWebExportException
+	 */
+	public ExportStatistics sync() throws HeldenWebExportException
 	{
-		monitor.start(SYNC_STEPS);
+		return export(false, null, 0);
+	}
+
+	/**
+	 * Export a hero which has already been read, e.g. by the {@link AutoSync}.
+	 * 
+	 * @param hero
+	 *          The hero.
+	 * @param readAt
+	 *          The time the hero was read, in milliseconds since the epoch.
+	 * @return The statistics of the export.
+	 * @throws HeldenWebExportException
+	 */
+	ExportStatistics sync(HeroSnapshot hero, long readAt) throws HeldenWebExportException
+	{
+		return export(false, hero, readAt);
+	}
+
+	/**
+	 * Export all heroes. Base data listings are read from the server only once,
+	 * so for all but the first hero only base data which is new for the hero is
+	 * sent.
+	 * 
+	 * @return The statistics of the export.
+	 * @throws HeldenWebExportException
+	 */
+	public ExportStatistics syncAll() throws HeldenWebExportException
+	{
+		return export(true, null, 0);
+	}
+
+	/**
+	 * Transfer the base data of all heroes to the server without the heroes
+	 * themselves, e.g. to fill a new HeldenWeb installation before the first
+	 * export. The Helden software only provides the talents, advantages, special
+	 * abilities and spells of a hero, so the catalogue consists of the entries
+	 * used by any of the heroes. They are synchronized in the same order as
+	 * during an export, see {@link #syncBaseData(List)}, and entries which are
+	 * not known on the server are created in batch uploads.
+	 * 
+	 * @return The statistics, with the number of catalogue entries and the time
+	 *         needed for them.
+	 * @throws HeldenWebExportException
+	 */
+	public ExportStatistics seedCatalogue() throws HeldenWebExportException
+	{
+		EXPORT_LOCK.lock();
 		try
 		{
-			werkzeug.setAktivenHeld(werkzeug.getSelectesHeld());
-			syncBaseData();
-			syncHeld();
-			syncEquipment();
-			syncInventory();
+			ExportStatistics statistics = new ExportStatistics();
+			cache.setMetrics(metrics);
+			metrics.reset();
+			metrics.register();
+			monitor.start(BASE_STEPS);
+			monitor.startTask("Lese Helden");
+			long start = System.currentTimeMillis();
+			long readStart = System.nanoTime();
+			List<HeroSnapshot> heroes = source.readAllHeroes();
+			metrics.recordStage("Helden lesen", System.nanoTime() - readStart);
+			monitor.step();
+			try
+			{
+				statistics.setResumed(cache.getResumedObjectCount(), cache.getResumedStageCount());
+				cache.startExport();
+				syncBaseData(heroes);
+				cache.awaitCreates();
+				cache.persist();
+			}
+			finally
+			{
+				cache.finishExport();
+			}
+			long duration = System.currentTimeMillis() - start;
+			statistics.setCatalogue(cache.getCatalogueEntryCount(), cache.getSentCatalogueEntryCount(), duration);
+			return statistics;
 		}
 		finally
 		{
 			monitor.done();
+			EXPORT_LOCK.unlock();
+		}
+	}
+
+	/**
+	 * Export heroes. All heroes are read from the Helden software first, then
+	 * the base data of all heroes is synchronized in one pass, followed by the
+	 * heroes themselves. The time needed to read the heroes and synchronize the
+	 * base data is counted for the first hero.
+	 * <p>
+	 * If the previous export did not complete, the objects it sent are not sent
+	 * again, see {@link ExportJournal}. If the server is not reachable and an
+	 * {@link OutboxFlusher} is set, the heroes are queued in its outbox instead
+	 * and the statistics report the number of queued heroes.
+	 * 
+	 * @param allHeroes
+	 *          Set to <code>true</code> to export all heroes, <code>false</code>
+	 *          to export the selected hero.
+	 * @param readHero
+	 *          The hero to export, if it has already been read, or
+	 *          <code>null</code> to read the heroes.
+	 * @param readAt
+	 *          The time the hero was read, if <code>readHero</code> is set.
+	 * @return The statistics of the export.
+	 * @throws HeldenWebExportException
+	 */
+	private ExportStatistics export(boolean allHeroes, HeroSnapshot readHero, long readAt)
+					throws HeldenWebExportException
+	{
+		EXPORT_LOCK.lock();
+		try
+		{
+			ExportStatistics statistics = new ExportStatistics();
+			cache.setMetrics(metrics);
+			metrics.reset();
+			metrics.register();
+			int heroCount = allHeroes ? source.getHeroCount() : 1;
+			// Heroes synchronized concurrently report one step each
+			monitor.start(BASE_STEPS + (heroCount > 1 ? heroCount : STEPS_PER_HERO));
+			monitor.startTask("Lese Helden");
+			long start = System.currentTimeMillis();
+			long readStart = System.nanoTime();
+			List<HeroSnapshot> heroes;
+			if (readHero != null)
+			{
+				heroes = Collections.singletonList(readHero);
+			}
+			else if (allHeroes)
+			{
+				heroes = source.readAllHeroes();
+			}
+			else
+			{
+				heroes = Collections.singletonList(source.readSelectedHero());
+			}
+			metrics.recordStage("Helden lesen", System.nanoTime() - readStart);
+			monitor.step();
+			if (readHero == null)
+			{
+				readAt = start;
+			}
+			try
+			{
+				export(heroes, start, statistics);
+			}
+			catch (HeldenWebExportException exception)
+			{
+				if (outboxFlusher == null || !isServerUnavailable(exception))
+				{
+					throw exception;
+				}
+				outboxFlusher.getOutbox().enqueue(heroes);
+				statistics.setQueued(heroes.size());
+				outboxFlusher.start();
+				return statistics;
+			}
+			if (outboxFlusher != null)
+			{
+				for (HeroSnapshot hero : heroes)
+				{
+					outboxFlusher.getOutbox().discard(hero, readAt);
+				}
+			}
+			return statistics;
+		}
+		finally
+		{
+			monitor.done();
+			EXPORT_LOCK.unlock();
+		}
+	}
+
+	/**
+	 * Export heroes which have been read. After the base data, several heroes
+	 * are synchronized concurrently; they have been read from the Helden
+	 * software before, so only the communication with the server overlaps.
+	 * 
+	 * @param heroes
+	 *          The heroes.
+	 * @param start
+	 *          The time the export started, in milliseconds since the epoch.
+	 * @param statistics
+	 *          The statistics of the export.
+	 * @throws HeldenWebExportException
+	 */
+	private void export(final List<HeroSnapshot> heroes, long start, ExportStatistics statistics)
+					throws HeldenWebExportException
+	{
+		try
+		{
+			statistics.setResumed(cache.getResumedObjectCount(), cache.getResumedStageCount());
+			cache.startExport();
+			int objectCount = cache.getObjectCount();
+			int sentObjectCount = cache.getSentObjectCount();
+			syncBaseData(heroes);
+			long baseDataEnd = System.currentTimeMillis();
+			final UUID[] heroIds = new UUID[heroes.size()];
+			final long[] durations = new long[heroes.size()];
+			if (heroes.size() == 1)
+			{
+				exportHero(heroes.get(0), monitor, 0, heroIds, durations);
+			}
+			else
+			{
+				StageScheduler scheduler = new StageScheduler(PARALLEL_HEROES);
+				for (int index = 0; index < heroes.size(); index++)
+				{
+					final int heroIndex = index;
+					scheduler.addStage("Held " + (index + 1) + ": " + heroes.get(index).getName(), new StageScheduler.Stage()
+					{
+						@Override
+						public void run(ProgressMonitor monitor) throws HeldenWebExportException
+						{
+							exportHero(heroes.get(heroIndex), monitor, heroIndex, heroIds, durations);
+						}
+					});
+				}
+				scheduler.run(monitor);
+			}
+			cache.awaitCreates();
+			// Reading the heroes and the base data are counted for the first hero
+			int[] objectCounts = new int[heroes.size()];
+			int[] sentObjectCounts = new int[heroes.size()];
+			for (int index = 0; index < heroes.size(); index++)
+			{
+				objectCounts[index] = cache.getObjectCount(heroes.get(index).getIdentifier(), heroIds[index]);
+				sentObjectCounts[index] = cache.getSentObjectCount(heroes.get(index).getIdentifier(), heroIds[index]);
+			}
+			objectCounts[0] += cache.getObjectCount() - objectCount - sum(objectCounts);
+			sentObjectCounts[0] += cache.getSentObjectCount() - sentObjectCount - sum(sentObjectCounts);
+			durations[0] += baseDataEnd - start;
+			for (int index = 0; index < heroes.size(); index++)
+			{
+				statistics.addHero(heroes.get(index).getName(), objectCounts[index], sentObjectCounts[index],
+								durations[index]);
+			}
+			cache.persist();
+			statistics.setDuration(System.currentTimeMillis() - start);
+		}
+		finally
+		{
+			cache.finishExport();
+		}
+	}
+
+	/**
+	 * Synchronize a hero and remove its deleted objects from the server.
+	 * 
+	 * @param hero
+	 *          The hero.
+	 * @param monitor
+	 *          The progress monitor.
+	 * @param index
+	 *          The index of the hero, at which its results are stored.
+	 * @param heroIds
+	 *          Receives the hero's ID.
+	 * @param durations
+	 *          Receives the time needed for the hero in milliseconds.
+	 * @throws HeldenWebExportException
+	 */
+	private void exportHero(HeroSnapshot hero, ProgressMonitor monitor, int index, UUID[] heroIds, long[] durations)
+					throws HeldenWebExportException
+	{
+		long start = System.currentTimeMillis();
+		syncHeld(hero, monitor);
+		UUID heldId = cache.getKey(CacheKey.HELD, hero.getIdentifier());
+		// Objects created in the background must exist before deleted objects
+		// are determined
+		cache.awaitCreates(heldId);
+		syncDeletions(heldId, monitor);
+		heroIds[index] = heldId;
+		durations[index] = System.currentTimeMillis() - start;
+	}
+
+	private static int sum(int[] values)
+	{
+		int sum = 0;
+		for (int value : values)
+		{
+			sum += value;
 		}
+		return sum;
 	}
 
-	private void syncInventory() throws HeldenWebExportException
+	/**
+	 * Check if an export failed because the server could not be reached.
+	 * 
+	 * @param exception
+	 *          The exception.
+	 * @return <code>true</code> if the server could not be reached.
+	 */
+	static boolean isServerUnavailable(Throwable exception)
 	{
-		UUID heldId = cache.getKey(CacheKey.HELD, werkzeug.getHeldenID());
-		monitor.startTask("Übertrage Inventar");
-		cache.synchronizeInventory(heldId, werkzeug, monitor);
-		cache.syncronizeMoney(heldId, werkzeug, monitor);
+		for (Throwable cause = exception; cause != null; cause = cause.getCause())
+		{
+			if (cause instanceof ServerUnavailableException || cause instanceof SocketException
+							|| cause instanceof SocketTimeoutException || cause instanceof UnknownHostException)
+			{
+				return true;
+			}
+		}
+		return false;
 	}
 
 	/**
-	 * Synchronize equipment (combat gear).
+	 * Remove objects from the server which are no longer part of the hero.
 	 * 
+	 * @param heldId
+	 *          The hero's ID.
+	 * @param monitor
+	 *          The progress monitor.
 	 * @throws HeldenWebExportException
 	 */
-	private void syncEquipment() throws HeldenWebExportException
+	private void syncDeletions(UUID heldId, ProgressMonitor monitor) throws HeldenWebExportException
 	{
-		UUID heldId = cache.getKey(CacheKey.HELD, werkzeug.getHeldenID());
-		monitor.startTask("Übertrage Ausrüstung");
-		cache.syncMeleeWeapons(heldId, werkzeug, monitor);
-		cache.syncRangedWeapons(heldId, werkzeug, monitor);
-		cache.syncArmor(heldId, werkzeug, monitor);
-		cache.syncShields(heldId, werkzeug, monitor);
-		cache.syncCombat(heldId, werkzeug, monitor);
+		monitor.startTask("Entferne gelöschte Daten");
+		long start = System.nanoTime();
+		cache.removeDeletedObjects(heldId, monitor);
+		metrics.recordStage("Held: Gelöschte Daten", System.nanoTime() - start);
 	}
 
 	/**
-	 * Synchronize basic data. This includes:
+	 * Synchronize basic data of all heroes. This includes:
 	 * <ul>
 	 * <li>Attributes (Eigenschaften)</li>
 	 * <li>Talent Types (Talentarten)</li>
@@ -85,115 +469,261 @@ public class Synchronizer
 	 * <li>(Dis-)Advantages (Vor-/Nachteile)</li>
 	 * <li>Special Abilities (Sonderfertigkeiten)</li>
 	 * <li>Spells (Zauber)</li>
-	 * <li>Equipment (Ausrüstung)</li>
 	 * </ul>
+	 * Stages which do not depend on each other are synchronized concurrently.
 	 * 
+	 * @param heroes
+	 *          The heroes.
 	 * @throws HeldenWebExportException
 	 */
-	private void syncBaseData() throws HeldenWebExportException
+	private void syncBaseData(final List<HeroSnapshot> heroes) throws HeldenWebExportException
 	{
+		StageScheduler scheduler = new StageScheduler(PARALLEL_STAGES, metrics, "Stammdaten");
+		scheduler.setCache(cache);
 		// Eigenschaften
-		monitor.startTask("Übertrage Attribute");
-		cache.synchronizeAttributes(werkzeug, monitor);
-		monitor.step();
-
-		// Talentarten und Talente
-		String[] talentNamen = werkzeug.getTalenteAlsString();
-		Map<String, PluginTalent> talente = new TreeMap<String, PluginTalent>();
-		Set<String> talentarten = new HashSet<String>();
-		for (String talentName : talentNamen)
+		scheduler.addStage("Attribute", new StageScheduler.Stage()
 		{
-			PluginTalent talent = werkzeug.getTalent(talentName);
-			talente.put(talentName, talent);
-			talentarten.add(talent.getTalentart());
-		}
-		monitor.startTask("Übertrage Talentarten");
-		cache.synchronizeTalentTypes(talentarten, monitor);
-		monitor.step();
-
-		monitor.startTask("Übertrage Talente");
-		cache.synchronizeTalents(talente, werkzeug, monitor);
-		monitor.step();
-
+			@Override
+			public void run(ProgressMonitor monitor) throws HeldenWebExportException
+			{
+				cache.synchronizeAttributes(heroes, monitor);
+			}
+		});
+		scheduler.addStage("Talentarten", new StageScheduler.Stage()
+		{
+			@Override
+			public void run(ProgressMonitor monitor) throws HeldenWebExportException
+			{
+				cache.synchronizeTalentTypes(heroes, monitor);
+			}
+		});
+		scheduler.addStage("Talente", new StageScheduler.Stage()
+		{
+			@Override
+			public void run(ProgressMonitor monitor) throws HeldenWebExportException
+			{
+				cache.synchronizeTalents(heroes, monitor);
+			}
+		}, "Attribute", "Talentarten");
 		// Vorteile
-		monitor.startTask("Übertrage Vorteile");
-		cache.synchronizeAdvantages(werkzeug, monitor);
-		monitor.step();
-
-		// Sonderfertigkeiten
-		monitor.startTask("Übertrage Sonderfertigkeiten");
-		if (!skipSpecialAbilities)
+		scheduler.addStage("Vorteile", new StageScheduler.Stage()
 		{
-			try
+			@Override
+			public void run(ProgressMonitor monitor) throws HeldenWebExportException
 			{
-				cache.synchronizeSpecialAbilities(werkzeug, monitor);
+				cache.synchronizeAdvantages(heroes, monitor);
 			}
-			catch (StackOverflowError e)
+		});
+		// Sonderfertigkeiten
+		scheduler.addStage("Sonderfertigkeiten", new StageScheduler.Stage()
+		{
+			@Override
+			public void run(ProgressMonitor monitor) throws HeldenWebExportException
 			{
-				// Sonderbehandlung für Fehler in alten Versionen der Helden-Software
-				skipSpecialAbilities = true;
+				cache.synchronizeSpecialAbilities(heroes, monitor);
 			}
-		}
-		monitor.step();
-
+		}, "Talente");
 		// Zauber
-		monitor.startTask("Übertrage Zauber");
-		cache.synchronizeSpells(werkzeug, monitor);
-		monitor.step();
+		scheduler.addStage("Zauber", new StageScheduler.Stage()
+		{
+			@Override
+			public void run(ProgressMonitor monitor) throws HeldenWebExportException
+			{
+				cache.synchronizeSpells(heroes, monitor);
+			}
+		}, "Attribute");
+		scheduler.run(monitor);
 	}
 
-	private void syncHeld() throws HeldenWebExportException
+	/**
+	 * Synchronize a hero: the hero data, followed by the hero's attributes,
+	 * abilities, equipment and inventory. These stages only depend on the hero
+	 * data and are synchronized concurrently. If the server supports it, the
+	 * hero and all its objects are sent in one request once all stages are
+	 * completed.
+	 * 
+	 * @param hero
+	 *          The hero.
+	 * @param monitor
+	 *          The progress monitor.
+	 * @throws HeldenWebExportException
+	 */
+	private void syncHeld(final HeroSnapshot hero, ProgressMonitor monitor) throws HeldenWebExportException
 	{
-		monitor.startTask("Übertrage Held");
-		cache.synchronizeHeroData(werkzeug);
+		monitor.startTask("Übertrage Held " + hero.getName());
+		long start = System.nanoTime();
+		boolean aggregate = cache.startAggregate(hero.getIdentifier());
+		cache.synchronizeHeroData(hero);
+		metrics.recordStage("Held: Heldendaten", System.nanoTime() - start);
 		monitor.step();
-		UUID heldId = cache.getKey(CacheKey.HELD, werkzeug.getHeldenID());
-		cache.synchronizeHeroAttributes(heldId, werkzeug, monitor);
-		if (!skipSpecialAbilities)
+		final UUID heldId = cache.getKey(CacheKey.HELD, hero.getIdentifier());
+
+		StageScheduler scheduler = new StageScheduler(PARALLEL_STAGES, metrics, "Held " + hero.getName());
+		if (!aggregate)
 		{
-			cache.synchronizeHeroSpecialAbilities(heldId, werkzeug, monitor);
+			// With an aggregate upload, nothing is sent before all stages are done
+			scheduler.setCache(cache);
+		}
+		scheduler.addStage("Eigenschaften", new StageScheduler.Stage()
+		{
+			@Override
+			public void run(ProgressMonitor monitor) throws HeldenWebExportException
+			{
+				cache.synchronizeHeroAttributes(heldId, hero, monitor);
+			}
+		});
+		scheduler.addStage("Sonderfertigkeiten", new StageScheduler.Stage()
+		{
+			@Override
+			public void run(ProgressMonitor monitor) throws HeldenWebExportException
+			{
+				if (hero.hasSpecialAbilities())
+				{
+					cache.synchronizeHeroSpecialAbilities(heldId, hero, monitor);
+				}
+			}
+		});
+		scheduler.addStage("Talente", new StageScheduler.Stage()
+		{
+			@Override
+			public void run(ProgressMonitor monitor) throws HeldenWebExportException
+			{
+				cache.synchronizeHeroTalents(heldId, hero, monitor);
+			}
+		});
+		scheduler.addStage("Vorteile", new StageScheduler.Stage()
+		{
+			@Override
+			public void run(ProgressMonitor monitor) throws HeldenWebExportException
+			{
+				cache.synchronizeHeroAdvantages(heldId, hero, monitor);
+			}
+		});
+		scheduler.addStage("Zauber", new StageScheduler.Stage()
+		{
+			@Override
+			public void run(ProgressMonitor monitor) throws HeldenWebExportException
+			{
+				cache.synchronizeHeroSpells(heldId, hero, monitor);
+			}
+		});
+		// Ausrüstung
+		scheduler.addStage("Nahkampfwaffen", new StageScheduler.Stage()
+		{
+			@Override
+			public void run(ProgressMonitor monitor) throws HeldenWebExportException
+			{
+				cache.syncMeleeWeapons(heldId, hero, monitor);
+			}
+		});
+		scheduler.addStage("Fernkampfwaffen", new StageScheduler.Stage()
+		{
+			@Override
+			public void run(ProgressMonitor monitor) throws HeldenWebExportException
+			{
+				cache.syncRangedWeapons(heldId, hero, monitor);
+			}
+		});
+		scheduler.addStage("Rüstungen", new StageScheduler.Stage()
+		{
+			@Override
+			public void run(ProgressMonitor monitor) throws HeldenWebExportException
+			{
+				cache.syncArmor(heldId, hero, monitor);
+			}
+		});
+		scheduler.addStage("Schilde", new StageScheduler.Stage()
+		{
+			@Override
+			public void run(ProgressMonitor monitor) throws HeldenWebExportException
+			{
+				cache.syncShields(heldId, hero, monitor);
+			}
+		});
+		scheduler.addStage("Kampfwerte", new StageScheduler.Stage()
+		{
+			@Override
+			public void run(ProgressMonitor monitor) throws HeldenWebExportException
+			{
+				cache.syncCombat(heldId, hero, monitor);
+			}
+		});
+		// Inventar
+		scheduler.addStage("Inventar", new StageScheduler.Stage()
+		{
+			@Override
+			public void run(ProgressMonitor monitor) throws HeldenWebExportException
+			{
+				cache.synchronizeInventory(heldId, hero, monitor);
+				cache.syncronizeMoney(heldId, hero, monitor);
+			}
+		});
+		scheduler.run(monitor);
+		if (aggregate)
+		{
+			start = System.nanoTime();
+			cache.sendAggregate(heldId);
+			metrics.recordStage("Held: Aggregat", System.nanoTime() - start);
+			cache.stageCompleted("Held " + hero.getName());
 		}
-		cache.synchronizeHeroTalents(heldId, werkzeug, monitor);
-		cache.synchronizeHeroAdvantages(heldId, werkzeug, monitor);
-		cache.synchronizeHeroSpells(heldId, werkzeug, monitor);
 	}
 
-	public String getHeroName()
+	/**
+	 * @return The number of heroes which can be exported with {@link #syncAll()}.
+	 */
+	public int getHeroCount()
 	{
-		return werkzeug.getSelectesHeld().toString();
+		return source.getHeroCount();
 	}
 
-	public void setProgressMonitor(ProgressMonitor monitor)
+	public String getHeroName()
 	{
-		this.monitor = monitor;
+		return source.getSelectedHeroName();
 	}
 
-	private static class NullProgressMonitor implements ProgressMonitor
+	/**
+	 * Read the selected hero without exporting it. The hero is read while no
+	 * export is running, since an export of all heroes changes the active hero
+	 * of the Helden software.
+	 * 
+	 * @return The hero.
+	 * @throws HeldenWebExportException
+	 */
+	HeroSnapshot readSelectedHero() throws HeldenWebExportException
 	{
+		EXPORT_LOCK.lock();
+		try
+		{
+			return source.readSelectedHero();
+		}
+		finally
+		{
+			EXPORT_LOCK.unlock();
+		}
+	}
 
-		@Override
-		public void subtaskDone()
-		{}
-
-		@Override
-		public void done()
-		{}
-
-		@Override
-		public void start(int steps)
-		{}
-
-		@Override
-		public void startTask(String name)
-		{}
-
-		@Override
-		public void startSubtask(String name, int steps)
-		{}
+	/**
+	 * @return The metrics of the last or currently running export.
+	 */
+	public SyncMetrics getMetrics()
+	{
+		return metrics;
+	}
 
-		@Override
-		public void step()
-		{}
+	/**
+	 * Set the flusher whose outbox receives the heroes if the server is not
+	 * reachable.
+	 * 
+	 * @param outboxFlusher
+	 *          The flusher, or <code>null</code> to report an error instead.
+	 */
+	public void setOutboxFlusher(OutboxFlusher outboxFlusher)
+	{
+		this.outboxFlusher = outboxFlusher;
+	}
 
+	public void setProgressMonitor(ProgressMonitor monitor)
+	{
+		this.monitor = monitor;
 	}
 }
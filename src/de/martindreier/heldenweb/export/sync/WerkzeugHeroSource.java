@@ -0,0 +1,503 @@
+package de.martindreier.heldenweb.export.sync;
+
+import helden.framework.geld.GeldBoerse;
+import helden.framework.geld.Muenze;
+import helden.plugin.werteplugin.HeldAngaben;
+import helden.plugin.werteplugin.PluginFernkampfWaffe;
+import helden.plugin.werteplugin.PluginHeld;
+import helden.plugin.werteplugin.PluginRuestungsTeil;
+import helden.plugin.werteplugin.PluginSonderfertigkeit;
+import helden.plugin.werteplugin.PluginTalent;
+import helden.plugin.werteplugin.PluginVorteil;
+import helden.plugin.werteplugin.PluginZauberInfo;
+import helden.plugin.werteplugin2.PluginAusruestung2;
+import helden.plugin.werteplugin2.PluginFernkampfWaffe2;
+import helden.plugin.werteplugin2.PluginGegenstand;
+import helden.plugin.werteplugin2.PluginHeld2;
+import helden.plugin.werteplugin2.PluginNahkampfWaffe2;
+import helden.plugin.werteplugin2.PluginSchildParadewaffe;
+import helden.plugin.werteplugin3.PluginHeldenWerteWerkzeug3;
+import helden.plugin.werteplugin3.PluginZauber3;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import de.martindreier.heldenweb.export.HeldenWebExportException;
+import de.martindreier.heldenweb.export.sync.HeroSnapshot.Equipment;
+
+/**
+ * Reads heroes from the Helden software. Each hero is read in one pass; every
+ * value is requested from the Helden API only once.
+ * 
+ * @author Martin Dreier <martin@martindreier.de>
+ * 
+ */
+public class WerkzeugHeroSource implements HeroSource
+{
+	private PluginHeld2[]								helden;
+	private PluginHeldenWerteWerkzeug3	werkzeug;
+
+	/**
+	 * Set once the Helden software failed to return the special abilities.
+	 */
+	private boolean											skipSpecialAbilities	= false;
+
+	/**
+	 * Create a new source.
+	 * 
+	 * @param helden
+	 *          All heroes.
+	 * @param werkzeug
+	 *          The Helden API.
+	 */
+	public WerkzeugHeroSource(PluginHeld2[] helden, PluginHeldenWerteWerkzeug3 werkzeug)
+	{
+		this.helden = helden;
+		this.werkzeug = werkzeug;
+	}
+
+	/**
+	 * @see de.martindreier.heldenweb.export.sync.HeroSource#getHeroCount()
+	 */
+	@Override
+	public int getHeroCount()
+	{
+		return helden.length;
+	}
+
+	/**
+	 * @see de.martindreier.heldenweb.export.sync.HeroSource#getSelectedHeroName()
+	 */
+	@Override
+	public String getSelectedHeroName()
+	{
+		return werkzeug.getSelectesHeld().toString();
+	}
+
+	/**
+	 * Read the selected hero. The selected hero is activated first, since most
+	 * of the data is read from the active hero, which may still be another hero
+	 * after all heroes were read.
+	 * 
+	 * @see de.martindreier.heldenweb.export.sync.HeroSource#readSelectedHero()
+	 */
+	@Override
+	public HeroSnapshot readSelectedHero() throws HeldenWebExportException
+	{
+		PluginHeld selectedHero = werkzeug.getSelectesHeld();
+		werkzeug.setAktivenHeld(selectedHero);
+		return read(selectedHero);
+	}
+
+	/**
+	 * Read all heroes. The heroes are activated one after the other, the
+	 * selected hero is activated again afterwards.
+	 * 
+	 * @see de.martindreier.heldenweb.export.sync.HeroSource#readAllHeroes()
+	 */
+	@Override
+	public List<HeroSnapshot> readAllHeroes() throws HeldenWebExportException
+	{
+		List<HeroSnapshot> heroes = new ArrayList<HeroSnapshot>(helden.length);
+		PluginHeld selectedHero = werkzeug.getSelectesHeld();
+		try
+		{
+			for (PluginHeld hero : helden)
+			{
+				werkzeug.setAktivenHeld(hero);
+				heroes.add(read(hero));
+			}
+		}
+		finally
+		{
+			werkzeug.setAktivenHeld(selectedHero);
+		}
+		return heroes;
+	}
+
+	/**
+	 * Read the active hero. The hero's own data is read from the hero, since the
+	 * active hero may differ from the hero selected in the Helden software.
+	 * 
+	 * @param hero
+	 *          The active hero.
+	 * @return The snapshot.
+	 */
+	private HeroSnapshot read(PluginHeld hero)
+	{
+		HeroSnapshot.Builder snapshot = new HeroSnapshot.Builder(werkzeug.getHeldenID(), hero.toString());
+		readHeroData(hero, snapshot);
+		for (String attributeName : werkzeug.getEigenschaftsbezeichner())
+		{
+			snapshot.addAttribute(new HeroSnapshot.Attribute(attributeName, werkzeug.getEigenschaftswert(attributeName)));
+		}
+		snapshot.setSpeed(werkzeug.getGeschwindigkeit());
+		readTalents(snapshot);
+		readAdvantages(snapshot);
+		if (!skipSpecialAbilities)
+		{
+			try
+			{
+				readSpecialAbilities(snapshot);
+			}
+			catch (StackOverflowError e)
+			{
+				// Sonderbehandlung für Fehler in alten Versionen der Helden-Software
+				skipSpecialAbilities = true;
+				snapshot.setSpecialAbilitiesAvailable(false);
+			}
+		}
+		readSpells(snapshot);
+		PluginAusruestung2 ausruestung = werkzeug.getAusruestung2();
+		readMeleeWeapons(ausruestung, snapshot);
+		readRangedWeapons(ausruestung, snapshot);
+		readArmor(ausruestung, snapshot);
+		readShields(ausruestung, snapshot);
+		readCombat(ausruestung, snapshot);
+		readInventory(snapshot);
+		readMoney(snapshot);
+		return snapshot.build();
+	}
+
+	private void readHeroData(PluginHeld hero, HeroSnapshot.Builder snapshot)
+	{
+		Map<String, String> heroColumns = new HashMap<String, String>();
+		heroColumns.put("geschlecht", hero.getGeschlechtString());
+		heroColumns.put("kultur", hero.getKulturString());
+		heroColumns.put("profession", hero.getProfessionString());
+		heroColumns.put("rasse", hero.getRasseString());
+		heroColumns.put("stufe", Integer.toString(hero.getStufe()));
+		heroColumns.put("zaubersprueche", Cache.booleanToDb(hero.hatZaubersprueche()));
+		snapshot.setHeroColumns(heroColumns);
+
+		HeldAngaben description = hero.getAngaben();
+		Map<String, String> descriptionData = new HashMap<String, String>();
+		descriptionData.put("augenfarbe", description.getAugenFarbe());
+		StringBuilder text = new StringBuilder();
+		for (String line : description.getAussehenText())
+		{
+			text.append(line);
+			text.append("\n");
+		}
+		descriptionData.put("aussehen", text.toString());
+		text = new StringBuilder();
+		for (String line : description.getFamilieText())
+		{
+			text.append(line);
+			text.append("\n");
+		}
+		descriptionData.put("familie", text.toString());
+		descriptionData.put("geburtstag", description.getGeburtstagString());
+		descriptionData.put("gewicht", Integer.toString(description.getGewicht(false)));
+		descriptionData.put("groesse", Integer.toString(description.getGroesse()));
+		descriptionData.put("haarfarbe", description.getHaarFarbe());
+		descriptionData.put("stand", description.getStand());
+		descriptionData.put("titel", description.getTitel());
+		snapshot.setDescription(descriptionData);
+
+		Map<String, String> valueData = new HashMap<String, String>();
+		valueData.put("ap_gesamt", Integer.toString(hero.getAbenteuerpunkte()));
+		valueData.put("ap_eingesetzt", Integer.toString(werkzeug.getEingestzteAbenteuerpunkte()));
+		valueData.put("ap_verfuegbar", Integer.toString(werkzeug.getVerfuegbareAbenteuerpunkte()));
+		valueData.put("gp_start", Integer.toString(description.getGPStart()));
+		valueData.put("gp_rest", Integer.toString(description.getGPRest()));
+		snapshot.setValues(valueData);
+	}
+
+	private void readTalents(HeroSnapshot.Builder snapshot)
+	{
+		for (String talentName : werkzeug.getTalenteAlsString())
+		{
+			PluginTalent talent = werkzeug.getTalent(talentName);
+			snapshot.addTalent(new HeroSnapshot.Talent(talentName, talent.getTalentart(), talent.getProbe(), werkzeug
+							.getSprachKomplexitaet(talent), talent.getBehinderung(), werkzeug.getTalentwert(talent), werkzeug
+							.getAttacke(talent), werkzeug.getParade(talent)));
+		}
+	}
+
+	private void readAdvantages(HeroSnapshot.Builder snapshot)
+	{
+		for (String vorteilName : werkzeug.getVorteileAlsString())
+		{
+			PluginVorteil vorteil = werkzeug.getVorteil(vorteilName);
+			snapshot.addAdvantage(new HeroSnapshot.Advantage(vorteilName, vorteil.isAuswahlVorteil(), vorteil
+							.isMehfachAuswahlVorteil(), vorteil.isNachteil(), vorteil.isWertVorteil(), vorteil.getWert()));
+		}
+	}
+
+	private void readSpecialAbilities(HeroSnapshot.Builder snapshot)
+	{
+		snapshot.setSpecialAbilitiesAvailable(true);
+		for (String sonderfertigkeitName : werkzeug.getSonderfertigkeitenAlsString())
+		{
+			PluginSonderfertigkeit specialAbility = werkzeug.getSonderfertigkeit(sonderfertigkeitName);
+			String talent = null;
+			Map<String, String> columns = new HashMap<String, String>();
+			if (specialAbility.getTSTalent() != null)
+			{
+				talent = specialAbility.getTSTalent().toString();
+				putBoolean(columns, "elfenlied", specialAbility.istElfenlied());
+				putBoolean(columns, "fernkampf_sonderfertigkeit", specialAbility.istFernkampfsonderfertigkeit());
+				putBoolean(columns, "gelaendekunde", specialAbility.istGelaendekunde());
+				putBoolean(columns, "hexenfluch", specialAbility.istHexenfluch());
+				putBoolean(columns, "kampf_sonderfertigkeit", specialAbility.istKampfSonderfertigkeit());
+				putBoolean(columns, "klerikal", specialAbility.istKlerikal());
+				putBoolean(columns, "liturgie", specialAbility.istLiturgie());
+				putBoolean(columns, "liturgiekenntnis", specialAbility.istLiturgiekenntnis());
+				putBoolean(columns, "magisch", specialAbility.istMagisch());
+				putBoolean(columns, "manoever", specialAbility.istManoever());
+				putBoolean(columns, "merkmalskenntnis", specialAbility.istMerkmalskenntnis());
+				putBoolean(columns, "nahkampf_sonderfertigkeit", specialAbility.istNahkampfsonderfertigkeit());
+				putBoolean(columns, "repraesentation", specialAbility.istRepraesentation());
+				putBoolean(columns, "ritual", specialAbility.istRitual());
+				putBoolean(columns, "schamanen_ritualkenntnis", specialAbility.istSchamanenRitualkenntnis());
+				putBoolean(columns, "talentspezialisierung", specialAbility.istTalentspezialisierung());
+				putBoolean(columns, "waffenloser_kampfstil", specialAbility.istWaffenloseKampfstil());
+			}
+			snapshot.addSpecialAbility(new HeroSnapshot.SpecialAbility(sonderfertigkeitName, specialAbility.getArt(),
+							talent, columns, specialAbility.getSpezialisierung()));
+		}
+	}
+
+	private void readSpells(HeroSnapshot.Builder snapshot)
+	{
+		for (String[] spellData : werkzeug.getZauberAlsString())
+		{
+			PluginZauber3 spell = werkzeug.getZauber(spellData[0], spellData[1]);
+			PluginZauberInfo spellInfo = werkzeug.getZauberInfo(spell);
+			Map<String, String> columns = new HashMap<String, String>();
+			columns.put("basiskomplexitaet", werkzeug.getBasisKomplexitaet(spell));
+			columns.put("lernkomplexitaet", werkzeug.getLernKomplexitaet(spell));
+			columns.put("hauszauber", Cache.booleanToDb(spell.isHauszauber()));
+			StringBuilder merkmale = new StringBuilder();
+			for (String merkmal : spell.getMerkmale())
+			{
+				merkmale.append(merkmal);
+				merkmale.append("\n");
+			}
+			columns.put("merkmale", merkmale.toString());
+			columns.put("kosten", spellInfo.getKosten());
+			columns.put("reichweite", spellInfo.getReichweite());
+			columns.put("wirkungsdauer", spellInfo.getWirkungsdauer());
+			columns.put("zauberdauer", spellInfo.getZauberdauer());
+			snapshot.addSpell(new HeroSnapshot.Spell(spellData[0], spellData[1], spell.getProbe(), columns, spellInfo
+							.getZauberfertigkeitsWert()));
+		}
+	}
+
+	private void readMeleeWeapons(PluginAusruestung2 ausruestung, HeroSnapshot.Builder snapshot)
+	{
+		for (PluginNahkampfWaffe2 waffe : ausruestung.getNahkampfWaffen())
+		{
+			if (waffe == null)
+			{
+				// Not all weapons may be set
+				continue;
+			}
+			Map<String, String> data = new HashMap<String, String>();
+			data.put("name", waffe.getName());
+			data.put("attacke", Integer.toString(waffe.getAttacke()));
+			data.put("parade", Integer.toString(waffe.getParade()));
+			data.put("trefferpunkte", tpToString(waffe.getTrefferpunkte()));
+			data.put("trefferpunkte_final", tpToString(waffe.getEndTP()));
+			int[] koerperkraftzuschlag = waffe.getKoerperkraftzuschlag();
+			data.put("koerperkraftzuschlag", String.format("%d/%d", koerperkraftzuschlag[0], koerperkraftzuschlag[1]));
+			int[] bruchfaktor = waffe.getBF();
+			data.put("bruchfaktor_minimal", Integer.toString(bruchfaktor[0]));
+			data.put("bruchfaktor_aktuell", Integer.toString(bruchfaktor[1]));
+			data.put("inimodifikator", Integer.toString(waffe.getINIMod()));
+			data.put("distanzklasse", arrayToString(waffe.getDistanzklasse()));
+			data.put("ausdauerschaden", Cache.booleanToDb(waffe.isSchadensartAusdauer()));
+			data.put("waffenmodifikator_attacke", Integer.toString(waffe.getWmAT()));
+			data.put("waffenmodifikator_parade", Integer.toString(waffe.getWmPA()));
+			snapshot.addMeleeWeapon(new Equipment(waffe.getName(), waffe.getBenutztesTalent().getBezeichnung(), data));
+		}
+	}
+
+	private void readRangedWeapons(PluginAusruestung2 ausruestung, HeroSnapshot.Builder snapshot)
+	{
+		for (PluginFernkampfWaffe waffe : ausruestung.getFernkampfWaffen())
+		{
+			if (waffe == null)
+			{
+				// Not all weapons may be set
+				continue;
+			}
+			Map<String, String> data = new HashMap<String, String>();
+			data.put("name", waffe.toString());
+			if (waffe instanceof PluginFernkampfWaffe2)
+			{
+				// Use newer interface
+				data.put("fernkampfwert", Integer.toString(((PluginFernkampfWaffe2) waffe).getFernkammpfWert()));
+			}
+			else
+			{
+				data.put("fernkampfwert", Integer.toString(werkzeug.getTalentwert(waffe.getTalent())));
+			}
+			data.put("trefferpunkte", tpToString(waffe.getTrefferpunkte()));
+			data.put("ladezeit", Integer.toString(waffe.getLaden()));
+			data.put("munitionsart", waffe.getMunitionsArt());
+			int[] reichweite = waffe.getReichweite();
+			int[] trefferpunkte = waffe.getTrefferpunkteModifikation();
+			for (int i = 0; i < 5; i++)
+			{
+				data.put("reichweite" + i, Integer.toString(reichweite[i]));
+				data.put("trefferpunkte" + i, Integer.toString(trefferpunkte[i]));
+			}
+			snapshot.addRangedWeapon(new Equipment(waffe.toString(), waffe.getTalent().getBezeichnung(), data));
+		}
+	}
+
+	private void readArmor(PluginAusruestung2 ausruestung, HeroSnapshot.Builder snapshot)
+	{
+		for (PluginRuestungsTeil ruestung : ausruestung.getRuestungsTeile())
+		{
+			if (ruestung == null)
+			{
+				// Not all armor parts may be set
+				continue;
+			}
+			snapshot.addArmor(readArmorPart(ruestung, false));
+		}
+		PluginRuestungsTeil gesamtRuestung = ausruestung.getGesammtRuestung();
+		if (gesamtRuestung != null)
+		{
+			snapshot.setCompleteArmor(readArmorPart(gesamtRuestung, true));
+		}
+	}
+
+	private Equipment readArmorPart(PluginRuestungsTeil ruestung, boolean complete)
+	{
+		Map<String, String> data = new HashMap<String, String>();
+		data.put("name", ruestung.toString());
+		data.put("gesamt", Cache.booleanToDb(complete));
+		data.put("zeug", Cache.booleanToDb(ruestung.istZeug()));
+		data.put("anzahl_teile", Integer.toString(ruestung.getAnzahlTeile()));
+		data.put("behinderung_gesamt", Integer.toString(ruestung.getGesammtBehinderung()));
+		data.put("schutz_gesamt", Integer.toString(ruestung.getGesamtSchutz()));
+		data.put("schutz_gesamt_zonen", Integer.toString(ruestung.getGesammtZonenSchutz()));
+		data.put("schutz_bauch", Integer.toString(ruestung.getBauchSchutz()));
+		data.put("schutz_brust", Integer.toString(ruestung.getBrustSchutz()));
+		data.put("schutz_kopf", Integer.toString(ruestung.getKopfSchutz()));
+		data.put("schutz_ruecken", Integer.toString(ruestung.getRueckenSchutz()));
+		data.put("schutz_arm_links", Integer.toString(ruestung.getLinkerArmSchutz()));
+		data.put("schutz_arm_rechts", Integer.toString(ruestung.getRechterArmSchutz()));
+		data.put("schutz_bein_links", Integer.toString(ruestung.getLinkesBeinSchutz()));
+		data.put("schutz_bein_rechts", Integer.toString(ruestung.getRechtesBeinSchutz()));
+		return new Equipment(ruestung.toString(), null, data);
+	}
+
+	private void readShields(PluginAusruestung2 ausruestung, HeroSnapshot.Builder snapshot)
+	{
+		for (PluginSchildParadewaffe schild : ausruestung.getSchildParadewaffe())
+		{
+			if (schild == null)
+			{
+				// Not all shields might be set
+				continue;
+			}
+			Map<String, String> data = new HashMap<String, String>();
+			data.put("name", schild.getName());
+			data.put("parade", Integer.toString(schild.getParade()));
+			data.put("art", schild.getBenutzungsart());
+			data.put("inimodifikator", Integer.toString(schild.getInitiativeModifikator()));
+			data.put("waffenmodifikator_attacke", Integer.toString(schild.getWaffenModifikatorAT()));
+			data.put("waffenmodifikator_parade", Integer.toString(schild.getWaffenModifikatorPA()));
+			data.put("bruchfaktor_minimal", Integer.toString(schild.getBruchfaktorMin()));
+			data.put("bruchfaktor_aktuell", Integer.toString(schild.getBruchfaktor()));
+			snapshot.addShield(new Equipment(schild.getName(), null, data));
+		}
+	}
+
+	private void readCombat(PluginAusruestung2 ausruestung, HeroSnapshot.Builder snapshot)
+	{
+		Map<String, String> data = new HashMap<String, String>();
+		data.put("ausweichen", Integer.toString(ausruestung.getAusweichen()));
+		data.put("raufen_attacke", Integer.toString(ausruestung.getRauferAttacke()));
+		data.put("raufen_parade", Integer.toString(ausruestung.getRaufenParade()));
+		data.put("raufen_trefferpunkte", ausruestung.getRaufenTP());
+		data.put("ringen_attacke", Integer.toString(ausruestung.getRingenAttacke()));
+		data.put("ringen_parade", Integer.toString(ausruestung.getRingenParade()));
+		data.put("ringen_trefferpunkte", ausruestung.getRingenTP());
+		snapshot.setCombat(data);
+	}
+
+	private void readInventory(HeroSnapshot.Builder snapshot)
+	{
+		for (String itemName : werkzeug.getInventarAlsString())
+		{
+			PluginGegenstand[] items = werkzeug.getGegenstand(itemName);
+			List<Equipment> entries = new ArrayList<Equipment>(items.length);
+			for (int index = 0; index < items.length; index++)
+			{
+				PluginGegenstand item = items[index];
+				if (item == null)
+				{
+					// Keep the index of the following items
+					entries.add(null);
+					continue;
+				}
+				Map<String, String> data = new HashMap<String, String>();
+				data.put("name", item.toString());
+				data.put("index", Integer.toString(index));
+				data.put("anzahl", Integer.toString(item.getAnzahl()));
+				data.put("anzeigename", item.getName());
+				data.put("gewicht", Float.toString(item.getGewicht()));
+				data.put("preis", Integer.toString(item.getPreis()));
+				entries.add(new Equipment(itemName, null, data));
+			}
+			snapshot.addItems(itemName, entries);
+		}
+	}
+
+	private void readMoney(HeroSnapshot.Builder snapshot)
+	{
+		GeldBoerse boerse = werkzeug.getGeldBoerse();
+		Iterator<Muenze> münzen = boerse.getMuenzeIter();
+		while (münzen.hasNext())
+		{
+			Muenze münze = münzen.next();
+			Map<String, String> data = new HashMap<String, String>();
+			data.put("name", münze.getBezeichner());
+			data.put("gruppe", münze.getWaehrungsBezeichner());
+			data.put("anzahl", Integer.toString(boerse.getMuenzAnzahl(münze)));
+			snapshot.addCoin(new Equipment(münze.getBezeichner(), null, data));
+		}
+	}
+
+	private void putBoolean(Map<String, String> objectMap, String key, boolean value)
+	{
+		objectMap.put(key, Cache.booleanToDb(value));
+	}
+
+	private String arrayToString(String[] array)
+	{
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < array.length; i++)
+		{
+			if (i > 0)
+			{
+				sb.append(", ");
+			}
+			sb.append(array[i]);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Convert hitpoint array to string.
+	 * 
+	 * @param tp
+	 *          Trefferpunkte, 0: Anzahl Würfel; 1: Würfelart; 2: Festwert
+	 * @return
+	 */
+	private String tpToString(int[] tp)
+	{
+		if (tp == null || tp.length != 3)
+		{
+			return "";
+		}
+		return String.format("%dw%d%+d", tp[0], tp[1], tp[2]);
+	}
+}
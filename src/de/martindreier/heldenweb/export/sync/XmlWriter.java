@@ -0,0 +1,216 @@
+package de.martindreier.heldenweb.export.sync;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes simple XML documents (elements and text only) into a reusable buffer.
+ * The output is identical to a DOM document serialized by the default
+ * {@link javax.xml.transform.Transformer}: no line breaks, empty elements are
+ * written as <code>&lt;element/&gt;</code> and text is escaped the same way.
+ * 
+ * <p>
+ * A writer is not thread-safe; use one writer per thread.
+ * </p>
+ * 
+ * @author Martin Dreier <martin@martindreier.de>
+ * 
+ */
+class XmlWriter
+{
+	/**
+	 * The XML declaration written at the start of each document.
+	 */
+	private static final String	DECLARATION				= "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>";
+
+	/**
+	 * Buffers larger than this are not kept for the next document.
+	 */
+	private static final int		MAX_KEPT_CAPACITY	= 64 * 1024;
+
+	private StringBuilder				buffer						= new StringBuilder(1024);
+
+	/**
+	 * Names of the open elements.
+	 */
+	private List<String>				openElements			= new ArrayList<String>();
+
+	/**
+	 * <code>true</code> while the start tag of the innermost element has not
+	 * been closed with <code>&gt;</code>.
+	 */
+	private boolean							startTagOpen;
+
+	/**
+	 * Start a new document. Any previous content is discarded.
+	 * 
+	 * @return This writer.
+	 */
+	XmlWriter startDocument()
+	{
+		if (buffer.capacity() > MAX_KEPT_CAPACITY)
+		{
+			buffer = new StringBuilder(1024);
+		}
+		buffer.setLength(0);
+		openElements.clear();
+		startTagOpen = false;
+		buffer.append(DECLARATION);
+		return this;
+	}
+
+	/**
+	 * Open an element.
+	 * 
+	 * @param name
+	 *          The element name. It must be a valid XML name.
+	 * @return This writer.
+	 */
+	XmlWriter startElement(String name)
+	{
+		closeStartTag();
+		buffer.append('<').append(name);
+		openElements.add(name);
+		startTagOpen = true;
+		return this;
+	}
+
+	/**
+	 * Close the innermost open element.
+	 * 
+	 * @return This writer.
+	 */
+	XmlWriter endElement()
+	{
+		String name = openElements.remove(openElements.size() - 1);
+		if (startTagOpen)
+		{
+			buffer.append("/>");
+			startTagOpen = false;
+		}
+		else
+		{
+			buffer.append("</").append(name).append('>');
+		}
+		return this;
+	}
+
+	/**
+	 * Write text content into the innermost open element.
+	 * 
+	 * @param text
+	 *          The text. It is escaped as necessary. Empty text is not written.
+	 * @return This writer.
+	 */
+	XmlWriter text(String text)
+	{
+		if (text.length() == 0)
+		{
+			return this;
+		}
+		closeStartTag();
+		for (int index = 0; index < text.length(); index++)
+		{
+			char character = text.charAt(index);
+			switch (character)
+			{
+				case '&':
+					buffer.append("&amp;");
+					break;
+				case '<':
+					buffer.append("&lt;");
+					break;
+				case '>':
+					buffer.append("&gt;");
+					break;
+				case '\t':
+				case '\n':
+					buffer.append(character);
+					break;
+				default:
+					if (character < 0x20 || character >= 0x7F && character <= 0x9F)
+					{
+						buffer.append("&#").append((int) character).append(';');
+					}
+					else if (Character.isHighSurrogate(character) && index + 1 < text.length()
+									&& Character.isLowSurrogate(text.charAt(index + 1)))
+					{
+						buffer.append("&#").append(Character.toCodePoint(character, text.charAt(++index))).append(';');
+					}
+					else
+					{
+						buffer.append(character);
+					}
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Write an element with text content.
+	 * 
+	 * @param name
+	 *          The element name.
+	 * @param content
+	 *          The content. <code>null</code> is written as an empty element, a
+	 *          {@link Map} as one child element with text content per entry,
+	 *          anything else as the text returned by {@link Object#toString()}.
+	 * @return This writer.
+	 */
+	XmlWriter element(String name, Object content)
+	{
+		startElement(name);
+		if (content instanceof Map)
+		{
+			for (Map.Entry<?, ?> child : ((Map<?, ?>) content).entrySet())
+			{
+				startElement(child.getKey().toString());
+				if (child.getValue() != null)
+				{
+					text(child.getValue().toString());
+				}
+				endElement();
+			}
+		}
+		else if (content != null)
+		{
+			text(content.toString());
+		}
+		return endElement();
+	}
+
+	/**
+	 * Write one element per map entry.
+	 * 
+	 * @param elements
+	 *          The elements, see {@link #element(String, Object)}.
+	 * @return This writer.
+	 */
+	XmlWriter elements(Map<String, ? extends Object> elements)
+	{
+		for (Map.Entry<String, ? extends Object> entry : elements.entrySet())
+		{
+			element(entry.getKey(), entry.getValue());
+		}
+		return this;
+	}
+
+	private void closeStartTag()
+	{
+		if (startTagOpen)
+		{
+			buffer.append('>');
+			startTagOpen = false;
+		}
+	}
+
+	/**
+	 * @return The document written so far.
+	 */
+	@Override
+	public String toString()
+	{
+		return buffer.toString();
+	}
+}
@@ -1,6 +1,7 @@
 package de.martindreier.heldenweb.export.ui;
 
 import java.awt.BorderLayout;
+import java.awt.Font;
 import java.awt.GridLayout;
 import java.awt.Window;
 import java.net.URL;
@@ -9,17 +10,23 @@ import java.security.CodeSource;
 import java.security.ProtectionDomain;
 import java.text.MessageFormat;
 import javax.swing.Action;
+import javax.swing.BorderFactory;
 import javax.swing.Icon;
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JProgressBar;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
 import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
 import de.martindreier.heldenweb.export.sync.Synchronizer;
 import de.martindreier.heldenweb.export.ui.actions.CloseAction;
 import de.martindreier.heldenweb.export.ui.actions.OptionsAction;
+import de.martindreier.heldenweb.export.ui.actions.SeedCatalogueAction;
 import de.martindreier.heldenweb.export.ui.actions.SyncAction;
+import de.martindreier.heldenweb.export.ui.actions.SyncAllAction;
 
 public class ExportDialog extends AbstractDialog
 {
@@ -29,10 +36,20 @@ public class ExportDialog extends AbstractDialog
 	private static final long	serialVersionUID	= 8010518368352442412L;
 
 	private static final int	PROGRESS_BAR_MAX	= 1000;
+	private static final int	METRICS_ROWS			= 12;
+	private static final int	METRICS_COLUMNS		= 80;
 	/**
 	 * Action: Start synchronization.
 	 */
 	private Action						syncAction;
+	/**
+	 * Action: Export all heroes.
+	 */
+	private Action						syncAllAction;
+	/**
+	 * Action: Transfer the base data of all heroes.
+	 */
+	private Action						seedCatalogueAction;
 	/**
 	 * Action: Close dialog.
 	 */
@@ -45,6 +62,11 @@ public class ExportDialog extends AbstractDialog
 	 * The synchronizer.
 	 */
 	private Synchronizer			synchronizer;
+	/**
+	 * Shows the metrics of the last export.
+	 */
+	private JTextArea					metricsArea;
+	private JScrollPane				metricsPane;
 
 	/**
 	 * Create a new export dialog.
@@ -96,7 +118,19 @@ public class ExportDialog extends AbstractDialog
 		JProgressBar progressBar = new JProgressBar(0, PROGRESS_BAR_MAX);
 		progress.add(progressLabel);
 		progress.add(progressBar);
-		mainPanel.add(progress, BorderLayout.SOUTH);
+
+		// Metrics of the last export, shown once an export is finished
+		metricsArea = new JTextArea(METRICS_ROWS, METRICS_COLUMNS);
+		metricsArea.setEditable(false);
+		metricsArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, metricsArea.getFont().getSize()));
+		metricsPane = new JScrollPane(metricsArea);
+		metricsPane.setBorder(BorderFactory.createTitledBorder("Messwerte des letzten Exports"));
+		metricsPane.setVisible(false);
+
+		JPanel south = new JPanel(new BorderLayout(10, 10));
+		south.add(progress, BorderLayout.NORTH);
+		south.add(metricsPane, BorderLayout.CENTER);
+		mainPanel.add(south, BorderLayout.SOUTH);
 		synchronizer.setProgressMonitor(new ExportMonitor(button, progressBar, progressLabel));
 		parent.add(mainPanel);
 	}
@@ -108,6 +142,8 @@ public class ExportDialog extends AbstractDialog
 	protected void createActions()
 	{
 		syncAction = new SyncAction(this, synchronizer);
+		syncAllAction = new SyncAllAction(this, synchronizer);
+		seedCatalogueAction = new SeedCatalogueAction(this, synchronizer);
 		closeAction = new CloseAction(this);
 		optionsAction = new OptionsAction(this);
 	}
@@ -116,6 +152,8 @@ public class ExportDialog extends AbstractDialog
 	protected void addButtonsToButtonBar(ButtonBar buttonBar)
 	{
 		// buttonBar.add(new JButton(syncAction));
+		buttonBar.addButton(syncAllAction);
+		buttonBar.addButton(seedCatalogueAction);
 		buttonBar.addButton(optionsAction);
 		buttonBar.addButton(closeAction);
 	}
@@ -148,7 +186,24 @@ public class ExportDialog extends AbstractDialog
 		public void done()
 		{
 			exportButton.setEnabled(true);
+			syncAllAction.setEnabled(synchronizer.getHeroCount() > 1);
+			seedCatalogueAction.setEnabled(synchronizer.getHeroCount() > 0);
 			taskLabel.setText("Export beendet");
+			final String summary = synchronizer.getMetrics().getSummary();
+			SwingUtilities.invokeLater(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					metricsArea.setText(summary);
+					metricsArea.setCaretPosition(0);
+					if (!metricsPane.isVisible())
+					{
+						metricsPane.setVisible(true);
+						pack();
+					}
+				}
+			});
 		}
 
 		@Override
@@ -158,6 +213,8 @@ public class ExportDialog extends AbstractDialog
 			this.currentStep = 0;
 			subtaskSteps = 1;
 			exportButton.setEnabled(false);
+			syncAllAction.setEnabled(false);
+			seedCatalogueAction.setEnabled(false);
 			progressBar.setValue(0);
 		}
 
@@ -5,6 +5,9 @@ import helden.plugin.werteplugin3.PluginHeldenWerteWerkzeug3;
 import javax.swing.JFrame;
 import de.martindreier.heldenweb.export.HeldenWebExportException;
 import de.martindreier.heldenweb.export.Settings;
+import de.martindreier.heldenweb.export.sync.AutoSync;
+import de.martindreier.heldenweb.export.sync.HeroSnapshot;
+import de.martindreier.heldenweb.export.sync.OutboxFlusher;
 import de.martindreier.heldenweb.export.sync.Synchronizer;
 
 public class ExportUIController
@@ -24,7 +27,47 @@ public class ExportUIController
 				// First execution, show options dialog first
 				new SettingsDialog(parent, true).open();
 			}
+			Settings settings = Settings.getSettings();
 			Synchronizer synchronizer = new Synchronizer(helden, werkzeug);
+			OutboxFlusher outboxFlusher = null;
+			if (Boolean.parseBoolean(settings.getOutbox()))
+			{
+				// Send heroes queued by an earlier export
+				outboxFlusher = OutboxFlusher.getInstance();
+				outboxFlusher.setRejectionListener(new OutboxFlusher.RejectionListener()
+				{
+					@Override
+					public void heroRejected(HeroSnapshot hero, HeldenWebExportException exception)
+					{
+						HeldenWebFehler.handleError(null, "Held " + hero.getName()
+										+ " wurde vom Server abgelehnt und aus dem Postausgang genommen", exception);
+					}
+				});
+				outboxFlusher.start();
+				synchronizer.setOutboxFlusher(outboxFlusher);
+			}
+			if (Boolean.parseBoolean(settings.getAutoSync()))
+			{
+				// Uses its own synchronizer, so its exports are not shown in the dialog
+				Synchronizer autoSynchronizer = new Synchronizer(helden, werkzeug);
+				autoSynchronizer.setOutboxFlusher(outboxFlusher);
+				try
+				{
+					AutoSync.getInstance().start(autoSynchronizer, Long.parseLong(settings.getAutoSyncInterval()) * 1000,
+									Long.parseLong(settings.getAutoSyncDelay()) * 1000);
+				}
+				catch (NumberFormatException exception)
+				{
+					// The export dialog can still be used
+					HeldenWebFehler.handleError(null,
+									"Automatischer Export nicht gestartet: Prüfintervall und Verzögerung müssen ganze Zahlen sein",
+									exception);
+				}
+			}
+			else
+			{
+				AutoSync.getInstance().stop();
+			}
 			new ExportDialog(parent, synchronizer).open();
 		}
 		catch (HeldenWebExportException exception)
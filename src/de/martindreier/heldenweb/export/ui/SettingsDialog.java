@@ -2,10 +2,13 @@ package de.martindreier.heldenweb.export.ui;
 
 import java.awt.GridLayout;
 import java.awt.Window;
+import java.text.MessageFormat;
 import java.util.HashMap;
 import java.util.Map;
 import javax.swing.Action;
+import javax.swing.JCheckBox;
 import javax.swing.JLabel;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JPasswordField;
 import javax.swing.JTextField;
@@ -20,7 +23,24 @@ public class SettingsDialog extends AbstractDialog implements ISaveCallback
 
 	private static enum Setting
 	{
-		SERVER, PORT, PATH, USER, PASSWORD
+		SERVER, PORT(true), PATH, USER, PASSWORD, REQUEST_WINDOW(true), REQUEST_RETRIES(true), RETRY_BACKOFF(true),
+		RETRY_MAX_BACKOFF(true), FAILURE_THRESHOLD(true), FAILURE_PAUSE(true), OUTBOX, MAX_CONCURRENCY(true), AUTO_SYNC,
+		AUTO_SYNC_INTERVAL(true), AUTO_SYNC_DELAY(true), CLIENT_IDS;
+
+		/**
+		 * The setting must be a number which is not negative.
+		 */
+		private final boolean	numeric;
+
+		private Setting()
+		{
+			this(false);
+		}
+
+		private Setting(boolean numeric)
+		{
+			this.numeric = numeric;
+		}
 	}
 
 	/**
@@ -39,6 +59,14 @@ public class SettingsDialog extends AbstractDialog implements ISaveCallback
 	 * Maps setting to input field.
 	 */
 	private Map<Setting, JTextField>	mappings;
+	/**
+	 * Maps boolean setting to check box.
+	 */
+	private Map<Setting, JCheckBox>		checkBoxes;
+	/**
+	 * Maps setting to the name shown on its label.
+	 */
+	private Map<Setting, String>			names;
 
 	/**
 	 * Create a new settings dialog.
@@ -65,6 +93,8 @@ public class SettingsDialog extends AbstractDialog implements ISaveCallback
 	{
 		super(parent, "HeldenWeb Export Einstellungen");
 		mappings = new HashMap<SettingsDialog.Setting, JTextField>();
+		checkBoxes = new HashMap<SettingsDialog.Setting, JCheckBox>();
+		names = new HashMap<SettingsDialog.Setting, String>();
 		if (forceSettings)
 		{
 			closeAction.setEnabled(false);
@@ -96,6 +126,39 @@ public class SettingsDialog extends AbstractDialog implements ISaveCallback
 						"Passwort",
 						"Das Passwort, um dich am HeldenWeb-Server anzumelden. Du kannst dieses Feld leer lassen, dann wirst du bei der Synchronisation nach dem Passwort gefragt",
 						Setting.PASSWORD, true);
+		createSettingInput(dialogArea, "Parallele Anfragen",
+						"Die Anzahl der Anfragen, die zu Beginn gleichzeitig an den Server gesendet werden. "
+										+ "Sie wird an die Antwortzeiten des Servers angepasst", Setting.REQUEST_WINDOW, false);
+		createSettingInput(dialogArea, "Max. parallele Anfragen",
+						"Mehr Anfragen werden nie gleichzeitig an den Server gesendet (1 = nacheinander)",
+						Setting.MAX_CONCURRENCY, false);
+		createSettingInput(dialogArea, "Wiederholungen",
+						"Wie oft eine fehlgeschlagene Anfrage wiederholt wird, bevor der Export abbricht", Setting.REQUEST_RETRIES,
+						false);
+		createSettingInput(dialogArea, "Wartezeit (ms)",
+						"Die Wartezeit vor der ersten Wiederholung. Sie verdoppelt sich mit jeder weiteren Wiederholung",
+						Setting.RETRY_BACKOFF, false);
+		createSettingInput(dialogArea, "Max. Wartezeit (ms)", "Die längste Wartezeit zwischen zwei Wiederholungen",
+						Setting.RETRY_MAX_BACKOFF, false);
+		createSettingInput(dialogArea, "Fehlerschwelle",
+						"Nach so vielen Fehlern in Folge gilt der Server als nicht erreichbar (0 = nie)", Setting.FAILURE_THRESHOLD,
+						false);
+		createSettingInput(dialogArea, "Pause (s)",
+						"So lange werden keine Anfragen an einen nicht erreichbaren Server gesendet", Setting.FAILURE_PAUSE, false);
+		createSettingCheckBox(dialogArea, "Postausgang",
+						"Ist der Server nicht erreichbar, werden die Helden gespeichert und später automatisch übertragen",
+						Setting.OUTBOX);
+		createSettingCheckBox(dialogArea, "Automatisch exportieren",
+						"Änderungen am gewählten Helden werden im Hintergrund exportiert, solange die Helden-Software läuft",
+						Setting.AUTO_SYNC);
+		createSettingInput(dialogArea, "Prüfintervall (s)", "So oft wird der gewählte Held auf Änderungen geprüft",
+						Setting.AUTO_SYNC_INTERVAL, false);
+		createSettingInput(dialogArea, "Verzögerung (s)",
+						"So lange muss ein geänderter Held unverändert bleiben, bevor er exportiert wird", Setting.AUTO_SYNC_DELAY,
+						false);
+		createSettingCheckBox(dialogArea, "IDs im Client erzeugen",
+						"Neue Objekte werden übertragen, ohne auf die Antwort des Servers zu warten. "
+										+ "Der Server muss die IDs des Clients übernehmen", Setting.CLIENT_IDS);
 		loadSettings();
 	}
 
@@ -137,6 +200,30 @@ public class SettingsDialog extends AbstractDialog implements ISaveCallback
 			inputField.setToolTipText(tooltip);
 		}
 		mappings.put(settingsKey, inputField);
+		names.put(settingsKey, name);
+	}
+
+	/**
+	 * Creates a label and a check box for a boolean setting.
+	 * 
+	 * @param dialogArea
+	 *          The parent panel.
+	 * @param name
+	 *          The name to be shown on the label.
+	 * @param tooltip
+	 *          The tooltip text for the check box.
+	 * @param settingsKey
+	 *          The key for the setting.
+	 */
+	private void createSettingCheckBox(JPanel dialogArea, String name, String tooltip, Setting settingsKey)
+	{
+		JLabel label = new JLabel(name);
+		label.setToolTipText(tooltip);
+		dialogArea.add(label);
+		JCheckBox checkBox = new JCheckBox();
+		checkBox.setToolTipText(tooltip);
+		dialogArea.add(checkBox);
+		checkBoxes.put(settingsKey, checkBox);
 	}
 
 	/**
@@ -149,6 +236,10 @@ public class SettingsDialog extends AbstractDialog implements ISaveCallback
 			JTextField associatedInput = mappings.get(setting);
 			associatedInput.setText(getSetting(setting));
 		}
+		for (Setting setting : checkBoxes.keySet())
+		{
+			checkBoxes.get(setting).setSelected(Boolean.parseBoolean(getSetting(setting)));
+		}
 	}
 
 	/**
@@ -159,10 +250,50 @@ public class SettingsDialog extends AbstractDialog implements ISaveCallback
 		for (Setting setting : mappings.keySet())
 		{
 			JTextField associatedInput = mappings.get(setting);
-			putSetting(setting, associatedInput.getText());
+			String value = associatedInput.getText();
+			putSetting(setting, setting.numeric ? value.trim() : value);
+		}
+		for (Setting setting : checkBoxes.keySet())
+		{
+			putSetting(setting, Boolean.toString(checkBoxes.get(setting).isSelected()));
 		}
 	}
 
+	/**
+	 * Check that all numeric settings are numbers which are not negative. The
+	 * first invalid setting is reported to the user.
+	 * 
+	 * @return <code>true</code> if all settings are valid.
+	 */
+	private boolean validateSettings()
+	{
+		for (Setting setting : Setting.values())
+		{
+			JTextField associatedInput = mappings.get(setting);
+			if (!setting.numeric || associatedInput == null)
+			{
+				continue;
+			}
+			try
+			{
+				if (Integer.parseInt(associatedInput.getText().trim()) >= 0)
+				{
+					continue;
+				}
+			}
+			catch (NumberFormatException exception)
+			{
+				// Reported below
+			}
+			JOptionPane.showMessageDialog(this, MessageFormat.format(
+							"Bitte gib bei \"{0}\" eine ganze Zahl ab 0 ein.", names.get(setting)), getTitle(),
+							JOptionPane.WARNING_MESSAGE);
+			associatedInput.requestFocusInWindow();
+			return false;
+		}
+		return true;
+	}
+
 	/**
 	 * Save a new value for a setting.
 	 * 
@@ -190,6 +321,42 @@ public class SettingsDialog extends AbstractDialog implements ISaveCallback
 			case PASSWORD:
 				Settings.getSettings().setPassword(newValue);
 				break;
+			case REQUEST_WINDOW:
+				Settings.getSettings().setRequestWindow(newValue);
+				break;
+			case REQUEST_RETRIES:
+				Settings.getSettings().setRequestRetries(newValue);
+				break;
+			case RETRY_BACKOFF:
+				Settings.getSettings().setRetryBackoff(newValue);
+				break;
+			case RETRY_MAX_BACKOFF:
+				Settings.getSettings().setRetryMaxBackoff(newValue);
+				break;
+			case FAILURE_THRESHOLD:
+				Settings.getSettings().setFailureThreshold(newValue);
+				break;
+			case FAILURE_PAUSE:
+				Settings.getSettings().setFailurePause(newValue);
+				break;
+			case OUTBOX:
+				Settings.getSettings().setOutbox(newValue);
+				break;
+			case MAX_CONCURRENCY:
+				Settings.getSettings().setMaxConcurrency(newValue);
+				break;
+			case AUTO_SYNC:
+				Settings.getSettings().setAutoSync(newValue);
+				break;
+			case AUTO_SYNC_INTERVAL:
+				Settings.getSettings().setAutoSyncInterval(newValue);
+				break;
+			case AUTO_SYNC_DELAY:
+				Settings.getSettings().setAutoSyncDelay(newValue);
+				break;
+			case CLIENT_IDS:
+				Settings.getSettings().setClientIds(newValue);
+				break;
 		}
 	}
 
@@ -214,6 +381,30 @@ public class SettingsDialog extends AbstractDialog implements ISaveCallback
 				return Settings.getSettings().getUsername();
 			case PASSWORD:
 				return Settings.getSettings().getPassword();
+			case REQUEST_WINDOW:
+				return Settings.getSettings().getRequestWindow();
+			case REQUEST_RETRIES:
+				return Settings.getSettings().getRequestRetries();
+			case RETRY_BACKOFF:
+				return Settings.getSettings().getRetryBackoff();
+			case RETRY_MAX_BACKOFF:
+				return Settings.getSettings().getRetryMaxBackoff();
+			case FAILURE_THRESHOLD:
+				return Settings.getSettings().getFailureThreshold();
+			case FAILURE_PAUSE:
+				return Settings.getSettings().getFailurePause();
+			case OUTBOX:
+				return Settings.getSettings().getOutbox();
+			case MAX_CONCURRENCY:
+				return Settings.getSettings().getMaxConcurrency();
+			case AUTO_SYNC:
+				return Settings.getSettings().getAutoSync();
+			case AUTO_SYNC_INTERVAL:
+				return Settings.getSettings().getAutoSyncInterval();
+			case AUTO_SYNC_DELAY:
+				return Settings.getSettings().getAutoSyncDelay();
+			case CLIENT_IDS:
+				return Settings.getSettings().getClientIds();
 		}
 		return "::" + settingsKey + "::";
 	}
@@ -234,6 +425,10 @@ public class SettingsDialog extends AbstractDialog implements ISaveCallback
 	@Override
 	public boolean doSave()
 	{
+		if (!validateSettings())
+		{
+			return false;
+		}
 		saveSettings();
 		try
 		{
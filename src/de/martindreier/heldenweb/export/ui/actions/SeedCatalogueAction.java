@@ -0,0 +1,73 @@
+package de.martindreier.heldenweb.export.ui.actions;
+
+import java.awt.Window;
+import java.awt.event.ActionEvent;
+import javax.swing.AbstractAction;
+import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+import de.martindreier.heldenweb.export.HeldenWebExportException;
+import de.martindreier.heldenweb.export.sync.ExportStatistics;
+import de.martindreier.heldenweb.export.sync.Synchronizer;
+import de.martindreier.heldenweb.export.ui.HeldenWebFehler;
+
+/**
+ * Transfers the base data of all heroes without the heroes themselves and
+ * shows a summary afterwards.
+ * 
+ * @author Martin Dreier <martin@martindreier.de>
+ * 
+ */
+public class SeedCatalogueAction extends AbstractAction
+{
+
+	/**
+	 * For serialization.
+	 */
+	private static final long	serialVersionUID	= 2871648365027541933L;
+	/**
+	 * The synchronizer.
+	 */
+	private Synchronizer			synchronizer;
+	/**
+	 * Parent window of the action.
+	 */
+	private Window						parent;
+
+	public SeedCatalogueAction(Window parent, Synchronizer synchronizer)
+	{
+		super("Stammdaten übertragen");
+		this.synchronizer = synchronizer;
+		this.parent = parent;
+		setEnabled(synchronizer.getHeroCount() > 0);
+	}
+
+	@Override
+	public void actionPerformed(ActionEvent e)
+	{
+		new Thread(new Runnable()
+		{
+
+			@Override
+			public void run()
+			{
+				try
+				{
+					final ExportStatistics statistics = synchronizer.seedCatalogue();
+					SwingUtilities.invokeLater(new Runnable()
+					{
+						@Override
+						public void run()
+						{
+							JOptionPane.showMessageDialog(parent, statistics.getSummary(), "Stammdaten übertragen",
+											JOptionPane.INFORMATION_MESSAGE);
+						}
+					});
+				}
+				catch (HeldenWebExportException exception)
+				{
+					HeldenWebFehler.handleError(parent, "Fehler beim Übertragen der Stammdaten", exception);
+				}
+			}
+		}).start();
+	}
+}
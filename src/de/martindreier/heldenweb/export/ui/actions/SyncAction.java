@@ -3,7 +3,10 @@ package de.martindreier.heldenweb.export.ui.actions;
 import java.awt.Window;
 import java.awt.event.ActionEvent;
 import javax.swing.AbstractAction;
+import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 import de.martindreier.heldenweb.export.HeldenWebExportException;
+import de.martindreier.heldenweb.export.sync.ExportStatistics;
 import de.martindreier.heldenweb.export.sync.Synchronizer;
 import de.martindreier.heldenweb.export.ui.HeldenWebFehler;
 
@@ -41,7 +44,19 @@ public class SyncAction extends AbstractAction
 			{
 				try
 				{
-					synchronizer.sync();
+					final ExportStatistics statistics = synchronizer.sync();
+					if (statistics.getQueuedHeroCount() > 0)
+					{
+						SwingUtilities.invokeLater(new Runnable()
+						{
+							@Override
+							public void run()
+							{
+								JOptionPane.showMessageDialog(parent, statistics.getSummary(), "Postausgang",
+												JOptionPane.INFORMATION_MESSAGE);
+							}
+						});
+					}
 				}
 				catch (HeldenWebExportException exception)
 				{
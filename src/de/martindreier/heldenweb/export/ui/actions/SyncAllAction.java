@@ -0,0 +1,72 @@
+package de.martindreier.heldenweb.export.ui.actions;
+
+import java.awt.Window;
+import java.awt.event.ActionEvent;
+import javax.swing.AbstractAction;
+import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+import de.martindreier.heldenweb.export.HeldenWebExportException;
+import de.martindreier.heldenweb.export.sync.ExportStatistics;
+import de.martindreier.heldenweb.export.sync.Synchronizer;
+import de.martindreier.heldenweb.export.ui.HeldenWebFehler;
+
+/**
+ * Exports all heroes and shows a summary afterwards.
+ * 
+ * @author Martin Dreier <martin@martindreier.de>
+ * 
+ */
+public class SyncAllAction extends AbstractAction
+{
+
+	/**
+	 * For serialization.
+	 */
+	private static final long	serialVersionUID	= -4309517622473560853L;
+	/**
+	 * The synchronizer.
+	 */
+	private Synchronizer			synchronizer;
+	/**
+	 * Parent window of the action.
+	 */
+	private Window						parent;
+
+	public SyncAllAction(Window parent, Synchronizer synchronizer)
+	{
+		super("Alle exportieren");
+		this.synchronizer = synchronizer;
+		this.parent = parent;
+		setEnabled(synchronizer.getHeroCount() > 1);
+	}
+
+	@Override
+	public void actionPerformed(ActionEvent e)
+	{
+		new Thread(new Runnable()
+		{
+
+			@Override
+			public void run()
+			{
+				try
+				{
+					final ExportStatistics statistics = synchronizer.syncAll();
+					SwingUtilities.invokeLater(new Runnable()
+					{
+						@Override
+						public void run()
+						{
+							JOptionPane.showMessageDialog(parent, statistics.getSummary(), "Export beendet",
+											JOptionPane.INFORMATION_MESSAGE);
+						}
+					});
+				}
+				catch (HeldenWebExportException exception)
+				{
+					HeldenWebFehler.handleError(parent, "Fehler beim Export der Helden", exception);
+				}
+			}
+		}).start();
+	}
+}